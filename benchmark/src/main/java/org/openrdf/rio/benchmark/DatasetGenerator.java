@@ -0,0 +1,242 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.benchmark;
+
+import java.util.Random;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Creates synthetic datasets of a given size and {@link DatasetShape}. The
+ * datasets are deterministic for a given seed, so that benchmark runs are
+ * reproducible.
+ */
+public class DatasetGenerator {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	public static final String DATA_NAMESPACE = "http://example.org/data/";
+
+	public static final String VOCAB_NAMESPACE = "http://example.org/vocab#";
+
+	public static final String GRAPH_NAMESPACE = "http://example.org/graph/";
+
+	private static final int PREDICATE_COUNT = 20;
+
+	private static final int CLASS_COUNT = 10;
+
+	private static final int GRAPH_COUNT = 10;
+
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+			"adipiscing", "elit", "été", "naïve", "日本語", "\"quoted\"",
+			"back\\slash", "tab\tbed", "line\nbreak" };
+
+	private static final String[] LANGUAGES = { "en", "de", "fr", "nl", "ja", "en-GB" };
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final ValueFactory vf;
+
+	private final Random random;
+
+	private final URI[] predicates;
+
+	private final URI[] classes;
+
+	private final URI[] graphs;
+
+	private int subjectCount;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public DatasetGenerator() {
+		this(42L);
+	}
+
+	public DatasetGenerator(long seed) {
+		this(ValueFactoryImpl.getInstance(), seed);
+	}
+
+	public DatasetGenerator(ValueFactory vf, long seed) {
+		this.vf = vf;
+		this.random = new Random(seed);
+
+		predicates = new URI[PREDICATE_COUNT];
+		for (int i = 0; i < predicates.length; i++) {
+			predicates[i] = vf.createURI(VOCAB_NAMESPACE, "property" + i);
+		}
+		classes = new URI[CLASS_COUNT];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = vf.createURI(VOCAB_NAMESPACE, "Class" + i);
+		}
+		graphs = new URI[GRAPH_COUNT];
+		for (int i = 0; i < graphs.length; i++) {
+			graphs[i] = vf.createURI(GRAPH_NAMESPACE, "g" + i);
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Creates a dataset with the specified shape.
+	 * 
+	 * @param shape
+	 *        The shape of the dataset.
+	 * @param size
+	 *        The number of statements in the dataset.
+	 * @return A model containing <tt>size</tt> statements, with the namespaces
+	 *         used by the dataset.
+	 */
+	public Model generate(DatasetShape shape, int size) {
+		Model model = new LinkedHashModel(size);
+		model.setNamespace("data", DATA_NAMESPACE);
+		model.setNamespace("vocab", VOCAB_NAMESPACE);
+		model.setNamespace("graph", GRAPH_NAMESPACE);
+		model.setNamespace(RDF.PREFIX, RDF.NAMESPACE);
+		model.setNamespace(RDFS.PREFIX, RDFS.NAMESPACE);
+		model.setNamespace(XMLSchema.PREFIX, XMLSchema.NAMESPACE);
+
+		while (model.size() < size) {
+			Resource context = null;
+			DatasetShape subjectShape = shape;
+			if (shape == DatasetShape.MIXED) {
+				subjectShape = DatasetShape.values()[random.nextInt(DatasetShape.MIXED.ordinal())];
+				int graph = random.nextInt(graphs.length + 1);
+				context = graph < graphs.length ? graphs[graph] : null;
+			}
+
+			switch (subjectShape) {
+				case URIS:
+					addURIStatements(model, size, context);
+					break;
+				case LITERALS:
+					addLiteralStatements(model, size, context);
+					break;
+				default:
+					addBNodeStatements(model, size, context);
+			}
+		}
+
+		return model;
+	}
+
+	private void addURIStatements(Model model, int size, Resource context) {
+		URI subject = nextSubject();
+		add(model, size, subject, RDF.TYPE, classes[random.nextInt(classes.length)], context);
+		int count = 2 + random.nextInt(8);
+		for (int i = 0; i < count; i++) {
+			URI object = vf.createURI(DATA_NAMESPACE, "resource" + random.nextInt(Math.max(1, subjectCount)));
+			add(model, size, subject, nextPredicate(), object, context);
+		}
+	}
+
+	private void addLiteralStatements(Model model, int size, Resource context) {
+		URI subject = nextSubject();
+		add(model, size, subject, RDFS.LABEL, vf.createLiteral(nextText(3)), context);
+		int count = 2 + random.nextInt(8);
+		for (int i = 0; i < count; i++) {
+			add(model, size, subject, nextPredicate(), nextLiteral(), context);
+		}
+	}
+
+	private void addBNodeStatements(Model model, int size, Resource context) {
+		URI subject = nextSubject();
+
+		// a nested blank node
+		BNode node = vf.createBNode();
+		add(model, size, subject, nextPredicate(), node, context);
+		add(model, size, node, RDF.TYPE, classes[random.nextInt(classes.length)], context);
+		add(model, size, node, nextPredicate(), nextLiteral(), context);
+
+		// a collection of literals
+		int length = 1 + random.nextInt(5);
+		Resource list = vf.createBNode();
+		add(model, size, subject, nextPredicate(), list, context);
+		for (int i = 0; i < length; i++) {
+			Resource rest = i < length - 1 ? vf.createBNode() : RDF.NIL;
+			add(model, size, list, RDF.FIRST, vf.createLiteral(random.nextInt(1000)), context);
+			add(model, size, list, RDF.REST, rest, context);
+			list = rest;
+		}
+	}
+
+	private void add(Model model, int size, Resource subj, URI pred, Value obj, Resource context) {
+		if (model.size() < size) {
+			model.add(subj, pred, obj, context);
+		}
+	}
+
+	private URI nextSubject() {
+		return vf.createURI(DATA_NAMESPACE, "resource" + subjectCount++);
+	}
+
+	private URI nextPredicate() {
+		return predicates[random.nextInt(predicates.length)];
+	}
+
+	private Literal nextLiteral() {
+		switch (random.nextInt(7)) {
+			case 0:
+				return vf.createLiteral(nextText(1 + random.nextInt(5)));
+			case 1:
+				return vf.createLiteral(nextText(1 + random.nextInt(5)), LANGUAGES[random.nextInt(LANGUAGES.length)]);
+			case 2:
+				// a long, multi-line value
+				return vf.createLiteral(nextText(50 + random.nextInt(100)));
+			case 3:
+				return vf.createLiteral(random.nextInt());
+			case 4:
+				return vf.createLiteral(random.nextDouble());
+			case 5:
+				return vf.createLiteral(random.nextBoolean());
+			default:
+				return vf.createLiteral(String.format("20%02d-%02d-%02dT%02d:%02d:%02dZ", random.nextInt(16),
+						1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60),
+						random.nextInt(60)), XMLSchema.DATETIME);
+		}
+	}
+
+	private String nextText(int wordCount) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < wordCount; i++) {
+			if (i > 0) {
+				text.append(i % 12 == 0 ? '\n' : ' ');
+			}
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.benchmark;
+
+/**
+ * The shapes of the datasets created by {@link DatasetGenerator}. Each shape
+ * stresses a different part of the parsers and writers.
+ */
+public enum DatasetShape {
+
+	/**
+	 * Statements about URI resources with URI objects, exercising IRI
+	 * handling and namespace abbreviation.
+	 */
+	URIS,
+
+	/**
+	 * Statements with plain, language-tagged and typed literals, including
+	 * long and multi-line values that need escaping.
+	 */
+	LITERALS,
+
+	/**
+	 * Nested blank nodes and RDF collections.
+	 */
+	BNODES,
+
+	/**
+	 * A mix of the other shapes, spread over the default graph and a number
+	 * of named graphs.
+	 */
+	MIXED
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openrdf.model.Model;
+import org.openrdf.rio.RDFFormat;
+
+/**
+ * Base class for the Rio benchmarks. Holds the parameters that select the
+ * {@link RDFFormat} and the generated dataset, which default to all formats
+ * and all {@link DatasetShape}s. The parameters can be overridden on the JMH
+ * command line, for example <tt>-p format=Turtle -p size=1000000</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public abstract class FormatBenchmark {
+
+	/**
+	 * The name of the format, as returned by {@link RDFFormat#getName()}.
+	 */
+	@Param({ "N-Triples", "N-Quads", "Turtle", "TriG", "RDF/XML", "JSON-LD", "RDF/JSON", "TriX", "BinaryRDF" })
+	public String format;
+
+	/**
+	 * The number of statements in the dataset.
+	 */
+	@Param({ "10000" })
+	public int size;
+
+	@Param({ "URIS", "LITERALS", "BNODES", "MIXED" })
+	public DatasetShape shape;
+
+	/**
+	 * The seed for the {@link DatasetGenerator}.
+	 */
+	@Param({ "42" })
+	public long seed;
+
+	protected RDFFormat rdfFormat;
+
+	protected Model model;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws Exception
+	{
+		rdfFormat = getFormat(format);
+		model = new DatasetGenerator(seed).generate(shape, size);
+		prepare();
+	}
+
+	/**
+	 * Called once per trial after the dataset has been generated.
+	 */
+	protected void prepare()
+		throws Exception
+	{
+	}
+
+	private static RDFFormat getFormat(String name) {
+		RDFFormat[] formats = {
+				RDFFormat.NTRIPLES,
+				RDFFormat.NQUADS,
+				RDFFormat.TURTLE,
+				RDFFormat.TRIG,
+				RDFFormat.RDFXML,
+				RDFFormat.JSONLD,
+				RDFFormat.RDFJSON,
+				RDFFormat.TRIX,
+				RDFFormat.BINARY };
+
+		for (RDFFormat format : formats) {
+			if (format.getName().equalsIgnoreCase(name)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported format: " + name);
+	}
+}
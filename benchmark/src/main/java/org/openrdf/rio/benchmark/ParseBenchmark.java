@@ -0,0 +1,66 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Measures how long the {@link RDFParser} of each format takes to parse a
+ * generated dataset. The dataset is serialized once per trial, and the parsed
+ * statements are consumed without being collected.
+ */
+public class ParseBenchmark extends FormatBenchmark {
+
+	private byte[] data;
+
+	@Override
+	protected void prepare()
+		throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Rio.write(model, out, rdfFormat);
+		data = out.toByteArray();
+		model = null;
+	}
+
+	@Benchmark
+	public void parse(final Blackhole blackhole)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		RDFParser parser = Rio.createParser(rdfFormat);
+		parser.setRDFHandler(new RDFHandlerBase() {
+
+			@Override
+			public void handleStatement(Statement st) {
+				blackhole.consume(st);
+			}
+		});
+		parser.parse(new ByteArrayInputStream(data), DatasetGenerator.DATA_NAMESPACE);
+	}
+}
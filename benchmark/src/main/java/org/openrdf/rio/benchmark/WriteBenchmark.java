@@ -0,0 +1,59 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.benchmark;
+
+import java.io.OutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+/**
+ * Measures how long the {@link RDFWriter} of each format takes to write a
+ * generated dataset. The output is counted and discarded.
+ */
+public class WriteBenchmark extends FormatBenchmark {
+
+	@Benchmark
+	public long write()
+		throws RDFHandlerException
+	{
+		CountingOutputStream out = new CountingOutputStream();
+		Rio.write(model, out, rdfFormat);
+		return out.count;
+	}
+
+	/**
+	 * An output stream that only counts the bytes written to it.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
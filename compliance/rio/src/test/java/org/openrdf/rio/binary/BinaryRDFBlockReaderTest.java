@@ -0,0 +1,184 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.util.Models;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.helpers.BinaryRDFWriterSettings;
+
+/**
+ * Unit tests for {@link BinaryRDFBlockReader}.
+ */
+public class BinaryRDFBlockReaderTest {
+
+	private static final String EX = "http://example.org/";
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void testVersion2Blocks()
+		throws Exception
+	{
+		Model model = createModel(25);
+		byte[] document = write(model, 2, 10, false);
+
+		BinaryRDFBlockReader reader = new BinaryRDFBlockReader(new ByteArrayInputStream(document), vf);
+		List<List<Statement>> blocks = readBlocks(reader);
+
+		assertEquals(3, blocks.size());
+		assertEquals(10, blocks.get(0).size());
+		assertEquals(10, blocks.get(1).size());
+		assertEquals(5, blocks.get(2).size());
+		assertEquals(EX, reader.getNamespaces().get("ex"));
+		assertTrue(Models.isomorphic(model, toModel(blocks)));
+	}
+
+	@Test
+	public void testVersion2CompressedBlocks()
+		throws Exception
+	{
+		Model model = createModel(25);
+		byte[] document = write(model, 2, 10, true);
+
+		List<List<Statement>> blocks = readBlocks(new BinaryRDFBlockReader(new ByteArrayInputStream(document),
+				vf));
+
+		assertEquals(3, blocks.size());
+		assertTrue(Models.isomorphic(model, toModel(blocks)));
+	}
+
+	@Test
+	public void testBNodesAcrossBlocks()
+		throws Exception
+	{
+		Model model = createModel(25);
+		byte[] document = write(model, 2, 10, false);
+
+		List<List<Statement>> blocks = readBlocks(new BinaryRDFBlockReader(new ByteArrayInputStream(document),
+				vf));
+
+		Statement first = blocks.get(0).get(0);
+		Statement other = blocks.get(2).get(0);
+		assertTrue(first.getSubject() instanceof BNode);
+		assertEquals(first.getSubject(), other.getSubject());
+	}
+
+	@Test
+	public void testVersion1()
+		throws Exception
+	{
+		Model model = createModel(25);
+		byte[] document = write(model, 1, 10, false);
+
+		List<List<Statement>> blocks = readBlocks(new BinaryRDFBlockReader(new ByteArrayInputStream(document),
+				vf));
+
+		assertEquals(1, blocks.size());
+		assertTrue(Models.isomorphic(model, toModel(blocks)));
+	}
+
+	@Test
+	public void testEmptyDocument()
+		throws Exception
+	{
+		byte[] document = write(new LinkedHashModel(), 2, 10, false);
+
+		BinaryRDFBlockReader reader = new BinaryRDFBlockReader(new ByteArrayInputStream(document), vf);
+
+		assertNull(reader.readBlock());
+		assertNull(reader.readBlock());
+	}
+
+	private Model createModel(int size) {
+		Model model = new LinkedHashModel();
+		BNode bnode = vf.createBNode();
+		URI context = vf.createURI(EX, "context");
+		for (int i = 0; i < size - 1; i++) {
+			Resource subject = i % 10 == 0 ? bnode : vf.createURI(EX, "s" + (i % 4));
+			if (i % 3 == 0) {
+				model.add(subject, RDF.VALUE, vf.createLiteral(i));
+			}
+			else if (i % 3 == 1) {
+				model.add(subject, RDF.VALUE, vf.createLiteral("label " + i, i % 2 == 0 ? "en" : "de"));
+			}
+			else {
+				model.add(subject, RDF.VALUE, vf.createURI(EX, "o" + i), context);
+			}
+		}
+		model.add(vf.createURI(EX, "s0"), RDF.VALUE, vf.createLiteral("1.5", XMLSchema.DECIMAL));
+		return model;
+	}
+
+	private byte[] write(Model model, int version, int blockSize, boolean compress)
+		throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RDFWriter writer = new BinaryRDFWriter(out);
+		writer.getWriterConfig().set(BinaryRDFWriterSettings.FORMAT_VERSION, version);
+		writer.getWriterConfig().set(BinaryRDFWriterSettings.BLOCK_SIZE, blockSize);
+		writer.getWriterConfig().set(BinaryRDFWriterSettings.COMPRESS_BLOCKS, compress);
+		writer.startRDF();
+		writer.handleNamespace("ex", EX);
+		for (Statement st : model) {
+			writer.handleStatement(st);
+		}
+		writer.endRDF();
+		return out.toByteArray();
+	}
+
+	private List<List<Statement>> readBlocks(BinaryRDFBlockReader reader)
+		throws Exception
+	{
+		List<List<Statement>> blocks = new ArrayList<List<Statement>>();
+		List<Statement> block;
+		while ((block = reader.readBlock()) != null) {
+			blocks.add(block);
+		}
+		assertNull(reader.readBlock());
+		reader.close();
+		return blocks;
+	}
+
+	private Model toModel(List<List<Statement>> blocks) {
+		Model result = new LinkedHashModel();
+		for (List<Statement> block : blocks) {
+			result.addAll(block);
+		}
+		return result;
+	}
+}
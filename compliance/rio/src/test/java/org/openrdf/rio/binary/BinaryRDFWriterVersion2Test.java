@@ -0,0 +1,40 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.binary;
+
+import org.openrdf.rio.RDFWriterTest;
+import org.openrdf.rio.WriterConfig;
+import org.openrdf.rio.helpers.BinaryRDFWriterSettings;
+
+/**
+ * Runs the writer tests against version 2 of the binary RDF format, with
+ * small, compressed blocks.
+ */
+public class BinaryRDFWriterVersion2Test extends RDFWriterTest {
+
+	public BinaryRDFWriterVersion2Test() {
+		super(new BinaryRDFWriterFactory(), new BinaryRDFParserFactory());
+	}
+
+	@Override
+	protected void setupWriterConfig(WriterConfig config) {
+		super.setupWriterConfig(config);
+		config.set(BinaryRDFWriterSettings.FORMAT_VERSION, 2);
+		config.set(BinaryRDFWriterSettings.BLOCK_SIZE, 7);
+		config.set(BinaryRDFWriterSettings.COMPRESS_BLOCKS, true);
+	}
+}
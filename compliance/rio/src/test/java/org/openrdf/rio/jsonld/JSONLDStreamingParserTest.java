@@ -0,0 +1,168 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.jsonld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.util.Models;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.helpers.JSONLDSettings;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Unit tests for {@link JSONLDParser} with {@link JSONLDSettings#STREAMING}
+ * enabled.
+ */
+public class JSONLDStreamingParserTest {
+
+	private static final String EX = "http://example.org/";
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void testContextAndGraph()
+		throws Exception
+	{
+		String json = "{\n"
+				+ "  \"@context\": {\n"
+				+ "    \"ex\": \"http://example.org/\",\n"
+				+ "    \"name\": {\"@id\": \"ex:name\", \"@language\": \"en\"},\n"
+				+ "    \"knows\": {\"@id\": \"ex:knows\", \"@type\": \"@id\"},\n"
+				+ "    \"age\": {\"@id\": \"ex:age\", \"@type\": \"http://www.w3.org/2001/XMLSchema#int\"},\n"
+				+ "    \"steps\": {\"@id\": \"ex:steps\", \"@container\": \"@list\"},\n"
+				+ "    \"id\": \"@id\"\n"
+				+ "  },\n"
+				+ "  \"@graph\": [\n"
+				+ "    {\"id\": \"ex:alice\", \"@type\": \"ex:Person\", \"name\": \"Alice\", \"knows\": \"ex:bob\",\n"
+				+ "     \"age\": \"42\", \"ex:height\": 1.5, \"ex:member\": true, \"steps\": [\"a\", \"b\"]},\n"
+				+ "    {\"id\": \"ex:bob\", \"ex:label\": {\"@value\": \"Bob\", \"@language\": \"de\"},\n"
+				+ "     \"ex:count\": 7, \"ex:friend\": {\"ex:label\": \"anonymous\"}}\n"
+				+ "  ]\n"
+				+ "}";
+
+		URI alice = vf.createURI(EX, "alice");
+		URI bob = vf.createURI(EX, "bob");
+		BNode friend = vf.createBNode();
+		BNode list1 = vf.createBNode();
+		BNode list2 = vf.createBNode();
+
+		Model expected = new LinkedHashModel();
+		expected.add(alice, RDF.TYPE, vf.createURI(EX, "Person"));
+		expected.add(alice, vf.createURI(EX, "name"), vf.createLiteral("Alice", "en"));
+		expected.add(alice, vf.createURI(EX, "knows"), bob);
+		expected.add(alice, vf.createURI(EX, "age"), vf.createLiteral("42", XMLSchema.INT));
+		expected.add(alice, vf.createURI(EX, "height"), vf.createLiteral("1.5E0", XMLSchema.DOUBLE));
+		expected.add(alice, vf.createURI(EX, "member"), vf.createLiteral("true", XMLSchema.BOOLEAN));
+		expected.add(alice, vf.createURI(EX, "steps"), list1);
+		expected.add(list1, RDF.FIRST, vf.createLiteral("a", XMLSchema.STRING));
+		expected.add(list1, RDF.REST, list2);
+		expected.add(list2, RDF.FIRST, vf.createLiteral("b", XMLSchema.STRING));
+		expected.add(list2, RDF.REST, RDF.NIL);
+		expected.add(bob, vf.createURI(EX, "label"), vf.createLiteral("Bob", "de"));
+		expected.add(bob, vf.createURI(EX, "count"), vf.createLiteral("7", XMLSchema.INTEGER));
+		expected.add(bob, vf.createURI(EX, "friend"), friend);
+		expected.add(friend, vf.createURI(EX, "label"), vf.createLiteral("anonymous", XMLSchema.STRING));
+
+		Model parsed = parse(json);
+
+		assertTrue("Parsed model is not isomorphic: " + parsed, Models.isomorphic(expected, parsed));
+		assertEquals(EX, parsed.getNamespace("ex").getName());
+	}
+
+	@Test
+	public void testNamedGraph()
+		throws Exception
+	{
+		String json = "{\"@context\": {\"@vocab\": \"http://example.org/\"},\n"
+				+ " \"@id\": \"http://example.org/g\",\n"
+				+ " \"@graph\": [{\"@id\": \"http://example.org/s\", \"p\": {\"@id\": \"http://example.org/o\"}}]}";
+
+		Model parsed = parse(json);
+
+		assertEquals(1, parsed.size());
+		assertTrue(parsed.contains(vf.createURI(EX, "s"), vf.createURI(EX, "p"), vf.createURI(EX, "o"),
+				vf.createURI(EX, "g")));
+		assertEquals(EX, parsed.getNamespace("").getName());
+	}
+
+	@Test
+	public void testTopLevelArray()
+		throws Exception
+	{
+		String json = "[{\"@id\": \"s\", \"http://example.org/p\": \"o\"},"
+				+ " {\"@id\": \"_:b\", \"@type\": \"http://example.org/T\"}]";
+
+		Model parsed = parse(json);
+
+		assertEquals(2, parsed.size());
+		assertTrue(parsed.contains(vf.createURI(EX, "s"), vf.createURI(EX, "p"),
+				vf.createLiteral("o", XMLSchema.STRING)));
+		assertEquals(1, parsed.filter(null, RDF.TYPE, vf.createURI(EX, "T")).size());
+	}
+
+	@Test
+	public void testRemoteContext()
+		throws Exception
+	{
+		try {
+			parse("{\"@context\": \"http://example.org/context.jsonld\", \"@graph\": []}");
+			fail("Expected remote context to be reported");
+		}
+		catch (RDFParseException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testContextAfterGraph()
+		throws Exception
+	{
+		try {
+			parse("{\"@graph\": [], \"@context\": {\"ex\": \"http://example.org/\"}}");
+			fail("Expected context after graph to be reported");
+		}
+		catch (RDFParseException e) {
+			// expected
+		}
+	}
+
+	private Model parse(String json)
+		throws Exception
+	{
+		RDFParser parser = new JSONLDParser(vf);
+		parser.getParserConfig().set(JSONLDSettings.STREAMING, true);
+		Model model = new LinkedHashModel();
+		parser.setRDFHandler(new StatementCollector(model));
+		parser.parse(new StringReader(json), EX);
+		return model;
+	}
+}
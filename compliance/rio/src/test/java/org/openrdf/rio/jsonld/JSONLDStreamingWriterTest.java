@@ -0,0 +1,162 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.jsonld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.util.Models;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.ParserConfig;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.RDFWriterTest;
+import org.openrdf.rio.WriterConfig;
+import org.openrdf.rio.helpers.BasicParserSettings;
+import org.openrdf.rio.helpers.JSONLDMode;
+import org.openrdf.rio.helpers.JSONLDSettings;
+import org.openrdf.rio.helpers.StatementCollector;
+
+/**
+ * Runs the writer tests against the JSON-LD writer with
+ * {@link JSONLDSettings#STREAMING} enabled.
+ */
+public class JSONLDStreamingWriterTest extends RDFWriterTest {
+
+	/**
+	 * Only expanded documents are streamed, and these do not preserve
+	 * namespace prefixes.
+	 */
+	private static final RDFFormat EXPANDED_JSONLD = new RDFFormat(RDFFormat.JSONLD.getName(),
+			RDFFormat.JSONLD.getMIMETypes(), RDFFormat.JSONLD.getCharset(),
+			RDFFormat.JSONLD.getFileExtensions(), RDFFormat.NO_NAMESPACES, RDFFormat.SUPPORTS_CONTEXTS);
+
+	public JSONLDStreamingWriterTest() {
+		super(new JSONLDWriterFactory(), new JSONLDParserFactory() {
+
+			@Override
+			public RDFParser getParser() {
+				return new JSONLDParser() {
+
+					@Override
+					public RDFFormat getRDFFormat() {
+						return EXPANDED_JSONLD;
+					}
+				};
+			}
+		});
+	}
+
+	@Override
+	protected void setupWriterConfig(WriterConfig config) {
+		super.setupWriterConfig(config);
+		config.set(JSONLDSettings.JSONLD_MODE, JSONLDMode.EXPAND);
+		config.set(JSONLDSettings.STREAMING, true);
+	}
+
+	@Override
+	protected void setupParserConfig(ParserConfig config) {
+		super.setupParserConfig(config);
+		config.set(BasicParserSettings.FAIL_ON_UNKNOWN_DATATYPES, true);
+		config.set(BasicParserSettings.FAIL_ON_UNKNOWN_LANGUAGES, true);
+	}
+
+	@Test
+	public void testRoundTripUnorderedStatements()
+		throws Exception
+	{
+		String exNs = "http://example.org/";
+		URI uri1 = vf.createURI(exNs, "uri1");
+		URI uri2 = vf.createURI(exNs, "uri2");
+		URI context = vf.createURI(exNs, "context");
+		BNode bnode = vf.createBNode("b1");
+
+		Model model = new LinkedHashModel();
+		model.add(uri1, RDF.TYPE, uri2);
+		model.add(uri1, uri2, vf.createLiteral("plain"));
+		model.add(bnode, uri2, vf.createLiteral(42));
+		model.add(uri1, RDF.TYPE, RDF.PROPERTY);
+		model.add(uri1, uri2, vf.createLiteral("lang", "en"), context);
+		model.add(uri2, uri2, bnode, context);
+		model.add(uri1, uri2, vf.createLiteral("1.5", XMLSchema.DECIMAL));
+		model.add(uri1, uri2, uri1, context);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RDFWriter rdfWriter = rdfWriterFactory.getWriter(out);
+		setupWriterConfig(rdfWriter.getWriterConfig());
+		rdfWriter.startRDF();
+		for (Statement st : model) {
+			rdfWriter.handleStatement(st);
+		}
+		rdfWriter.endRDF();
+
+		RDFParser rdfParser = rdfParserFactory.getParser();
+		setupParserConfig(rdfParser.getParserConfig());
+		rdfParser.setValueFactory(vf);
+		Model parsed = new LinkedHashModel();
+		rdfParser.setRDFHandler(new StatementCollector(parsed));
+		rdfParser.parse(new ByteArrayInputStream(out.toByteArray()), "foo:bar");
+
+		assertTrue("Round-tripped model is not isomorphic: " + parsed, Models.isomorphic(model, parsed));
+	}
+
+	@Test
+	public void testFlattenIsNotStreamed()
+		throws Exception
+	{
+		String exNs = "http://example.org/";
+		URI uri1 = vf.createURI(exNs, "uri1");
+		URI uri2 = vf.createURI(exNs, "uri2");
+		URI context = vf.createURI(exNs, "context");
+
+		Model model = new LinkedHashModel();
+		model.add(uri1, uri2, vf.createLiteral("a"), context);
+		model.add(uri2, uri2, uri1);
+		model.add(uri1, uri2, vf.createLiteral("b"), context);
+		model.add(uri1, RDF.TYPE, uri2);
+
+		// flattened documents are collected first, as if streaming was disabled
+		assertEquals(write(model, JSONLDMode.FLATTEN, false), write(model, JSONLDMode.FLATTEN, true));
+	}
+
+	private String write(Model model, JSONLDMode mode, boolean streaming)
+		throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RDFWriter rdfWriter = rdfWriterFactory.getWriter(out);
+		rdfWriter.getWriterConfig().set(JSONLDSettings.JSONLD_MODE, mode);
+		rdfWriter.getWriterConfig().set(JSONLDSettings.STREAMING, streaming);
+		rdfWriter.startRDF();
+		for (Statement st : model) {
+			rdfWriter.handleStatement(st);
+		}
+		rdfWriter.endRDF();
+		return out.toString("UTF-8");
+	}
+}
@@ -218,10 +218,69 @@ public class RDFXMLParserCustomTest {
 		assertEquals(1, parse.size());
 	}
 
+	/**
+	 * Test with the XML stream reader and Secure processing setting on.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testEntityExpansionStreamReader()
+		throws Exception
+	{
+		final Model aGraph = new LinkedHashModel();
+		RDFParser aParser = Rio.createParser(RDFFormat.RDFXML);
+		aParser.setRDFHandler(new StatementCollector(aGraph));
+
+		ParserConfig config = new ParserConfig();
+		config.set(XMLParserSettings.SECURE_PROCESSING, true);
+		config.set(XMLParserSettings.USE_XML_STREAM_READER, true);
+		aParser.setParserConfig(config);
+
+		try {
+			// this should trigger an XMLStreamException that will blow up at the
+			// 64k entity limit rather than OOMing
+			aParser.parse(
+					this.getClass().getResourceAsStream("/testcases/rdfxml/openrdf/bad-entity-expansion-limit.rdf"),
+					"http://example.org");
+			fail("Parser did not throw an exception");
+		}
+		catch (RDFParseException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParseXMLLiteralStreamReader()
+		throws Exception
+	{
+		StringBuilder string = new StringBuilder();
+		string.append("<?xml version=\"1.0\"?>\n");
+		string.append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" ");
+		string.append(" xmlns:ex=\"http://example.org/stuff/1.0/\"> \n");
+		string.append("  <rdf:Description rdf:about=\"http://example.org/item\" xml:lang=\"en\"> \n");
+		string.append("    <ex:title>  Title  </ex:title>\n");
+		string.append("    <ex:body rdf:parseType=\"Literal\"><ex:b a=\"1\">bold &amp; <i xmlns=\"http://example.org/i\">it</i></ex:b></ex:body>\n");
+		string.append("    <ex:empty/>\n");
+		string.append("  </rdf:Description>\n");
+		string.append("</rdf:RDF>");
+
+		Model expected = Rio.parse(new StringReader(string.toString()), "", RDFFormat.RDFXML);
+
+		RDFParser aParser = Rio.createParser(RDFFormat.RDFXML);
+		aParser.getParserConfig().set(XMLParserSettings.USE_XML_STREAM_READER, true);
+		Model parse = new LinkedHashModel();
+		aParser.setRDFHandler(new StatementCollector(parse));
+		aParser.parse(new StringReader(string.toString()), "");
+
+		assertEquals(3, parse.size());
+		assertEquals(expected, parse);
+		assertEquals("http://example.org/stuff/1.0/", parse.getNamespace("ex").getName());
+	}
+
 	@Test
 	public void testSupportedSettings()
 		throws Exception
 	{
-		assertEquals(21, Rio.createParser(RDFFormat.RDFXML).getSupportedSettings().size());
+		assertEquals(22, Rio.createParser(RDFFormat.RDFXML).getSupportedSettings().size());
 	}
 }
@@ -144,7 +144,7 @@ public class TriGParserCustomTest {
 	public void testSupportedSettings()
 		throws Exception
 	{
-		assertEquals(12, Rio.createParser(RDFFormat.TRIG).getSupportedSettings().size());
+		assertEquals(13, Rio.createParser(RDFFormat.TRIG).getSupportedSettings().size());
 	}
 
 }
@@ -0,0 +1,102 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.trig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.util.Models;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.RDFWriterTest;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.WriterConfig;
+import org.openrdf.rio.helpers.TurtleWriterSettings;
+
+/**
+ * Runs the writer tests against the TriG writer with
+ * {@link TurtleWriterSettings#GROUP_STATEMENTS} enabled.
+ */
+public class TriGWriterGroupingTest extends RDFWriterTest {
+
+	public TriGWriterGroupingTest() {
+		super(new TriGWriterFactory(), new TriGParserFactory());
+	}
+
+	@Override
+	protected void setupWriterConfig(WriterConfig config) {
+		super.setupWriterConfig(config);
+		config.set(TurtleWriterSettings.GROUP_STATEMENTS, true);
+		// forces the use of temporary files
+		config.set(TurtleWriterSettings.GROUPING_BUFFER_SIZE, 3);
+	}
+
+	@Test
+	public void testInterleavedContextsWrittenOnce()
+		throws Exception
+	{
+		String exNs = "http://example.org/";
+		URI uri1 = vf.createURI(exNs, "uri1");
+		URI uri2 = vf.createURI(exNs, "uri2");
+		URI graph1 = vf.createURI(exNs, "graph1");
+		URI graph2 = vf.createURI(exNs, "graph2");
+
+		Model model = new LinkedHashModel();
+		model.add(uri1, uri2, vf.createLiteral("a"), graph1);
+		model.add(uri1, uri2, vf.createLiteral("b"), graph2);
+		model.add(uri2, uri2, uri1);
+		model.add(uri2, uri1, vf.createLiteral("c"), graph1);
+		model.add(uri1, uri1, uri2, graph2);
+		model.add(uri1, uri2, vf.createLiteral("d"));
+
+		StringWriter out = new StringWriter();
+		RDFWriter rdfWriter = rdfWriterFactory.getWriter(out);
+		setupWriterConfig(rdfWriter.getWriterConfig());
+		rdfWriter.startRDF();
+		rdfWriter.handleNamespace("ex", exNs);
+		for (Statement st : model) {
+			rdfWriter.handleStatement(st);
+		}
+		rdfWriter.endRDF();
+
+		String trig = out.toString();
+		assertEquals(trig, 1, countGraphs(trig, "ex:graph1"));
+		assertEquals(trig, 1, countGraphs(trig, "ex:graph2"));
+
+		Model parsed = Rio.parse(new StringReader(trig), exNs, RDFFormat.TRIG);
+		assertTrue("Round-tripped model is not isomorphic: " + parsed, Models.isomorphic(model, parsed));
+	}
+
+	private int countGraphs(String trig, String graph) {
+		int count = 0;
+		for (String line : trig.split("\n")) {
+			if (line.startsWith(graph + " {")) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,189 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.repository.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Unit tests for {@link PipelinedRDFLoader}.
+ */
+public class PipelinedRDFLoaderTest {
+
+	@Rule
+	public TemporaryFolder tempDir = new TemporaryFolder();
+
+	private Repository repository;
+
+	private RepositoryConnection con;
+
+	private ValueFactory vf;
+
+	private PipelinedRDFLoader loader;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+		vf = con.getValueFactory();
+		loader = new PipelinedRDFLoader(con.getParserConfig(), vf);
+		loader.setBatchSize(10);
+		loader.setQueueCapacity(2);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		con.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testLoadInputStream()
+		throws Exception
+	{
+		RDFLoaderStatistics statistics = loader.load(con,
+				new ByteArrayInputStream(createDocument("a", 95).getBytes("UTF-8")), "http://example.org/",
+				RDFFormat.TURTLE);
+
+		assertEquals(95, con.size());
+		assertEquals(95, statistics.getStatementCount());
+		assertEquals(95, statistics.getParsedStatementCount());
+		assertEquals(10, statistics.getBatchCount());
+		assertEquals(1, statistics.getCommitCount());
+		assertEquals("http://example.org/a/", con.getNamespace("ex"));
+		assertFalse(con.isActive());
+	}
+
+	@Test
+	public void testCommitSize()
+		throws Exception
+	{
+		loader.setCommitSize(25);
+
+		RDFLoaderStatistics statistics = loader.load(con, new StringReader(createDocument("a", 100)),
+				"http://example.org/", RDFFormat.TURTLE);
+
+		assertEquals(100, con.size());
+		// commits after 30, 60 and 90 statements, and at the end
+		assertEquals(4, statistics.getCommitCount());
+		assertFalse(con.isActive());
+	}
+
+	@Test
+	public void testLoadFilesIntoContext()
+		throws Exception
+	{
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 5; i++) {
+			File file = tempDir.newFile("data" + i + ".ttl");
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try {
+				writer.write(createDocument("file" + i, 50 + i));
+			}
+			finally {
+				writer.close();
+			}
+			files.add(file);
+		}
+		URI context = vf.createURI("http://example.org/context");
+
+		loader.setParserThreads(3);
+		RDFLoaderStatistics statistics = loader.load(con, files, null, null, context);
+
+		assertEquals(260, statistics.getStatementCount());
+		assertEquals(260, con.size(context));
+		assertEquals(260, con.size());
+		for (int i = 0; i < 5; i++) {
+			URI subject = vf.createURI("http://example.org/file" + i + "/s0");
+			assertTrue(con.hasStatement(subject, null, null, false, context));
+		}
+	}
+
+	@Test
+	public void testParseErrorRollsBack()
+		throws Exception
+	{
+		String document = createDocument("a", 50) + "ex:s ex:p <http://example.org/unterminated\n";
+		try {
+			loader.load(con, new StringReader(document), "http://example.org/", RDFFormat.TURTLE);
+			fail("Expected a parse error");
+		}
+		catch (RDFParseException e) {
+			// expected
+		}
+
+		assertEquals(0, con.size());
+		assertFalse(con.isActive());
+	}
+
+	@Test
+	public void testActiveTransaction()
+		throws Exception
+	{
+		loader.setCommitSize(10);
+
+		con.begin();
+		RDFLoaderStatistics statistics = loader.load(con, new StringReader(createDocument("a", 30)),
+				"http://example.org/", RDFFormat.TURTLE);
+
+		assertEquals(0, statistics.getCommitCount());
+		assertTrue(con.isActive());
+		con.rollback();
+
+		assertEquals(0, con.size());
+	}
+
+	private String createDocument(String name, int statements) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("@prefix ex: <http://example.org/").append(name).append("/> .\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append("ex:s").append(i).append(" ex:p \"value ").append(i).append("\" .\n");
+		}
+		return sb.toString();
+	}
+}
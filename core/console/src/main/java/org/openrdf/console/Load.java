@@ -20,6 +20,9 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +32,10 @@ import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryReadOnlyException;
+import org.openrdf.repository.util.PipelinedRDFLoader;
+import org.openrdf.repository.util.RDFLoaderStatistics;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.Rio;
 import org.openrdf.rio.UnsupportedRDFormatException;
 
 /**
@@ -148,22 +154,50 @@ class Load implements Command {
 	{
 		Resource[] contexts = getContexts(repository, context);
 		consoleIO.writeln("Loading data...");
-		final long startTime = System.nanoTime();
+		final RDFLoaderStatistics statistics;
 		final RepositoryConnection con = repository.getConnection();
 		try {
-			if (dataURL == null) {
-				con.add(dataFile, baseURI, null, contexts);
+			PipelinedRDFLoader loader = new PipelinedRDFLoader(con.getParserConfig(), con.getValueFactory());
+			if (dataURL != null) {
+				statistics = loader.load(con, dataURL, baseURI, null, contexts);
+			}
+			else if (dataFile.isDirectory()) {
+				// parse the files of the directory in parallel
+				loader.setParserThreads(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+				statistics = loader.load(con, getDataFiles(dataFile), baseURI, null, contexts);
 			}
 			else {
-				con.add(dataURL, baseURI, null, contexts);
+				statistics = loader.load(con, dataFile, baseURI, null, contexts);
 			}
 		}
 		finally {
 			con.close();
 		}
-		final long endTime = System.nanoTime();
-		consoleIO.writeln("Data has been added to the repository (" + (endTime - startTime)
-				/ 1000000 + " ms)");
+		consoleIO.writeln("Data has been added to the repository (" + statistics.getElapsedTime() + " ms, "
+				+ statistics.getStatementCount() + " statements)");
+		LOGGER.debug("Loaded {}", statistics);
+	}
+
+	/**
+	 * Gets the files in the directory for which the RDF format can be
+	 * determined from the file name.
+	 */
+	private List<File> getDataFiles(File directory)
+		throws IOException
+	{
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to list files in " + directory);
+		}
+		Arrays.sort(files);
+
+		List<File> dataFiles = new ArrayList<File>(files.length);
+		for (File file : files) {
+			if (file.isFile() && Rio.getParserFormatForFileName(file.getName()) != null) {
+				dataFiles.add(file);
+			}
+		}
+		return dataFiles;
 	}
 
 	private Resource[] getContexts(Repository repository, String context) {
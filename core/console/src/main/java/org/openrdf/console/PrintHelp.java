@@ -57,10 +57,10 @@ public class PrintHelp implements Command {
 
 	protected static final String LOAD = USAGE
 			+ "load <file-or-url> [from <base-uri>] [into <context-id>]\n"
-			+ "  <file-or-url>   The path or URL identifying the data file\n"
+			+ "  <file-or-url>   The path or URL identifying the data file, or a directory of data files\n"
 			+ "  <base-uri>      The base URI to use for resolving relative references, defaults to <file-or-url>\n"
 			+ "  <context-id>    The ID of the context to add the data to, e.g. foo:bar or _:n123\n"
-			+ "Loads the specified data file into the current repository\n";
+			+ "Loads the specified data file(s) into the current repository\n";
 
 	protected static final String VERIFY = USAGE + "verify <file-or-url>\n"
 			+ "  <file-or-url>   The path or URL identifying the data file\n"
@@ -214,6 +214,47 @@ public class SesameSession extends SparqlSession {
 		}
 	}
 
+	/*-------------------*
+	 * Query explanation *
+	 *-------------------*/
+
+	/**
+	 * Evaluates a query on the server and returns a description of how it was
+	 * evaluated, rather than its result.
+	 *
+	 * @see org.openrdf.query.Query#explain()
+	 */
+	public String explainQuery(QueryLanguage ql, String query, String baseURI, Dataset dataset,
+			boolean includeInferred, int maxQueryTime, Binding... bindings)
+		throws IOException, RepositoryException, MalformedQueryException, UnauthorizedException,
+		QueryInterruptedException
+	{
+		checkRepositoryURL();
+
+		HttpUriRequest method = getQueryMethod(ql, query, baseURI, dataset, includeInferred, maxQueryTime,
+				bindings);
+		// the request body is either a form or the query itself, so the flag is
+		// added to the request URL
+		method = RequestBuilder.copy(method).addParameter(Protocol.EXPLAIN_PARAM_NAME,
+				Boolean.TRUE.toString()).build();
+
+		try {
+			return EntityUtils.toString(executeOK(method).getEntity());
+		}
+		catch (RepositoryException e) {
+			throw e;
+		}
+		catch (MalformedQueryException e) {
+			throw e;
+		}
+		catch (QueryInterruptedException e) {
+			throw e;
+		}
+		catch (OpenRDFException e) {
+			throw new RepositoryException(e);
+		}
+	}
+
 	/*-------------------------*
 	 * Repository/context size *
 	 *-------------------------*/
@@ -112,6 +112,13 @@ public abstract class Protocol {
 
 	public static final String TIMEOUT_PARAM_NAME = "timeout";
 
+	/**
+	 * Parameter name for the explain parameter. If set to <tt>true</tt>, a
+	 * query is evaluated and a plain text description of how it was evaluated
+	 * is returned instead of the query result.
+	 */
+	public static final String EXPLAIN_PARAM_NAME = "explain";
+
 	/**
 	 * Parameter name for the default remove graph URI parameter.
 	 */
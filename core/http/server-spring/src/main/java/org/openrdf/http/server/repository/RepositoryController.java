@@ -22,6 +22,7 @@ import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 import static javax.servlet.http.HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE;
 import static org.openrdf.http.protocol.Protocol.BINDING_PREFIX;
 import static org.openrdf.http.protocol.Protocol.DEFAULT_GRAPH_PARAM_NAME;
+import static org.openrdf.http.protocol.Protocol.EXPLAIN_PARAM_NAME;
 import static org.openrdf.http.protocol.Protocol.INCLUDE_INFERRED_PARAM_NAME;
 import static org.openrdf.http.protocol.Protocol.NAMED_GRAPH_PARAM_NAME;
 import static org.openrdf.http.protocol.Protocol.QUERY_LANGUAGE_PARAM_NAME;
@@ -48,6 +49,7 @@ import info.aduna.lang.FileFormat;
 import info.aduna.lang.service.FileFormatServiceRegistry;
 import info.aduna.webapp.util.HttpServerUtil;
 import info.aduna.webapp.views.EmptySuccessView;
+import info.aduna.webapp.views.SimpleResponseView;
 
 import org.openrdf.OpenRDFException;
 import org.openrdf.http.protocol.Protocol;
@@ -194,6 +196,10 @@ public class RepositoryController extends AbstractController {
 			synchronized (repositoryCon) {
 				Query query = getQuery(repository, repositoryCon, queryStr, request, response);
 
+				if (ProtocolUtil.parseBooleanParam(request, EXPLAIN_PARAM_NAME, false)) {
+					return getExplanation(query, headersOnly);
+				}
+
 				View view;
 				Object queryResult;
 				FileFormatServiceRegistry<? extends FileFormat, ?> registry;
@@ -256,6 +262,34 @@ public class RepositoryController extends AbstractController {
 		}
 	}
 
+	private ModelAndView getExplanation(Query query, boolean headersOnly)
+		throws HTTPException
+	{
+		Map<String, Object> model = new HashMap<String, Object>();
+		if (!headersOnly) {
+			try {
+				model.put(SimpleResponseView.CONTENT_KEY, query.explain());
+			}
+			catch (UnsupportedOperationException e) {
+				throw new ClientHTTPException(SC_BAD_REQUEST, "Query explanation is not supported by this repository");
+			}
+			catch (QueryInterruptedException e) {
+				logger.info("Query interrupted", e);
+				throw new ServerHTTPException(SC_SERVICE_UNAVAILABLE, "Query evaluation took too long");
+			}
+			catch (QueryEvaluationException e) {
+				logger.info("Query evaluation error", e);
+				if (e.getCause() != null && e.getCause() instanceof HTTPException) {
+					throw (HTTPException)e.getCause();
+				}
+				else {
+					throw new ServerHTTPException("Query evaluation error: " + e.getMessage());
+				}
+			}
+		}
+		return new ModelAndView(SimpleResponseView.getInstance(), model);
+	}
+
 	private Query getQuery(Repository repository, RepositoryConnection repositoryCon, String queryStr,
 			HttpServletRequest request, HttpServletResponse response)
 		throws IOException, ClientHTTPException
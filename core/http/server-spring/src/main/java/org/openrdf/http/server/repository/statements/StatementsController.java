@@ -74,6 +74,8 @@ import org.openrdf.query.impl.DatasetImpl;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.util.PipelinedRDFLoader;
+import org.openrdf.repository.util.RDFLoaderStatistics;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RDFWriterFactory;
@@ -438,7 +440,11 @@ public class StatementsController extends AbstractController {
 				if (replaceCurrent) {
 					repositoryCon.clear(contexts);
 				}
-				repositoryCon.add(in, baseURI.toString(), rdfFormat, contexts);
+				// parse the request body while the statements are being added
+				PipelinedRDFLoader loader = new PipelinedRDFLoader(repositoryCon.getParserConfig(), vf);
+				RDFLoaderStatistics statistics = loader.load(repositoryCon, in, baseURI.toString(), rdfFormat,
+						contexts);
+				logger.debug("Added data: {}", statistics);
 
 				repositoryCon.commit();
 			}
@@ -388,6 +388,10 @@ public class TransactionController extends AbstractController {
 
 		Query query = getQuery(conn, queryStr, request, response);
 
+		if (ProtocolUtil.parseBooleanParam(request, Protocol.EXPLAIN_PARAM_NAME, false)) {
+			return getExplanation(query, txnId);
+		}
+
 		View view;
 		Object queryResult;
 		FileFormatServiceRegistry<? extends FileFormat, ?> registry;
@@ -448,6 +452,35 @@ public class TransactionController extends AbstractController {
 		return new ModelAndView(view, model);
 	}
 
+	private ModelAndView getExplanation(Query query, UUID txnId)
+		throws HTTPException
+	{
+		try {
+			Map<String, Object> model = new HashMap<String, Object>();
+			model.put(SimpleResponseView.CONTENT_KEY, query.explain());
+			return new ModelAndView(SimpleResponseView.getInstance(), model);
+		}
+		catch (UnsupportedOperationException e) {
+			throw new ClientHTTPException(SC_BAD_REQUEST, "Query explanation is not supported by this repository");
+		}
+		catch (QueryInterruptedException e) {
+			logger.info("Query interrupted", e);
+			throw new ServerHTTPException(SC_SERVICE_UNAVAILABLE, "Query evaluation took too long");
+		}
+		catch (QueryEvaluationException e) {
+			logger.info("Query evaluation error", e);
+			if (e.getCause() != null && e.getCause() instanceof HTTPException) {
+				throw (HTTPException)e.getCause();
+			}
+			else {
+				throw new ServerHTTPException("Query evaluation error: " + e.getMessage());
+			}
+		}
+		finally {
+			ActiveTransactionRegistry.INSTANCE.returnTransactionConnection(txnId);
+		}
+	}
+
 	private Query getQuery(RepositoryConnection repositoryCon, String queryStr, HttpServletRequest request,
 			HttpServletResponse response)
 				throws IOException, ClientHTTPException
@@ -50,4 +50,26 @@ public interface Query extends Operation {
 	 */
 	@Deprecated
 	public int getMaxQueryTime();
+
+	/**
+	 * Evaluates this query and describes how it was evaluated. The description
+	 * is the optimized query model, in which each operator is annotated with
+	 * its estimated and actual result counts, the number of times it was
+	 * evaluated, the time spent evaluating it and the algorithm that was used
+	 * to evaluate it. The query is evaluated completely, its results are
+	 * discarded.
+	 * 
+	 * @return A textual description of the evaluated query plan.
+	 * @throws QueryEvaluationException
+	 *         If the query could not be evaluated.
+	 * @throws UnsupportedOperationException
+	 *         If the repository does not support explaining queries, which is
+	 *         the default.
+	 * @since 2.8.7
+	 */
+	public default String explain()
+		throws QueryEvaluationException
+	{
+		throw new UnsupportedOperationException("Explaining queries is not supported");
+	}
 }
@@ -17,6 +17,7 @@
 package org.openrdf.query.impl;
 
 import org.openrdf.query.Query;
+import org.openrdf.query.QueryEvaluationException;
 
 /**
  * Abstract super class of all query types.
@@ -48,4 +49,14 @@ public abstract class AbstractQuery extends AbstractOperation implements Query {
 	public int getMaxQueryTime() {
 		return getMaxExecutionTime();
 	}
+
+	/**
+	 * Throws an {@link UnsupportedOperationException}. Subclasses that can
+	 * describe how a query is evaluated override this method.
+	 */
+	public String explain()
+		throws QueryEvaluationException
+	{
+		throw new UnsupportedOperationException("Query explanation is not supported by " + getClass().getName());
+	}
 }
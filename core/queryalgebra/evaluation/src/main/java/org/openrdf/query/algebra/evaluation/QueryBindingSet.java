@@ -16,49 +16,107 @@
  */
 package org.openrdf.query.algebra.evaluation;
 
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openrdf.model.Value;
 import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.impl.BindingImpl;
 import org.openrdf.query.impl.MapBindingSet;
-import org.openrdf.util.iterators.ConvertingIterator;
 
 /**
  * An implementation of the {@link BindingSet} interface that is used to evalate
  * query object models. This implementations differs from {@link MapBindingSet}
  * in that it maps variable names to Value objects and that the Binding objects
  * are created lazily.
+ * <p>
+ * Bindings are stored in two parallel arrays: one holding the variable names
+ * and one holding the values, each binding occupying one slot. A binding set
+ * that is copied from another QueryBindingSet shares the name array of its
+ * source and only copies the values. Slots in a name array are assigned once
+ * and never reassigned, so all solutions that are derived from the same source
+ * and that add their bindings in the same order (which is what the evaluation
+ * iterators do for every solution of a query) end up sharing a single name
+ * array in which every variable has a fixed slot index. Copying a binding set
+ * then amounts to copying one value array.
+ * <p>
+ * Name arrays with more than a few slots get an index from variable name to
+ * slot, which is shared along with the array. The variables of a query are
+ * thus resolved to their slot indexes once per query rather than by a linear
+ * search on every access.
  */
 public class QueryBindingSet implements BindingSet {
 
-	private static final long serialVersionUID = -2010715346095527301L;
+	private static final long serialVersionUID = 6281413298461437513L;
 
-	private final Map<String, Value> bindings;
+	/**
+	 * The number of bound slots up to which a binding is searched linearly
+	 * rather than looked up in the {@link SlotIndex}.
+	 */
+	private static final int LINEAR_SEARCH_LIMIT = 8;
+
+	/**
+	 * The variable names of the slots. This array may be shared with other
+	 * binding sets; slots below {@link #size} are never modified and slots above
+	 * it are only assigned (from <tt>null</tt>) while holding the array's lock.
+	 */
+	private String[] names;
+
+	/**
+	 * The index of {@link #names}, shared along with it.
+	 */
+	private SlotIndex slotIndex;
+
+	/**
+	 * The values of the slots, never shared.
+	 */
+	private Value[] values;
+
+	private int size;
 
 	public QueryBindingSet() {
 		this(8);
 	}
 
 	public QueryBindingSet(int capacity) {
-		// Create bindings map with some extra space for new bindings and
-		// compensating for HashMap's load factor
-		bindings = new HashMap<String, Value>(capacity * 2);
+		// Create bindings arrays with some extra space for new bindings
+		int length = capacity + 4;
+		names = new String[length];
+		slotIndex = new SlotIndex();
+		values = new Value[length];
 	}
 
 	public QueryBindingSet(BindingSet bindingSet) {
-		this(bindingSet.size());
-		addAll(bindingSet);
+		if (bindingSet instanceof QueryBindingSet) {
+			QueryBindingSet other = (QueryBindingSet)bindingSet;
+			names = other.names;
+			slotIndex = other.slotIndex;
+			values = Arrays.copyOf(other.values, names.length);
+			size = other.size;
+		}
+		else {
+			int length = bindingSet.size() + 4;
+			names = new String[length];
+			slotIndex = new SlotIndex();
+			values = new Value[length];
+			addAll(bindingSet);
+		}
 	}
 
 	public void addAll(BindingSet bindingSet) {
 		if (bindingSet instanceof QueryBindingSet) {
-			bindings.putAll(((QueryBindingSet)bindingSet).bindings);
+			QueryBindingSet other = (QueryBindingSet)bindingSet;
+			for (int i = 0; i < other.size; i++) {
+				setBinding(other.names[i], other.values[i]);
+			}
 		}
 		else {
 			for (Binding binding : bindingSet) {
@@ -88,8 +146,9 @@ public class QueryBindingSet implements BindingSet {
 	 *        The binding's value.
 	 */
 	public void addBinding(String name, Value value) {
-		assert !bindings.containsKey(name) : "variable already bound: " + name;
-		setBinding(name, value);
+		assert indexOf(name) < 0 : "variable already bound: " + name;
+		assert value != null : "null value for variable " + name;
+		appendBinding(name, value);
 	}
 
 	public void setBinding(Binding binding) {
@@ -98,27 +157,152 @@ public class QueryBindingSet implements BindingSet {
 
 	public void setBinding(String name, Value value) {
 		assert value != null : "null value for variable " + name;
-		bindings.put(name, value);
+
+		int index = indexOf(name);
+		if (index >= 0) {
+			values[index] = value;
+		}
+		else {
+			appendBinding(name, value);
+		}
+	}
+
+	/**
+	 * Stores a binding for a name that is not yet bound in the next free slot,
+	 * reusing the slot's name when it has already been assigned the same name
+	 * by a binding set that shares the name array.
+	 */
+	private void appendBinding(String name, Value value) {
+		if (size == names.length) {
+			// No free slots left, continue with a private, larger name array
+			copyNames(size * 2 + 4);
+		}
+
+		String slotName = names[size];
+		if (slotName == null) {
+			synchronized (names) {
+				slotName = names[size];
+				if (slotName == null) {
+					names[size] = slotName = name;
+					slotIndex.add(name, size);
+				}
+			}
+		}
+
+		if (!slotName.equals(name)) {
+			// The slot has been assigned to another variable, continue with a
+			// private name array
+			copyNames(names.length);
+			names[size] = name;
+		}
+
+		values[size++] = value;
+	}
+
+	/**
+	 * Replaces the name array with a private copy of the occupied slots.
+	 */
+	private void copyNames(int length) {
+		String[] newNames = new String[length];
+		System.arraycopy(names, 0, newNames, 0, size);
+		names = newNames;
+		slotIndex = new SlotIndex();
+
+		if (values.length != length) {
+			values = Arrays.copyOf(values, length);
+		}
 	}
 
 	public void removeBinding(String name) {
-		bindings.remove(name);
+		int index = indexOf(name);
+
+		if (index >= 0) {
+			removeSlot(index);
+		}
 	}
 
 	public void removeAll(Collection<String> bindingNames) {
-		bindings.keySet().removeAll(bindingNames);
+		for (int i = size - 1; i >= 0; i--) {
+			if (bindingNames.contains(names[i])) {
+				removeSlot(i);
+			}
+		}
 	}
 
 	public void retainAll(Collection<String> bindingNames) {
-		bindings.keySet().retainAll(bindingNames);
+		for (int i = size - 1; i >= 0; i--) {
+			if (!bindingNames.contains(names[i])) {
+				removeSlot(i);
+			}
+		}
+	}
+
+	private void removeSlot(int index) {
+		// Slots of a (possibly) shared name array must not be modified
+		copyNames(names.length);
+
+		int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(names, index + 1, names, index, moved);
+			System.arraycopy(values, index + 1, values, index, moved);
+		}
+
+		size--;
+		names[size] = null;
+		values[size] = null;
+	}
+
+	private int indexOf(String bindingName) {
+		if (size > LINEAR_SEARCH_LIMIT) {
+			// Slots below size hold the same names in all binding sets that
+			// share the name array
+			int index = slotIndex.get(names, bindingName);
+			return index < size ? index : -1;
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (bindingName.equals(names[i])) {
+				return i;
+			}
+		}
+
+		return -1;
 	}
 
 	public Set<String> getBindingNames() {
-		return bindings.keySet();
+		return new AbstractSet<String>() {
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof String && indexOf((String)o) >= 0;
+			}
+
+			@Override
+			public Iterator<String> iterator() {
+				return new SlotIterator<String>() {
+
+					@Override
+					protected String get(int index) {
+						return names[index];
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
 	}
 
 	public Value getValue(String bindingName) {
-		return bindings.get(bindingName);
+		int index = indexOf(bindingName);
+
+		if (index >= 0) {
+			return values[index];
+		}
+
+		return null;
 	}
 
 	public Binding getBinding(String bindingName) {
@@ -132,23 +316,21 @@ public class QueryBindingSet implements BindingSet {
 	}
 
 	public boolean hasBinding(String bindingName) {
-		return bindings.containsKey(bindingName);
+		return indexOf(bindingName) >= 0;
 	}
 
 	public Iterator<Binding> iterator() {
-		Iterator<Map.Entry<String, Value>> entries = bindings.entrySet().iterator();
-
-		return new ConvertingIterator<Map.Entry<String, Value>, Binding>(entries) {
+		return new SlotIterator<Binding>() {
 
 			@Override
-			protected Binding convert(Map.Entry<String, Value> entry) {
-				return new BindingImpl(entry.getKey(), entry.getValue());
+			protected Binding get(int index) {
+				return new BindingImpl(names[index], values[index]);
 			}
 		};
 	}
 
 	public int size() {
-		return bindings.size();
+		return size;
 	}
 
 	@Override
@@ -157,7 +339,28 @@ public class QueryBindingSet implements BindingSet {
 			return true;
 		}
 		else if (other instanceof QueryBindingSet) {
-			return bindings.equals(((QueryBindingSet)other).bindings);
+			QueryBindingSet otherSet = (QueryBindingSet)other;
+
+			if (size != otherSet.size) {
+				return false;
+			}
+
+			for (int i = 0; i < size; i++) {
+				Value otherValue;
+				if (names == otherSet.names) {
+					// Shared name array, compare slot by slot
+					otherValue = otherSet.values[i];
+				}
+				else {
+					otherValue = otherSet.getValue(names[i]);
+				}
+
+				if (!values[i].equals(otherValue)) {
+					return false;
+				}
+			}
+
+			return true;
 		}
 		else if (other instanceof BindingSet) {
 			int otherSize = 0;
@@ -176,7 +379,7 @@ public class QueryBindingSet implements BindingSet {
 
 			// All bindings have been matched, sets are equal if this binding set
 			// doesn't have any additional bindings.
-			return otherSize == bindings.size();
+			return otherSize == size;
 		}
 
 		return false;
@@ -184,10 +387,12 @@ public class QueryBindingSet implements BindingSet {
 
 	@Override
 	public int hashCode() {
-		int hashCode = 5;
+		// Independent of the slot order, and consistent with the other binding
+		// set implementations
+		int hashCode = 0;
 
-		for (Map.Entry<String, Value> entry : bindings.entrySet()) {
-			hashCode = 37 * hashCode + entry.hashCode();
+		for (int i = 0; i < size; i++) {
+			hashCode ^= names[i].hashCode() ^ values[i].hashCode();
 		}
 
 		return hashCode;
@@ -211,4 +416,84 @@ public class QueryBindingSet implements BindingSet {
 
 		return sb.toString();
 	}
+
+	/*--------------------------*
+	 * Inner class SlotIterator *
+	 *--------------------------*/
+
+	private abstract class SlotIterator<E> implements Iterator<E> {
+
+		private int index;
+
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		public E next() {
+			if (index >= size) {
+				throw new NoSuchElementException();
+			}
+
+			return get(index++);
+		}
+
+		public void remove() {
+			if (index == 0) {
+				throw new IllegalStateException();
+			}
+
+			removeSlot(--index);
+		}
+
+		protected abstract E get(int index);
+	}
+
+	/*-----------------------*
+	 * Inner class SlotIndex *
+	 *-----------------------*/
+
+	/**
+	 * Maps the assigned slots of a name array to their indexes. The map is
+	 * built on first use and updated while holding the name array's lock.
+	 */
+	private static final class SlotIndex implements Serializable {
+
+		private static final long serialVersionUID = -3419170405424213562L;
+
+		private transient volatile Map<String, Integer> slots;
+
+		/**
+		 * Returns the slot of the supplied name, or <tt>-1</tt> if no slot has
+		 * been assigned to it.
+		 */
+		int get(String[] names, String name) {
+			Map<String, Integer> map = slots;
+			if (map == null) {
+				synchronized (names) {
+					map = slots;
+					if (map == null) {
+						map = new ConcurrentHashMap<String, Integer>();
+						for (int i = 0; i < names.length && names[i] != null; i++) {
+							map.put(names[i], i);
+						}
+						slots = map;
+					}
+				}
+			}
+
+			Integer index = map.get(name);
+			return index != null ? index : -1;
+		}
+
+		/**
+		 * Records the assignment of a slot, must be called while holding the
+		 * name array's lock.
+		 */
+		void add(String name, int index) {
+			Map<String, Integer> map = slots;
+			if (map != null) {
+				map.put(name, index);
+			}
+		}
+	}
 }
@@ -0,0 +1,83 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+
+/**
+ * A value expression that has been prepared for repeated evaluation, for
+ * example the condition of a filter that is evaluated for every solution.
+ * Compiled expressions are immutable and can be evaluated concurrently.
+ * 
+ * @see EvaluationStrategyImpl#compile(ValueExpr)
+ */
+public abstract class CompiledValueExpr {
+
+	/**
+	 * Compiles the supplied expression for evaluation by the supplied strategy.
+	 * Expressions are only compiled by an {@link EvaluationStrategyImpl}; for
+	 * other strategies the returned expression delegates to
+	 * {@link EvaluationStrategy#evaluate(ValueExpr, BindingSet)}.
+	 */
+	public static CompiledValueExpr compile(ValueExpr expr, EvaluationStrategy strategy)
+		throws QueryEvaluationException
+	{
+		if (strategy instanceof EvaluationStrategyImpl) {
+			return ((EvaluationStrategyImpl)strategy).compile(expr);
+		}
+		return new ValueExprCompiler.Delegate(expr, strategy);
+	}
+
+	/**
+	 * Evaluates the expression against the supplied bindings.
+	 * 
+	 * @return The value of the expression, may be <tt>null</tt> for
+	 *         expressions that produce no value.
+	 * @throws ValueExprEvaluationException
+	 *         If the expression produces a type error.
+	 */
+	public abstract Value evaluate(BindingSet bindings)
+		throws ValueExprEvaluationException, QueryEvaluationException;
+
+	/**
+	 * Determines the effective boolean value of the expression for the
+	 * supplied bindings, a type error counting as <tt>false</tt>.
+	 */
+	public boolean isTrue(BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		try {
+			return QueryEvaluationUtil.getEffectiveBooleanValue(evaluate(bindings));
+		}
+		catch (ValueExprEvaluationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks whether the expression has the same value for all bindings.
+	 */
+	public boolean isConstant() {
+		return false;
+	}
+}
@@ -0,0 +1,425 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+
+/**
+ * A query optimizer that re-orders nested Joins based on estimated evaluation
+ * costs. Join groups of up to {@link #getMaxEnumerationSize()} arguments are
+ * enumerated exhaustively, using dynamic programming over connected subsets of
+ * the join arguments. Larger join groups fall back to the greedy ordering of
+ * the {@link QueryJoinOptimizer}.
+ * <p>
+ * For every join in an enumerated plan, the cheaper of the
+ * {@link JoinAlgorithm#NESTED_LOOP nested loop} and {@link JoinAlgorithm#HASH
+ * hash} join algorithms is selected and passed on to the evaluation strategy
+ * as a hint. SERVICE arguments are always joined in blocks of left bindings
+ * by the evaluation strategy, and are costed as such. Consecutive nested loop
+ * joins are generated right-recursive, like the {@link QueryJoinOptimizer}
+ * does; a hash join gets all preceding join arguments as its left argument
+ * and the single join argument it was chosen for as its right argument. Subclasses can plug in their own cost model by overriding the
+ * <tt>estimate*</tt> methods.
+ */
+public class CostBasedJoinOptimizer extends QueryJoinOptimizer {
+
+	/**
+	 * The default maximum number of join arguments that are enumerated
+	 * exhaustively.
+	 */
+	public static final int DEFAULT_MAX_ENUMERATION_SIZE = 12;
+
+	/**
+	 * Estimated cost of a single request to a remote SPARQL endpoint.
+	 */
+	private static final double SERVICE_REQUEST_COST = 1000.0;
+
+	/**
+	 * The number of left bindings that are sent to a remote endpoint in a
+	 * single request by a bind join.
+	 */
+	private static final int SERVICE_BLOCK_SIZE = 15;
+
+	private final int maxEnumerationSize;
+
+	public CostBasedJoinOptimizer() {
+		this(new EvaluationStatistics());
+	}
+
+	public CostBasedJoinOptimizer(EvaluationStatistics statistics) {
+		this(statistics, DEFAULT_MAX_ENUMERATION_SIZE);
+	}
+
+	/**
+	 * @param statistics
+	 *        the statistics used to estimate the cardinality of join arguments.
+	 * @param maxEnumerationSize
+	 *        the maximum number of arguments of a join group that is enumerated
+	 *        exhaustively, larger join groups are ordered greedily.
+	 */
+	public CostBasedJoinOptimizer(EvaluationStatistics statistics, int maxEnumerationSize) {
+		super(statistics);
+		this.maxEnumerationSize = maxEnumerationSize;
+	}
+
+	public int getMaxEnumerationSize() {
+		return maxEnumerationSize;
+	}
+
+	@Override
+	public void optimize(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings) {
+		CostBasedJoinVisitor visitor = new CostBasedJoinVisitor();
+		addBoundVars(visitor, bindings);
+		tupleExpr.visit(visitor);
+	}
+
+	/**
+	 * Estimates the number of results of the supplied join argument, given that
+	 * the variables in <tt>bound</tt> already have a value.
+	 * 
+	 * @param cardinality
+	 *        the estimated cardinality of the join argument when none of its
+	 *        variables are bound.
+	 * @param vars
+	 *        the variables of the join argument.
+	 * @param bound
+	 *        the names of the variables that are bound before the join argument
+	 *        is evaluated.
+	 */
+	protected double estimateResultSize(double cardinality, List<Var> vars, Set<String> bound) {
+		int nonConstantVarCount = 0;
+		int unboundVarCount = 0;
+		for (Var var : vars) {
+			if (!var.hasValue()) {
+				nonConstantVarCount++;
+				if (!bound.contains(var.getName())) {
+					unboundVarCount++;
+				}
+			}
+		}
+
+		if (nonConstantVarCount > 0) {
+			return Math.pow(cardinality, (double)unboundVarCount / nonConstantVarCount);
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Estimates the cost of evaluating the right argument of a join once for
+	 * each of the left results, with the left bindings substituted.
+	 * 
+	 * @param leftResults
+	 *        the estimated number of results of the left argument.
+	 * @param lookupResults
+	 *        the estimated number of results of a single evaluation of the right
+	 *        argument.
+	 * @param remote
+	 *        whether the right argument is evaluated by a remote endpoint.
+	 */
+	protected double estimateNestedLoopCost(double leftResults, double lookupResults, boolean remote) {
+		double lookupCost = remote ? SERVICE_REQUEST_COST : EvaluationStatistics.LOOKUP_COST;
+		return leftResults * (lookupCost + lookupResults);
+	}
+
+	/**
+	 * Estimates the cost of a hash join in which the right argument is evaluated
+	 * once and loaded in a hash table that is then probed for each of the left
+	 * results.
+	 * 
+	 * @param leftResults
+	 *        the estimated number of results of the left argument.
+	 * @param rightResults
+	 *        the estimated number of results of the independently evaluated
+	 *        right argument.
+	 * @param joinResults
+	 *        the estimated number of results of the join.
+	 */
+	protected double estimateHashJoinCost(double leftResults, double rightResults, double joinResults) {
+		return EvaluationStatistics.LOOKUP_COST + rightResults * EvaluationStatistics.HASH_BUILD_COST
+				+ leftResults + joinResults;
+	}
+
+	/**
+	 * Estimates the cost of a bind join in which the right argument is
+	 * evaluated for blocks of left results at a time, which is how SERVICE
+	 * arguments are joined.
+	 * 
+	 * @param leftResults
+	 *        the estimated number of results of the left argument.
+	 * @param lookupResults
+	 *        the estimated number of results of a single evaluation of the right
+	 *        argument.
+	 * @param remote
+	 *        whether the right argument is evaluated by a remote endpoint.
+	 */
+	protected double estimateBindJoinCost(double leftResults, double lookupResults, boolean remote) {
+		double lookupCost = remote ? SERVICE_REQUEST_COST : EvaluationStatistics.LOOKUP_COST;
+		double blocks = Math.ceil(leftResults / SERVICE_BLOCK_SIZE);
+		return blocks * lookupCost + leftResults * lookupResults;
+	}
+
+	/**
+	 * Determines whether the supplied join argument can be evaluated using a
+	 * hash join, which requires that all variables it shares with the left
+	 * argument are assured to be bound by both arguments.
+	 */
+	protected boolean isHashJoinSupported(Set<String> leftAssuredNames, TupleExpr rightArg,
+			Set<String> sharedNames)
+	{
+		if (rightArg instanceof Service) {
+			return false;
+		}
+		Set<String> rightAssuredNames = rightArg.getAssuredBindingNames();
+		return leftAssuredNames.containsAll(sharedNames) && rightAssuredNames.containsAll(sharedNames);
+	}
+
+	/*-----------------------------------*
+	 * Inner class CostBasedJoinVisitor *
+	 *-----------------------------------*/
+
+	protected class CostBasedJoinVisitor extends JoinVisitor {
+
+		@Override
+		protected TupleExpr createJoinTree(List<TupleExpr> joinArgs) {
+			int size = joinArgs.size();
+			if (size < 2 || size > maxEnumerationSize) {
+				return super.createJoinTree(joinArgs);
+			}
+
+			Plan plan = enumeratePlans(joinArgs);
+
+			List<TupleExpr> orderedJoinArgs = new ArrayList<TupleExpr>(size);
+			List<JoinAlgorithm> algorithms = new ArrayList<JoinAlgorithm>(size);
+			for (Plan p = plan; p != null; p = p.prefix) {
+				orderedJoinArgs.add(0, joinArgs.get(p.last));
+				algorithms.add(0, p.algorithm);
+			}
+
+			// nested loop joins are evaluated in the same order whether they are
+			// nested to the left or to the right, so they are kept right-recursive
+			// for the IterativeEvaluationOptimizer. Hash and bind joins need the
+			// preceding join arguments as their left argument.
+			List<TupleExpr> nestedLoopArgs = new ArrayList<TupleExpr>(size);
+			for (int i = 0; i < orderedJoinArgs.size(); i++) {
+				TupleExpr tupleExpr = orderedJoinArgs.get(i);
+
+				// Recursively optimize join arguments
+				tupleExpr.visit(this);
+
+				boundVars.addAll(tupleExpr.getBindingNames());
+
+				JoinAlgorithm algorithm = algorithms.get(i);
+				if (i == 0 || algorithm == JoinAlgorithm.NESTED_LOOP) {
+					nestedLoopArgs.add(tupleExpr);
+				}
+				else {
+					Join join = new Join(createRightRecursiveTree(nestedLoopArgs), tupleExpr);
+					join.setAlgorithmName(algorithm.name());
+					nestedLoopArgs.clear();
+					nestedLoopArgs.add(join);
+				}
+			}
+
+			return createRightRecursiveTree(nestedLoopArgs);
+		}
+
+		private TupleExpr createRightRecursiveTree(List<TupleExpr> joinArgs) {
+			int i = joinArgs.size() - 1;
+			TupleExpr replacement = joinArgs.get(i);
+			for (i--; i >= 0; i--) {
+				replacement = new Join(joinArgs.get(i), replacement);
+			}
+			return replacement;
+		}
+
+		/**
+		 * Determines the cheapest order and join algorithms for the supplied
+		 * join arguments by means of dynamic programming over all (connected) subsets
+		 * of the join arguments.
+		 */
+		protected Plan enumeratePlans(List<TupleExpr> joinArgs) {
+			int size = joinArgs.size();
+
+			double[] cardinalities = new double[size];
+			List<List<Var>> vars = new ArrayList<List<Var>>(size);
+			List<Set<String>> varNames = new ArrayList<Set<String>>(size);
+			for (int i = 0; i < size; i++) {
+				TupleExpr tupleExpr = joinArgs.get(i);
+				cardinalities[i] = statistics.getCardinality(tupleExpr);
+				List<Var> varList = getVars(tupleExpr);
+				vars.add(varList);
+				Set<String> names = new HashSet<String>();
+				for (Var var : varList) {
+					if (!var.hasValue()) {
+						names.add(var.getName());
+					}
+				}
+				varNames.add(names);
+			}
+
+			int fullSet = (1 << size) - 1;
+			Plan[] plans = new Plan[fullSet + 1];
+
+			// plans for single join arguments
+			for (int i = 0; i < size; i++) {
+				double results = estimateResultSize(cardinalities[i], vars.get(i), boundVars);
+				double cost = estimateNestedLoopCost(1.0, results, joinArgs.get(i) instanceof Service);
+				Set<String> names = new HashSet<String>(varNames.get(i));
+				Set<String> assuredNames = new HashSet<String>(joinArgs.get(i).getAssuredBindingNames());
+				plans[1 << i] = new Plan(null, i, JoinAlgorithm.NESTED_LOOP, cost, results, names, assuredNames);
+			}
+
+			// extend plans in order of increasing subset size; numerical order
+			// guarantees that all subsets of a set have been handled before
+			for (int set = 1; set < fullSet; set++) {
+				Plan prefix = plans[set];
+				if (prefix == null) {
+					continue;
+				}
+
+				boolean connectedOnly = hasConnectedExtension(set, size, prefix.names, varNames);
+
+				for (int i = 0; i < size; i++) {
+					if ((set & (1 << i)) != 0) {
+						continue;
+					}
+
+					Set<String> sharedNames = new HashSet<String>(varNames.get(i));
+					sharedNames.retainAll(prefix.names);
+					if (connectedOnly && sharedNames.isEmpty()) {
+						// avoid cartesian products where possible
+						continue;
+					}
+
+					Plan plan = extend(prefix, i, joinArgs.get(i), cardinalities[i], vars.get(i),
+							varNames.get(i), sharedNames);
+
+					int extendedSet = set | (1 << i);
+					if (plans[extendedSet] == null || plan.cost < plans[extendedSet].cost) {
+						plans[extendedSet] = plan;
+					}
+				}
+			}
+
+			return plans[fullSet];
+		}
+
+		private boolean hasConnectedExtension(int set, int size, Set<String> names, List<Set<String>> varNames)
+		{
+			for (int i = 0; i < size; i++) {
+				if ((set & (1 << i)) == 0) {
+					for (String name : varNames.get(i)) {
+						if (names.contains(name)) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		private Plan extend(Plan prefix, int index, TupleExpr tupleExpr, double cardinality, List<Var> vars,
+				Set<String> varNames, Set<String> sharedNames)
+		{
+			Set<String> bound = new HashSet<String>(boundVars);
+			bound.addAll(prefix.names);
+
+			boolean remote = tupleExpr instanceof Service;
+			double lookupResults = estimateResultSize(cardinality, vars, bound);
+			double joinResults = prefix.results * lookupResults;
+
+			JoinAlgorithm algorithm = JoinAlgorithm.NESTED_LOOP;
+			double cost;
+			if (remote) {
+				// the evaluation strategy always joins SERVICE arguments in blocks
+				cost = estimateBindJoinCost(prefix.results, lookupResults, remote);
+			}
+			else {
+				cost = estimateNestedLoopCost(prefix.results, lookupResults, remote);
+			}
+
+			if (isHashJoinSupported(prefix.assuredNames, tupleExpr, sharedNames)) {
+				double rightResults = estimateResultSize(cardinality, vars, boundVars);
+				double hashCost = estimateHashJoinCost(prefix.results, rightResults, joinResults);
+				if (hashCost < cost) {
+					algorithm = JoinAlgorithm.HASH;
+					cost = hashCost;
+				}
+			}
+
+			Set<String> names = new HashSet<String>(prefix.names);
+			names.addAll(varNames);
+			Set<String> assuredNames = new HashSet<String>(prefix.assuredNames);
+			assuredNames.addAll(tupleExpr.getAssuredBindingNames());
+
+			return new Plan(prefix, index, algorithm, prefix.cost + cost, joinResults, names, assuredNames);
+		}
+	}
+
+	/**
+	 * A (partial) join plan: an order of join arguments, each joined with all
+	 * preceding ones using the recorded algorithm.
+	 */
+	protected static class Plan {
+
+		/**
+		 * The plan for the join arguments that precede the last one, or
+		 * <tt>null</tt> if this plan consists of a single join argument.
+		 */
+		final Plan prefix;
+
+		/**
+		 * The index of the last join argument.
+		 */
+		final int last;
+
+		/**
+		 * The algorithm used to join the last join argument.
+		 */
+		final JoinAlgorithm algorithm;
+
+		final double cost;
+
+		final double results;
+
+		final Set<String> names;
+
+		final Set<String> assuredNames;
+
+		Plan(Plan prefix, int last, JoinAlgorithm algorithm, double cost, double results, Set<String> names,
+				Set<String> assuredNames)
+		{
+			this.prefix = prefix;
+			this.last = last;
+			this.algorithm = algorithm;
+			this.cost = cost;
+			this.results = results;
+			this.names = names;
+			this.assuredNames = assuredNames;
+		}
+	}
+}
@@ -42,6 +42,25 @@ import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
  */
 public class EvaluationStatistics {
 
+	/**
+	 * Estimated cost of setting up a single lookup (an index seek plus the
+	 * construction of the iterations), relative to the cost of producing a
+	 * single result.
+	 */
+	static final double LOOKUP_COST = 10.0;
+
+	/**
+	 * Estimated cost of inserting a single result into a hash table, relative
+	 * to the cost of producing a single result.
+	 */
+	static final double HASH_BUILD_COST = 2.0;
+
+	/**
+	 * The estimated cardinality above which no hash table is built for a join
+	 * when the hash table can not be spilled to disk.
+	 */
+	static final double MAX_IN_MEMORY_HASH_JOIN_CARDINALITY = 100000;
+
 	protected CardinalityCalculator cc;
 
 	public synchronized double getCardinality(TupleExpr expr) {
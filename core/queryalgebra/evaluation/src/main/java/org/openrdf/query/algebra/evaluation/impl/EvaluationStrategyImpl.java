@@ -16,12 +16,15 @@
  */
 package org.openrdf.query.algebra.evaluation.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
+import info.aduna.iteration.CancellationToken;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.CloseableIteratorIteration;
 import info.aduna.iteration.ConvertingIteration;
@@ -54,6 +57,7 @@ import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
 import org.openrdf.query.algebra.And;
 import org.openrdf.query.algebra.ArbitraryLengthPath;
 import org.openrdf.query.algebra.BNodeGenerator;
@@ -128,6 +132,7 @@ import org.openrdf.query.algebra.evaluation.function.Function;
 import org.openrdf.query.algebra.evaluation.function.FunctionRegistry;
 import org.openrdf.query.algebra.evaluation.function.datetime.Now;
 import org.openrdf.query.algebra.evaluation.iterator.BadlyDesignedLeftJoinIterator;
+import org.openrdf.query.algebra.evaluation.iterator.BatchingJoinIteration;
 import org.openrdf.query.algebra.evaluation.iterator.DescribeIteration;
 import org.openrdf.query.algebra.evaluation.iterator.ExtensionIterator;
 import org.openrdf.query.algebra.evaluation.iterator.FilterIterator;
@@ -137,15 +142,22 @@ import org.openrdf.query.algebra.evaluation.iterator.JoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.LeftJoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.MultiProjectionIterator;
 import org.openrdf.query.algebra.evaluation.iterator.OrderIterator;
+import org.openrdf.query.algebra.evaluation.iterator.ParallelUnionIteration;
 import org.openrdf.query.algebra.evaluation.iterator.PathIteration;
 import org.openrdf.query.algebra.evaluation.iterator.ProjectionIterator;
 import org.openrdf.query.algebra.evaluation.iterator.SPARQLMinusIteration;
+import org.openrdf.query.algebra.evaluation.iterator.SortedLimitIteration;
+import org.openrdf.query.algebra.evaluation.iterator.SpillingDistinctIteration;
+import org.openrdf.query.algebra.evaluation.iterator.SpillingHashJoinIteration;
+import org.openrdf.query.algebra.evaluation.iterator.SpillingSPARQLMinusIteration;
 import org.openrdf.query.algebra.evaluation.iterator.SilentIteration;
+import org.openrdf.query.algebra.evaluation.iterator.TransitiveClosureIteration;
 import org.openrdf.query.algebra.evaluation.iterator.ZeroLengthPathIteration;
 import org.openrdf.query.algebra.evaluation.util.EvaluationStrategies;
 import org.openrdf.query.algebra.evaluation.util.MathUtil;
 import org.openrdf.query.algebra.evaluation.util.OrderComparator;
 import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.query.algebra.evaluation.util.ValueComparator;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
 import org.openrdf.query.algebra.helpers.TupleExprs;
@@ -169,6 +181,15 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * Marks the threads that execute tasks of a parallel evaluation.
+	 */
+	private static final ThreadLocal<Boolean> PARALLEL_TASK = new ThreadLocal<Boolean>();
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
 	protected final TripleSource tripleSource;
 
 	protected final Dataset dataset;
@@ -182,6 +203,16 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 
 	private final long iterationCacheSyncThreshold;
 
+	private EvaluationStatistics statistics;
+
+	private Executor parallelEvaluationExecutor;
+
+	private int joinBatchSize;
+
+	private QueryProfile queryProfile;
+
+	private QueryMemoryBudget memoryBudget;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -217,10 +248,141 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		return serviceResolver.getService(serviceUrl);
 	}
 
+	/**
+	 * Sets the statistics that are used to choose between alternative
+	 * evaluation algorithms, for example between a nested loop join and a hash
+	 * join. If no statistics are set, joins that are not annotated with a
+	 * {@link JoinAlgorithm} are evaluated as nested loop joins.
+	 */
+	public void setEvaluationStatistics(EvaluationStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	public EvaluationStatistics getEvaluationStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Enables parallel evaluation: the arguments of unions and the hash tables
+	 * of hash joins are evaluated by tasks on the supplied executor. Parts of
+	 * the query that are evaluated by such a task are evaluated sequentially,
+	 * so that tasks never wait for other tasks and a bounded executor can not
+	 * deadlock.
+	 * 
+	 * @param executor
+	 *        the executor to run tasks on, or <tt>null</tt> to disable
+	 *        parallel evaluation.
+	 */
+	public void setParallelEvaluationExecutor(final Executor executor) {
+		if (executor == null) {
+			parallelEvaluationExecutor = null;
+		}
+		else {
+			parallelEvaluationExecutor = new Executor() {
+
+				public void execute(final Runnable command) {
+					// tasks are cancelled together with the query that started them
+					final CancellationToken token = CancellationToken.current();
+					executor.execute(new Runnable() {
+
+						public void run() {
+							PARALLEL_TASK.set(Boolean.TRUE);
+							CancellationToken previousToken = token != null ? token.activate() : null;
+							try {
+								command.run();
+							}
+							finally {
+								if (token != null) {
+									CancellationToken.restore(previousToken);
+								}
+								PARALLEL_TASK.remove();
+							}
+						}
+					});
+				}
+			};
+		}
+	}
+
+	/**
+	 * Sets the number of left results that a nested loop join reads as a
+	 * block, evaluating its right argument once for each distinct binding of
+	 * its variables in the block. If set to <tt>0</tt> (the default), the right
+	 * argument is evaluated for one left result at a time, unless the join is
+	 * annotated with the {@link JoinAlgorithm#BIND bind} join algorithm.
+	 * 
+	 * @see BatchingJoinIteration
+	 */
+	public void setJoinBatchSize(int joinBatchSize) {
+		this.joinBatchSize = joinBatchSize;
+	}
+
+	public int getJoinBatchSize() {
+		return joinBatchSize;
+	}
+
+	/**
+	 * Sets the profile that records the runtime statistics of the tuple
+	 * expressions evaluated by this strategy, or <tt>null</tt> (the default)
+	 * to not record any statistics.
+	 */
+	public void setQueryProfile(QueryProfile queryProfile) {
+		this.queryProfile = queryProfile;
+	}
+
+	public QueryProfile getQueryProfile() {
+		return queryProfile;
+	}
+
+	/**
+	 * Sets the budget that limits the memory used by the operators that
+	 * materialize intermediate results, such as sorts, groups, hash joins,
+	 * DISTINCT and property paths. Operators that are able to spill to disk do
+	 * so when the budget is exhausted, the other operators abort the query. If
+	 * no budget is set (the default), the memory use of these operators is only
+	 * limited by the sync threshold, if any.
+	 */
+	public void setMemoryBudget(QueryMemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public QueryMemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Gets the executor to run parallel evaluation tasks on.
+	 * 
+	 * @return the executor, or <tt>null</tt> if parallel evaluation is disabled
+	 *         or the current thread is itself running such a task.
+	 */
+	protected Executor getParallelEvaluationExecutor() {
+		if (PARALLEL_TASK.get() != null) {
+			return null;
+		}
+		return parallelEvaluationExecutor;
+	}
+
 	@Override
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr,
 			BindingSet bindings)
 		throws QueryEvaluationException
+	{
+		// operators evaluate their arguments again for every input, stop
+		// doing so once the query has been cancelled
+		if (CancellationToken.isCurrentCancelled()) {
+			throw new QueryInterruptedException("Query evaluation was cancelled or took too long");
+		}
+		if (queryProfile != null && expr != null) {
+			long startTime = System.nanoTime();
+			return queryProfile.track(expr, evaluateTupleExpr(expr, bindings), startTime);
+		}
+		return evaluateTupleExpr(expr, bindings);
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluateTupleExpr(TupleExpr expr,
+			BindingSet bindings)
+		throws QueryEvaluationException
 	{
 		if (expr instanceof StatementPattern) {
 			return evaluate((StatementPattern)expr, bindings);
@@ -268,6 +430,11 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		final Var contextVar = alp.getContextVar();
 		final long minLength = alp.getMinLength();
 
+		if (TransitiveClosureIteration.isSupported(alp, bindings)) {
+			return new TransitiveClosureIteration(this, alp, bindings, iterationCacheSyncThreshold,
+					memoryBudget);
+		}
+
 		return new PathIteration(this, scope, subjectVar, pathExpression, objVar, contextVar, minLength,
 				bindings);
 	}
@@ -578,12 +745,16 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			}
 		};
 
+		// All solutions are copied from the same binding set so that they share
+		// its variable slots
+		final QueryBindingSet template = new QueryBindingSet(bindings);
+
 		// Return an iterator that converts the statements to var bindings
 		return new ConvertingIteration<Statement, BindingSet, QueryEvaluationException>(stIter) {
 
 			@Override
 			protected BindingSet convert(Statement st) {
-				QueryBindingSet result = new QueryBindingSet(bindings);
+				QueryBindingSet result = new QueryBindingSet(template);
 
 				if (subjVar != null && !subjVar.isConstant() && !result.hasBinding(subjVar.getName())) {
 					result.addBinding(subjVar.getName(), st.getSubject());
@@ -789,6 +960,10 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			BindingSet bindings)
 		throws QueryEvaluationException
 	{
+		if (iterationCacheSyncThreshold > 0 || memoryBudget != null) {
+			return new SpillingDistinctIteration(evaluate(distinct.getArg(), bindings),
+					iterationCacheSyncThreshold, memoryBudget);
+		}
 		return new DistinctIteration<BindingSet, QueryEvaluationException>(
 				evaluate(distinct.getArg(), bindings));
 	}
@@ -803,7 +978,8 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Group node, BindingSet bindings)
 		throws QueryEvaluationException
 	{
-		return new GroupIterator(this, node, bindings, iterationCacheSyncThreshold);
+		return new GroupIterator(this, node, bindings, iterationCacheSyncThreshold,
+				getParallelEvaluationExecutor(), memoryBudget);
 	}
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Order node, BindingSet bindings)
@@ -813,7 +989,44 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		OrderComparator cmp = new OrderComparator(this, node, vcmp);
 		boolean reduced = isReducedOrDistinct(node);
 		long limit = getLimit(node);
-		return new OrderIterator(evaluate(node.getArg(), bindings), cmp, limit, reduced, iterationCacheSyncThreshold);
+		CloseableIteration<BindingSet, QueryEvaluationException> input = evaluate(node.getArg(), bindings);
+		if (limit < Long.MAX_VALUE) {
+			String[] sortNames = getSortedInputNames(node);
+			if (sortNames != null) {
+				input = new SortedLimitIteration(input, sortNames, limit, reduced, vcmp);
+			}
+		}
+		return new OrderIterator(input, cmp, limit, reduced, iterationCacheSyncThreshold, memoryBudget);
+	}
+
+	/**
+	 * Checks whether the argument of the supplied order produces its results
+	 * in the requested order already, which is the case when the
+	 * {@link OrderLimitOptimizer} has sorted the statement pattern that is
+	 * evaluated first, and all joins above it preserve its order.
+	 * 
+	 * @return the names of the variables that the results are sorted on, or
+	 *         <tt>null</tt> if the results are not known to be sorted.
+	 */
+	protected String[] getSortedInputNames(Order order) {
+		String[] names = OrderLimitOptimizer.getOrderVarNames(order);
+		if (names == null) {
+			return null;
+		}
+
+		List<BinaryTupleOperator> joins = new ArrayList<BinaryTupleOperator>();
+		TupleExpr arg = OrderLimitOptimizer.getOrderDeterminingArg(order.getArg(), names, joins);
+		if (!(arg instanceof Order) || !((Order)arg).getElements().equals(order.getElements())) {
+			return null;
+		}
+
+		for (BinaryTupleOperator join : joins) {
+			JoinAlgorithm algorithm = JoinAlgorithm.of(join);
+			if (algorithm != JoinAlgorithm.NESTED_LOOP && algorithm != JoinAlgorithm.BIND) {
+				return null;
+			}
+		}
+		return names;
 	}
 
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(BinaryTupleOperator expr,
@@ -855,13 +1068,104 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		}
 
 		if (TupleExprs.containsProjection(join.getRightArg())) {
-			return new HashJoinIteration(this, join, bindings);
+			return new HashJoinIteration(this, join, bindings, memoryBudget);
+		}
+		else if (isHashJoinPreferred(join, bindings)) {
+			return new SpillingHashJoinIteration(this, join, bindings, iterationCacheSyncThreshold,
+					getParallelEvaluationExecutor(), memoryBudget);
+		}
+		else if (isBatchedJoinPreferred(join)) {
+			int blockSize = joinBatchSize > 0 ? joinBatchSize : BatchingJoinIteration.DEFAULT_BLOCK_SIZE;
+			return new BatchingJoinIteration(this, join, bindings, blockSize, iterationCacheSyncThreshold,
+					memoryBudget);
 		}
 		else {
 			return new JoinIterator(this, join, bindings);
 		}
 	}
 
+	/**
+	 * Determines whether the supplied join should be evaluated as a hash join,
+	 * that is by building a hash table from the results of its right argument,
+	 * rather than by evaluating its right argument once for every result of its
+	 * left argument. Joins that are annotated with the
+	 * {@link JoinAlgorithm#NESTED_LOOP nested loop} algorithm, and joins that
+	 * are restricted by the supplied bindings, are always evaluated as nested
+	 * loop joins, as the estimates do not take these bindings into account.
+	 * Otherwise, a hash join is chosen when the estimated cardinality of the
+	 * right argument is small compared to the number of lookups a nested loop
+	 * join would do. A {@link JoinAlgorithm#HASH hash} annotation is only
+	 * honoured when there are no statistics to estimate these cardinalities
+	 * from.
+	 */
+	protected boolean isHashJoinPreferred(BinaryTupleOperator join, BindingSet bindings) {
+		if (!isHashJoinApplicable(join)) {
+			return false;
+		}
+
+		JoinAlgorithm algorithm = JoinAlgorithm.of(join);
+		if (algorithm == JoinAlgorithm.NESTED_LOOP) {
+			return false;
+		}
+
+		Set<String> boundNames = new HashSet<String>(bindings.getBindingNames());
+		boundNames.retainAll(join.getBindingNames());
+		if (!boundNames.isEmpty()) {
+			return false;
+		}
+
+		if (statistics == null || join.getRightArg() instanceof Service) {
+			return algorithm == JoinAlgorithm.HASH;
+		}
+
+		double leftCard, rightCard;
+		try {
+			leftCard = statistics.getCardinality(join.getLeftArg());
+			rightCard = statistics.getCardinality(join.getRightArg());
+		}
+		catch (IllegalArgumentException e) {
+			// statistics do not support one of the arguments
+			return algorithm == JoinAlgorithm.HASH;
+		}
+
+		if (iterationCacheSyncThreshold <= 0 && memoryBudget == null
+				&& rightCard > EvaluationStatistics.MAX_IN_MEMORY_HASH_JOIN_CARDINALITY)
+		{
+			// the hash table can not be spilled to disk
+			return false;
+		}
+
+		return rightCard * EvaluationStatistics.HASH_BUILD_COST < leftCard
+				* EvaluationStatistics.LOOKUP_COST;
+	}
+
+	/**
+	 * Determines whether the right argument of the supplied join should be
+	 * evaluated for blocks of left results rather than for one left result at
+	 * a time.
+	 */
+	protected boolean isBatchedJoinPreferred(Join join) {
+		JoinAlgorithm algorithm = JoinAlgorithm.of(join);
+		if (algorithm != null) {
+			return algorithm == JoinAlgorithm.BIND;
+		}
+		return joinBatchSize > 0;
+	}
+
+	/**
+	 * Checks whether the supplied join can be evaluated using a hash table on
+	 * the binding names that its arguments have in common, which is the case
+	 * when both arguments are guaranteed to bind all of these names.
+	 */
+	protected boolean isHashJoinApplicable(BinaryTupleOperator join) {
+		// copied, some operators return their own set of binding names
+		Set<String> sharedNames = new HashSet<String>(join.getLeftArg().getBindingNames());
+		sharedNames.retainAll(join.getRightArg().getBindingNames());
+
+		return join.getLeftArg().getAssuredBindingNames().containsAll(sharedNames)
+				&& join.getRightArg().getAssuredBindingNames().containsAll(sharedNames);
+	}
+
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(LeftJoin leftJoin,
 			final BindingSet bindings)
 		throws QueryEvaluationException
@@ -880,6 +1184,10 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 
 		if (problemVars.isEmpty()) {
 			// left join is "well designed"
+			if (isHashJoinPreferred(leftJoin, bindings)) {
+				return new SpillingHashJoinIteration(this, leftJoin, bindings, iterationCacheSyncThreshold,
+						getParallelEvaluationExecutor(), memoryBudget);
+			}
 			return new LeftJoinIterator(this, leftJoin, bindings);
 		}
 		else {
@@ -892,6 +1200,13 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			final BindingSet bindings)
 		throws QueryEvaluationException
 	{
+		Executor executor = getParallelEvaluationExecutor();
+		if (executor != null) {
+			List<TupleExpr> args = new ArrayList<TupleExpr>();
+			addUnionArgs(union, args);
+			return new ParallelUnionIteration(this, args, bindings, executor);
+		}
+
 		Iteration<BindingSet, QueryEvaluationException> leftArg, rightArg;
 
 		leftArg = new DelayedIteration<BindingSet, QueryEvaluationException>() {
@@ -917,6 +1232,16 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		return new UnionIteration<BindingSet, QueryEvaluationException>(leftArg, rightArg);
 	}
 
+	private void addUnionArgs(TupleExpr expr, List<TupleExpr> args) {
+		if (expr instanceof Union) {
+			addUnionArgs(((Union)expr).getLeftArg(), args);
+			addUnionArgs(((Union)expr).getRightArg(), args);
+		}
+		else {
+			args.add(expr);
+		}
+	}
+
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final Intersection intersection,
 			final BindingSet bindings)
 		throws QueryEvaluationException
@@ -950,6 +1275,13 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			final BindingSet bindings)
 		throws QueryEvaluationException
 	{
+		// both algorithms materialize the right argument, but the hash-based
+		// one avoids comparing every left result against all of it
+		if (isHashJoinPreferred(difference, bindings)) {
+			return new SpillingHashJoinIteration(this, difference, bindings, iterationCacheSyncThreshold,
+					getParallelEvaluationExecutor(), memoryBudget);
+		}
+
 		Iteration<BindingSet, QueryEvaluationException> leftArg, rightArg;
 
 		leftArg = new DelayedIteration<BindingSet, QueryEvaluationException>() {
@@ -972,6 +1304,10 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			}
 		};
 
+		if (iterationCacheSyncThreshold > 0 || memoryBudget != null) {
+			return new SpillingSPARQLMinusIteration(leftArg, rightArg, iterationCacheSyncThreshold,
+					memoryBudget);
+		}
 		return new SPARQLMinusIteration<QueryEvaluationException>(leftArg, rightArg);
 	}
 
@@ -1432,33 +1768,7 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			if (farg != null) {
 				flags = ((Literal)farg).getLabel();
 			}
-			// TODO should this Pattern be cached?
-			int f = 0;
-			for (char c : flags.toCharArray()) {
-				switch (c) {
-					case 's':
-						f |= Pattern.DOTALL;
-						break;
-					case 'm':
-						f |= Pattern.MULTILINE;
-						break;
-					case 'i':
-						f |= Pattern.CASE_INSENSITIVE;
-						break;
-					case 'x':
-						f |= Pattern.COMMENTS;
-						break;
-					case 'd':
-						f |= Pattern.UNIX_LINES;
-						break;
-					case 'u':
-						f |= Pattern.UNICODE_CASE;
-						break;
-					default:
-						throw new ValueExprEvaluationException(flags);
-				}
-			}
-			Pattern pattern = Pattern.compile(ptn, f);
+			Pattern pattern = QueryEvaluationUtil.compileRegex(ptn, flags);
 			boolean result = pattern.matcher(text).find();
 			return BooleanLiteralImpl.valueOf(result);
 		}
@@ -1478,20 +1788,7 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			String langTag = ((Literal)langTagValue).getLabel();
 			String langRange = ((Literal)langRangeValue).getLabel();
 
-			boolean result = false;
-			if (langRange.equals("*")) {
-				result = langTag.length() > 0;
-			}
-			else if (langTag.length() == langRange.length()) {
-				result = langTag.equalsIgnoreCase(langRange);
-			}
-			else if (langTag.length() > langRange.length()) {
-				// check if the range is a prefix of the tag
-				String prefix = langTag.substring(0, langRange.length());
-				result = prefix.equalsIgnoreCase(langRange) && langTag.charAt(langRange.length()) == '-';
-			}
-
-			return BooleanLiteralImpl.valueOf(result);
+			return BooleanLiteralImpl.valueOf(QueryEvaluationUtil.langMatches(langTag, langRange));
 		}
 
 		throw new ValueExprEvaluationException();
@@ -1930,6 +2227,23 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		}
 	}
 
+	/**
+	 * Compiles a value expression for repeated evaluation against different
+	 * bindings, folding constant operators and precompiling constant regular
+	 * expressions and language ranges. Operators whose <tt>evaluate</tt>
+	 * method is overridden by a subclass are evaluated through that method.
+	 * 
+	 * @param expr
+	 *        The expression to compile.
+	 * @return A compiled expression that produces the same values as
+	 *         {@link #evaluate(ValueExpr, BindingSet)}.
+	 */
+	public CompiledValueExpr compile(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		return new ValueExprCompiler(this).compile(expr);
+	}
+
 	@Override
 	public boolean isTrue(ValueExpr expr, BindingSet bindings)
 		throws QueryEvaluationException
@@ -0,0 +1,63 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import org.openrdf.query.algebra.BinaryTupleOperator;
+
+/**
+ * The join algorithms that query optimizers can request from the
+ * {@link EvaluationStrategyImpl} through
+ * {@link BinaryTupleOperator#setAlgorithmName(String)}.
+ */
+public enum JoinAlgorithm {
+
+	/**
+	 * Evaluates the right argument once for every binding set of the left
+	 * argument, with the left bindings substituted in the right argument.
+	 */
+	NESTED_LOOP,
+
+	/**
+	 * Evaluates both arguments independently and joins them through an
+	 * in-memory hash table on the shared variables.
+	 */
+	HASH,
+
+	/**
+	 * Evaluates the right argument for blocks of left binding sets at a time.
+	 */
+	BIND;
+
+	/**
+	 * Determines the join algorithm that has been requested for the supplied
+	 * operator.
+	 * 
+	 * @return The requested algorithm, or <tt>null</tt> if no (known) algorithm
+	 *         has been requested.
+	 */
+	public static JoinAlgorithm of(BinaryTupleOperator node) {
+		String name = node.getAlgorithmName();
+		if (name != null) {
+			for (JoinAlgorithm algorithm : values()) {
+				if (algorithm.name().equals(name)) {
+					return algorithm;
+				}
+			}
+		}
+		return null;
+	}
+}
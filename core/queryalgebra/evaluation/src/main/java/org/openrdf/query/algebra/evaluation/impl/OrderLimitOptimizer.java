@@ -16,22 +16,45 @@
  */
 package org.openrdf.query.algebra.evaluation.impl;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.BinaryTupleOperator;
 import org.openrdf.query.algebra.Distinct;
+import org.openrdf.query.algebra.Extension;
+import org.openrdf.query.algebra.ExtensionElem;
+import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.LeftJoin;
 import org.openrdf.query.algebra.Order;
 import org.openrdf.query.algebra.OrderElem;
 import org.openrdf.query.algebra.Projection;
 import org.openrdf.query.algebra.ProjectionElem;
 import org.openrdf.query.algebra.QueryModelNode;
 import org.openrdf.query.algebra.Reduced;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.Slice;
+import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.UnaryTupleOperator;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.QueryOptimizer;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.query.algebra.helpers.TupleExprs;
 
 /**
  * Moves the Order node above the Projection when variables are projected.
+ * <p>
+ * Furthermore, when an ORDER BY with a LIMIT sorts on variables of the
+ * statement pattern that is evaluated first, that statement pattern is sorted
+ * on its own and the joins above it are evaluated as nested loop joins, which
+ * preserve the order of their left argument. The
+ * {@link EvaluationStrategyImpl} then stops reading the results of the joins
+ * as soon as the limit has been reached, rather than sorting all of them.
  * 
  * @author James Leigh
  */
@@ -39,6 +62,86 @@ public class OrderLimitOptimizer implements QueryOptimizer {
 
 	public void optimize(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings) {
 		tupleExpr.visit(new OrderOptimizer());
+		tupleExpr.visit(new SortedInputOptimizer());
+	}
+
+	/**
+	 * Gets the names of the variables that the supplied order sorts on.
+	 * 
+	 * @return the variable names, or <tt>null</tt> if the order sorts on
+	 *         other expressions than variables.
+	 */
+	static String[] getOrderVarNames(Order order) {
+		String[] names = new String[order.getElements().size()];
+		for (int i = 0; i < names.length; i++) {
+			OrderElem elem = order.getElements().get(i);
+			if (!(elem.getExpr() instanceof Var) || ((Var)elem.getExpr()).hasValue()) {
+				return null;
+			}
+			names[i] = ((Var)elem.getExpr()).getName();
+		}
+		return names;
+	}
+
+	/**
+	 * Finds the expression whose order determines the order of the results of
+	 * the supplied expression, following the left arguments of joins and the
+	 * arguments of operators that preserve the order of their results without
+	 * changing the values of the supplied variables. The joins on the way are
+	 * added to the supplied list, as they only preserve the order of their left
+	 * argument if they are not evaluated as hash joins.
+	 * 
+	 * @return the expression that determines the order, or <tt>null</tt> if
+	 *         an operator on the way does not preserve the order or changes one
+	 *         of the variables.
+	 */
+	static TupleExpr getOrderDeterminingArg(TupleExpr expr, String[] names, List<BinaryTupleOperator> joins)
+	{
+		if (expr instanceof Projection) {
+			for (String name : names) {
+				if (!isProjectedUnchanged((Projection)expr, name)) {
+					return null;
+				}
+			}
+			return getOrderDeterminingArg(((Projection)expr).getArg(), names, joins);
+		}
+		else if (expr instanceof Extension) {
+			for (ExtensionElem elem : ((Extension)expr).getElements()) {
+				for (String name : names) {
+					if (name.equals(elem.getName())) {
+						return null;
+					}
+				}
+			}
+			return getOrderDeterminingArg(((Extension)expr).getArg(), names, joins);
+		}
+		else if (expr instanceof Filter || expr instanceof Distinct || expr instanceof Reduced) {
+			return getOrderDeterminingArg(((UnaryTupleOperator)expr).getArg(), names, joins);
+		}
+		else if (expr instanceof Join || expr instanceof LeftJoin) {
+			BinaryTupleOperator join = (BinaryTupleOperator)expr;
+			if (expr instanceof Join
+					&& (TupleExprs.containsProjection(join.getRightArg()) || join.getRightArg() instanceof Service))
+			{
+				// evaluated by iterations that do not preserve the order
+				return null;
+			}
+			if (JoinAlgorithm.of(join) == JoinAlgorithm.HASH) {
+				return null;
+			}
+			joins.add(join);
+			return getOrderDeterminingArg(join.getLeftArg(), names, joins);
+		}
+		return expr;
+	}
+
+	private static boolean isProjectedUnchanged(Projection projection, String name) {
+		for (ProjectionElem e : projection.getProjectionElemList().getElements()) {
+			if (name.equals(e.getSourceName()) && name.equals(e.getTargetName())) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	protected static class OrderOptimizer extends QueryModelVisitorBase<RuntimeException> {
@@ -93,4 +196,53 @@ public class OrderLimitOptimizer implements QueryOptimizer {
 		}
 
 	}
+
+	protected static class SortedInputOptimizer extends QueryModelVisitorBase<RuntimeException> {
+
+		@Override
+		public void meet(Order node) {
+			super.meet(node);
+
+			String[] names = getOrderVarNames(node);
+			if (names == null || !isLimited(node)) {
+				return;
+			}
+
+			List<BinaryTupleOperator> joins = new ArrayList<BinaryTupleOperator>();
+			TupleExpr arg = getOrderDeterminingArg(node.getArg(), names, joins);
+
+			// sorting a single statement pattern only pays off when it saves
+			// evaluating joins for all of its results
+			if (arg instanceof StatementPattern && !joins.isEmpty()) {
+				Set<String> patternNames = new HashSet<String>(arg.getBindingNames());
+				for (String name : names) {
+					if (!patternNames.contains(name)) {
+						return;
+					}
+				}
+
+				for (BinaryTupleOperator join : joins) {
+					join.setAlgorithmName(JoinAlgorithm.NESTED_LOOP.name());
+				}
+
+				Order sortedArg = new Order();
+				arg.replaceWith(sortedArg);
+				sortedArg.setArg(arg);
+				for (OrderElem elem : node.getElements()) {
+					sortedArg.addElement(elem.clone());
+				}
+			}
+		}
+
+		private boolean isLimited(QueryModelNode node) {
+			QueryModelNode parent = node.getParentNode();
+			while (parent instanceof Distinct || parent instanceof Reduced || parent instanceof Slice) {
+				if (parent instanceof Slice && ((Slice)parent).hasLimit()) {
+					return true;
+				}
+				parent = parent.getParentNode();
+			}
+			return false;
+		}
+	}
 }
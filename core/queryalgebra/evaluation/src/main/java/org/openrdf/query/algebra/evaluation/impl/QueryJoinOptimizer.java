@@ -46,6 +46,8 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 
 	protected final EvaluationStatistics statistics;
 
+	private boolean bindingNamesBound;
+
 	public QueryJoinOptimizer() {
 		this(new EvaluationStatistics());
 	}
@@ -54,6 +56,27 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 		this.statistics = statistics;
 	}
 
+	/**
+	 * Sets whether variables that have a binding in the bindings supplied to
+	 * {@link #optimize(TupleExpr, Dataset, BindingSet)} are considered bound,
+	 * even if their value has not been assigned to the query model. This is
+	 * needed for plans that are optimized for the names of the bindings only,
+	 * such as cached plans that are reused with different values. Defaults to
+	 * <tt>false</tt>.
+	 * 
+	 * @since 2.8.7
+	 */
+	public void setBindingNamesBound(boolean bindingNamesBound) {
+		this.bindingNamesBound = bindingNamesBound;
+	}
+
+	/**
+	 * @since 2.8.7
+	 */
+	public boolean isBindingNamesBound() {
+		return bindingNamesBound;
+	}
+
 	/**
 	 * Applies generally applicable optimizations: path expressions are sorted
 	 * from more to less specific.
@@ -62,7 +85,19 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 	 */
 	@Override
 	public void optimize(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings) {
-		tupleExpr.visit(new JoinVisitor());
+		JoinVisitor visitor = new JoinVisitor();
+		addBoundVars(visitor, bindings);
+		tupleExpr.visit(visitor);
+	}
+
+	/**
+	 * Marks the names of the supplied bindings as bound, if
+	 * {@link #isBindingNamesBound() enabled}.
+	 */
+	protected void addBoundVars(JoinVisitor visitor, BindingSet bindings) {
+		if (bindingNamesBound && bindings != null) {
+			visitor.boundVars.addAll(bindings.getBindingNames());
+		}
 	}
 
 	protected class JoinVisitor extends QueryModelVisitorBase<RuntimeException> {
@@ -95,51 +130,10 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 				// Recursively get the join arguments
 				List<TupleExpr> joinArgs = getJoinArgs(node, new ArrayList<TupleExpr>());
 
-				// Reorder the (recursive) join arguments to a more optimal sequence
-				List<TupleExpr> orderedJoinArgs = new ArrayList<TupleExpr>(joinArgs.size());
-
 				// first get all subselects and order them
 				List<TupleExpr> orderedSubselects = reorderSubselects(getSubSelects(joinArgs));
 				joinArgs.removeAll(orderedSubselects);
 
-				// We order all remaining join arguments based on cardinality and
-				// variable frequency statistics
-				if (joinArgs.size() > 0) {
-					// Build maps of cardinalities and vars per tuple expression
-					Map<TupleExpr, Double> cardinalityMap = new HashMap<TupleExpr, Double>();
-					Map<TupleExpr, List<Var>> varsMap = new HashMap<TupleExpr, List<Var>>();
-
-					for (TupleExpr tupleExpr : joinArgs) {
-						cardinalityMap.put(tupleExpr, statistics.getCardinality(tupleExpr));
-						if (tupleExpr instanceof ZeroLengthPath) {
-							varsMap.put(tupleExpr, ((ZeroLengthPath)tupleExpr).getVarList());
-						}
-						else {
-							varsMap.put(tupleExpr, getStatementPatternVars(tupleExpr));
-						}
-					}
-
-					// Build map of var frequences
-					Map<Var, Integer> varFreqMap = new HashMap<Var, Integer>();
-					for (List<Var> varList : varsMap.values()) {
-						getVarFreqMap(varList, varFreqMap);
-					}
-
-					// order all other join arguments based on available statistics
-					while (!joinArgs.isEmpty()) {
-						TupleExpr tupleExpr = selectNextTupleExpr(joinArgs, cardinalityMap, varsMap, varFreqMap,
-								boundVars);
-
-						joinArgs.remove(tupleExpr);
-						orderedJoinArgs.add(tupleExpr);
-
-						// Recursively optimize join arguments
-						tupleExpr.visit(this);
-
-						boundVars.addAll(tupleExpr.getBindingNames());
-					}
-				}
-
 				// Build new join hierarchy
 				TupleExpr subselectJoins = null;
 				if (orderedSubselects.size() > 0) {
@@ -149,15 +143,10 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 					}
 				}
 
-				if (orderedJoinArgs.size() > 0) {
-					// Note: generated hierarchy is right-recursive to help the
-					// IterativeEvaluationOptimizer to factor out the left-most join
-					// argument
-					int i = orderedJoinArgs.size() - 1;
-					TupleExpr replacement = orderedJoinArgs.get(i);
-					for (i--; i >= 0; i--) {
-						replacement = new Join(orderedJoinArgs.get(i), replacement);
-					}
+				if (joinArgs.size() > 0) {
+					// We order all remaining join arguments based on cardinality and
+					// variable frequency statistics
+					TupleExpr replacement = createJoinTree(joinArgs);
 
 					if (subselectJoins != null) {
 						replacement = new Join(subselectJoins, replacement);
@@ -177,6 +166,58 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 			}
 		}
 
+		/**
+		 * Orders the supplied join arguments, recursively optimizes each of
+		 * them and combines them into a new join hierarchy. The variables bound
+		 * by the join arguments are added to {@link #boundVars}.
+		 * 
+		 * @param joinArgs
+		 *        the (non-subselect) join arguments, must not be empty.
+		 * @return the root of the new join hierarchy.
+		 */
+		protected TupleExpr createJoinTree(List<TupleExpr> joinArgs) {
+			List<TupleExpr> orderedJoinArgs = new ArrayList<TupleExpr>(joinArgs.size());
+
+			// Build maps of cardinalities and vars per tuple expression
+			Map<TupleExpr, Double> cardinalityMap = new HashMap<TupleExpr, Double>();
+			Map<TupleExpr, List<Var>> varsMap = new HashMap<TupleExpr, List<Var>>();
+
+			for (TupleExpr tupleExpr : joinArgs) {
+				cardinalityMap.put(tupleExpr, statistics.getCardinality(tupleExpr));
+				varsMap.put(tupleExpr, getVars(tupleExpr));
+			}
+
+			// Build map of var frequences
+			Map<Var, Integer> varFreqMap = new HashMap<Var, Integer>();
+			for (List<Var> varList : varsMap.values()) {
+				getVarFreqMap(varList, varFreqMap);
+			}
+
+			// order all other join arguments based on available statistics
+			while (!joinArgs.isEmpty()) {
+				TupleExpr tupleExpr = selectNextTupleExpr(joinArgs, cardinalityMap, varsMap, varFreqMap,
+						boundVars);
+
+				joinArgs.remove(tupleExpr);
+				orderedJoinArgs.add(tupleExpr);
+
+				// Recursively optimize join arguments
+				tupleExpr.visit(this);
+
+				boundVars.addAll(tupleExpr.getBindingNames());
+			}
+
+			// Note: generated hierarchy is right-recursive to help the
+			// IterativeEvaluationOptimizer to factor out the left-most join
+			// argument
+			int i = orderedJoinArgs.size() - 1;
+			TupleExpr replacement = orderedJoinArgs.get(i);
+			for (i--; i >= 0; i--) {
+				replacement = new Join(orderedJoinArgs.get(i), replacement);
+			}
+			return replacement;
+		}
+
 		protected <L extends List<TupleExpr>> L getJoinArgs(TupleExpr tupleExpr, L joinArgs) {
 			if (tupleExpr instanceof Join) {
 				Join join = (Join)tupleExpr;
@@ -190,6 +231,15 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 			return joinArgs;
 		}
 
+		protected List<Var> getVars(TupleExpr tupleExpr) {
+			if (tupleExpr instanceof ZeroLengthPath) {
+				return ((ZeroLengthPath)tupleExpr).getVarList();
+			}
+			else {
+				return getStatementPatternVars(tupleExpr);
+			}
+		}
+
 		protected List<Var> getStatementPatternVars(TupleExpr tupleExpr) {
 			List<StatementPattern> stPatterns = StatementPatternCollector.process(tupleExpr);
 			List<Var> varList = new ArrayList<Var>(stPatterns.size() * 4);
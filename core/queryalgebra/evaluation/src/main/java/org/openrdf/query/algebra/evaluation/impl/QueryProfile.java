@@ -0,0 +1,255 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.IterationWrapper;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.BinaryTupleOperator;
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.helpers.QueryModelTreePrinter;
+
+/**
+ * Collects runtime statistics of the evaluation of a query plan: for each
+ * tuple expression, the number of times it was evaluated, the number of
+ * results it produced, the time spent producing these results and, for joins
+ * and paths, the algorithm that was used to evaluate it. Times are wall-clock
+ * times and include the time spent evaluating the expression's arguments.
+ * 
+ * @see EvaluationStrategyImpl#setQueryProfile(QueryProfile)
+ */
+public class QueryProfile {
+
+	private final Map<QueryModelNode, NodeProfile> nodes = new IdentityHashMap<QueryModelNode, NodeProfile>();
+
+	private volatile TupleExpr plan;
+
+	/**
+	 * Sets the query plan that is profiled, that is the optimized query model
+	 * that is passed to the evaluation strategy.
+	 */
+	public void setPlan(TupleExpr plan) {
+		this.plan = plan;
+	}
+
+	public TupleExpr getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Records an evaluation of the supplied expression.
+	 * 
+	 * @param expr
+	 *        the expression that was evaluated.
+	 * @param iter
+	 *        the results of the evaluation.
+	 * @param startTime
+	 *        the value of {@link System#nanoTime()} at the start of the
+	 *        evaluation.
+	 * @return an iteration over the same results, that records the number of
+	 *         results and the time spent producing them.
+	 */
+	public CloseableIteration<BindingSet, QueryEvaluationException> track(TupleExpr expr,
+			CloseableIteration<BindingSet, QueryEvaluationException> iter, long startTime)
+	{
+		NodeProfile profile = getProfile(expr, true);
+		profile.evaluations.incrementAndGet();
+		profile.time.addAndGet(System.nanoTime() - startTime);
+		if (expr instanceof BinaryTupleOperator || expr instanceof ArbitraryLengthPath) {
+			String algorithm = iter.getClass().getSimpleName();
+			if (algorithm.length() == 0) {
+				// anonymous class
+				algorithm = iter.getClass().getName();
+			}
+			synchronized (profile.algorithms) {
+				profile.algorithms.add(algorithm);
+			}
+		}
+		return new ProfilingIteration(iter, profile);
+	}
+
+	/**
+	 * Gets the number of times the supplied node was evaluated.
+	 */
+	public long getEvaluationCount(QueryModelNode node) {
+		NodeProfile profile = getProfile(node, false);
+		return profile == null ? 0 : profile.evaluations.get();
+	}
+
+	/**
+	 * Gets the total number of results that the supplied node produced.
+	 */
+	public long getResultCount(QueryModelNode node) {
+		NodeProfile profile = getProfile(node, false);
+		return profile == null ? 0 : profile.results.get();
+	}
+
+	/**
+	 * Gets the total time spent evaluating the supplied node, in nanoseconds.
+	 */
+	public long getTime(QueryModelNode node) {
+		NodeProfile profile = getProfile(node, false);
+		return profile == null ? 0 : profile.time.get();
+	}
+
+	/**
+	 * Gets the names of the algorithms that were used to evaluate the supplied
+	 * node.
+	 */
+	public Set<String> getAlgorithms(QueryModelNode node) {
+		NodeProfile profile = getProfile(node, false);
+		if (profile == null) {
+			return Collections.emptySet();
+		}
+		synchronized (profile.algorithms) {
+			return new LinkedHashSet<String>(profile.algorithms);
+		}
+	}
+
+	/**
+	 * Prints a tree representation of the {@link #getPlan() query plan}, in
+	 * which each tuple expression is annotated with its estimated and actual
+	 * result counts, the number of times it was evaluated, the time spent
+	 * evaluating it and the algorithms that were used.
+	 * 
+	 * @param statistics
+	 *        the statistics to estimate result counts with, may be
+	 *        <tt>null</tt>.
+	 */
+	public String printPlan(final EvaluationStatistics statistics) {
+		QueryModelTreePrinter printer = new QueryModelTreePrinter() {
+
+			@Override
+			protected String getSignature(QueryModelNode node) {
+				if (!(node instanceof TupleExpr)) {
+					return super.getSignature(node);
+				}
+
+				StringBuilder sb = new StringBuilder(super.getSignature(node));
+
+				Set<String> algorithms = getAlgorithms(node);
+				if (!algorithms.isEmpty()) {
+					sb.append(" (algorithm=");
+					appendAll(sb, algorithms);
+					sb.append(")");
+				}
+
+				sb.append(" [");
+				if (statistics != null) {
+					try {
+						double estimate = statistics.getCardinality((TupleExpr)node);
+						sb.append(String.format(Locale.ROOT, "resultsEstimated=%.0f, ", estimate));
+					}
+					catch (RuntimeException e) {
+						// the statistics do not support this kind of expression
+					}
+				}
+				sb.append("resultsActual=").append(getResultCount(node));
+				sb.append(", evaluations=").append(getEvaluationCount(node));
+				sb.append(String.format(Locale.ROOT, ", time=%.3fms]", getTime(node) / 1000000.0));
+				return sb.toString();
+			}
+		};
+		plan.visit(printer);
+		return printer.getTreeString();
+	}
+
+	private static void appendAll(StringBuilder sb, Set<String> values) {
+		boolean first = true;
+		for (String value : values) {
+			if (!first) {
+				sb.append(", ");
+			}
+			sb.append(value);
+			first = false;
+		}
+	}
+
+	private NodeProfile getProfile(QueryModelNode node, boolean create) {
+		synchronized (nodes) {
+			NodeProfile profile = nodes.get(node);
+			if (profile == null && create) {
+				profile = new NodeProfile();
+				nodes.put(node, profile);
+			}
+			return profile;
+		}
+	}
+
+	private static class NodeProfile {
+
+		final AtomicLong evaluations = new AtomicLong();
+
+		final AtomicLong results = new AtomicLong();
+
+		final AtomicLong time = new AtomicLong();
+
+		final Set<String> algorithms = new LinkedHashSet<String>();
+	}
+
+	private static class ProfilingIteration extends IterationWrapper<BindingSet, QueryEvaluationException> {
+
+		private final NodeProfile profile;
+
+		ProfilingIteration(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+				NodeProfile profile)
+		{
+			super(iter);
+			this.profile = profile;
+		}
+
+		@Override
+		public boolean hasNext()
+			throws QueryEvaluationException
+		{
+			long start = System.nanoTime();
+			try {
+				return super.hasNext();
+			}
+			finally {
+				profile.time.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		@Override
+		public BindingSet next()
+			throws QueryEvaluationException
+		{
+			long start = System.nanoTime();
+			try {
+				BindingSet next = super.next();
+				profile.results.incrementAndGet();
+				return next;
+			}
+			finally {
+				profile.time.addAndGet(System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,689 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BooleanLiteralImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.And;
+import org.openrdf.query.algebra.Bound;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.IsBNode;
+import org.openrdf.query.algebra.IsLiteral;
+import org.openrdf.query.algebra.IsResource;
+import org.openrdf.query.algebra.IsURI;
+import org.openrdf.query.algebra.Lang;
+import org.openrdf.query.algebra.LangMatches;
+import org.openrdf.query.algebra.Not;
+import org.openrdf.query.algebra.Or;
+import org.openrdf.query.algebra.Regex;
+import org.openrdf.query.algebra.SameTerm;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+/**
+ * Compiles value expressions into trees of {@link CompiledValueExpr}s. The
+ * most common operators in filter conditions are compiled into specialised
+ * nodes, so that evaluating them does not need to dispatch on the type of
+ * every node. Operators whose arguments are all constant are folded into
+ * constants, and regular expressions and language ranges that are constant
+ * are compiled once. All other operators are evaluated by the strategy.
+ * <p>
+ * An operator is only compiled when the strategy does not override its
+ * <tt>evaluate</tt> method, so that subclasses of
+ * {@link EvaluationStrategyImpl} keep their semantics. Strategies that
+ * override {@link EvaluationStrategyImpl#isTrue(ValueExpr, BindingSet)} have
+ * all their expressions evaluated by the strategy.
+ */
+class ValueExprCompiler {
+
+	/**
+	 * The value expression types whose evaluation is overridden, per subclass
+	 * of {@link EvaluationStrategyImpl}.
+	 */
+	private static final Map<Class<?>, Set<Class<?>>> OVERRIDDEN_TYPES = new WeakHashMap<Class<?>, Set<Class<?>>>();
+
+	private final EvaluationStrategyImpl strategy;
+
+	public ValueExprCompiler(EvaluationStrategyImpl strategy) {
+		this.strategy = strategy;
+	}
+
+	public CompiledValueExpr compile(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		if (expr == null) {
+			throw new IllegalArgumentException("expr must not be null");
+		}
+		if (isOverridden(ValueExpr.class)) {
+			return new Delegate(expr, strategy);
+		}
+
+		return compileNode(expr);
+	}
+
+	private CompiledValueExpr compileNode(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		if (expr instanceof ValueConstant && !isOverridden(ValueConstant.class)) {
+			return new Constant(((ValueConstant)expr).getValue());
+		}
+		else if (expr instanceof Var && !isOverridden(Var.class)) {
+			Var var = (Var)expr;
+			if (var.hasValue()) {
+				return new Constant(var.getValue());
+			}
+			return new VarLookup(var.getName());
+		}
+		else if (expr instanceof And && !isOverridden(And.class)) {
+			And and = (And)expr;
+			return fold(new AndExpr(compileNode(and.getLeftArg()), compileNode(and.getRightArg())));
+		}
+		else if (expr instanceof Or && !isOverridden(Or.class)) {
+			Or or = (Or)expr;
+			return fold(new OrExpr(compileNode(or.getLeftArg()), compileNode(or.getRightArg())));
+		}
+		else if (expr instanceof Not && !isOverridden(Not.class)) {
+			return fold(new NotExpr(compileNode(((Not)expr).getArg())));
+		}
+		else if (expr instanceof Compare && !isOverridden(Compare.class)) {
+			Compare compare = (Compare)expr;
+			return fold(new CompareExpr(compileNode(compare.getLeftArg()), compileNode(compare.getRightArg()),
+					compare.getOperator()));
+		}
+		else if (expr instanceof SameTerm && !isOverridden(SameTerm.class)) {
+			SameTerm sameTerm = (SameTerm)expr;
+			return fold(new SameTermExpr(compileNode(sameTerm.getLeftArg()),
+					compileNode(sameTerm.getRightArg())));
+		}
+		else if (expr instanceof Bound && !isOverridden(Bound.class)) {
+			return fold(new BoundExpr(compileNode(((Bound)expr).getArg())));
+		}
+		else if (expr instanceof IsURI && !isOverridden(IsURI.class)) {
+			return fold(new TypeTestExpr(compileNode(((IsURI)expr).getArg()), URI.class));
+		}
+		else if (expr instanceof IsBNode && !isOverridden(IsBNode.class)) {
+			return fold(new TypeTestExpr(compileNode(((IsBNode)expr).getArg()), BNode.class));
+		}
+		else if (expr instanceof IsLiteral && !isOverridden(IsLiteral.class)) {
+			return fold(new TypeTestExpr(compileNode(((IsLiteral)expr).getArg()), Literal.class));
+		}
+		else if (expr instanceof IsResource && !isOverridden(IsResource.class)) {
+			return fold(new TypeTestExpr(compileNode(((IsResource)expr).getArg()), Resource.class));
+		}
+		else if (expr instanceof Regex && !isOverridden(Regex.class)) {
+			return compileRegex((Regex)expr);
+		}
+		else if (expr instanceof LangMatches && !isOverridden(LangMatches.class)) {
+			return compileLangMatches((LangMatches)expr);
+		}
+
+		return new Delegate(expr, strategy);
+	}
+
+	private CompiledValueExpr compileRegex(Regex node)
+		throws QueryEvaluationException
+	{
+		CompiledValueExpr arg = compileNode(node.getArg());
+		CompiledValueExpr patternArg = compileNode(node.getPatternArg());
+		CompiledValueExpr flagsArg = node.getFlagsArg() == null ? null : compileNode(node.getFlagsArg());
+
+		if (patternArg.isConstant() && (flagsArg == null || flagsArg.isConstant())) {
+			try {
+				Value parg = patternArg.evaluate(EmptyBindingSet.getInstance());
+				Value farg = flagsArg == null ? null : flagsArg.evaluate(EmptyBindingSet.getInstance());
+
+				if (QueryEvaluationUtil.isSimpleLiteral(parg)
+						&& (farg == null || QueryEvaluationUtil.isSimpleLiteral(farg)))
+				{
+					String flags = farg == null ? "" : ((Literal)farg).getLabel();
+					Pattern pattern = QueryEvaluationUtil.compileRegex(((Literal)parg).getLabel(), flags);
+					return fold(new RegexExpr(arg, pattern));
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// evaluated for every solution, failing each time
+			}
+			catch (PatternSyntaxException e) {
+				// evaluated for every solution, failing each time
+			}
+		}
+
+		return new RegexExpr(arg, patternArg, flagsArg);
+	}
+
+	private CompiledValueExpr compileLangMatches(LangMatches node)
+		throws QueryEvaluationException
+	{
+		ValueExpr left = node.getLeftArg();
+
+		LabelExpr langTag;
+		if (left instanceof Lang && !isOverridden(Lang.class)) {
+			// avoid creating a literal for the language tag
+			langTag = new LangTagExpr(compileNode(((Lang)left).getArg()));
+		}
+		else {
+			langTag = new SimpleLabelExpr(compileNode(left));
+		}
+
+		CompiledValueExpr langRange = compileNode(node.getRightArg());
+		if (langRange.isConstant()) {
+			try {
+				Value range = langRange.evaluate(EmptyBindingSet.getInstance());
+				if (QueryEvaluationUtil.isSimpleLiteral(range)) {
+					return fold(new LangMatchesExpr(langTag, ((Literal)range).getLabel()));
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// evaluated for every solution, failing each time
+			}
+		}
+
+		return new LangMatchesExpr(langTag, langRange);
+	}
+
+	/**
+	 * Replaces a compiled operator by its value if all its arguments are
+	 * constant.
+	 */
+	private CompiledValueExpr fold(OperatorExpr expr)
+		throws QueryEvaluationException
+	{
+		for (CompiledValueExpr arg : expr.args) {
+			if (arg != null && !arg.isConstant()) {
+				return expr;
+			}
+		}
+
+		try {
+			return new Constant(expr.evaluate(EmptyBindingSet.getInstance()));
+		}
+		catch (ValueExprEvaluationException e) {
+			return new Failure();
+		}
+	}
+
+	/**
+	 * Checks whether the strategy overrides the evaluation of the supplied
+	 * type of value expression.
+	 */
+	private boolean isOverridden(Class<? extends ValueExpr> type) {
+		if (strategy.getClass() == EvaluationStrategyImpl.class) {
+			return false;
+		}
+
+		Set<Class<?>> overridden = getOverriddenTypes(strategy.getClass());
+		return overridden.contains(type) || overridden.contains(ValueExpr.class);
+	}
+
+	private static Set<Class<?>> getOverriddenTypes(Class<?> strategyClass) {
+		synchronized (OVERRIDDEN_TYPES) {
+			Set<Class<?>> overridden = OVERRIDDEN_TYPES.get(strategyClass);
+
+			if (overridden == null) {
+				overridden = new HashSet<Class<?>>();
+				for (Method method : strategyClass.getMethods()) {
+					Class<?>[] params = method.getParameterTypes();
+					if (params.length != 2 || !ValueExpr.class.isAssignableFrom(params[0])
+							|| params[1] != BindingSet.class
+							|| method.getDeclaringClass() == EvaluationStrategyImpl.class)
+					{
+						continue;
+					}
+					if (method.getName().equals("evaluate")) {
+						overridden.add(params[0]);
+					}
+					else if (method.getName().equals("isTrue")) {
+						// compiled conditions bypass isTrue, so nothing can be compiled
+						overridden.add(ValueExpr.class);
+					}
+				}
+				OVERRIDDEN_TYPES.put(strategyClass, overridden);
+			}
+
+			return overridden;
+		}
+	}
+
+	/*----------------*
+	 * Compiled nodes *
+	 *----------------*/
+
+	static class Delegate extends CompiledValueExpr {
+
+		private final ValueExpr expr;
+
+		private final EvaluationStrategy strategy;
+
+		public Delegate(ValueExpr expr, EvaluationStrategy strategy) {
+			this.expr = expr;
+			this.strategy = strategy;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			return strategy.evaluate(expr, bindings);
+		}
+
+		@Override
+		public boolean isTrue(BindingSet bindings)
+			throws QueryEvaluationException
+		{
+			return strategy.isTrue(expr, bindings);
+		}
+	}
+
+	private static class Constant extends CompiledValueExpr {
+
+		private final Value value;
+
+		public Constant(Value value) {
+			this.value = value;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings) {
+			return value;
+		}
+
+		@Override
+		public boolean isConstant() {
+			return true;
+		}
+	}
+
+	/**
+	 * A constant expression that always produces a type error.
+	 */
+	private static class Failure extends CompiledValueExpr {
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException
+		{
+			throw new ValueExprEvaluationException();
+		}
+
+		@Override
+		public boolean isConstant() {
+			return true;
+		}
+	}
+
+	private static class VarLookup extends CompiledValueExpr {
+
+		private final String name;
+
+		public VarLookup(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException
+		{
+			Value value = bindings.getValue(name);
+
+			if (value == null) {
+				throw new ValueExprEvaluationException();
+			}
+
+			return value;
+		}
+	}
+
+	private static abstract class OperatorExpr extends CompiledValueExpr {
+
+		protected final CompiledValueExpr[] args;
+
+		protected OperatorExpr(CompiledValueExpr... args) {
+			this.args = args;
+		}
+	}
+
+	private static class AndExpr extends OperatorExpr {
+
+		public AndExpr(CompiledValueExpr left, CompiledValueExpr right) {
+			super(left, right);
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			try {
+				Value leftValue = args[0].evaluate(bindings);
+				if (QueryEvaluationUtil.getEffectiveBooleanValue(leftValue) == false) {
+					return BooleanLiteralImpl.FALSE;
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// Result is 'false' when the right argument evaluates to 'false',
+				// failure otherwise.
+				Value rightValue = args[1].evaluate(bindings);
+				if (QueryEvaluationUtil.getEffectiveBooleanValue(rightValue) == false) {
+					return BooleanLiteralImpl.FALSE;
+				}
+				else {
+					throw new ValueExprEvaluationException();
+				}
+			}
+
+			Value rightValue = args[1].evaluate(bindings);
+			return BooleanLiteralImpl.valueOf(QueryEvaluationUtil.getEffectiveBooleanValue(rightValue));
+		}
+	}
+
+	private static class OrExpr extends OperatorExpr {
+
+		public OrExpr(CompiledValueExpr left, CompiledValueExpr right) {
+			super(left, right);
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			try {
+				Value leftValue = args[0].evaluate(bindings);
+				if (QueryEvaluationUtil.getEffectiveBooleanValue(leftValue) == true) {
+					return BooleanLiteralImpl.TRUE;
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// Result is 'true' when the right argument evaluates to 'true',
+				// failure otherwise.
+				Value rightValue = args[1].evaluate(bindings);
+				if (QueryEvaluationUtil.getEffectiveBooleanValue(rightValue) == true) {
+					return BooleanLiteralImpl.TRUE;
+				}
+				else {
+					throw new ValueExprEvaluationException();
+				}
+			}
+
+			Value rightValue = args[1].evaluate(bindings);
+			return BooleanLiteralImpl.valueOf(QueryEvaluationUtil.getEffectiveBooleanValue(rightValue));
+		}
+	}
+
+	private static class NotExpr extends OperatorExpr {
+
+		public NotExpr(CompiledValueExpr arg) {
+			super(arg);
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			Value argValue = args[0].evaluate(bindings);
+			return BooleanLiteralImpl.valueOf(!QueryEvaluationUtil.getEffectiveBooleanValue(argValue));
+		}
+	}
+
+	private static class CompareExpr extends OperatorExpr {
+
+		private final CompareOp operator;
+
+		public CompareExpr(CompiledValueExpr left, CompiledValueExpr right, CompareOp operator) {
+			super(left, right);
+			this.operator = operator;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			Value leftVal = args[0].evaluate(bindings);
+			Value rightVal = args[1].evaluate(bindings);
+
+			return BooleanLiteralImpl.valueOf(QueryEvaluationUtil.compare(leftVal, rightVal, operator));
+		}
+	}
+
+	private static class SameTermExpr extends OperatorExpr {
+
+		public SameTermExpr(CompiledValueExpr left, CompiledValueExpr right) {
+			super(left, right);
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			Value leftVal = args[0].evaluate(bindings);
+			Value rightVal = args[1].evaluate(bindings);
+
+			return BooleanLiteralImpl.valueOf(leftVal != null && leftVal.equals(rightVal));
+		}
+	}
+
+	private static class BoundExpr extends OperatorExpr {
+
+		public BoundExpr(CompiledValueExpr arg) {
+			super(arg);
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws QueryEvaluationException
+		{
+			try {
+				return BooleanLiteralImpl.valueOf(args[0].evaluate(bindings) != null);
+			}
+			catch (ValueExprEvaluationException e) {
+				return BooleanLiteralImpl.FALSE;
+			}
+		}
+	}
+
+	private static class TypeTestExpr extends OperatorExpr {
+
+		private final Class<? extends Value> type;
+
+		public TypeTestExpr(CompiledValueExpr arg, Class<? extends Value> type) {
+			super(arg);
+			this.type = type;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			return BooleanLiteralImpl.valueOf(type.isInstance(args[0].evaluate(bindings)));
+		}
+	}
+
+	private static class RegexExpr extends OperatorExpr {
+
+		private final Pattern pattern;
+
+		/**
+		 * Creates a regular expression match with a precompiled pattern.
+		 */
+		public RegexExpr(CompiledValueExpr arg, Pattern pattern) {
+			super(arg);
+			this.pattern = pattern;
+		}
+
+		/**
+		 * Creates a regular expression match that compiles the pattern for
+		 * every solution.
+		 */
+		public RegexExpr(CompiledValueExpr arg, CompiledValueExpr patternArg, CompiledValueExpr flagsArg) {
+			super(arg, patternArg, flagsArg);
+			this.pattern = null;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			Value arg = args[0].evaluate(bindings);
+
+			Pattern p = pattern;
+			if (p == null) {
+				Value parg = args[1].evaluate(bindings);
+				Value farg = args[2] == null ? null : args[2].evaluate(bindings);
+
+				if (!QueryEvaluationUtil.isSimpleLiteral(parg)
+						|| farg != null && !QueryEvaluationUtil.isSimpleLiteral(farg))
+				{
+					throw new ValueExprEvaluationException();
+				}
+
+				if (!QueryEvaluationUtil.isStringLiteral(arg)) {
+					throw new ValueExprEvaluationException();
+				}
+
+				String flags = farg == null ? "" : ((Literal)farg).getLabel();
+				p = QueryEvaluationUtil.compileRegex(((Literal)parg).getLabel(), flags);
+			}
+
+			if (QueryEvaluationUtil.isStringLiteral(arg)) {
+				return BooleanLiteralImpl.valueOf(p.matcher(((Literal)arg).getLabel()).find());
+			}
+
+			throw new ValueExprEvaluationException();
+		}
+	}
+
+	/**
+	 * Produces the string that is matched by a language match.
+	 */
+	private static abstract class LabelExpr {
+
+		protected final CompiledValueExpr arg;
+
+		protected LabelExpr(CompiledValueExpr arg) {
+			this.arg = arg;
+		}
+
+		public abstract String getLabel(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException;
+	}
+
+	/**
+	 * Produces the language tag of a literal, or an empty string for literals
+	 * without one.
+	 */
+	private static class LangTagExpr extends LabelExpr {
+
+		public LangTagExpr(CompiledValueExpr arg) {
+			super(arg);
+		}
+
+		@Override
+		public String getLabel(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			Value argValue = arg.evaluate(bindings);
+
+			if (argValue instanceof Literal) {
+				String langTag = ((Literal)argValue).getLanguage();
+				return langTag == null ? "" : langTag;
+			}
+
+			throw new ValueExprEvaluationException();
+		}
+	}
+
+	/**
+	 * Produces the label of a simple literal.
+	 */
+	private static class SimpleLabelExpr extends LabelExpr {
+
+		public SimpleLabelExpr(CompiledValueExpr arg) {
+			super(arg);
+		}
+
+		@Override
+		public String getLabel(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			Value argValue = arg.evaluate(bindings);
+
+			if (QueryEvaluationUtil.isSimpleLiteral(argValue)) {
+				return ((Literal)argValue).getLabel();
+			}
+
+			throw new ValueExprEvaluationException();
+		}
+	}
+
+	private static class LangMatchesExpr extends OperatorExpr {
+
+		private final LabelExpr langTag;
+
+		private final String langRange;
+
+		/**
+		 * Creates a language match with a constant language range.
+		 */
+		public LangMatchesExpr(LabelExpr langTag, String langRange) {
+			super(langTag.arg);
+			this.langTag = langTag;
+			this.langRange = langRange;
+		}
+
+		public LangMatchesExpr(LabelExpr langTag, CompiledValueExpr langRange) {
+			super(langTag.arg, langRange);
+			this.langTag = langTag;
+			this.langRange = null;
+		}
+
+		@Override
+		public Value evaluate(BindingSet bindings)
+			throws ValueExprEvaluationException, QueryEvaluationException
+		{
+			String tag = langTag.getLabel(bindings);
+
+			String range = langRange;
+			if (range == null) {
+				Value rangeValue = args[1].evaluate(bindings);
+				if (!QueryEvaluationUtil.isSimpleLiteral(rangeValue)) {
+					throw new ValueExprEvaluationException();
+				}
+				range = ((Literal)rangeValue).getLabel();
+			}
+
+			return BooleanLiteralImpl.valueOf(QueryEvaluationUtil.langMatches(tag, range));
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+import org.openrdf.query.algebra.helpers.VarNameCollector;
+
+/**
+ * Nested loop join that consumes the results of its left argument in blocks,
+ * similar to the block-wise evaluation of SERVICE joins. Within a block, the
+ * right argument is still evaluated once for each distinct combination of
+ * values of the variables it uses, so evaluations are only saved for left
+ * results that repeat a combination of the same block. These lookups are done
+ * in value order to improve the locality of index access. The results are
+ * returned in the same order as by {@link JoinIterator}.
+ * <p>
+ * The right results of a block are buffered until the block has been joined.
+ * If they exceed the iteration cache threshold or the
+ * {@link QueryMemoryBudget}, the buffer is dropped and the join falls back to
+ * evaluating the right argument for each left result, like
+ * {@link JoinIterator}, for the rest of the iteration.
+ */
+public class BatchingJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of left results that are processed as a block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final TupleExpr rightArg;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+	private final int blockSize;
+
+	/**
+	 * The maximum number of right results that are buffered for a block, or
+	 * <tt>0</tt> for no limit.
+	 */
+	private final long maxBufferedResults;
+
+	private final QueryMemoryBudget memoryBudget;
+
+	/**
+	 * The names of the variables that the evaluation of the right argument
+	 * depends on.
+	 */
+	private final String[] lookupNames;
+
+	private final List<BindingSet> block;
+
+	private final Map<BindingSetHashKey, List<BindingSet>> lookupResults;
+
+	private Iterator<BindingSet> blockIter;
+
+	private BindingSet currentLeft;
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+
+	/**
+	 * Set when the right results of a block did not fit in the buffer, after
+	 * which the right argument is evaluated for each left result.
+	 */
+	private boolean nestedLoop;
+
+	private long bufferedResults;
+
+	private long reservedBytes;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public BatchingJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings, int blockSize)
+		throws QueryEvaluationException
+	{
+		this(strategy, join, bindings, blockSize, 0, null);
+	}
+
+	/**
+	 * @param maxBufferedResults
+	 *        the maximum number of right results that are buffered for a
+	 *        block, or <tt>0</tt> for no limit.
+	 * @param memoryBudget
+	 *        the budget to reserve the memory of the buffered right results
+	 *        from, may be <tt>null</tt>.
+	 */
+	public BatchingJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings, int blockSize,
+			long maxBufferedResults, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, blockSize, maxBufferedResults,
+				memoryBudget);
+	}
+
+	public BatchingJoinIteration(EvaluationStrategy strategy, TupleExpr leftArg, TupleExpr rightArg,
+			BindingSet bindings, int blockSize)
+		throws QueryEvaluationException
+	{
+		this(strategy, leftArg, rightArg, bindings, blockSize, 0, null);
+	}
+
+	public BatchingJoinIteration(EvaluationStrategy strategy, TupleExpr leftArg, TupleExpr rightArg,
+			BindingSet bindings, int blockSize, long maxBufferedResults, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this.strategy = strategy;
+		this.rightArg = rightArg;
+		this.blockSize = blockSize;
+		this.maxBufferedResults = maxBufferedResults;
+		this.memoryBudget = memoryBudget;
+
+		Set<String> varNames = VarNameCollector.process(rightArg);
+		// binding names of e.g. a BindingSetAssignment do not occur as variables
+		varNames.addAll(rightArg.getBindingNames());
+		lookupNames = varNames.toArray(new String[varNames.size()]);
+
+		block = new ArrayList<BindingSet>(blockSize);
+		lookupResults = new HashMap<BindingSetHashKey, List<BindingSet>>();
+		blockIter = block.iterator();
+
+		leftIter = strategy.evaluate(leftArg, bindings);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		while (true) {
+			if (rightIter != null) {
+				if (rightIter.hasNext()) {
+					return join(currentLeft, rightIter.next());
+				}
+				rightIter.close();
+				rightIter = null;
+			}
+
+			if (blockIter.hasNext()) {
+				currentLeft = blockIter.next();
+				if (nestedLoop) {
+					rightIter = strategy.evaluate(rightArg, project(currentLeft));
+				}
+				else {
+					List<BindingSet> results = lookupResults.get(BindingSetHashKey.create(lookupNames,
+							currentLeft));
+					rightIter = new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+							results.iterator());
+				}
+			}
+			else if (!nextBlock()) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next block of left results and, unless the join has fallen
+	 * back to a nested loop, evaluates the right argument for it.
+	 * 
+	 * @return <tt>false</tt> if the left argument has no more results.
+	 */
+	private boolean nextBlock()
+		throws QueryEvaluationException
+	{
+		block.clear();
+		clearLookupResults();
+		currentLeft = null;
+
+		Map<BindingSetHashKey, BindingSet> lookups = new HashMap<BindingSetHashKey, BindingSet>();
+		while (block.size() < blockSize && leftIter.hasNext()) {
+			BindingSet left = leftIter.next();
+			block.add(left);
+
+			if (!nestedLoop) {
+				BindingSetHashKey key = BindingSetHashKey.create(lookupNames, left);
+				if (!lookups.containsKey(key)) {
+					lookups.put(key, project(left));
+				}
+			}
+		}
+
+		if (block.isEmpty()) {
+			return false;
+		}
+
+		blockIter = block.iterator();
+		if (nestedLoop) {
+			return true;
+		}
+
+		List<Map.Entry<BindingSetHashKey, BindingSet>> sortedLookups = new ArrayList<Map.Entry<BindingSetHashKey, BindingSet>>(
+				lookups.entrySet());
+		Collections.sort(sortedLookups, new LookupComparator());
+
+		for (Map.Entry<BindingSetHashKey, BindingSet> lookup : sortedLookups) {
+			List<BindingSet> results = new ArrayList<BindingSet>();
+			CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(rightArg,
+					lookup.getValue());
+			try {
+				while (iter.hasNext()) {
+					BindingSet result = iter.next();
+					if (!reserve(result)) {
+						// the right results of this block do not fit in memory
+						clearLookupResults();
+						nestedLoop = true;
+						return true;
+					}
+					results.add(result);
+				}
+			}
+			finally {
+				iter.close();
+			}
+			lookupResults.put(lookup.getKey(), results);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Accounts for a right result that is added to the buffer.
+	 * 
+	 * @return <tt>false</tt> if the result exceeds the buffer's limits.
+	 */
+	private boolean reserve(BindingSet result) {
+		bufferedResults++;
+		if (maxBufferedResults > 0 && bufferedResults > maxBufferedResults) {
+			return false;
+		}
+		if (memoryBudget != null) {
+			long size = QueryMemoryBudget.estimateSize(result);
+			if (!memoryBudget.tryReserve(size)) {
+				return false;
+			}
+			reservedBytes += size;
+		}
+		return true;
+	}
+
+	private void clearLookupResults() {
+		lookupResults.clear();
+		bufferedResults = 0;
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+		}
+		reservedBytes = 0;
+	}
+
+	/**
+	 * Restricts a left result to the bindings that the right argument depends
+	 * on.
+	 */
+	private BindingSet project(BindingSet left) {
+		QueryBindingSet result = new QueryBindingSet(lookupNames.length);
+		for (String name : lookupNames) {
+			Value value = left.getValue(name);
+			if (value != null) {
+				result.addBinding(name, value);
+			}
+		}
+		return result;
+	}
+
+	private BindingSet join(BindingSet left, BindingSet right) {
+		QueryBindingSet result = new QueryBindingSet(left);
+		for (String name : right.getBindingNames()) {
+			if (!result.hasBinding(name)) {
+				Value value = right.getValue(name);
+				if (value != null) {
+					result.addBinding(name, value);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		super.handleClose();
+
+		try {
+			if (rightIter != null) {
+				rightIter.close();
+				rightIter = null;
+			}
+		}
+		finally {
+			leftIter.close();
+			block.clear();
+			clearLookupResults();
+		}
+	}
+
+	/*------------------------------*
+	 * Inner class LookupComparator *
+	 *------------------------------*/
+
+	/**
+	 * Orders lookups on the values of the lookup variables, unbound variables
+	 * first.
+	 */
+	private class LookupComparator implements Comparator<Map.Entry<BindingSetHashKey, BindingSet>> {
+
+		private final ValueComparator cmp = new ValueComparator();
+
+		public int compare(Map.Entry<BindingSetHashKey, BindingSet> o1,
+				Map.Entry<BindingSetHashKey, BindingSet> o2)
+		{
+			for (String name : lookupNames) {
+				Value v1 = o1.getValue().getValue(name);
+				Value v2 = o2.getValue().getValue(name);
+
+				if (v1 == null || v2 == null) {
+					if (v1 != v2) {
+						return v1 == null ? -1 : 1;
+					}
+				}
+				else {
+					int result = cmp.compare(v1, v2);
+					if (result != 0) {
+						return result;
+					}
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -16,6 +16,9 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.ConvertingIteration;
 
@@ -25,24 +28,39 @@ import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.AggregateOperator;
 import org.openrdf.query.algebra.Extension;
 import org.openrdf.query.algebra.ExtensionElem;
-import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.impl.CompiledValueExpr;
 
 public class ExtensionIterator extends ConvertingIteration<BindingSet, BindingSet, QueryEvaluationException> {
 
-	private final Extension extension;
+	/**
+	 * The names of the non-aggregate extension elements.
+	 */
+	private final String[] names;
 
-	private final EvaluationStrategy strategy;
+	/**
+	 * The compiled expressions of the non-aggregate extension elements.
+	 */
+	private final CompiledValueExpr[] exprs;
 
 	public ExtensionIterator(Extension extension,
 			CloseableIteration<BindingSet, QueryEvaluationException> iter, EvaluationStrategy strategy)
 		throws QueryEvaluationException
 	{
 		super(iter);
-		this.extension = extension;
-		this.strategy = strategy;
+
+		List<String> names = new ArrayList<String>();
+		List<CompiledValueExpr> exprs = new ArrayList<CompiledValueExpr>();
+		for (ExtensionElem extElem : extension.getElements()) {
+			if (!(extElem.getExpr() instanceof AggregateOperator)) {
+				names.add(extElem.getName());
+				exprs.add(CompiledValueExpr.compile(extElem.getExpr(), strategy));
+			}
+		}
+		this.names = names.toArray(new String[names.size()]);
+		this.exprs = exprs.toArray(new CompiledValueExpr[exprs.size()]);
 	}
 
 	@Override
@@ -51,25 +69,22 @@ public class ExtensionIterator extends ConvertingIteration<BindingSet, BindingSe
 	{
 		QueryBindingSet targetBindings = new QueryBindingSet(sourceBindings);
 
-		for (ExtensionElem extElem : extension.getElements()) {
-			ValueExpr expr = extElem.getExpr();
-			if (!(expr instanceof AggregateOperator)) {
-				try {
-					// we evaluate each extension element over the targetbindings, so that bindings from
-					// a previous extension element in this same extension can be used by other extension elements. 
-					// e.g. if a projection contains (?a + ?b as ?c) (?c * 2 as ?d)
-					Value targetValue = strategy.evaluate(extElem.getExpr(), targetBindings);
+		for (int i = 0; i < exprs.length; i++) {
+			try {
+				// we evaluate each extension element over the targetbindings, so that bindings from
+				// a previous extension element in this same extension can be used by other extension elements. 
+				// e.g. if a projection contains (?a + ?b as ?c) (?c * 2 as ?d)
+				Value targetValue = exprs[i].evaluate(targetBindings);
 
-					if (targetValue != null) {
-						// Potentially overwrites bindings from super
-						targetBindings.setBinding(extElem.getName(), targetValue);
-					}
-				}
-				catch (ValueExprEvaluationException e) {
-					// silently ignore type errors in extension arguments. They should not cause the 
-					// query to fail but just result in no additional binding.
+				if (targetValue != null) {
+					// Potentially overwrites bindings from super
+					targetBindings.setBinding(names[i], targetValue);
 				}
 			}
+			catch (ValueExprEvaluationException e) {
+				// silently ignore type errors in extension arguments. They should not cause the 
+				// query to fail but just result in no additional binding.
+			}
 		}
 
 		return targetBindings;
@@ -29,6 +29,7 @@ import org.openrdf.query.algebra.SubQueryValueOperator;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.impl.CompiledValueExpr;
 
 public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationException> {
 
@@ -38,7 +39,7 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 
 	private final Filter filter;
 
-	private final EvaluationStrategy strategy;
+	private final CompiledValueExpr condition;
 
 	/**
 	 * The set of binding names that are "in scope" for the filter. The filter
@@ -47,6 +48,8 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 	 */
 	private final Set<String> scopeBindingNames;
 
+	private final boolean partOfSubQuery;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -57,9 +60,9 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 	{
 		super(iter);
 		this.filter = filter;
-		this.strategy = strategy;
+		this.condition = CompiledValueExpr.compile(filter.getCondition(), strategy);
 		this.scopeBindingNames = filter.getBindingNames();
-		
+		this.partOfSubQuery = isPartOfSubQuery(filter);
 	}
 
 	/*---------*
@@ -85,17 +88,18 @@ public class FilterIterator extends FilterIteration<BindingSet, QueryEvaluationE
 		throws QueryEvaluationException
 	{
 		try {
-			// Limit the bindings to the ones that are in scope for this filter
-			QueryBindingSet scopeBindings = new QueryBindingSet(bindings);
-			
 			// FIXME J1 scopeBindingNames should include bindings from superquery if the filter
 			// is part of a subquery. This is a workaround: we should fix the settings of scopeBindingNames, 
 			// rather than skipping the limiting of bindings.
-			if (!isPartOfSubQuery(filter)) {
-				scopeBindings.retainAll(scopeBindingNames);
+			if (partOfSubQuery || scopeBindingNames.containsAll(bindings.getBindingNames())) {
+				return condition.isTrue(bindings);
 			}
 
-			return strategy.isTrue(filter.getCondition(), scopeBindings);
+			// Limit the bindings to the ones that are in scope for this filter
+			QueryBindingSet scopeBindings = new QueryBindingSet(bindings);
+			scopeBindings.retainAll(scopeBindingNames);
+
+			return condition.isTrue(scopeBindings);
 		}
 		catch (ValueExprEvaluationException e) {
 			// failed to evaluate condition
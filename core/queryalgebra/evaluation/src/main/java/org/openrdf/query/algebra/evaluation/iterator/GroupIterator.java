@@ -19,20 +19,29 @@ package org.openrdf.query.algebra.evaluation.iterator;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.LookAheadIteration;
 import info.aduna.lang.ObjectUtil;
 
 import org.openrdf.model.Literal;
@@ -46,23 +55,52 @@ import org.openrdf.query.algebra.AggregateOperator;
 import org.openrdf.query.algebra.AggregateOperatorBase;
 import org.openrdf.query.algebra.Avg;
 import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Distinct;
+import org.openrdf.query.algebra.Filter;
 import org.openrdf.query.algebra.Group;
 import org.openrdf.query.algebra.GroupConcat;
 import org.openrdf.query.algebra.GroupElem;
 import org.openrdf.query.algebra.MathExpr.MathOp;
 import org.openrdf.query.algebra.Max;
 import org.openrdf.query.algebra.Min;
+import org.openrdf.query.algebra.Order;
+import org.openrdf.query.algebra.OrderElem;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.Reduced;
 import org.openrdf.query.algebra.Sample;
+import org.openrdf.query.algebra.Slice;
 import org.openrdf.query.algebra.Sum;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.UnaryTupleOperator;
 import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.BindingSetSpillFile;
 import org.openrdf.query.algebra.evaluation.util.MathUtil;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.query.algebra.evaluation.util.ValueComparator;
 import org.openrdf.query.impl.EmptyBindingSet;
 
 /**
+ * Groups the solutions of its argument and computes the aggregates of each
+ * group.
+ * <p>
+ * Groups are aggregated in a hash table. When a sync threshold has been set and
+ * the number of groups exceeds it, the solutions of groups that are not yet in
+ * the table are partitioned on the hash of their grouping key into temporary
+ * files, and each partition is aggregated on its own once the input has been
+ * consumed. The same happens when a {@link QueryMemoryBudget} is supplied and
+ * the groups exhaust it. When the argument is known to be ordered on the
+ * grouping keys, each group is aggregated and returned as soon as its last
+ * solution has been read; groups that are sorted as equal and do not fit in
+ * memory together are partitioned in the same way. When an executor is
+ * supplied, no sync threshold or memory budget has been set and all
+ * aggregates can be merged, batches of solutions are pre-aggregated in
+ * parallel and the partial results merged.
+ * 
  * @author David Huynh
  * @author Arjohn Kampman
  * @author Jeen Broekstra
@@ -74,6 +112,28 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The number of partitions that are created when the groups no longer fit
+	 * in memory.
+	 */
+	public static final int DEFAULT_PARTITION_COUNT = 32;
+
+	/**
+	 * The number of solutions that are pre-aggregated by a single parallel task.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	/**
+	 * The maximum number of times a partition is repartitioned before its
+	 * groups are aggregated in memory regardless of the sync threshold.
+	 */
+	private static final int MAX_PARTITION_DEPTH = 4;
+
+	/**
+	 * The maximum number of batches that are pre-aggregated at the same time.
+	 */
+	private static final int MAX_PENDING_BATCHES = 16;
+
 	private final ValueFactoryImpl vf = ValueFactoryImpl.getInstance();
 
 	private final EvaluationStrategy strategy;
@@ -93,10 +153,25 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	/**
 	 * Number of items cached before internal collections are synced to disk. If
 	 * set to 0, no disk-syncing is done and all internal caching is kept in
+	 * memory. This is also the maximum number of groups that are kept in
 	 * memory.
 	 */
 	private final long iterationCacheSyncThreshold;
 
+	/**
+	 * The executor that runs parallel pre-aggregation tasks, or <tt>null</tt>
+	 * to aggregate in the calling thread only.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The budget that limits the memory used for the groups, may be
+	 * <tt>null</tt>.
+	 */
+	private final QueryMemoryBudget memoryBudget;
+
+	private volatile CloseableIteration<BindingSet, QueryEvaluationException> results;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -110,11 +185,27 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	public GroupIterator(EvaluationStrategy strategy, Group group, BindingSet parentBindings,
 			long iterationCacheSyncThreshold)
 		throws QueryEvaluationException
+	{
+		this(strategy, group, parentBindings, iterationCacheSyncThreshold, null);
+	}
+
+	public GroupIterator(EvaluationStrategy strategy, Group group, BindingSet parentBindings,
+			long iterationCacheSyncThreshold, Executor executor)
+		throws QueryEvaluationException
+	{
+		this(strategy, group, parentBindings, iterationCacheSyncThreshold, executor, null);
+	}
+
+	public GroupIterator(EvaluationStrategy strategy, Group group, BindingSet parentBindings,
+			long iterationCacheSyncThreshold, Executor executor, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
 	{
 		this.strategy = strategy;
 		this.group = group;
 		this.parentBindings = parentBindings;
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
+		this.executor = executor;
+		this.memoryBudget = memoryBudget;
 
 		if (this.iterationCacheSyncThreshold > 0) {
 			try {
@@ -142,12 +233,12 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		if (!initialized) {
 			synchronized (lock) {
 				if (!initialized) {
-					super.setIterator(createIterator());
+					results = createIteration();
 					initialized = true;
 				}
 			}
 		}
-		return super.hasNext();
+		return !isClosed() && results.hasNext();
 	}
 
 	@Override
@@ -157,21 +248,36 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		if (!initialized) {
 			synchronized (lock) {
 				if (!initialized) {
-					super.setIterator(createIterator());
+					results = createIteration();
 					initialized = true;
 				}
 			}
 		}
-		return super.next();
+		if (isClosed()) {
+			throw new NoSuchElementException("Iteration has been closed");
+		}
+		return results.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
 	}
 
 	@Override
 	protected void handleClose()
 		throws QueryEvaluationException
 	{
-		super.handleClose();
-		if (this.db != null) {
-			this.db.close();
+		try {
+			super.handleClose();
+			if (results != null) {
+				results.close();
+			}
+		}
+		finally {
+			if (this.db != null) {
+				this.db.close();
+			}
 		}
 	}
 
@@ -184,51 +290,78 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		}
 	}
 
-	private Iterator<BindingSet> createIterator()
+	private CloseableIteration<BindingSet, QueryEvaluationException> createIteration()
 		throws QueryEvaluationException
 	{
-		Collection<Entry> entries = buildEntries();
-		Set<BindingSet> bindingSets = createSet("bindingsets");
+		CloseableIteration<BindingSet, QueryEvaluationException> iter;
+		iter = strategy.evaluate(group.getArg(), parentBindings);
 
-		for (Entry entry : entries) {
-			QueryBindingSet sol = new QueryBindingSet(parentBindings);
+		if (isOrderedOnGroupKeys()) {
+			return new StreamingGroupIteration(iter);
+		}
 
-			for (String name : group.getGroupBindingNames()) {
-				BindingSet prototype = entry.getPrototype();
-				if (prototype != null) {
-					Value value = prototype.getValue(name);
-					if (value != null) {
-						// Potentially overwrites bindings from super
-						sol.setBinding(name, value);
-					}
-				}
+		try {
+			if (!iter.hasNext()) {
+				// no solutions, still need to process aggregates to produce a
+				// zero-result.
+				Entry entry = new Entry(EmptyBindingSet.getInstance());
+				return new GroupedIteration(Collections.singletonList(entry), null, 0, 0);
 			}
 
-			entry.bindSolution(sol);
-
-			bindingSets.add(sol);
+			if (executor != null && iterationCacheSyncThreshold <= 0 && memoryBudget == null && isMergeable()) {
+				return new GroupedIteration(buildEntriesInParallel(iter), null, 0, 0);
+			}
+		}
+		catch (QueryEvaluationException e) {
+			iter.close();
+			throw e;
 		}
 
-		return bindingSets.iterator();
+		return aggregate(iter, 0);
 	}
 
-	private Collection<Entry> buildEntries()
+	private BindingSet createSolution(Entry entry)
 		throws QueryEvaluationException
 	{
-		CloseableIteration<BindingSet, QueryEvaluationException> iter;
-		iter = strategy.evaluate(group.getArg(), parentBindings);
-
-		try {
-			Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+		QueryBindingSet sol = new QueryBindingSet(parentBindings);
 
-			if (!iter.hasNext()) {
-				// no solutions, still need to process aggregates to produce a
-				// zero-result.
-				entries.put(new Key(EmptyBindingSet.getInstance()), new Entry(EmptyBindingSet.getInstance()));
+		for (String name : group.getGroupBindingNames()) {
+			BindingSet prototype = entry.getPrototype();
+			if (prototype != null) {
+				Value value = prototype.getValue(name);
+				if (value != null) {
+					// Potentially overwrites bindings from super
+					sol.setBinding(name, value);
+				}
 			}
+		}
+
+		entry.bindSolution(sol);
 
-			// long count = 0;
+		return sol;
+	}
 
+	/**
+	 * Aggregates the supplied solutions in a hash table, spilling the solutions
+	 * of groups that do not fit in memory to partition files.
+	 * 
+	 * @param iter
+	 *        The solutions to aggregate, closed by this method.
+	 * @param depth
+	 *        The number of times the solutions have already been partitioned.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> aggregate(
+			CloseableIteration<BindingSet, QueryEvaluationException> iter, int depth)
+		throws QueryEvaluationException
+	{
+		Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+		BindingSetSpillFile[] partitions = null;
+		long reservedBytes = 0;
+
+		boolean spill = (iterationCacheSyncThreshold > 0 || memoryBudget != null)
+				&& depth < MAX_PARTITION_DEPTH;
+
+		try {
 			while (iter.hasNext()) {
 				BindingSet sol;
 				try {
@@ -241,19 +374,234 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 				Entry entry = entries.get(key);
 
 				if (entry == null) {
+					long size = memoryBudget == null ? 0 : QueryMemoryBudget.estimateSize(sol);
+					if (spill && (partitions != null || !fitsInMemory(entries.size(), size))) {
+						// the group does not fit in memory, aggregate it later
+						if (partitions == null) {
+							partitions = new BindingSetSpillFile[DEFAULT_PARTITION_COUNT];
+						}
+						int partition = getPartition(key, depth);
+						if (partitions[partition] == null) {
+							partitions[partition] = new BindingSetSpillFile();
+						}
+						partitions[partition].add(sol);
+						continue;
+					}
+
+					if (!spill && memoryBudget != null) {
+						memoryBudget.reserve(size);
+					}
+					reservedBytes += size;
+
 					entry = new Entry(sol);
+					entry.reservedBytes = size;
 					entries.put(key, entry);
 				}
 
 				entry.addSolution(sol);
 			}
+		}
+		catch (QueryEvaluationException e) {
+			closePartitions(partitions);
+			release(reservedBytes);
+			throw e;
+		}
+		finally {
+			iter.close();
+		}
+
+		return new GroupedIteration(entries.values(), partitions, depth, reservedBytes);
+	}
+
+	/**
+	 * Checks whether a new group of the supplied size can be kept in memory,
+	 * reserving its memory from the budget if so.
+	 */
+	private boolean fitsInMemory(int groupCount, long size) {
+		if (iterationCacheSyncThreshold > 0 && groupCount >= iterationCacheSyncThreshold) {
+			return false;
+		}
+		return memoryBudget == null || memoryBudget.tryReserve(size);
+	}
+
+	private void release(long reservedBytes) {
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+		}
+	}
+
+	private int getPartition(Key key, int depth) {
+		// spread the keys of a partition differently at each depth
+		int hash = key.hashCode() * (0x9E3779B1 + 2 * depth);
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % DEFAULT_PARTITION_COUNT;
+	}
+
+	private void closePartitions(BindingSetSpillFile[] partitions) {
+		if (partitions != null) {
+			for (BindingSetSpillFile partition : partitions) {
+				if (partition != null) {
+					partition.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pre-aggregates batches of solutions in parallel tasks and merges the
+	 * partial aggregates of each batch.
+	 */
+	private Collection<Entry> buildEntriesInParallel(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+		throws QueryEvaluationException
+	{
+		Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+		LinkedList<FutureTask<Map<Key, Entry>>> pending = new LinkedList<FutureTask<Map<Key, Entry>>>();
+
+		try {
+			List<BindingSet> batch = new ArrayList<BindingSet>(DEFAULT_BATCH_SIZE);
+
+			while (iter.hasNext()) {
+				BindingSet sol;
+				try {
+					sol = iter.next();
+				}
+				catch (NoSuchElementException e) {
+					break; // closed
+				}
+				batch.add(sol);
+
+				if (batch.size() >= DEFAULT_BATCH_SIZE) {
+					FutureTask<Map<Key, Entry>> task = new FutureTask<Map<Key, Entry>>(new BatchTask(batch));
+					pending.add(task);
+					executor.execute(task);
+					batch = new ArrayList<BindingSet>(DEFAULT_BATCH_SIZE);
+
+					if (pending.size() >= MAX_PENDING_BATCHES) {
+						merge(entries, pending.removeFirst());
+					}
+				}
+			}
+
+			// the last batch is aggregated in this thread, but merged after the
+			// batches before it so that the aggregates see the input order
+			Map<Key, Entry> last = new BatchTask(batch).call();
+
+			while (!pending.isEmpty()) {
+				merge(entries, pending.removeFirst());
+			}
+
+			merge(entries, last);
 
 			return entries.values();
 		}
 		finally {
+			for (FutureTask<Map<Key, Entry>> task : pending) {
+				task.cancel(false);
+			}
 			iter.close();
 		}
+	}
+
+	private void merge(Map<Key, Entry> entries, FutureTask<Map<Key, Entry>> task)
+		throws QueryEvaluationException
+	{
+		// runs the task in this thread if no executor thread has started it
+		task.run();
+
+		try {
+			merge(entries, task.get());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryEvaluationException(e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof QueryEvaluationException) {
+				throw (QueryEvaluationException)cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new QueryEvaluationException(cause);
+		}
+	}
+
+	private void merge(Map<Key, Entry> entries, Map<Key, Entry> partial)
+		throws QueryEvaluationException
+	{
+		for (Map.Entry<Key, Entry> e : partial.entrySet()) {
+			Entry entry = entries.get(e.getKey());
+			if (entry == null) {
+				entries.put(e.getKey(), e.getValue());
+			}
+			else {
+				entry.merge(e.getValue());
+			}
+		}
+	}
 
+	/**
+	 * Checks whether the partial aggregates of different batches can be merged,
+	 * which is not the case for DISTINCT aggregates.
+	 */
+	private boolean isMergeable() {
+		for (GroupElem ge : group.getGroupElements()) {
+			AggregateOperator operator = ge.getOperator();
+			if (!(operator instanceof AggregateOperatorBase) || ((AggregateOperatorBase)operator).isDistinct()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the argument of the group produces its solutions ordered
+	 * on the grouping keys, which is the case when it is ordered on (at least)
+	 * the grouping variables.
+	 */
+	private boolean isOrderedOnGroupKeys() {
+		Set<String> groupNames = group.getGroupBindingNames();
+		if (groupNames.isEmpty()) {
+			return false;
+		}
+
+		TupleExpr arg = group.getArg();
+		while (!(arg instanceof Order)) {
+			if (arg instanceof Projection) {
+				for (ProjectionElem pe : ((Projection)arg).getProjectionElemList().getElements()) {
+					if (groupNames.contains(pe.getTargetName()) && !pe.getTargetName().equals(pe.getSourceName())) {
+						return false;
+					}
+				}
+				arg = ((Projection)arg).getArg();
+			}
+			else if (arg instanceof Filter || arg instanceof Distinct || arg instanceof Reduced
+					|| arg instanceof Slice)
+			{
+				arg = ((UnaryTupleOperator)arg).getArg();
+			}
+			else {
+				return false;
+			}
+		}
+
+		List<OrderElem> elements = ((Order)arg).getElements();
+		if (elements.size() < groupNames.size()) {
+			return false;
+		}
+
+		Set<String> orderNames = new HashSet<String>();
+		for (OrderElem element : elements.subList(0, groupNames.size())) {
+			if (!(element.getExpr() instanceof Var)) {
+				return false;
+			}
+			orderNames.add(((Var)element.getExpr()).getName());
+		}
+		return orderNames.equals(groupNames);
 	}
 
 	/**
@@ -306,10 +654,281 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		}
 	}
 
+	/**
+	 * Returns the solutions of a set of aggregated groups, followed by those of
+	 * the groups in the partition files, if any.
+	 */
+	private class GroupedIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final Iterator<Entry> entries;
+
+		private final BindingSetSpillFile[] partitions;
+
+		private final int depth;
+
+		private int partition = -1;
+
+		private CloseableIteration<BindingSet, QueryEvaluationException> partitionIter;
+
+		/**
+		 * The memory reserved for the groups in memory that have not been
+		 * returned yet.
+		 */
+		private long reservedBytes;
+
+		public GroupedIteration(Collection<Entry> entries, BindingSetSpillFile[] partitions, int depth,
+				long reservedBytes)
+		{
+			this.entries = entries.iterator();
+			this.partitions = partitions;
+			this.depth = depth;
+			this.reservedBytes = reservedBytes;
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			if (entries.hasNext()) {
+				Entry entry = entries.next();
+				release(entry.reservedBytes);
+				reservedBytes -= entry.reservedBytes;
+				return createSolution(entry);
+			}
+
+			while (partitions != null) {
+				if (partitionIter != null && partitionIter.hasNext()) {
+					return partitionIter.next();
+				}
+
+				if (partitionIter != null) {
+					partitionIter.close();
+					partitionIter = null;
+					partitions[partition].close();
+				}
+
+				do {
+					partition++;
+				}
+				while (partition < partitions.length && partitions[partition] == null);
+
+				if (partition >= partitions.length) {
+					break;
+				}
+
+				partitionIter = aggregate(partitions[partition].iterator(), depth + 1);
+			}
+
+			return null;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			try {
+				super.handleClose();
+				if (partitionIter != null) {
+					partitionIter.close();
+				}
+			}
+			finally {
+				closePartitions(partitions);
+				release(reservedBytes);
+				reservedBytes = 0;
+			}
+		}
+	}
+
+	/**
+	 * Aggregates solutions that are ordered on the grouping keys, returning
+	 * each group once a solution with a different key is read. Solutions whose
+	 * keys are not equal but are sorted as equal are kept together until the
+	 * next different key. When these groups do not fit in memory, the solutions
+	 * of the groups that are not yet in memory are partitioned into temporary
+	 * files, which are aggregated after the groups in memory are returned.
+	 */
+	private class StreamingGroupIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+
+		private final ValueComparator comparator = new ValueComparator();
+
+		private Map<Key, Entry> current = new LinkedHashMap<Key, Entry>();
+
+		private BindingSet currentKey;
+
+		private Iterator<Entry> completed = Collections.<Entry> emptyList().iterator();
+
+		/**
+		 * The partitions of the groups of the current key that did not fit in
+		 * memory, if any.
+		 */
+		private BindingSetSpillFile[] partitions;
+
+		/**
+		 * The groups of the previous key that did not fit in memory.
+		 */
+		private CloseableIteration<BindingSet, QueryEvaluationException> spilled;
+
+		private boolean empty = true;
+
+		/**
+		 * The memory reserved for the groups of the current key.
+		 */
+		private long reservedBytes;
+
+		public StreamingGroupIteration(CloseableIteration<BindingSet, QueryEvaluationException> iter) {
+			this.iter = iter;
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			while (!completed.hasNext()) {
+				if (spilled != null) {
+					if (spilled.hasNext()) {
+						return spilled.next();
+					}
+					spilled.close();
+					spilled = null;
+				}
+
+				if (!iter.hasNext()) {
+					if (empty) {
+						// no solutions, still need to process aggregates to produce
+						// a zero-result.
+						empty = false;
+						Entry entry = new Entry(EmptyBindingSet.getInstance());
+						completed = Collections.singletonList(entry).iterator();
+					}
+					else if (!current.isEmpty() || partitions != null) {
+						completeCurrent();
+					}
+					else {
+						return null;
+					}
+					continue;
+				}
+
+				BindingSet sol = iter.next();
+				empty = false;
+
+				if (currentKey != null && !isSortedEqual(currentKey, sol)) {
+					completeCurrent();
+				}
+				currentKey = sol;
+
+				Key key = new Key(sol);
+				Entry entry = current.get(key);
+				if (entry == null) {
+					long size = memoryBudget == null ? 0 : QueryMemoryBudget.estimateSize(sol);
+					if (partitions != null || !fitsInMemory(current.size(), size)) {
+						// the group does not fit in memory, aggregate it later
+						if (partitions == null) {
+							partitions = new BindingSetSpillFile[DEFAULT_PARTITION_COUNT];
+						}
+						int partition = getPartition(key, 0);
+						if (partitions[partition] == null) {
+							partitions[partition] = new BindingSetSpillFile();
+						}
+						partitions[partition].add(sol);
+						continue;
+					}
+					reservedBytes += size;
+					entry = new Entry(sol);
+					current.put(key, entry);
+				}
+				entry.addSolution(sol);
+			}
+
+			return createSolution(completed.next());
+		}
+
+		private void completeCurrent() {
+			completed = current.values().iterator();
+			current = new LinkedHashMap<Key, Entry>();
+			release(reservedBytes);
+			reservedBytes = 0;
+
+			if (partitions != null) {
+				spilled = new GroupedIteration(Collections.<Entry> emptyList(), partitions, 0, 0);
+				partitions = null;
+			}
+		}
+
+		private boolean isSortedEqual(BindingSet b1, BindingSet b2) {
+			for (String name : group.getGroupBindingNames()) {
+				if (comparator.compare(b1.getValue(name), b2.getValue(name)) != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			try {
+				super.handleClose();
+			}
+			finally {
+				try {
+					iter.close();
+					if (spilled != null) {
+						spilled.close();
+					}
+				}
+				finally {
+					closePartitions(partitions);
+					release(reservedBytes);
+					reservedBytes = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pre-aggregates a batch of solutions.
+	 */
+	private class BatchTask implements Callable<Map<Key, Entry>> {
+
+		private final List<BindingSet> batch;
+
+		public BatchTask(List<BindingSet> batch) {
+			this.batch = batch;
+		}
+
+		public Map<Key, Entry> call()
+			throws QueryEvaluationException
+		{
+			Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+			for (BindingSet sol : batch) {
+				Key key = new Key(sol);
+				Entry entry = entries.get(key);
+
+				if (entry == null) {
+					entry = new Entry(sol);
+					entries.put(key, entry);
+				}
+
+				entry.addSolution(sol);
+			}
+			return entries;
+		}
+	}
+
 	private class Entry {
 
 		private BindingSet prototype;
 
+		/**
+		 * The memory reserved for this group from the memory budget.
+		 */
+		private long reservedBytes;
+
 		private Map<String, Aggregate> aggregates;
 
 		public Entry(BindingSet prototype)
@@ -346,6 +965,19 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		/**
+		 * Merges the aggregates of another entry for the same group into the
+		 * aggregates of this entry.
+		 */
+		public void merge(Entry other)
+			throws QueryEvaluationException
+		{
+			Map<String, Aggregate> otherAggregates = other.getAggregates();
+			for (Map.Entry<String, Aggregate> e : getAggregates().entrySet()) {
+				e.getValue().merge(otherAggregates.get(e.getKey()));
+			}
+		}
+
 		public void bindSolution(QueryBindingSet sol)
 			throws QueryEvaluationException
 		{
@@ -417,6 +1049,13 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 		public abstract void processAggregate(BindingSet bindingSet)
 			throws QueryEvaluationException;
 
+		/**
+		 * Merges the state of a non-distinct aggregate of the same type that has
+		 * processed other solutions of the same group.
+		 */
+		public abstract void merge(Aggregate other)
+			throws QueryEvaluationException;
+
 		protected boolean distinctValue(Value value) {
 			if (distinctValues == null) {
 				return true;
@@ -498,6 +1137,11 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			return result;
 		}
 
+		@Override
+		public void merge(Aggregate other) {
+			count += ((CountAggregate)other).count;
+		}
+
 		@Override
 		public Value getValue() {
 			return vf.createLiteral(Long.toString(count), XMLSchema.INTEGER);
@@ -529,6 +1173,14 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public void merge(Aggregate other) {
+			Value v = ((MinAggregate)other).min;
+			if (v != null && (min == null || comparator.compare(v, min) < 0)) {
+				min = v;
+			}
+		}
+
 		@Override
 		public Value getValue() {
 			return min;
@@ -560,6 +1212,14 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public void merge(Aggregate other) {
+			Value v = ((MaxAggregate)other).max;
+			if (v != null && (max == null || comparator.compare(v, max) > 0)) {
+				max = v;
+			}
+		}
+
 		@Override
 		public Value getValue() {
 			return max;
@@ -604,6 +1264,21 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public void merge(Aggregate other)
+			throws QueryEvaluationException
+		{
+			SumAggregate otherSum = (SumAggregate)other;
+			if (typeError == null) {
+				if (otherSum.typeError != null) {
+					typeError = otherSum.typeError;
+				}
+				else {
+					sum = MathUtil.compute(sum, otherSum.sum, MathOp.PLUS);
+				}
+			}
+		}
+
 		@Override
 		public Value getValue()
 			throws ValueExprEvaluationException
@@ -662,6 +1337,22 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public void merge(Aggregate other)
+			throws QueryEvaluationException
+		{
+			AvgAggregate otherAvg = (AvgAggregate)other;
+			if (typeError == null) {
+				if (otherAvg.typeError != null) {
+					typeError = otherAvg.typeError;
+				}
+				else {
+					sum = MathUtil.compute(sum, otherAvg.sum, MathOp.PLUS);
+					count += otherAvg.count;
+				}
+			}
+		}
+
 		@Override
 		public Value getValue()
 			throws ValueExprEvaluationException
@@ -703,6 +1394,14 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public void merge(Aggregate other) {
+			Value v = ((SampleAggregate)other).sample;
+			if (sample == null || v != null && random.nextFloat() < 0.5f) {
+				sample = v;
+			}
+		}
+
 		@Override
 		public Value getValue() {
 			return sample;
@@ -737,6 +1436,12 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 			}
 		}
 
+		@Override
+		public void merge(Aggregate other) {
+			// every value is followed by the separator
+			concatenated.append(((ConcatAggregate)other).concatenated);
+		}
+
 		@Override
 		public Value getValue() {
 			if (concatenated.length() == 0) {
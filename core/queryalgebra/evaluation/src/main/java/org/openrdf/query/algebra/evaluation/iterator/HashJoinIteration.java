@@ -37,6 +37,7 @@ import org.openrdf.query.algebra.LeftJoin;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.query.impl.EmptyBindingSet;
 
 /**
@@ -66,6 +67,14 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	private Iterator<BindingSet> hashTableValues;
 
 	private final boolean leftJoin;
+
+	/**
+	 * The budget that limits the memory used for the cached results, may be
+	 * <tt>null</tt>.
+	 */
+	private final QueryMemoryBudget memoryBudget;
+
+	private long reservedBytes;
 	
 	/*--------------*
 	 * Constructors *
@@ -77,6 +86,13 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, false);
 	}
 
+	public HashJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings,
+			QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, false, memoryBudget);
+	}
+
 	public HashJoinIteration(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings)
 			throws QueryEvaluationException
 	{
@@ -86,6 +102,20 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	public HashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right, BindingSet bindings, boolean leftJoin)
 			throws QueryEvaluationException
 	{
+		this(strategy, left, right, bindings, leftJoin, null);
+	}
+
+	/**
+	 * @param memoryBudget
+	 *        the budget to reserve the memory of the cached results from, the
+	 *        query is aborted when it is exceeded. May be <tt>null</tt>.
+	 */
+	public HashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right,
+			BindingSet bindings, boolean leftJoin, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this.memoryBudget = memoryBudget;
+
 		leftIter = strategy.evaluate(left, bindings);
 		rightIter = strategy.evaluate(right, bindings);
 
@@ -199,6 +229,10 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			disposeHashTable(hashTable);
 			hashTable = null;
 		}
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
 	}
 
 	private void setupHashTable()
@@ -212,8 +246,8 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			leftArgResults = makeIterationCache(leftIter);
 
 			while (leftIter.hasNext() && rightIter.hasNext()) {
-				add(leftArgResults, leftIter.next());
-				add(rightArgResults, rightIter.next());
+				add(leftArgResults, reserve(leftIter.next()));
+				add(rightArgResults, reserve(rightIter.next()));
 			}
 		}
 		else
@@ -221,7 +255,7 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			leftArgResults = Collections.emptyList();
 
 			while (rightIter.hasNext()) {
-				add(rightArgResults, rightIter.next());
+				add(rightArgResults, reserve(rightIter.next()));
 			}
 		}
 
@@ -264,6 +298,17 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 
 	}
 
+	private BindingSet reserve(BindingSet b)
+		throws QueryEvaluationException
+	{
+		if (memoryBudget != null) {
+			long size = QueryMemoryBudget.estimateSize(b);
+			memoryBudget.reserve(size);
+			reservedBytes += size;
+		}
+		return b;
+	}
+
 	protected void putHashTableEntry(Map<BindingSetHashKey, List<BindingSet>> hashTable, BindingSetHashKey hashKey,
 			List<BindingSet> hashValue, boolean newEntry)
 		throws QueryEvaluationException
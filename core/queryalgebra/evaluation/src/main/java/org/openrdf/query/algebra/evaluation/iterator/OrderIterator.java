@@ -16,37 +16,56 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
-import java.io.File;
-import java.io.IOError;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.NavigableMap;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-
 import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
 import info.aduna.iteration.DelayedIteration;
 import info.aduna.iteration.Iteration;
 import info.aduna.iteration.LookAheadIteration;
 
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.BindingSetSpillFile;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 
 /**
  * Sorts the input and optionally applies limit and distinct.
+ * <p>
+ * When a limit is present, only the best <tt>limit</tt> solutions are kept in
+ * a bounded heap. Otherwise, the solutions are sorted in memory or, when a
+ * sync threshold has been set and the input exceeds it, by an external merge
+ * sort: sorted runs of at most <tt>iterationSyncThreshold</tt> solutions are
+ * written sequentially to temporary files and merged on the fly when the
+ * results are read. When a {@link QueryMemoryBudget} is supplied, a sorted run
+ * is also written when the budget is exhausted, and a limited sort whose best
+ * solutions exhaust the budget continues as an external merge sort.
  * 
  * @author James Leigh
  * @author Arjohn Kampman
  */
 public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationException> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The maximum number of sorted runs that are merged at once. When more runs
+	 * have been written, they are first merged into larger runs.
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 64;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -59,16 +78,27 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 
 	private final boolean distinct;
 
-	private final File tempFile;
+	/**
+	 * Number of items cached before a sorted run is written to disk. If set to
+	 * 0, no disk-syncing is done and all internal caching is kept in memory.
+	 */
+	private final long iterationSyncThreshold;
+
+	/**
+	 * The sorted runs that have been written to disk.
+	 */
+	private final List<BindingSetSpillFile> runs = new ArrayList<BindingSetSpillFile>();
 
-	private final DB db;
+	/**
+	 * The budget that limits the memory used for buffered solutions, may be
+	 * <tt>null</tt>.
+	 */
+	private final QueryMemoryBudget memoryBudget;
 
 	/**
-	 * Number of items cached before internal collection is synced to disk. If
-	 * set to 0, no disk-syncing is done and all internal caching is kept in
-	 * memory.
+	 * The number of bytes currently reserved from the memory budget.
 	 */
-	private final long iterationSyncThreshold;
+	private long reservedBytes;
 
 	/*--------------*
 	 * Constructors *
@@ -88,26 +118,20 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 
 	public OrderIterator(CloseableIteration<BindingSet, QueryEvaluationException> iter,
 			Comparator<BindingSet> comparator, long limit, boolean distinct, long iterationSyncThreshold)
+	{
+		this(iter, comparator, limit, distinct, iterationSyncThreshold, null);
+	}
+
+	public OrderIterator(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+			Comparator<BindingSet> comparator, long limit, boolean distinct, long iterationSyncThreshold,
+			QueryMemoryBudget memoryBudget)
 	{
 		this.iter = iter;
 		this.comparator = comparator;
 		this.limit = limit;
 		this.distinct = distinct;
 		this.iterationSyncThreshold = iterationSyncThreshold;
-
-		if (iterationSyncThreshold > 0) {
-			try {
-				this.tempFile = File.createTempFile("order-eval", null);
-			}
-			catch (IOException e) {
-				throw new IOError(e);
-			}
-			this.db = DBMaker.newFileDB(tempFile).deleteFilesAfterClose().closeOnJvmShutdown().make();
-		}
-		else {
-			this.tempFile = null;
-			this.db = null;
-		}
+		this.memoryBudget = memoryBudget;
 	}
 
 	/*---------*
@@ -115,89 +139,237 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 	 *---------*/
 
 	protected NavigableMap<BindingSet, Integer> makeOrderedMap() {
-		if (db == null) {
-			// no disk-syncing - we use a simple in-memory TreeMap instead.
-			return new TreeMap<BindingSet, Integer>(comparator);
+		return new TreeMap<BindingSet, Integer>(comparator);
+	}
+
+	protected Iteration<BindingSet, QueryEvaluationException> createIteration()
+		throws QueryEvaluationException
+	{
+		try {
+			if (limit < Integer.MAX_VALUE && (iterationSyncThreshold <= 0 || limit <= iterationSyncThreshold)) {
+				// the best solutions fit in memory
+				if (distinct) {
+					return createDistinctTopIteration();
+				}
+				else {
+					return createTopIteration();
+				}
+			}
+			else {
+				return createSortedIteration(new ArrayList<BindingSet>(), null);
+			}
 		}
-		else {
-			return db.createTreeMap("iteration").comparator(comparator).makeOrGet();
+		finally {
+			iter.close();
 		}
 	}
 
-	protected Iteration<BindingSet, QueryEvaluationException> createIteration()
+	/**
+	 * Keeps the first <tt>limit</tt> solutions in a heap that has the solution
+	 * that is currently sorted last at its head, or falls back to a full sort
+	 * when they do not fit in the memory budget.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createTopIteration()
+		throws QueryEvaluationException
+	{
+		PriorityQueue<BindingSet> heap = new PriorityQueue<BindingSet>((int)Math.min(limit, 1024) + 1,
+				Collections.reverseOrder(comparator));
+
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
+
+			if (heap.size() < limit) {
+				if (!tryReserve(next)) {
+					return createSortedIteration(new ArrayList<BindingSet>(heap), next);
+				}
+				add(next, heap);
+			}
+			else if (!heap.isEmpty() && comparator.compare(next, heap.peek()) < 0) {
+				// Discard binding set that is currently sorted last
+				release(heap.peek());
+				removeLast(heap);
+				if (!tryReserve(next)) {
+					return createSortedIteration(new ArrayList<BindingSet>(heap), next);
+				}
+				add(next, heap);
+			}
+		}
+
+		BindingSet[] sorted = heap.toArray(new BindingSet[heap.size()]);
+		Arrays.sort(sorted, comparator);
+
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+				Arrays.asList(sorted).iterator());
+	}
+
+	/**
+	 * Keeps the first <tt>limit</tt> distinct solutions in a sorted map, or
+	 * falls back to a full sort when they do not fit in the memory budget.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createDistinctTopIteration()
 		throws QueryEvaluationException
 	{
 		final NavigableMap<BindingSet, Integer> map = makeOrderedMap();
 		long size = 0;
 
-		try {
-			while (iter.hasNext()) {
-				BindingSet next = iter.next();
-
-				// Add this binding set if the limit hasn't been reached yet, or if
-				// it is sorted before the current lowest value
-				if (size < limit || comparator.compare(next, map.lastKey()) < 0) {
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
 
-					Integer count = map.get(next);
+			// Add this binding set if the limit hasn't been reached yet, or if
+			// it is sorted before the current lowest value
+			if (size < limit || !map.isEmpty() && comparator.compare(next, map.lastKey()) < 0) {
 
-					if (count == null) {
-						put(map, next, 1);
-						size++;
-					}
-					else if (!distinct) {
-						put(map, next, ++count);
-						size++;
-					}
+				Integer count = map.get(next);
 
-					if (db != null && size % iterationSyncThreshold == 0L) {
-						// sync collection to disk every X new entries (where X is a
-						// multiple of the cache size)
-						db.commit();
+				if (count == null) {
+					if (!tryReserve(next)) {
+						return createSortedIteration(new ArrayList<BindingSet>(map.keySet()), next);
 					}
+					put(map, next, 1);
+					size++;
+				}
 
-					if (size > limit) {
-						// Discard binding set that is currently sorted last
-						BindingSet lastKey = map.lastKey();
-
-						Integer lastCount = map.get(lastKey);
-						if (lastCount > 1) {
-							put(map, lastKey, --lastCount);
-						}
-						else {
-							removeLast(map.navigableKeySet());
-						}
-						size--;
-					}
+				if (size > limit) {
+					// Discard binding set that is currently sorted last
+					release(map.lastKey());
+					removeLast(map.navigableKeySet());
+					size--;
 				}
 			}
 		}
-		finally {
-			iter.close();
+
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+				map.keySet().iterator());
+	}
+
+	/**
+	 * Sorts all solutions, in memory or, when the input exceeds the sync
+	 * threshold or the memory budget, with an external merge sort.
+	 * 
+	 * @param buffer
+	 *        solutions that have already been read, and reserved.
+	 * @param next
+	 *        a solution that has already been read but not yet reserved, may
+	 *        be <tt>null</tt>.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createSortedIteration(List<BindingSet> buffer,
+			BindingSet next)
+		throws QueryEvaluationException
+	{
+		if (next != null) {
+			buffer = addToRun(next, buffer);
+		}
+		while (iter.hasNext()) {
+			buffer = addToRun(iter.next(), buffer);
 		}
 
-		return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+		Collections.sort(buffer, comparator);
 
-			private volatile Iterator<BindingSet> iterator = map.keySet().iterator();
+		CloseableIteration<BindingSet, QueryEvaluationException> sorted;
+		if (runs.isEmpty()) {
+			sorted = new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(buffer.iterator());
+		}
+		else {
+			// keep at most DEFAULT_MERGE_FACTOR files open while merging
+			while (runs.size() >= DEFAULT_MERGE_FACTOR) {
+				List<BindingSetSpillFile> merged = new ArrayList<BindingSetSpillFile>(
+						runs.subList(0, DEFAULT_MERGE_FACTOR));
+				runs.subList(0, DEFAULT_MERGE_FACTOR).clear();
+				mergeRuns(merged);
+			}
 
-			private volatile BindingSet currentBindingSet = null;
+			List<CloseableIteration<BindingSet, QueryEvaluationException>> sources = new ArrayList<CloseableIteration<BindingSet, QueryEvaluationException>>(
+					runs.size() + 1);
+			for (BindingSetSpillFile run : runs) {
+				sources.add(run.iterator());
+			}
+			sources.add(new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(buffer.iterator()));
+			sorted = new MergeIteration(sources, comparator);
+		}
 
-			private volatile int count = 0;
+		return new SortedIteration(sorted);
+	}
 
-			protected BindingSet getNextElement() {
+	/**
+	 * Adds a solution to the current run, first writing the run to disk if the
+	 * memory budget is exhausted, and afterwards if it reaches the sync
+	 * threshold.
+	 * 
+	 * @return the buffer of the current run.
+	 */
+	private List<BindingSet> addToRun(BindingSet next, List<BindingSet> buffer)
+		throws QueryEvaluationException
+	{
+		if (!buffer.isEmpty() && !tryReserve(next)) {
+			// the memory budget is exhausted
+			writeRun(buffer);
+			buffer = new ArrayList<BindingSet>();
+		}
+		if (buffer.isEmpty()) {
+			// a run holds at least one solution, even if it exceeds the budget
+			forceReserve(next);
+		}
+		add(next, buffer);
 
-				if (count == 0 && iterator.hasNext()) {
-					currentBindingSet = iterator.next();
-					count = map.get(currentBindingSet);
-				}
+		if (iterationSyncThreshold > 0 && buffer.size() >= iterationSyncThreshold) {
+			writeRun(buffer);
+			buffer = new ArrayList<BindingSet>();
+		}
+		return buffer;
+	}
 
-				if (count > 0) {
-					count--;
-					return currentBindingSet;
-				}
+	/**
+	 * Sorts the supplied solutions and writes them to a new run.
+	 */
+	private void writeRun(List<BindingSet> buffer)
+		throws QueryEvaluationException
+	{
+		Collections.sort(buffer, comparator);
 
-				return null;
+		BindingSetSpillFile run = new BindingSetSpillFile();
+		runs.add(run);
+		releaseAll();
+
+		BindingSet previous = null;
+		for (BindingSet next : buffer) {
+			if (!distinct || previous == null || comparator.compare(previous, next) != 0) {
+				run.add(next);
+			}
+			previous = next;
+		}
+	}
+
+	/**
+	 * Merges the supplied runs into a single new run and deletes them.
+	 */
+	private void mergeRuns(List<BindingSetSpillFile> merged)
+		throws QueryEvaluationException
+	{
+		try {
+			List<CloseableIteration<BindingSet, QueryEvaluationException>> sources = new ArrayList<CloseableIteration<BindingSet, QueryEvaluationException>>(
+					merged.size());
+			for (BindingSetSpillFile run : merged) {
+				sources.add(run.iterator());
+			}
+
+			BindingSetSpillFile run = new BindingSetSpillFile();
+			runs.add(run);
+
+			MergeIteration merge = new MergeIteration(sources, comparator);
+			try {
+				while (merge.hasNext()) {
+					run.add(merge.next());
+				}
+			}
+			finally {
+				merge.close();
+			}
+		}
+		finally {
+			for (BindingSetSpillFile run : merged) {
+				run.close();
 			}
-		};
+		}
 	}
 
 	protected void removeLast(Collection<BindingSet> lastResults) {
@@ -207,6 +379,10 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		else if (lastResults instanceof List<?>) {
 			((List<BindingSet>)lastResults).remove(lastResults.size() - 1);
 		}
+		else if (lastResults instanceof PriorityQueue<?>) {
+			// the head of a reverse ordered heap
+			((PriorityQueue<BindingSet>)lastResults).poll();
+		}
 		else {
 			Iterator<BindingSet> iter = lastResults.iterator();
 			while (iter.hasNext()) {
@@ -216,6 +392,41 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		}
 	}
 
+	private boolean tryReserve(BindingSet next) {
+		if (memoryBudget == null) {
+			return true;
+		}
+		long size = QueryMemoryBudget.estimateSize(next);
+		if (memoryBudget.tryReserve(size)) {
+			reservedBytes += size;
+			return true;
+		}
+		return false;
+	}
+
+	private void forceReserve(BindingSet next) {
+		if (memoryBudget != null) {
+			long size = QueryMemoryBudget.estimateSize(next);
+			memoryBudget.forceReserve(size);
+			reservedBytes += size;
+		}
+	}
+
+	private void release(BindingSet removed) {
+		if (memoryBudget != null) {
+			long size = QueryMemoryBudget.estimateSize(removed);
+			memoryBudget.release(size);
+			reservedBytes -= size;
+		}
+	}
+
+	private void releaseAll() {
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
+	}
+
 	protected boolean add(BindingSet next, Collection<BindingSet> list)
 		throws QueryEvaluationException
 	{
@@ -239,10 +450,152 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 	protected void handleClose()
 		throws QueryEvaluationException
 	{
-		iter.close();
-		if (db != null) {
-			this.db.close();
+		try {
+			iter.close();
+			super.handleClose();
+		}
+		finally {
+			for (BindingSetSpillFile run : runs) {
+				run.close();
+			}
+			runs.clear();
+			releaseAll();
+		}
+	}
+
+	/*-----------------------------*
+	 * Inner class SortedIteration *
+	 *-----------------------------*/
+
+	/**
+	 * Applies distinct and limit to a sorted iteration.
+	 */
+	private class SortedIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final CloseableIteration<BindingSet, QueryEvaluationException> sorted;
+
+		private BindingSet previous;
+
+		private long count;
+
+		public SortedIteration(CloseableIteration<BindingSet, QueryEvaluationException> sorted) {
+			this.sorted = sorted;
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			while (count < limit && sorted.hasNext()) {
+				BindingSet next = sorted.next();
+
+				if (!distinct || previous == null || comparator.compare(previous, next) != 0) {
+					previous = next;
+					count++;
+					return next;
+				}
+			}
+
+			return null;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			try {
+				super.handleClose();
+			}
+			finally {
+				sorted.close();
+			}
+		}
+	}
+
+	/*----------------------------*
+	 * Inner class MergeIteration *
+	 *----------------------------*/
+
+	/**
+	 * A k-way merge of sorted iterations.
+	 */
+	private static class MergeIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final List<CloseableIteration<BindingSet, QueryEvaluationException>> sources;
+
+		private final PriorityQueue<Cursor> heap;
+
+		public MergeIteration(List<CloseableIteration<BindingSet, QueryEvaluationException>> sources,
+				final Comparator<BindingSet> comparator)
+			throws QueryEvaluationException
+		{
+			this.sources = sources;
+			this.heap = new PriorityQueue<Cursor>(sources.size() + 1, new Comparator<Cursor>() {
+
+				public int compare(Cursor c1, Cursor c2) {
+					return comparator.compare(c1.current, c2.current);
+				}
+			});
+
+			for (CloseableIteration<BindingSet, QueryEvaluationException> source : sources) {
+				Cursor cursor = new Cursor(source);
+				if (cursor.advance()) {
+					heap.add(cursor);
+				}
+			}
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			Cursor cursor = heap.poll();
+
+			if (cursor == null) {
+				return null;
+			}
+
+			BindingSet result = cursor.current;
+			if (cursor.advance()) {
+				heap.add(cursor);
+			}
+			return result;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			try {
+				super.handleClose();
+			}
+			finally {
+				for (CloseableIteration<BindingSet, QueryEvaluationException> source : sources) {
+					source.close();
+				}
+			}
+		}
+	}
+
+	private static class Cursor {
+
+		private final CloseableIteration<BindingSet, QueryEvaluationException> source;
+
+		private BindingSet current;
+
+		public Cursor(CloseableIteration<BindingSet, QueryEvaluationException> source) {
+			this.source = source;
+		}
+
+		public boolean advance()
+			throws QueryEvaluationException
+		{
+			if (source.hasNext()) {
+				current = source.next();
+				return true;
+			}
+			current = null;
+			return false;
 		}
-		super.handleClose();
 	}
 }
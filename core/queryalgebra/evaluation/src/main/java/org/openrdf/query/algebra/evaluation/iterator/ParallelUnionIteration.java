@@ -0,0 +1,274 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+/**
+ * Evaluates the arguments of a union concurrently, each one in a task on the
+ * supplied executor. The results of all arguments are merged through a
+ * bounded queue, so that the tasks block when the consumer of this iteration
+ * falls behind. The results of the arguments are interleaved in no particular
+ * order.
+ */
+public class ParallelUnionIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default capacity of the queue that the results are merged through.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Marks the end of the results of one of the arguments.
+	 */
+	private static final BindingSet END_OF_ARGUMENT = new QueryBindingSet(0);
+
+	/**
+	 * How long a task waits for room in the queue before checking whether this
+	 * iteration has been closed.
+	 */
+	private static final long OFFER_TIMEOUT = 100;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final BindingSet bindings;
+
+	private final BlockingQueue<BindingSet> queue;
+
+	private final Queue<Exception> exceptions = new ConcurrentLinkedQueue<Exception>();
+
+	private final List<ArgumentTask> tasks;
+
+	private int remaining;
+
+	private volatile boolean closed;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelUnionIteration(EvaluationStrategy strategy, List<? extends TupleExpr> args,
+			BindingSet bindings, Executor executor)
+	{
+		this(strategy, args, bindings, executor, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public ParallelUnionIteration(EvaluationStrategy strategy, List<? extends TupleExpr> args,
+			BindingSet bindings, Executor executor, int queueCapacity)
+	{
+		this.strategy = strategy;
+		this.bindings = bindings;
+		this.queue = new ArrayBlockingQueue<BindingSet>(queueCapacity);
+		this.tasks = new ArrayList<ArgumentTask>(args.size());
+		this.remaining = args.size();
+
+		for (TupleExpr arg : args) {
+			ArgumentTask task = new ArgumentTask(arg);
+			tasks.add(task);
+			try {
+				executor.execute(task);
+			}
+			catch (RejectedExecutionException e) {
+				exceptions.add(new QueryEvaluationException(e));
+				task.skip();
+			}
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		try {
+			while (remaining > 0) {
+				BindingSet next = queue.take();
+				if (next != END_OF_ARGUMENT) {
+					return next;
+				}
+				remaining--;
+				checkExceptions();
+			}
+			return null;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	private void checkExceptions()
+		throws QueryEvaluationException
+	{
+		Exception e = exceptions.poll();
+		if (e instanceof QueryEvaluationException) {
+			throw (QueryEvaluationException)e;
+		}
+		else if (e instanceof RuntimeException) {
+			throw (RuntimeException)e;
+		}
+		else if (e != null) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		closed = true;
+		try {
+			super.handleClose();
+		}
+		finally {
+			// make room for the tasks to notice that we have been closed, and
+			// wait for them to release their resources
+			queue.clear();
+			try {
+				for (ArgumentTask task : tasks) {
+					task.awaitTermination();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Adds a result to the queue, blocking while the queue is full.
+	 * 
+	 * @return <tt>false</tt> if this iteration has been closed.
+	 */
+	private boolean put(BindingSet next)
+		throws InterruptedException
+	{
+		while (!closed) {
+			if (queue.offer(next, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*--------------------------*
+	 * Inner class ArgumentTask *
+	 *--------------------------*/
+
+	private class ArgumentTask implements Runnable {
+
+		private final TupleExpr arg;
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		public ArgumentTask(TupleExpr arg) {
+			this.arg = arg;
+		}
+
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				// skipped
+				return;
+			}
+			try {
+				if (!closed) {
+					CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(arg, bindings);
+					try {
+						while (iter.hasNext() && put(iter.next())) {
+							// continue
+						}
+					}
+					finally {
+						iter.close();
+					}
+				}
+			}
+			catch (QueryEvaluationException e) {
+				exceptions.add(e);
+			}
+			catch (RuntimeException e) {
+				exceptions.add(e);
+			}
+			catch (InterruptedException e) {
+				exceptions.add(new QueryEvaluationException(e));
+			}
+			finally {
+				finished.countDown();
+				end();
+			}
+		}
+
+		/**
+		 * Prevents this task from being run, if it has not been started yet.
+		 */
+		public void skip() {
+			if (started.compareAndSet(false, true)) {
+				finished.countDown();
+				end();
+			}
+		}
+
+		public void awaitTermination()
+			throws InterruptedException
+		{
+			skip();
+			finished.await();
+		}
+
+		private void end() {
+			try {
+				put(END_OF_ARGUMENT);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
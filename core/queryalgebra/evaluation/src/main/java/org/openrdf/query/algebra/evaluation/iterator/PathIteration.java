@@ -36,6 +36,7 @@ import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.ZeroLengthPath;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
 
 public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
@@ -73,6 +74,12 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 
 	private ValuePair currentVp;
 
+	/**
+	 * The number of bytes reserved from the memory budget of the evaluation
+	 * strategy for the reported and unreported values.
+	 */
+	private long reservedBytes;
+
 	private static final String JOINVAR_PREFIX = "intermediate-join-";
 
 	public PathIteration(EvaluationStrategyImpl evaluationStrategyImpl, Scope scope, Var startVar,
@@ -206,6 +213,7 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 			reportedValues.clear();
 			unreportedValues.clear();
 			valueQueue.clear();
+			releaseReservedBytes();
 			return null;
 		}
 	}
@@ -214,8 +222,21 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 	protected void handleClose()
 		throws QueryEvaluationException
 	{
-		Iterations.closeCloseable(currentIter);
-		super.handleClose();
+		try {
+			Iterations.closeCloseable(currentIter);
+			super.handleClose();
+		}
+		finally {
+			releaseReservedBytes();
+		}
+	}
+
+	private void releaseReservedBytes() {
+		QueryMemoryBudget memoryBudget = evaluationStrategyImpl.getMemoryBudget();
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
 	}
 
 	/**
@@ -235,7 +256,15 @@ public class PathIteration extends LookAheadIteration<BindingSet, QueryEvaluatio
 	protected boolean add(Set<ValuePair> valueSet, ValuePair vp)
 		throws QueryEvaluationException
 	{
-		return valueSet.add(vp);
+		boolean added = valueSet.add(vp);
+		QueryMemoryBudget memoryBudget = evaluationStrategyImpl.getMemoryBudget();
+		if (added && memoryBudget != null) {
+			long size = QueryMemoryBudget.estimateSize(vp.getStartValue())
+					+ QueryMemoryBudget.estimateSize(vp.getEndValue());
+			memoryBudget.reserve(size);
+			reservedBytes += size;
+		}
+		return added;
 	}
 
 	private Value getVarValue(Var var, boolean fixedValue, BindingSet bindingSet) {
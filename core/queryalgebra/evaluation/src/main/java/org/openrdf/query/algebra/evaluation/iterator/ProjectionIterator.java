@@ -38,6 +38,12 @@ public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingS
 
 	private final BindingSet parentBindings;
 
+	/**
+	 * Empty binding set from which all projected solutions are copied, so that
+	 * they share the slots of the projected variables.
+	 */
+	private final QueryBindingSet template;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -49,6 +55,7 @@ public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingS
 		super(iter);
 		this.projection = projection;
 		this.parentBindings = parentBindings;
+		this.template = new QueryBindingSet(projection.getProjectionElemList().getElements().size());
 	}
 
 	/*---------*
@@ -60,13 +67,19 @@ public class ProjectionIterator extends ConvertingIteration<BindingSet, BindingS
 		throws QueryEvaluationException
 	{
 
-		return project(projection.getProjectionElemList(), sourceBindings, parentBindings);
+		return project(projection.getProjectionElemList(), sourceBindings, parentBindings,
+				new QueryBindingSet(template));
 	}
 
 	public static BindingSet project(ProjectionElemList projElemList, BindingSet sourceBindings,
 			BindingSet parentBindings)
 	{
-		QueryBindingSet resultBindings = new QueryBindingSet();
+		return project(projElemList, sourceBindings, parentBindings, new QueryBindingSet());
+	}
+
+	private static BindingSet project(ProjectionElemList projElemList, BindingSet sourceBindings,
+			BindingSet parentBindings, QueryBindingSet resultBindings)
+	{
 
 		for (ProjectionElem pe : projElemList.getElements()) {
 			Value targetValue = sourceBindings.getValue(pe.getSourceName());
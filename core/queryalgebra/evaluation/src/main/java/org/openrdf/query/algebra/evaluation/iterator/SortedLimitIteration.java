@@ -0,0 +1,135 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+
+/**
+ * Passes on the first binding sets of an iteration that is already sorted on
+ * a number of variables, so that an {@link OrderIterator} with a limit does
+ * not need to read all of its input. After the limit has been reached, the
+ * binding sets that have the same values for the sort variables as the last
+ * one are passed on as well, as the final order among them is determined by
+ * the {@link OrderIterator}.
+ */
+public class SortedLimitIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+
+	private final String[] sortNames;
+
+	private final long limit;
+
+	private final ValueComparator cmp;
+
+	/**
+	 * The distinct binding sets that have been passed on, <tt>null</tt> if
+	 * duplicates count towards the limit.
+	 */
+	private Set<BindingSet> distinct;
+
+	private long count;
+
+	private BindingSet last;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param sortNames
+	 *        the names of the variables that the iteration is sorted on.
+	 * @param limit
+	 *        the number of binding sets that the {@link OrderIterator} returns.
+	 * @param distinct
+	 *        whether the {@link OrderIterator} removes duplicates, in which case
+	 *        only distinct binding sets count towards the limit.
+	 */
+	public SortedLimitIteration(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+			String[] sortNames, long limit, boolean distinct, ValueComparator cmp)
+	{
+		this.iter = iter;
+		this.sortNames = sortNames;
+		this.limit = limit;
+		this.cmp = cmp;
+		if (distinct) {
+			this.distinct = new HashSet<BindingSet>();
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (!iter.hasNext()) {
+			return null;
+		}
+
+		BindingSet next = iter.next();
+
+		if (count >= limit) {
+			if (last == null || !hasSameSortValues(last, next)) {
+				// all binding sets that can be returned have been read
+				return null;
+			}
+		}
+		else if (distinct == null || distinct.add(next)) {
+			count++;
+		}
+
+		last = next;
+		return next;
+	}
+
+	private boolean hasSameSortValues(BindingSet b1, BindingSet b2) {
+		for (String name : sortNames) {
+			if (cmp.compare(b1.getValue(name), b2.getValue(name)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			iter.close();
+			distinct = null;
+		}
+	}
+}
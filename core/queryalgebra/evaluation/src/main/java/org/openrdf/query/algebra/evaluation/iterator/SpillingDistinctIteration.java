@@ -0,0 +1,336 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.BindingSetSpillFile;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+
+/**
+ * An iteration that removes duplicate binding sets from the results of
+ * another iteration, like {@link info.aduna.iteration.DistinctIteration}, but
+ * without keeping all distinct binding sets in memory.
+ * <p>
+ * Binding sets are returned as soon as they are read, until the set of
+ * binding sets that have been seen grows beyond the spill threshold or
+ * exhausts the {@link QueryMemoryBudget}. From then on, binding sets that are
+ * not in that set are partitioned on their hash code into temporary files.
+ * When the underlying iteration is exhausted, the duplicates are removed from
+ * each partition separately, and the remaining binding sets are returned in
+ * the order in which they first occurred. A partition whose distinct binding
+ * sets do not fit in the memory budget aborts the query.
+ */
+public class SpillingDistinctIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of partitions that are created when the set of seen binding
+	 * sets is spilled to disk.
+	 */
+	public static final int DEFAULT_PARTITION_COUNT = 32;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+
+	private final long spillThreshold;
+
+	private final QueryMemoryBudget memoryBudget;
+
+	/**
+	 * The number of bytes currently reserved from the memory budget for the
+	 * set of seen binding sets.
+	 */
+	private long reservedBytes;
+
+	private Set<BindingSet> seen = new HashSet<BindingSet>();
+
+	private BindingSetSpillFile[] partitions;
+
+	/**
+	 * The partition of every spilled binding set, in the order in which they
+	 * were read.
+	 */
+	private File orderFile;
+
+	private OutputStream orderOut;
+
+	private InputStream orderIn;
+
+	/**
+	 * Per partition, the positions of the binding sets that are not
+	 * duplicates of an earlier binding set in that partition.
+	 */
+	private BitSet[] firstOccurrences;
+
+	private CloseableIteration<BindingSet, QueryEvaluationException>[] partitionIters;
+
+	private int[] positions;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param spillThreshold
+	 *        the maximum number of binding sets that are kept in memory, or
+	 *        <tt>0</tt> for no limit other than that of the memory budget.
+	 * @param memoryBudget
+	 *        an optional budget to reserve the memory of the binding sets that
+	 *        are kept in memory from.
+	 */
+	public SpillingDistinctIteration(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+			long spillThreshold, QueryMemoryBudget memoryBudget)
+	{
+		this.iter = iter;
+		this.spillThreshold = spillThreshold;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (partitionIters != null) {
+			return nextFromPartitions();
+		}
+
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
+
+			if (seen.contains(next)) {
+				continue;
+			}
+
+			if (partitions == null && fitsInMemory(next)) {
+				seen.add(next);
+				return next;
+			}
+
+			spill(next);
+		}
+
+		if (partitions == null) {
+			return null;
+		}
+
+		// all input has been read, start returning the spilled binding sets
+		removeDuplicates();
+		return nextFromPartitions();
+	}
+
+	private boolean fitsInMemory(BindingSet next) {
+		if (spillThreshold > 0 && seen.size() >= spillThreshold) {
+			return false;
+		}
+		if (memoryBudget != null) {
+			long bytes = QueryMemoryBudget.estimateSize(next);
+			if (!memoryBudget.tryReserve(bytes)) {
+				return false;
+			}
+			reservedBytes += bytes;
+		}
+		return true;
+	}
+
+	private void spill(BindingSet next)
+		throws QueryEvaluationException
+	{
+		try {
+			if (partitions == null) {
+				partitions = new BindingSetSpillFile[DEFAULT_PARTITION_COUNT];
+				for (int i = 0; i < partitions.length; i++) {
+					partitions[i] = new BindingSetSpillFile();
+				}
+				orderFile = File.createTempFile("spill-eval", ".tmp");
+				orderOut = new BufferedOutputStream(new FileOutputStream(orderFile));
+			}
+
+			int partition = getPartition(next);
+			partitions[partition].add(next);
+			orderOut.write(partition);
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	private int getPartition(BindingSet b) {
+		// binding set hash codes of similar values are close to each other,
+		// spread them before taking the remainder
+		int hash = b.hashCode() * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % DEFAULT_PARTITION_COUNT;
+	}
+
+	/**
+	 * Determines which binding sets of each partition are not duplicates of
+	 * earlier ones, after which the partitions are reopened to be read in the
+	 * original order.
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeDuplicates()
+		throws QueryEvaluationException
+	{
+		// the seen set is no longer needed, the partitions only contain
+		// binding sets that are not in it
+		seen = null;
+		releaseAll();
+
+		firstOccurrences = new BitSet[partitions.length];
+		for (int i = 0; i < partitions.length; i++) {
+			firstOccurrences[i] = new BitSet();
+			Set<BindingSet> distinct = new HashSet<BindingSet>();
+
+			CloseableIteration<BindingSet, QueryEvaluationException> partitionIter = partitions[i].iterator();
+			try {
+				for (int position = 0; partitionIter.hasNext(); position++) {
+					BindingSet next = partitionIter.next();
+					if (distinct.add(next)) {
+						if (memoryBudget != null) {
+							long bytes = QueryMemoryBudget.estimateSize(next);
+							memoryBudget.reserve(bytes);
+							reservedBytes += bytes;
+						}
+						firstOccurrences[i].set(position);
+					}
+				}
+			}
+			finally {
+				partitionIter.close();
+				releaseAll();
+			}
+		}
+
+		try {
+			orderOut.close();
+			orderOut = null;
+			orderIn = new BufferedInputStream(new FileInputStream(orderFile));
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		partitionIters = new CloseableIteration[partitions.length];
+		for (int i = 0; i < partitions.length; i++) {
+			partitionIters[i] = partitions[i].iterator();
+		}
+		positions = new int[partitions.length];
+	}
+
+	private BindingSet nextFromPartitions()
+		throws QueryEvaluationException
+	{
+		try {
+			int partition;
+			while ((partition = orderIn.read()) != -1) {
+				BindingSet next = partitionIters[partition].next();
+				if (firstOccurrences[partition].get(positions[partition]++)) {
+					return next;
+				}
+			}
+			return null;
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	private void releaseAll() {
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				iter.close();
+			}
+			finally {
+				if (partitionIters != null) {
+					for (CloseableIteration<BindingSet, QueryEvaluationException> partitionIter : partitionIters) {
+						partitionIter.close();
+					}
+				}
+				if (partitions != null) {
+					for (BindingSetSpillFile partition : partitions) {
+						partition.close();
+					}
+				}
+				closeOrderFile();
+				releaseAll();
+				seen = null;
+				firstOccurrences = null;
+			}
+		}
+	}
+
+	private void closeOrderFile() {
+		try {
+			if (orderOut != null) {
+				orderOut.close();
+			}
+			if (orderIn != null) {
+				orderIn.close();
+			}
+		}
+		catch (IOException e) {
+			// ignore, the file is deleted anyway
+		}
+		finally {
+			orderOut = null;
+			orderIn = null;
+			if (orderFile != null) {
+				orderFile.delete();
+				orderFile = null;
+			}
+		}
+	}
+}
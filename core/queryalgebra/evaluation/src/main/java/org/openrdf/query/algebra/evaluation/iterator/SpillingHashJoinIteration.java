@@ -0,0 +1,660 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.LookAheadIteration;
+import info.aduna.iteration.UnionIteration;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Difference;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.LeftJoin;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.util.BindingSetSpillFile;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+
+/**
+ * Hash join that builds its hash table from the right argument and probes it
+ * with the results of the left argument. Besides regular joins, this iteration
+ * can evaluate optional joins and SPARQL MINUS. The join attributes are the
+ * binding names that the arguments have in common, and are expected to be
+ * bound in every result of both arguments.
+ * <p>
+ * If a spill threshold is specified and the right argument produces more
+ * results than this threshold, both arguments are partitioned on the hash of
+ * their join attributes into temporary files, after which the partitions are
+ * joined one at a time. The same happens when a {@link QueryMemoryBudget} is
+ * specified and the hash table exhausts it. The order of the results is not
+ * preserved in that case.
+ * <p>
+ * If an executor is specified, the hash table is built by a task on that
+ * executor, while the results of the left argument are prefetched by the
+ * consuming thread.
+ */
+public class SpillingHashJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/**
+	 * The kind of join that is evaluated.
+	 */
+	public enum Mode {
+		JOIN,
+		LEFT_JOIN,
+		MINUS
+	}
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of partitions that are created when the hash table is spilled
+	 * to disk.
+	 */
+	public static final int DEFAULT_PARTITION_COUNT = 32;
+
+	/**
+	 * The maximum number of results of the left argument that are prefetched
+	 * while the hash table is built by another thread.
+	 */
+	public static final int DEFAULT_PREFETCH_SIZE = 1024;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+	private final TupleExpr rightArg;
+
+	private final BindingSet bindings;
+
+	protected final String[] joinAttributes;
+
+	private final ValueExpr condition;
+
+	private final Set<String> scopeBindingNames;
+
+	private final Mode mode;
+
+	private final long spillThreshold;
+
+	private final QueryMemoryBudget memoryBudget;
+
+	/**
+	 * The number of bytes currently reserved from the memory budget for the
+	 * hash table.
+	 */
+	private long reservedBytes;
+
+	private final BuildTask buildTask;
+
+	private volatile boolean closed;
+
+	private Map<BindingSetHashKey, List<BindingSet>> hashTable;
+
+	private BindingSetSpillFile[] buildPartitions;
+
+	private BindingSetSpillFile[] probePartitions;
+
+	private int partition;
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> probeIter;
+
+	private BindingSet currentProbe;
+
+	private Iterator<BindingSet> matches;
+
+	private boolean matched;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public SpillingHashJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings,
+			long spillThreshold, Executor executor, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), null, bindings, Mode.JOIN, spillThreshold,
+				executor, memoryBudget);
+	}
+
+	public SpillingHashJoinIteration(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings,
+			long spillThreshold, Executor executor, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), join.getCondition(), bindings, Mode.LEFT_JOIN,
+				spillThreshold, executor, memoryBudget);
+	}
+
+	public SpillingHashJoinIteration(EvaluationStrategy strategy, Difference difference,
+			BindingSet bindings, long spillThreshold, Executor executor, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this(strategy, difference.getLeftArg(), difference.getRightArg(), null, bindings, Mode.MINUS,
+				spillThreshold, executor, memoryBudget);
+	}
+
+	public SpillingHashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right,
+			ValueExpr condition, BindingSet bindings, Mode mode, long spillThreshold)
+		throws QueryEvaluationException
+	{
+		this(strategy, left, right, condition, bindings, mode, spillThreshold, null);
+	}
+
+	/**
+	 * @param condition
+	 *        an optional condition on the joined binding sets, only supported
+	 *        for {@link Mode#LEFT_JOIN left joins}.
+	 * @param spillThreshold
+	 *        the maximum number of binding sets in the in-memory hash table,
+	 *        or <tt>0</tt> to never spill to disk.
+	 * @param executor
+	 *        an optional executor to build the hash table with.
+	 */
+	public SpillingHashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right,
+			ValueExpr condition, BindingSet bindings, Mode mode, long spillThreshold, Executor executor)
+		throws QueryEvaluationException
+	{
+		this(strategy, left, right, condition, bindings, mode, spillThreshold, executor, null);
+	}
+
+	/**
+	 * @param memoryBudget
+	 *        an optional budget to reserve the memory of the hash table from.
+	 *        The hash table is spilled to disk when the budget is exhausted
+	 *        while it is built, a partition that does not fit in the budget
+	 *        aborts the query.
+	 */
+	public SpillingHashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right,
+			ValueExpr condition, BindingSet bindings, Mode mode, long spillThreshold, Executor executor,
+			QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this.strategy = strategy;
+		this.rightArg = right;
+		this.bindings = bindings;
+		this.condition = condition;
+		this.mode = mode;
+		this.spillThreshold = spillThreshold;
+		this.memoryBudget = memoryBudget;
+
+		// copied, some operators return their own set of binding names
+		Set<String> joinAttributeNames = new HashSet<String>(left.getBindingNames());
+		joinAttributeNames.retainAll(right.getBindingNames());
+		joinAttributes = joinAttributeNames.toArray(new String[joinAttributeNames.size()]);
+
+		scopeBindingNames = new HashSet<String>(left.getBindingNames());
+		scopeBindingNames.addAll(right.getBindingNames());
+
+		if (executor != null) {
+			buildTask = new BuildTask();
+			try {
+				executor.execute(buildTask);
+			}
+			catch (RejectedExecutionException e) {
+				// build the hash table in the consuming thread instead
+				buildTask.run();
+			}
+		}
+		else {
+			buildTask = null;
+		}
+
+		leftIter = strategy.evaluate(left, bindings);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (probeIter == null) {
+			setupHashTable();
+		}
+
+		while (true) {
+			if (matches != null) {
+				while (matches.hasNext()) {
+					BindingSet result = join(currentProbe, matches.next());
+					if (result != null) {
+						matched = true;
+						return result;
+					}
+				}
+
+				matches = null;
+				BindingSet probe = currentProbe;
+				currentProbe = null;
+
+				if (mode == Mode.LEFT_JOIN && !matched) {
+					return probe;
+				}
+			}
+
+			if (!probeIter.hasNext()) {
+				if (!nextPartition()) {
+					return null;
+				}
+				continue;
+			}
+
+			currentProbe = probeIter.next();
+			List<BindingSet> candidates = hashTable.get(BindingSetHashKey.create(joinAttributes, currentProbe));
+
+			if (mode == Mode.MINUS) {
+				BindingSet probe = currentProbe;
+				currentProbe = null;
+				if (candidates == null) {
+					return probe;
+				}
+			}
+			else {
+				matched = false;
+				matches = candidates != null ? candidates.iterator()
+						: Collections.<BindingSet> emptyList().iterator();
+			}
+		}
+	}
+
+	/**
+	 * Merges a binding set of the left argument with a matching binding set
+	 * from the hash table.
+	 * 
+	 * @return the merged binding set, or <tt>null</tt> if it does not satisfy
+	 *         the join condition.
+	 */
+	protected BindingSet join(BindingSet probe, BindingSet build)
+		throws QueryEvaluationException
+	{
+		QueryBindingSet result = new QueryBindingSet(probe);
+
+		for (String name : build.getBindingNames()) {
+			if (!result.hasBinding(name)) {
+				Value v = build.getValue(name);
+				if (v != null) {
+					result.addBinding(name, v);
+				}
+			}
+		}
+
+		if (condition != null) {
+			// Limit the bindings to the ones that are in scope for this filter
+			QueryBindingSet scopeBindings = new QueryBindingSet(result);
+			scopeBindings.retainAll(scopeBindingNames);
+
+			try {
+				if (!strategy.isTrue(condition, scopeBindings)) {
+					return null;
+				}
+			}
+			catch (ValueExprEvaluationException e) {
+				// condition not evaluated successfully
+				return null;
+			}
+		}
+
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void setupHashTable()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> prefetched = Collections.emptyList();
+		boolean spilled;
+
+		if (buildTask != null) {
+			prefetched = new ArrayList<BindingSet>();
+			while (!buildTask.isDone() && prefetched.size() < DEFAULT_PREFETCH_SIZE && leftIter.hasNext()) {
+				prefetched.add(leftIter.next());
+			}
+			spilled = buildTask.getResult();
+		}
+		else {
+			spilled = buildHashTable();
+		}
+
+		if (spilled) {
+			probePartitions = createPartitions();
+			for (BindingSet b : prefetched) {
+				probePartitions[getPartition(b)].add(b);
+			}
+			while (leftIter.hasNext()) {
+				BindingSet b = leftIter.next();
+				probePartitions[getPartition(b)].add(b);
+			}
+			leftIter.close();
+
+			partition = -1;
+			nextPartition();
+		}
+		else {
+			if (prefetched.isEmpty()) {
+				probeIter = leftIter;
+			}
+			else {
+				probeIter = new UnionIteration<BindingSet, QueryEvaluationException>(
+						new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(prefetched.iterator()),
+						leftIter);
+			}
+			partition = -1;
+		}
+	}
+
+	/**
+	 * Builds the hash table from the results of the right argument, moving it
+	 * into partition files if it grows beyond the spill threshold.
+	 * 
+	 * @return <tt>true</tt> if the hash table has been spilled to disk.
+	 */
+	private boolean buildHashTable()
+		throws QueryEvaluationException
+	{
+		hashTable = new HashMap<BindingSetHashKey, List<BindingSet>>();
+
+		if (mode == Mode.MINUS && joinAttributes.length == 0) {
+			// MINUS without shared variables never removes anything
+			return false;
+		}
+
+		CloseableIteration<BindingSet, QueryEvaluationException> rightIter = strategy.evaluate(rightArg,
+				bindings);
+		try {
+			long size = 0;
+			while (!closed && rightIter.hasNext()) {
+				if (spillThreshold > 0 && size >= spillThreshold) {
+					spill(rightIter);
+					return true;
+				}
+				BindingSet next = rightIter.next();
+				if (memoryBudget != null && !tryReserve(next)) {
+					// the memory budget is exhausted
+					spill(rightIter);
+					buildPartitions[getPartition(next)].add(next);
+					return true;
+				}
+				addToHashTable(next);
+				size++;
+			}
+			return false;
+		}
+		finally {
+			rightIter.close();
+		}
+	}
+
+	private void addToHashTable(BindingSet b) {
+		BindingSetHashKey key = BindingSetHashKey.create(joinAttributes, b);
+		List<BindingSet> hashValue = hashTable.get(key);
+
+		if (mode == Mode.MINUS) {
+			// a single binding set per key suffices, it is only kept to be
+			// able to spill the key to disk
+			if (hashValue == null) {
+				hashTable.put(key, Collections.singletonList(b));
+			}
+		}
+		else {
+			if (hashValue == null) {
+				hashValue = new ArrayList<BindingSet>(1);
+				hashTable.put(key, hashValue);
+			}
+			hashValue.add(b);
+		}
+	}
+
+	/**
+	 * Moves the contents of the hash table and the remaining results of the
+	 * right argument into partition files.
+	 */
+	private void spill(CloseableIteration<BindingSet, QueryEvaluationException> rightIter)
+		throws QueryEvaluationException
+	{
+		buildPartitions = createPartitions();
+
+		for (List<BindingSet> hashValue : hashTable.values()) {
+			for (BindingSet b : hashValue) {
+				buildPartitions[getPartition(b)].add(b);
+			}
+		}
+		hashTable.clear();
+		releaseAll();
+
+		while (!closed && rightIter.hasNext()) {
+			BindingSet b = rightIter.next();
+			buildPartitions[getPartition(b)].add(b);
+		}
+	}
+
+	private boolean tryReserve(BindingSet b) {
+		long bytes = QueryMemoryBudget.estimateSize(b);
+		if (memoryBudget.tryReserve(bytes)) {
+			reservedBytes += bytes;
+			return true;
+		}
+		return false;
+	}
+
+	private void releaseAll() {
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
+	}
+
+	private BindingSetSpillFile[] createPartitions()
+		throws QueryEvaluationException
+	{
+		BindingSetSpillFile[] partitions = new BindingSetSpillFile[DEFAULT_PARTITION_COUNT];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new BindingSetSpillFile();
+		}
+		return partitions;
+	}
+
+	private int getPartition(BindingSet b) {
+		int hash = BindingSetHashKey.create(joinAttributes, b).hashCode();
+		return (hash & Integer.MAX_VALUE) % DEFAULT_PARTITION_COUNT;
+	}
+
+	/**
+	 * Loads the hash table of the next partition, if any.
+	 */
+	private boolean nextPartition()
+		throws QueryEvaluationException
+	{
+		if (buildPartitions == null) {
+			return false;
+		}
+
+		if (partition >= 0) {
+			probeIter.close();
+			buildPartitions[partition].close();
+			probePartitions[partition].close();
+		}
+
+		partition++;
+		if (partition >= buildPartitions.length) {
+			return false;
+		}
+
+		hashTable.clear();
+		releaseAll();
+		CloseableIteration<BindingSet, QueryEvaluationException> buildIter = buildPartitions[partition].iterator();
+		try {
+			while (buildIter.hasNext()) {
+				BindingSet next = buildIter.next();
+				if (memoryBudget != null) {
+					long bytes = QueryMemoryBudget.estimateSize(next);
+					memoryBudget.reserve(bytes);
+					reservedBytes += bytes;
+				}
+				addToHashTable(next);
+			}
+		}
+		finally {
+			buildIter.close();
+		}
+
+		probeIter = probePartitions[partition].iterator();
+		return true;
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		closed = true;
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				leftIter.close();
+				if (probeIter != null) {
+					probeIter.close();
+				}
+			}
+			finally {
+				if (buildTask != null) {
+					buildTask.awaitTermination();
+				}
+				closePartitions(buildPartitions);
+				closePartitions(probePartitions);
+				releaseAll();
+				hashTable = null;
+				matches = null;
+			}
+		}
+	}
+
+	private void closePartitions(BindingSetSpillFile[] partitions) {
+		if (partitions != null) {
+			for (BindingSetSpillFile partition : partitions) {
+				partition.close();
+			}
+		}
+	}
+
+	/*-----------------------*
+	 * Inner class BuildTask *
+	 *-----------------------*/
+
+	private class BuildTask implements Runnable {
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		private volatile boolean spilled;
+
+		private volatile Exception exception;
+
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				// skipped
+				return;
+			}
+			try {
+				spilled = buildHashTable();
+			}
+			catch (QueryEvaluationException e) {
+				exception = e;
+			}
+			catch (RuntimeException e) {
+				exception = e;
+			}
+			finally {
+				finished.countDown();
+			}
+		}
+
+		public boolean isDone() {
+			return finished.getCount() == 0;
+		}
+
+		/**
+		 * Builds the hash table in the calling thread if the task has not been
+		 * started yet, or waits for it to be built otherwise. The task may be
+		 * queued behind tasks that occupy all threads of the executor.
+		 * 
+		 * @return <tt>true</tt> if the hash table has been spilled to disk.
+		 */
+		public boolean getResult()
+			throws QueryEvaluationException
+		{
+			run();
+			try {
+				finished.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new QueryEvaluationException(e);
+			}
+
+			if (exception instanceof QueryEvaluationException) {
+				throw (QueryEvaluationException)exception;
+			}
+			else if (exception instanceof RuntimeException) {
+				throw (RuntimeException)exception;
+			}
+			return spilled;
+		}
+
+		/**
+		 * Prevents the task from being run if it has not been started yet, or
+		 * waits for it to finish otherwise.
+		 */
+		public void awaitTermination() {
+			if (started.compareAndSet(false, true)) {
+				finished.countDown();
+			}
+			try {
+				finished.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.Iteration;
+import info.aduna.iteration.Iterations;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryResults;
+import org.openrdf.query.algebra.evaluation.util.BindingSetSpillFile;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+
+/**
+ * An iteration that evaluates SPARQL MINUS with the same semantics as
+ * {@link SPARQLMinusIteration}, but without keeping all results of the right
+ * argument in memory.
+ * <p>
+ * The results of the right argument are read in blocks that stay below the
+ * spill threshold and within the {@link QueryMemoryBudget}. If the right
+ * argument fits in a single block, the results of the left argument are
+ * filtered against it while they are read. Otherwise, the remaining results
+ * of the right argument are written to a temporary file, and every block
+ * filters the results of the left argument that passed the previous blocks,
+ * which are kept in a temporary file as well. The order of the results of the
+ * left argument is preserved.
+ */
+public class SpillingSPARQLMinusIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Iteration<BindingSet, QueryEvaluationException> leftArg;
+
+	private final Iteration<BindingSet, QueryEvaluationException> rightArg;
+
+	private final long spillThreshold;
+
+	private final QueryMemoryBudget memoryBudget;
+
+	/**
+	 * The number of bytes currently reserved from the memory budget for the
+	 * current block.
+	 */
+	private long reservedBytes;
+
+	private boolean initialized;
+
+	private final Set<BindingSet> excludeSet = new LinkedHashSet<BindingSet>();
+
+	/**
+	 * The results of the right argument that have not been loaded into a
+	 * block yet, <tt>null</tt> if the current block is the last one.
+	 */
+	private BindingSetSpillFile remainingRight;
+
+	/**
+	 * The results of the left argument that are being filtered by the current
+	 * block.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> input;
+
+	private BindingSetSpillFile inputFile;
+
+	/**
+	 * The results of the left argument that passed the current block, if it is
+	 * not the last one.
+	 */
+	private BindingSetSpillFile outputFile;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param spillThreshold
+	 *        the maximum number of results of the right argument that are kept
+	 *        in memory, or <tt>0</tt> for no limit other than that of the
+	 *        memory budget.
+	 * @param memoryBudget
+	 *        an optional budget to reserve the memory of the results of the
+	 *        right argument that are kept in memory from.
+	 */
+	public SpillingSPARQLMinusIteration(Iteration<BindingSet, QueryEvaluationException> leftArg,
+			Iteration<BindingSet, QueryEvaluationException> rightArg, long spillThreshold,
+			QueryMemoryBudget memoryBudget)
+	{
+		this.leftArg = leftArg;
+		this.rightArg = rightArg;
+		this.spillThreshold = spillThreshold;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (!initialized) {
+			initialized = true;
+			input = leftArg;
+			loadBlock(rightArg);
+		}
+
+		while (true) {
+			while (input.hasNext()) {
+				BindingSet next = input.next();
+				if (accept(next)) {
+					if (outputFile == null) {
+						return next;
+					}
+					outputFile.add(next);
+				}
+			}
+
+			if (outputFile == null) {
+				return null;
+			}
+
+			// filter the results that passed this block against the next one
+			Iterations.closeCloseable(input);
+			if (inputFile != null) {
+				inputFile.close();
+			}
+			inputFile = outputFile;
+			outputFile = null;
+			input = inputFile.iterator();
+
+			BindingSetSpillFile right = remainingRight;
+			remainingRight = null;
+			try {
+				CloseableIteration<BindingSet, QueryEvaluationException> rightIter = right.iterator();
+				try {
+					loadBlock(rightIter);
+				}
+				finally {
+					rightIter.close();
+				}
+			}
+			finally {
+				right.close();
+			}
+		}
+	}
+
+	/**
+	 * Replaces the current block with the next results of the supplied
+	 * iteration, moving the results that do not fit in it to a temporary file.
+	 */
+	private void loadBlock(Iteration<BindingSet, QueryEvaluationException> rightIter)
+		throws QueryEvaluationException
+	{
+		excludeSet.clear();
+		releaseAll();
+
+		while (rightIter.hasNext()) {
+			BindingSet next = rightIter.next();
+
+			if (remainingRight != null) {
+				remainingRight.add(next);
+			}
+			else if (fitsInMemory(next)) {
+				excludeSet.add(next);
+			}
+			else {
+				remainingRight = new BindingSetSpillFile();
+				remainingRight.add(next);
+			}
+		}
+
+		if (remainingRight != null) {
+			outputFile = new BindingSetSpillFile();
+		}
+	}
+
+	private boolean fitsInMemory(BindingSet next) {
+		if (excludeSet.isEmpty()) {
+			// every block holds at least one result to make progress
+			if (memoryBudget != null) {
+				long bytes = QueryMemoryBudget.estimateSize(next);
+				memoryBudget.forceReserve(bytes);
+				reservedBytes += bytes;
+			}
+			return true;
+		}
+		if (spillThreshold > 0 && excludeSet.size() >= spillThreshold) {
+			return false;
+		}
+		if (memoryBudget != null) {
+			long bytes = QueryMemoryBudget.estimateSize(next);
+			if (!memoryBudget.tryReserve(bytes)) {
+				return false;
+			}
+			reservedBytes += bytes;
+		}
+		return true;
+	}
+
+	private boolean accept(BindingSet object) {
+		for (BindingSet excluded : excludeSet) {
+			// binding sets that share no variables are not removed, see
+			// SPARQLMinusIteration
+			if (sharesBindingName(excluded, object) && QueryResults.bindingSetsCompatible(excluded, object)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean sharesBindingName(BindingSet excluded, BindingSet object) {
+		Set<String> objectBindingNames = object.getBindingNames();
+		for (String name : excluded.getBindingNames()) {
+			if (objectBindingNames.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void releaseAll() {
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				Iterations.closeCloseable(leftArg);
+				Iterations.closeCloseable(rightArg);
+				if (input != null) {
+					Iterations.closeCloseable(input);
+				}
+			}
+			finally {
+				closeFile(inputFile);
+				closeFile(outputFile);
+				closeFile(remainingRight);
+				excludeSet.clear();
+				releaseAll();
+			}
+		}
+	}
+
+	private void closeFile(BindingSetSpillFile file) {
+		if (file != null) {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,731 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.Iterations;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.ZeroLengthPath;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+
+/**
+ * Evaluates an {@link ArbitraryLengthPath} over a single statement pattern,
+ * such as <tt>rdfs:subClassOf*</tt> or <tt>^skos:broader+</tt>, as a
+ * breadth-first search. Every value that is reached is mapped to a dense
+ * integer ID, so visited nodes are tracked in {@link BitSet}s rather than in
+ * sets of value pairs, and the path expression is never rewritten.
+ * <p>
+ * Paths with one fixed endpoint are searched from that endpoint, one
+ * statement lookup per node. Paths with two fixed endpoints use a
+ * bidirectional search that always expands the smaller frontier. Paths
+ * without fixed endpoints read the matching statements once into an
+ * in-memory adjacency list and search it from every subject. Frontiers that
+ * grow beyond the iteration cache sync threshold are spilled to disk. The
+ * value mapping, the adjacency list and the results that are waiting to be
+ * returned are reserved from the query's {@link QueryMemoryBudget}, if it has
+ * one, and the query is aborted when that budget is exceeded.
+ *
+ * @see PathIteration
+ */
+public class TransitiveClosureIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	private static final String START = "-closure-start";
+
+	private static final String END = "-closure-end";
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final EvaluationStrategy strategy;
+
+	private final ArbitraryLengthPath path;
+
+	private final BindingSet bindings;
+
+	private final QueryBindingSet template;
+
+	private final StatementPattern edge;
+
+	private final long threshold;
+
+	private final QueryMemoryBudget memoryBudget;
+
+	private long reservedBytes;
+
+	private final Map<Value, Integer> ids = new HashMap<Value, Integer>();
+
+	private final List<Value> values = new ArrayList<Value>();
+
+	private final Queue<BindingSet> pending = new ArrayDeque<BindingSet>();
+
+	private Value startValue;
+
+	private Value endValue;
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> zeroLengthIter;
+
+	private boolean searched;
+
+	/**
+	 * Frontier of the search from a single endpoint.
+	 */
+	private Frontier current;
+
+	private Frontier next;
+
+	private BitSet visited;
+
+	/**
+	 * Adjacency list, in compressed row form, of an unconstrained path.
+	 */
+	private int[] offsets;
+
+	private int[] targets;
+
+	private int source = -1;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public TransitiveClosureIteration(EvaluationStrategy strategy, ArbitraryLengthPath path,
+			BindingSet bindings, long threshold)
+		throws QueryEvaluationException
+	{
+		this(strategy, path, bindings, threshold, null);
+	}
+
+	/**
+	 * @param memoryBudget
+	 *        the budget to reserve the memory of the search from, may be
+	 *        <tt>null</tt>.
+	 */
+	public TransitiveClosureIteration(EvaluationStrategy strategy, ArbitraryLengthPath path,
+			BindingSet bindings, long threshold, QueryMemoryBudget memoryBudget)
+		throws QueryEvaluationException
+	{
+		this.strategy = strategy;
+		this.path = path;
+		this.bindings = bindings;
+		this.template = new QueryBindingSet(bindings);
+		this.threshold = threshold;
+		this.memoryBudget = memoryBudget;
+
+		StatementPattern sp = (StatementPattern)path.getPathExpression();
+		boolean inverse = sp.getSubjectVar().getName().equals(path.getObjectVar().getName());
+		Var subj = new Var(inverse ? END : START);
+		Var obj = new Var(inverse ? START : END);
+		Var context = sp.getContextVar() == null ? null : sp.getContextVar().clone();
+		this.edge = new StatementPattern(sp.getScope(), subj, sp.getPredicateVar().clone(), obj, context);
+
+		this.startValue = getValue(path.getSubjectVar());
+		this.endValue = getValue(path.getObjectVar());
+
+		if (path.getMinLength() == 0) {
+			ZeroLengthPath zlp = new ZeroLengthPath(path.getScope(), path.getSubjectVar(), path.getObjectVar(),
+					path.getContextVar());
+			zeroLengthIter = strategy.evaluate(zlp, bindings);
+		}
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Checks whether the supplied path can be evaluated by this iteration: its
+	 * path expression must be a single statement pattern between the path's
+	 * subject and object, with a bound predicate and, if it has one, a bound
+	 * context.
+	 */
+	public static boolean isSupported(ArbitraryLengthPath path, BindingSet bindings) {
+		TupleExpr expr = path.getPathExpression();
+		if (!(expr instanceof StatementPattern)) {
+			return false;
+		}
+		StatementPattern sp = (StatementPattern)expr;
+
+		String start = path.getSubjectVar().getName();
+		String end = path.getObjectVar().getName();
+		if (start.equals(end)) {
+			return false;
+		}
+
+		String subj = sp.getSubjectVar().getName();
+		String obj = sp.getObjectVar().getName();
+		if (!(subj.equals(start) && obj.equals(end)) && !(subj.equals(end) && obj.equals(start))) {
+			return false;
+		}
+
+		return isBound(sp.getPredicateVar(), bindings) && isBound(sp.getContextVar(), bindings)
+				&& isBound(path.getContextVar(), bindings);
+	}
+
+	private static boolean isBound(Var var, BindingSet bindings) {
+		return var == null || var.hasValue() || bindings.hasBinding(var.getName());
+	}
+
+	private Value getValue(Var var) {
+		if (var.hasValue()) {
+			return var.getValue();
+		}
+		return bindings.getValue(var.getName());
+	}
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (zeroLengthIter != null) {
+			if (zeroLengthIter.hasNext()) {
+				return bindEndpoints(zeroLengthIter.next());
+			}
+			Iterations.closeCloseable(zeroLengthIter);
+			zeroLengthIter = null;
+		}
+
+		while (pending.isEmpty()) {
+			if (!searchNext()) {
+				release();
+				return null;
+			}
+		}
+		BindingSet result = pending.poll();
+		if (memoryBudget != null) {
+			long size = QueryMemoryBudget.estimateSize(result);
+			memoryBudget.release(size);
+			reservedBytes -= size;
+		}
+		return result;
+	}
+
+	/**
+	 * Advances the search by one step, adding any new results to the pending
+	 * queue.
+	 *
+	 * @return <tt>false</tt> if the search has completed.
+	 */
+	private boolean searchNext()
+		throws QueryEvaluationException
+	{
+		if (startValue != null && endValue != null) {
+			if (searched) {
+				return false;
+			}
+			searched = true;
+			if (!(path.getMinLength() == 0 && startValue.equals(endValue)) && isConnected()) {
+				enqueue(result(startValue, endValue));
+			}
+			return true;
+		}
+		else if (startValue != null || endValue != null) {
+			return searchFromEndpoint(startValue != null);
+		}
+		else {
+			return searchAllPairs();
+		}
+	}
+
+	private boolean searchFromEndpoint(boolean forward)
+		throws QueryEvaluationException
+	{
+		Value origin = forward ? startValue : endValue;
+		if (!searched) {
+			searched = true;
+			visited = new BitSet();
+			next = new Frontier(threshold);
+			expand(origin, forward, id(origin));
+			return true;
+		}
+
+		int node = current == null ? -1 : current.next();
+		if (node < 0) {
+			if (current != null) {
+				current.close();
+			}
+			if (next.size() == 0) {
+				return false;
+			}
+			current = next;
+			next = new Frontier(threshold);
+			return true;
+		}
+		expand(values.get(node), forward, id(origin));
+		return true;
+	}
+
+	/**
+	 * Expands a node of a single-endpoint search, reporting each newly reached
+	 * node. The origin is reported only if it is reached through a cycle of
+	 * length one or more, and only for paths that exclude zero-length paths.
+	 */
+	private void expand(Value node, boolean forward, int origin)
+		throws QueryEvaluationException
+	{
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = neighbours(node, forward);
+		try {
+			while (iter.hasNext()) {
+				Value value = iter.next().getValue(forward ? END : START);
+				int id = id(value);
+				if (!visited.get(id)) {
+					visited.set(id);
+					if (id != origin) {
+						next.add(id);
+						enqueue(forward ? result(startValue, value) : result(value, endValue));
+					}
+					else if (path.getMinLength() > 0) {
+						enqueue(result(value, value));
+					}
+				}
+			}
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Bidirectional search between the two fixed endpoints. The forward set
+	 * holds nodes reached from the start in one or more steps, the backward set
+	 * nodes that reach the end in zero or more steps; the endpoints are
+	 * connected as soon as the two sets intersect.
+	 */
+	private boolean isConnected()
+		throws QueryEvaluationException
+	{
+		BitSet forward = new BitSet();
+		BitSet backward = new BitSet();
+		Frontier forwardFrontier = new Frontier(threshold);
+		Frontier backwardFrontier = new Frontier(threshold);
+		try {
+			int end = id(endValue);
+			backward.set(end);
+			backwardFrontier.add(end);
+
+			if (expandLevel(id(startValue), true, forward, backward, forwardFrontier)) {
+				return true;
+			}
+
+			while (forwardFrontier.size() > 0 && backwardFrontier.size() > 0) {
+				boolean isForward = forwardFrontier.size() <= backwardFrontier.size();
+				Frontier frontier;
+				Frontier nextLevel = new Frontier(threshold);
+				if (isForward) {
+					frontier = forwardFrontier;
+					forwardFrontier = nextLevel;
+				}
+				else {
+					frontier = backwardFrontier;
+					backwardFrontier = nextLevel;
+				}
+				try {
+					for (int node = frontier.next(); node >= 0; node = frontier.next()) {
+						if (isForward ? expandLevel(node, true, forward, backward, nextLevel) : expandLevel(node,
+								false, backward, forward, nextLevel))
+						{
+							return true;
+						}
+					}
+				}
+				finally {
+					frontier.close();
+				}
+			}
+			return false;
+		}
+		finally {
+			forwardFrontier.close();
+			backwardFrontier.close();
+		}
+	}
+
+	private boolean expandLevel(int node, boolean forward, BitSet own, BitSet other, Frontier nextLevel)
+		throws QueryEvaluationException
+	{
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = neighbours(values.get(node), forward);
+		try {
+			while (iter.hasNext()) {
+				int id = id(iter.next().getValue(forward ? END : START));
+				if (!own.get(id)) {
+					if (other.get(id)) {
+						return true;
+					}
+					own.set(id);
+					nextLevel.add(id);
+				}
+			}
+			return false;
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Searches the adjacency list from each of its subjects in turn, reporting
+	 * all nodes reachable from one subject per call.
+	 */
+	private boolean searchAllPairs()
+		throws QueryEvaluationException
+	{
+		if (offsets == null) {
+			loadAdjacencyList();
+			visited = new BitSet(offsets.length - 1);
+		}
+
+		do {
+			source++;
+		}
+		while (source < offsets.length - 1 && offsets[source] == offsets[source + 1]);
+
+		if (source >= offsets.length - 1) {
+			return false;
+		}
+
+		Value sourceValue = values.get(source);
+		visited.clear();
+		Frontier frontier = new Frontier(threshold);
+		frontier.add(source);
+		try {
+			while (frontier.size() > 0) {
+				Frontier level = frontier;
+				Frontier nextLevel = frontier = new Frontier(threshold);
+				try {
+					for (int node = level.next(); node >= 0; node = level.next()) {
+						for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+							int id = targets[i];
+							if (!visited.get(id)) {
+								visited.set(id);
+								if (id != source) {
+									nextLevel.add(id);
+								}
+								if (id != source || path.getMinLength() > 0) {
+									enqueue(result(sourceValue, values.get(id)));
+								}
+							}
+						}
+					}
+				}
+				finally {
+					level.close();
+				}
+			}
+		}
+		finally {
+			frontier.close();
+		}
+		return true;
+	}
+
+	private void loadAdjacencyList()
+		throws QueryEvaluationException
+	{
+		int[] from = new int[64];
+		int[] to = new int[64];
+		int count = 0;
+
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(edge, bindings);
+		try {
+			while (iter.hasNext()) {
+				BindingSet bs = iter.next();
+				if (count == from.length) {
+					from = Arrays.copyOf(from, count * 2);
+					to = Arrays.copyOf(to, count * 2);
+				}
+				reserve(8);
+				from[count] = id(bs.getValue(START));
+				to[count] = id(bs.getValue(END));
+				count++;
+			}
+		}
+		finally {
+			iter.close();
+		}
+
+		reserve(4L * (values.size() + 1));
+		offsets = new int[values.size() + 1];
+		for (int i = 0; i < count; i++) {
+			offsets[from[i] + 1]++;
+		}
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+		targets = new int[count];
+		int[] fill = Arrays.copyOf(offsets, offsets.length - 1);
+		for (int i = 0; i < count; i++) {
+			targets[fill[from[i]]++] = to[i];
+		}
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> neighbours(Value node, boolean forward)
+		throws QueryEvaluationException
+	{
+		QueryBindingSet bs = new QueryBindingSet(bindings);
+		bs.addBinding(forward ? START : END, node);
+		return strategy.evaluate(edge, bs);
+	}
+
+	private int id(Value value)
+		throws QueryEvaluationException
+	{
+		Integer id = ids.get(value);
+		if (id == null) {
+			reserve(QueryMemoryBudget.estimateSize(value));
+			id = values.size();
+			ids.put(value, id);
+			values.add(value);
+		}
+		return id;
+	}
+
+	private void enqueue(BindingSet result)
+		throws QueryEvaluationException
+	{
+		reserve(QueryMemoryBudget.estimateSize(result));
+		pending.add(result);
+	}
+
+	private void reserve(long bytes)
+		throws QueryEvaluationException
+	{
+		if (memoryBudget != null) {
+			memoryBudget.reserve(bytes);
+			reservedBytes += bytes;
+		}
+	}
+
+	/**
+	 * Binds fixed endpoints that are missing from a zero-length path result,
+	 * as {@link PathIteration} does.
+	 */
+	private BindingSet bindEndpoints(BindingSet bs) {
+		String startName = path.getSubjectVar().getName();
+		String endName = path.getObjectVar().getName();
+		if (bs.hasBinding(startName) && bs.hasBinding(endName)) {
+			return bs;
+		}
+		QueryBindingSet result = new QueryBindingSet(bs);
+		if (!result.hasBinding(startName)) {
+			result.addBinding(startName, startValue);
+		}
+		if (!result.hasBinding(endName)) {
+			result.addBinding(endName, endValue);
+		}
+		return result;
+	}
+
+	private BindingSet result(Value start, Value end) {
+		QueryBindingSet result = new QueryBindingSet(template);
+		String startName = path.getSubjectVar().getName();
+		String endName = path.getObjectVar().getName();
+		if (!result.hasBinding(startName)) {
+			result.addBinding(startName, start);
+		}
+		if (!result.hasBinding(endName)) {
+			result.addBinding(endName, end);
+		}
+		return result;
+	}
+
+	private void release()
+		throws QueryEvaluationException
+	{
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+		if (next != null) {
+			next.close();
+			next = null;
+		}
+		ids.clear();
+		values.clear();
+		pending.clear();
+		visited = null;
+		offsets = null;
+		targets = null;
+		if (memoryBudget != null) {
+			memoryBudget.release(reservedBytes);
+			reservedBytes = 0;
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				if (zeroLengthIter != null) {
+					zeroLengthIter.close();
+				}
+			}
+			finally {
+				release();
+			}
+		}
+	}
+
+	/**
+	 * A write-once, read-once queue of node IDs. IDs are buffered in memory
+	 * until the buffer exceeds the threshold, after which the buffer is
+	 * appended to a temporary file and reused.
+	 */
+	static final class Frontier {
+
+		private final long threshold;
+
+		private int[] buffer = new int[16];
+
+		private int buffered;
+
+		private long size;
+
+		private File file;
+
+		private DataOutputStream out;
+
+		private DataInputStream in;
+
+		private long unread;
+
+		private int position;
+
+		Frontier(long threshold) {
+			this.threshold = threshold;
+		}
+
+		long size() {
+			return size;
+		}
+
+		void add(int id)
+			throws QueryEvaluationException
+		{
+			if (threshold > 0 && buffered >= threshold) {
+				spill();
+			}
+			if (buffered == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffered * 2);
+			}
+			buffer[buffered++] = id;
+			size++;
+		}
+
+		private void spill()
+			throws QueryEvaluationException
+		{
+			try {
+				if (out == null) {
+					file = File.createTempFile("path-eval", null);
+					out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				}
+				for (int i = 0; i < buffered; i++) {
+					out.writeInt(buffer[i]);
+				}
+				unread += buffered;
+				buffered = 0;
+			}
+			catch (IOException e) {
+				close();
+				throw new QueryEvaluationException(e);
+			}
+		}
+
+		/**
+		 * Returns the next ID, or -1 if all IDs have been read. No more IDs can
+		 * be added once reading has started.
+		 */
+		int next()
+			throws QueryEvaluationException
+		{
+			if (unread > 0) {
+				try {
+					if (in == null) {
+						out.close();
+						out = null;
+						in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+					}
+					unread--;
+					return in.readInt();
+				}
+				catch (IOException e) {
+					close();
+					throw new QueryEvaluationException(e);
+				}
+			}
+			if (position < buffered) {
+				return buffer[position++];
+			}
+			return -1;
+		}
+
+		void close() {
+			try {
+				if (out != null) {
+					out.close();
+				}
+				if (in != null) {
+					in.close();
+				}
+			}
+			catch (IOException e) {
+				// ignore, the file is deleted below
+			}
+			finally {
+				out = null;
+				in = null;
+				unread = 0;
+				if (file != null) {
+					file.delete();
+					file = null;
+				}
+			}
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.BinaryTupleOperator;
 import org.openrdf.query.algebra.Difference;
 import org.openrdf.query.algebra.Distinct;
 import org.openrdf.query.algebra.Intersection;
@@ -40,6 +41,7 @@ import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.ServiceJoinIterator;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.iterator.BatchingJoinIteration;
 import org.openrdf.query.algebra.evaluation.iterator.JoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.ZeroLengthPathIteration;
 import org.openrdf.query.algebra.evaluation.limited.iterator.LimitedSizeDistinctIteration;
@@ -162,14 +164,24 @@ public class LimitedSizeEvaluationStrategy extends EvaluationStrategyImpl {
 			return new ServiceJoinIterator(leftIter, (Service)join.getRightArg(), bindings, this);
 		}
 
-		if (TupleExprs.containsProjection(join.getRightArg())) {
+		if (TupleExprs.containsProjection(join.getRightArg()) || isHashJoinPreferred(join, bindings)) {
 			return new LimitedSizeHashJoinIteration(this, join, bindings, used, maxSize);
 		}
+		else if (isBatchedJoinPreferred(join)) {
+			int blockSize = getJoinBatchSize() > 0 ? getJoinBatchSize() : BatchingJoinIteration.DEFAULT_BLOCK_SIZE;
+			return new BatchingJoinIteration(this, join, bindings, blockSize);
+		}
 		else {
 			return new JoinIterator(this, join, bindings);
 		}
 	}
 
+	@Override
+	protected boolean isHashJoinPreferred(BinaryTupleOperator join, BindingSet bindings) {
+		// only regular joins have a size limited hash join implementation
+		return join instanceof Join && super.isHashJoinPreferred(join, bindings);
+	}
+
 	@Override
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(ArbitraryLengthPath alp,
 			final BindingSet bindings)
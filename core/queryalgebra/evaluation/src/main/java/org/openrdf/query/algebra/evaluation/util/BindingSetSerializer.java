@@ -0,0 +1,168 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Set;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+/**
+ * Reads and writes binding sets in a compact binary form, for use by
+ * operators that temporarily move intermediate results to disk. Values are
+ * written by their lexical form only, so values that are read back are
+ * created by the supplied {@link ValueFactory} and are equal to, but not
+ * necessarily of the same class as, the values that were written.
+ */
+public class BindingSetSerializer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int URI_VALUE = 1;
+
+	private static final int BNODE_VALUE = 2;
+
+	private static final int PLAIN_LITERAL_VALUE = 3;
+
+	private static final int LANG_LITERAL_VALUE = 4;
+
+	private static final int TYPED_LITERAL_VALUE = 5;
+
+	private BindingSetSerializer() {
+	}
+
+	public static void writeBindingSet(BindingSet bindings, DataOutput out)
+		throws IOException
+	{
+		Set<String> names = bindings.getBindingNames();
+		int size = 0;
+		for (String name : names) {
+			if (bindings.getValue(name) != null) {
+				size++;
+			}
+		}
+
+		out.writeInt(size);
+		for (String name : names) {
+			Value value = bindings.getValue(name);
+			if (value != null) {
+				writeString(name, out);
+				writeValue(value, out);
+			}
+		}
+	}
+
+	public static BindingSet readBindingSet(DataInput in, ValueFactory vf)
+		throws IOException
+	{
+		int size = in.readInt();
+		QueryBindingSet bindings = new QueryBindingSet(size);
+		for (int i = 0; i < size; i++) {
+			String name = readString(in);
+			bindings.addBinding(name, readValue(in, vf));
+		}
+		return bindings;
+	}
+
+	public static void writeValue(Value value, DataOutput out)
+		throws IOException
+	{
+		if (value instanceof URI) {
+			out.writeByte(URI_VALUE);
+			writeString(value.stringValue(), out);
+		}
+		else if (value instanceof BNode) {
+			out.writeByte(BNODE_VALUE);
+			writeString(((BNode)value).getID(), out);
+		}
+		else if (value instanceof Literal) {
+			Literal lit = (Literal)value;
+			String language = lit.getLanguage();
+			URI datatype = lit.getDatatype();
+
+			if (language != null) {
+				out.writeByte(LANG_LITERAL_VALUE);
+				writeString(lit.getLabel(), out);
+				writeString(language, out);
+			}
+			else if (datatype != null) {
+				out.writeByte(TYPED_LITERAL_VALUE);
+				writeString(lit.getLabel(), out);
+				writeString(datatype.stringValue(), out);
+			}
+			else {
+				out.writeByte(PLAIN_LITERAL_VALUE);
+				writeString(lit.getLabel(), out);
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported value type: " + value.getClass());
+		}
+	}
+
+	public static Value readValue(DataInput in, ValueFactory vf)
+		throws IOException
+	{
+		int type = in.readByte();
+		switch (type) {
+			case URI_VALUE:
+				return vf.createURI(readString(in));
+			case BNODE_VALUE:
+				return vf.createBNode(readString(in));
+			case PLAIN_LITERAL_VALUE:
+				return vf.createLiteral(readString(in));
+			case LANG_LITERAL_VALUE:
+				String label = readString(in);
+				return vf.createLiteral(label, readString(in));
+			case TYPED_LITERAL_VALUE:
+				label = readString(in);
+				return vf.createLiteral(label, vf.createURI(readString(in)));
+			default:
+				throw new IOException("Unknown value type: " + type);
+		}
+	}
+
+	/**
+	 * Writes a string as a length-prefixed UTF-8 byte sequence. Unlike
+	 * {@link DataOutput#writeUTF(String)}, this method does not restrict the
+	 * length of the string.
+	 */
+	private static void writeString(String s, DataOutput out)
+		throws IOException
+	{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in)
+		throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,190 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import info.aduna.iteration.CancellationToken;
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
+
+/**
+ * An append-only temporary file of binding sets. Binding sets are first
+ * {@link #add(BindingSet) added} to the file, after which they can be read
+ * back, in insertion order, any number of times. The file is deleted when the
+ * spill file is {@link #close() closed}.
+ * 
+ * @see BindingSetSerializer
+ */
+public class BindingSetSpillFile {
+
+	private final ValueFactory vf;
+
+	private File file;
+
+	private DataOutputStream out;
+
+	private long size;
+
+	public BindingSetSpillFile()
+		throws QueryEvaluationException
+	{
+		this(ValueFactoryImpl.getInstance());
+	}
+
+	public BindingSetSpillFile(ValueFactory vf)
+		throws QueryEvaluationException
+	{
+		this.vf = vf;
+		try {
+			file = File.createTempFile("spill-eval", null);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		}
+		catch (IOException e) {
+			if (file != null) {
+				file.delete();
+			}
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Appends a binding set to the file.
+	 */
+	public void add(BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		if (out == null) {
+			throw new IllegalStateException("Spill file is no longer writable");
+		}
+		try {
+			BindingSetSerializer.writeBindingSet(bindings, out);
+			size++;
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Gets the number of binding sets that have been added to the file.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns an iteration over all binding sets in the file. No more binding
+	 * sets can be added after this method has been called.
+	 */
+	public CloseableIteration<BindingSet, QueryEvaluationException> iterator()
+		throws QueryEvaluationException
+	{
+		if (file == null) {
+			throw new IllegalStateException("Spill file has been closed");
+		}
+		try {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+
+			final long count = size;
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+
+				private long read;
+
+				@Override
+				protected BindingSet getNextElement()
+					throws QueryEvaluationException
+				{
+					if (read >= count) {
+						return null;
+					}
+					if (CancellationToken.isCurrentCancelled()) {
+						// spill files are read by operators that do not
+						// evaluate other operators in between
+						throw new QueryInterruptedException("Query evaluation was cancelled or took too long");
+					}
+					try {
+						read++;
+						return BindingSetSerializer.readBindingSet(in, vf);
+					}
+					catch (IOException e) {
+						throw new QueryEvaluationException(e);
+					}
+				}
+
+				@Override
+				protected void handleClose()
+					throws QueryEvaluationException
+				{
+					try {
+						super.handleClose();
+					}
+					finally {
+						try {
+							in.close();
+						}
+						catch (IOException e) {
+							throw new QueryEvaluationException(e);
+						}
+					}
+				}
+			};
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Closes and deletes the file.
+	 */
+	public void close() {
+		try {
+			if (out != null) {
+				out.close();
+			}
+		}
+		catch (IOException e) {
+			// ignore, the file is deleted anyway
+		}
+		finally {
+			out = null;
+			if (file != null) {
+				file.delete();
+				file = null;
+			}
+		}
+	}
+}
@@ -16,6 +16,8 @@
  */
 package org.openrdf.query.algebra.evaluation.util;
 
+import java.util.regex.Pattern;
+
 import javax.xml.datatype.DatatypeConstants;
 import javax.xml.datatype.XMLGregorianCalendar;
 
@@ -437,6 +439,71 @@ public class QueryEvaluationUtil {
 		return Literals.isLanguageLiteral(l) || datatype.equals(XMLSchema.STRING);
 	}
 
+	/**
+	 * Compiles a regular expression with the flags of the SPARQL <tt>REGEX</tt>
+	 * function.
+	 * 
+	 * @param pattern
+	 *        The regular expression.
+	 * @param flags
+	 *        The flags, may be an empty string.
+	 * @throws ValueExprEvaluationException
+	 *         If the flags contain an unknown flag.
+	 * @see <a href="http://www.w3.org/TR/xpath-functions/#flags">XPath flags</a>
+	 */
+	public static Pattern compileRegex(String pattern, String flags)
+		throws ValueExprEvaluationException
+	{
+		int f = 0;
+		for (char c : flags.toCharArray()) {
+			switch (c) {
+				case 's':
+					f |= Pattern.DOTALL;
+					break;
+				case 'm':
+					f |= Pattern.MULTILINE;
+					break;
+				case 'i':
+					f |= Pattern.CASE_INSENSITIVE;
+					break;
+				case 'x':
+					f |= Pattern.COMMENTS;
+					break;
+				case 'd':
+					f |= Pattern.UNIX_LINES;
+					break;
+				case 'u':
+					f |= Pattern.UNICODE_CASE;
+					break;
+				default:
+					throw new ValueExprEvaluationException(flags);
+			}
+		}
+		return Pattern.compile(pattern, f);
+	}
+
+	/**
+	 * Determines whether a language tag matches a language range as defined by
+	 * the SPARQL <tt>langMatches</tt> function.
+	 * 
+	 * @see <a href="http://www.w3.org/TR/sparql11-query/#func-langMatches">SPARQL
+	 *      langMatches</a>
+	 */
+	public static boolean langMatches(String langTag, String langRange) {
+		if (langRange.equals("*")) {
+			return langTag.length() > 0;
+		}
+		else if (langTag.length() == langRange.length()) {
+			return langTag.equalsIgnoreCase(langRange);
+		}
+		else if (langTag.length() > langRange.length()) {
+			// check if the range is a prefix of the tag
+			String prefix = langTag.substring(0, langRange.length());
+			return prefix.equalsIgnoreCase(langRange) && langTag.charAt(langRange.length()) == '-';
+		}
+		return false;
+	}
+
 	private static boolean isSupportedDatatype(URI datatype) {
 		return (XMLSchema.STRING.equals(datatype) || XMLDatatypeUtil.isNumericDatatype(datatype) || XMLDatatypeUtil.isCalendarDatatype(datatype));
 	}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+
+/**
+ * Accounts for the memory that the operators of a query use to materialize
+ * intermediate results, such as sort buffers, hash tables and the groups of
+ * an aggregation. Operators reserve an estimate of the size of each solution
+ * they keep in memory and release it when they no longer hold on to it.
+ * Operators that are able to spill their state to disk
+ * {@link #tryReserve(long) try} to reserve memory and spill when the budget is
+ * exhausted, the other operators {@link #reserve(long) reserve} memory and
+ * abort the query when the budget is exceeded.
+ * <p>
+ * A budget can have a parent budget that is shared by several queries, for
+ * example by all queries on a store. Memory is then reserved from both
+ * budgets, and returned to the parent when the query's budget is
+ * {@link #close() closed}. A budget is safe to use from multiple threads.
+ */
+public class QueryMemoryBudget {
+
+	/**
+	 * Estimated number of bytes used by an object header and a reference to
+	 * the object.
+	 */
+	private static final int OBJECT_OVERHEAD = 24;
+
+	private final long maxBytes;
+
+	private final QueryMemoryBudget parent;
+
+	private final AtomicLong used = new AtomicLong();
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new budget without a parent budget.
+	 * 
+	 * @param maxBytes
+	 *        the maximum number of bytes that can be reserved, or <tt>0</tt>
+	 *        for no limit.
+	 */
+	public QueryMemoryBudget(long maxBytes) {
+		this(maxBytes, null);
+	}
+
+	/**
+	 * Creates a new budget.
+	 * 
+	 * @param maxBytes
+	 *        the maximum number of bytes that can be reserved, or <tt>0</tt>
+	 *        for no limit other than that of the parent budget.
+	 * @param parent
+	 *        the budget to reserve memory from as well, may be <tt>null</tt>.
+	 */
+	public QueryMemoryBudget(long maxBytes, QueryMemoryBudget parent) {
+		this.maxBytes = maxBytes;
+		this.parent = parent;
+	}
+
+	/**
+	 * Gets the maximum number of bytes that can be reserved from this budget.
+	 * 
+	 * @return the maximum number of bytes, or <tt>0</tt> if this budget does
+	 *         not have a limit of its own.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Gets the number of bytes that are currently reserved from this budget.
+	 */
+	public long getUsedBytes() {
+		return used.get();
+	}
+
+	/**
+	 * Reserves the supplied number of bytes, if this does not exceed this
+	 * budget or its parent.
+	 * 
+	 * @return <tt>true</tt> if the bytes have been reserved, <tt>false</tt> if
+	 *         the caller should free memory, for example by spilling to disk,
+	 *         before trying again.
+	 */
+	public boolean tryReserve(long bytes) {
+		return reserveOrGetExceeded(bytes) == null;
+	}
+
+	/**
+	 * Reserves the supplied number of bytes.
+	 * 
+	 * @throws QueryEvaluationException
+	 *         if the bytes would exceed this budget or its parent, in which
+	 *         case nothing has been reserved.
+	 */
+	public void reserve(long bytes)
+		throws QueryEvaluationException
+	{
+		QueryMemoryBudget exceeded = reserveOrGetExceeded(bytes);
+		if (exceeded == this) {
+			throw new QueryEvaluationException("Query exceeded its memory budget of " + maxBytes + " bytes");
+		}
+		else if (exceeded != null) {
+			throw new QueryEvaluationException("Query exceeded the memory budget of " + exceeded.maxBytes
+					+ " bytes that is shared by all running queries");
+		}
+	}
+
+	/**
+	 * Reserves the supplied number of bytes, even if this exceeds this budget
+	 * or its parent. Used by operators that have spilled all their state to
+	 * disk and need memory for a single solution to make progress.
+	 */
+	public void forceReserve(long bytes) {
+		used.addAndGet(bytes);
+		if (parent != null && !closed) {
+			parent.forceReserve(bytes);
+		}
+	}
+
+	/**
+	 * Releases bytes that have been reserved before.
+	 */
+	public void release(long bytes) {
+		if (bytes != 0) {
+			used.addAndGet(-bytes);
+			if (parent != null && !closed) {
+				parent.release(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Returns all bytes that are still reserved from this budget to its
+	 * parent, at the end of the query. Operators that release their memory
+	 * after this budget has been closed no longer affect the parent.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			if (parent != null) {
+				parent.release(used.get());
+			}
+		}
+	}
+
+	private QueryMemoryBudget reserveOrGetExceeded(long bytes) {
+		long total = used.addAndGet(bytes);
+		if (maxBytes > 0 && total > maxBytes) {
+			used.addAndGet(-bytes);
+			return this;
+		}
+		if (parent != null && !closed) {
+			QueryMemoryBudget exceeded = parent.reserveOrGetExceeded(bytes);
+			if (exceeded != null) {
+				used.addAndGet(-bytes);
+				return exceeded;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Estimates the number of bytes that a binding set uses, counting the
+	 * characters of its values.
+	 */
+	public static long estimateSize(BindingSet bindings) {
+		long size = OBJECT_OVERHEAD;
+		for (Binding binding : bindings) {
+			size += OBJECT_OVERHEAD + estimateSize(binding.getValue());
+		}
+		return size;
+	}
+
+	/**
+	 * Estimates the number of bytes that a value uses, counting two bytes per
+	 * character of its string representation.
+	 */
+	public static long estimateSize(Value value) {
+		if (value == null) {
+			return 0;
+		}
+		else if (value instanceof Literal) {
+			Literal literal = (Literal)value;
+			long size = 2 * OBJECT_OVERHEAD + 2L * literal.getLabel().length();
+			if (literal.getLanguage() != null) {
+				size += OBJECT_OVERHEAD + 2L * literal.getLanguage().length();
+			}
+			return size;
+		}
+		else if (value instanceof BNode) {
+			return 2 * OBJECT_OVERHEAD + 2L * ((BNode)value).getID().length();
+		}
+		else {
+			return 2 * OBJECT_OVERHEAD + 2L * value.stringValue().length();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.impl.MapBindingSet;
+
+import static org.junit.Assert.*;
+
+public class QueryBindingSetTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final URI a = vf.createURI("urn:a");
+
+	private final URI b = vf.createURI("urn:b");
+
+	private final URI c = vf.createURI("urn:c");
+
+	@Test
+	public void testCopiesAreIndependent() {
+		QueryBindingSet template = new QueryBindingSet();
+		template.addBinding("x", a);
+
+		QueryBindingSet first = new QueryBindingSet(template);
+		first.addBinding("y", b);
+
+		QueryBindingSet second = new QueryBindingSet(template);
+		second.addBinding("z", c);
+		second.setBinding("x", b);
+
+		assertEquals(1, template.size());
+		assertEquals(a, template.getValue("x"));
+		assertFalse(template.hasBinding("y"));
+
+		assertEquals(a, first.getValue("x"));
+		assertEquals(b, first.getValue("y"));
+		assertFalse(first.hasBinding("z"));
+
+		assertEquals(b, second.getValue("x"));
+		assertEquals(c, second.getValue("z"));
+		assertFalse(second.hasBinding("y"));
+	}
+
+	@Test
+	public void testRemoveDoesNotAffectCopies() {
+		QueryBindingSet source = new QueryBindingSet();
+		source.addBinding("x", a);
+		source.addBinding("y", b);
+
+		QueryBindingSet copy = new QueryBindingSet(source);
+		copy.removeBinding("x");
+		copy.addBinding("z", c);
+
+		assertEquals(a, source.getValue("x"));
+		assertEquals(b, source.getValue("y"));
+		assertFalse(source.hasBinding("z"));
+
+		assertEquals(2, copy.size());
+		assertFalse(copy.hasBinding("x"));
+		assertEquals(b, copy.getValue("y"));
+		assertEquals(c, copy.getValue("z"));
+	}
+
+	@Test
+	public void testRetainAll() {
+		QueryBindingSet bindings = new QueryBindingSet(1);
+		bindings.addBinding("x", a);
+		bindings.addBinding("y", b);
+		bindings.addBinding("z", c);
+
+		bindings.retainAll(Arrays.asList("x", "z"));
+
+		assertEquals(2, bindings.size());
+		assertEquals(a, bindings.getValue("x"));
+		assertEquals(c, bindings.getValue("z"));
+		assertNull(bindings.getValue("y"));
+	}
+
+	@Test
+	public void testWideBindingSets() {
+		QueryBindingSet template = new QueryBindingSet();
+		for (int i = 0; i < 20; i++) {
+			template.addBinding("v" + i, a);
+		}
+
+		QueryBindingSet first = new QueryBindingSet(template);
+		first.addBinding("x", b);
+
+		QueryBindingSet second = new QueryBindingSet(template);
+		second.addBinding("y", c);
+		second.setBinding("v15", b);
+		second.removeBinding("v3");
+
+		assertEquals(a, template.getValue("v19"));
+		assertFalse(template.hasBinding("x"));
+		assertFalse(template.hasBinding("y"));
+
+		assertEquals(b, first.getValue("x"));
+		assertFalse(first.hasBinding("y"));
+		assertEquals(a, first.getValue("v15"));
+
+		assertEquals(c, second.getValue("y"));
+		assertFalse(second.hasBinding("x"));
+		assertFalse(second.hasBinding("v3"));
+		assertEquals(b, second.getValue("v15"));
+		assertEquals(a, second.getValue("v16"));
+		assertEquals(20, second.size());
+	}
+
+	@Test
+	public void testSerialization()
+		throws Exception
+	{
+		QueryBindingSet bindings = new QueryBindingSet();
+		for (int i = 0; i < 20; i++) {
+			bindings.addBinding("v" + i, i % 2 == 0 ? a : b);
+		}
+		bindings.getValue("v10");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(bindings);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		QueryBindingSet copy = (QueryBindingSet)in.readObject();
+
+		assertEquals(bindings, copy);
+		assertEquals(b, copy.getValue("v19"));
+		copy.addBinding("x", c);
+		assertEquals(c, copy.getValue("x"));
+	}
+
+	@Test
+	public void testEqualsAndHashCodeIndependentOfOrder() {
+		QueryBindingSet xy = new QueryBindingSet();
+		xy.addBinding("x", a);
+		xy.addBinding("y", b);
+
+		QueryBindingSet yx = new QueryBindingSet();
+		yx.addBinding("y", b);
+		yx.addBinding("x", a);
+
+		MapBindingSet map = new MapBindingSet();
+		map.addBinding("x", a);
+		map.addBinding("y", b);
+
+		assertEquals(xy, yx);
+		assertEquals(xy.hashCode(), yx.hashCode());
+		assertEquals(xy, map);
+		assertEquals(map, xy);
+		assertEquals(map.hashCode(), xy.hashCode());
+
+		QueryBindingSet other = new QueryBindingSet(xy);
+		other.setBinding("y", c);
+		assertFalse(xy.equals(other));
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.And;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.Lang;
+import org.openrdf.query.algebra.LangMatches;
+import org.openrdf.query.algebra.Not;
+import org.openrdf.query.algebra.Or;
+import org.openrdf.query.algebra.Regex;
+import org.openrdf.query.algebra.Str;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+
+public class CompiledValueExprTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(new EmptyTripleSource(vf),
+			null);
+
+	@Test
+	public void testConstantFolding()
+		throws Exception
+	{
+		ValueExpr expr = new And(new Compare(literal(1), literal(1), CompareOp.EQ), new Not(new Compare(
+				literal(2), literal(1), CompareOp.LT)));
+
+		CompiledValueExpr compiled = strategy.compile(expr);
+
+		assertTrue(compiled.isConstant());
+		assertEquals(vf.createLiteral(true), compiled.evaluate(new QueryBindingSet()));
+	}
+
+	@Test
+	public void testRegex()
+		throws Exception
+	{
+		assertSameResults(new Regex(new Var("x"), new ValueConstant(vf.createLiteral("^ab")),
+				new ValueConstant(vf.createLiteral("i"))));
+		assertSameResults(new Regex(new Var("x"), new Var("y"), null));
+	}
+
+	@Test
+	public void testLangMatches()
+		throws Exception
+	{
+		assertSameResults(new LangMatches(new Lang(new Var("x")), new ValueConstant(vf.createLiteral("EN"))));
+		assertSameResults(new LangMatches(new Lang(new Var("x")), new ValueConstant(vf.createLiteral("*"))));
+		assertSameResults(new LangMatches(new Str(new Var("x")), new Var("y")));
+	}
+
+	@Test
+	public void testLogicalOperators()
+		throws Exception
+	{
+		ValueExpr compare = new Compare(new Var("x"), new Var("y"), CompareOp.LE);
+		assertSameResults(new Or(compare, new Not(compare.clone())));
+		assertSameResults(new And(new Var("z"), compare.clone()));
+	}
+
+	@Test
+	public void testOverriddenIsTrue()
+		throws Exception
+	{
+		EvaluationStrategyImpl rejecting = new EvaluationStrategyImpl(new EmptyTripleSource(vf), null) {
+
+			@Override
+			public boolean isTrue(ValueExpr expr, BindingSet bindings)
+				throws QueryEvaluationException
+			{
+				return false;
+			}
+		};
+
+		ValueExpr expr = new Compare(literal(1), literal(1), CompareOp.EQ);
+
+		assertTrue(strategy.compile(expr).isTrue(new QueryBindingSet()));
+		assertFalse(rejecting.compile(expr).isTrue(new QueryBindingSet()));
+	}
+
+	private void assertSameResults(ValueExpr expr)
+		throws QueryEvaluationException
+	{
+		CompiledValueExpr compiled = strategy.compile(expr);
+
+		Value[] values = {
+				vf.createLiteral("abc"),
+				vf.createLiteral("ABC", "en-GB"),
+				vf.createLiteral("ab", "de"),
+				vf.createLiteral("en", XMLSchema.STRING),
+				vf.createLiteral(3),
+				vf.createURI("urn:ab") };
+
+		for (Value x : values) {
+			for (Value y : values) {
+				QueryBindingSet bindings = new QueryBindingSet();
+				bindings.addBinding("x", x);
+				bindings.addBinding("y", y);
+				assertEquals(expr + " " + bindings, evaluate(expr, bindings), evaluate(compiled, bindings));
+			}
+		}
+	}
+
+	private Object evaluate(ValueExpr expr, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		try {
+			return strategy.evaluate(expr, bindings);
+		}
+		catch (ValueExprEvaluationException e) {
+			return ValueExprEvaluationException.class;
+		}
+	}
+
+	private Object evaluate(CompiledValueExpr expr, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		try {
+			return expr.evaluate(bindings);
+		}
+		catch (ValueExprEvaluationException e) {
+			return ValueExprEvaluationException.class;
+		}
+	}
+
+	private ValueConstant literal(int value) {
+		return new ValueConstant(vf.createLiteral(value));
+	}
+}
@@ -0,0 +1,173 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryRoot;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+
+/**
+ * Tests to monitor CostBasedJoinOptimizer behaviour.
+ */
+public class CostBasedJoinOptimizerTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final Map<URI, Double> predicateCardinalities = new HashMap<URI, Double>();
+
+	private final EvaluationStatistics statistics = new EvaluationStatistics() {
+
+		@Override
+		protected CardinalityCalculator createCardinalityCalculator() {
+			return new CardinalityCalculator() {
+
+				@Override
+				protected double getCardinality(StatementPattern sp) {
+					return predicateCardinalities.get(sp.getPredicateVar().getValue());
+				}
+			};
+		}
+	};
+
+	@Test
+	public void testSelectivePatternFirst()
+		throws Exception
+	{
+		StatementPattern type = pattern("x", "type", "C", 1000.0);
+		StatementPattern label = pattern("x", "label", "foo", 1.0);
+
+		QueryRoot root = new QueryRoot(new Join(type, label));
+		new CostBasedJoinOptimizer(statistics).optimize(root, null, null);
+
+		Join join = (Join)root.getArg();
+		assertEquals(label, join.getLeftArg());
+		assertEquals(type, join.getRightArg());
+		assertNull(join.getAlgorithmName());
+	}
+
+	@Test
+	public void testNestedLoopJoinsRightRecursive()
+		throws Exception
+	{
+		StatementPattern type = pattern("x", "type", "C", 100.0);
+		StatementPattern label = pattern("x", "label", "foo", 1.0);
+		StatementPattern color = pattern("x", "color", "red", 10.0);
+
+		QueryRoot root = new QueryRoot(new Join(new Join(type, color), label));
+		new CostBasedJoinOptimizer(statistics).optimize(root, null, null);
+
+		// same shape as generated by the QueryJoinOptimizer
+		Join join = (Join)root.getArg();
+		assertEquals(label, join.getLeftArg());
+		assertNull(join.getAlgorithmName());
+
+		Join rightJoin = (Join)join.getRightArg();
+		assertTrue(rightJoin.getLeftArg() instanceof StatementPattern);
+		assertTrue(rightJoin.getRightArg() instanceof StatementPattern);
+		assertNull(rightJoin.getAlgorithmName());
+	}
+
+	@Test
+	public void testHashJoinForSmallIndependentArgument()
+		throws Exception
+	{
+		StatementPattern type = pattern("x", "type", "C", 100.0);
+		StatementPattern link = new StatementPattern(new Var("x"), constant("link"), new Var("y"));
+		predicateCardinalities.put(uri("link"), 1000000.0);
+		StatementPattern label = pattern("y", "label", "foo", 5.0);
+
+		QueryRoot root = new QueryRoot(new Join(type, new Join(link, label)));
+		new CostBasedJoinOptimizer(statistics).optimize(root, null, null);
+
+		// the 5000 results of label/link are joined with a hash table of the
+		// 100 type statements, instead of performing 5000 lookups
+		Join join = (Join)root.getArg();
+		assertEquals(JoinAlgorithm.HASH.name(), join.getAlgorithmName());
+		assertEquals(type, join.getRightArg());
+
+		Join leftJoin = (Join)join.getLeftArg();
+		assertEquals(label, leftJoin.getLeftArg());
+		assertEquals(link, leftJoin.getRightArg());
+		assertNull(leftJoin.getAlgorithmName());
+	}
+
+	@Test
+	public void testServiceJoinNotAnnotated()
+		throws Exception
+	{
+		StatementPattern type = pattern("x", "type", "C", 20.0);
+		StatementPattern label = new StatementPattern(new Var("x"), constant("label"), new Var("l"));
+		Service service = new Service(new Var("endpoint"), label, "?x <ex:label> ?l",
+				new HashMap<String, String>(), null, false);
+
+		QueryRoot root = new QueryRoot(new Join(service, type));
+		new CostBasedJoinOptimizer(statistics).optimize(root, null, null);
+
+		// SERVICE arguments are always joined in blocks, no hint is needed
+		Join join = (Join)root.getArg();
+		assertEquals(type, join.getLeftArg());
+		assertEquals(service, join.getRightArg());
+		assertNull(join.getAlgorithmName());
+	}
+
+	@Test
+	public void testGreedyFallback()
+		throws Exception
+	{
+		StatementPattern type = pattern("x", "type", "C", 100.0);
+		StatementPattern link = new StatementPattern(new Var("x"), constant("link"), new Var("y"));
+		predicateCardinalities.put(uri("link"), 1000000.0);
+		StatementPattern label = pattern("y", "label", "foo", 5.0);
+
+		TupleExpr expr = new Join(type, new Join(link, label));
+		QueryRoot expected = new QueryRoot(expr.clone());
+		new QueryJoinOptimizer(statistics).optimize(expected, null, null);
+
+		QueryRoot actual = new QueryRoot(expr.clone());
+		new CostBasedJoinOptimizer(statistics, 2).optimize(actual, null, null);
+
+		assertEquals(expected, actual);
+	}
+
+	private StatementPattern pattern(String subj, String pred, String obj, double cardinality) {
+		predicateCardinalities.put(uri(pred), cardinality);
+		return new StatementPattern(new Var(subj), constant(pred), constant(obj));
+	}
+
+	private Var constant(String localName) {
+		return new Var("-const-" + localName, uri(localName));
+	}
+
+	private URI uri(String localName) {
+		return vf.createURI("ex:" + localName);
+	}
+}
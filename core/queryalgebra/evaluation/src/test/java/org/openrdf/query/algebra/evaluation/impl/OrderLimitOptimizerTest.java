@@ -0,0 +1,167 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Order;
+import org.openrdf.query.algebra.OrderElem;
+import org.openrdf.query.algebra.QueryRoot;
+import org.openrdf.query.algebra.Slice;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+public class OrderLimitOptimizerTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final List<Statement> statements = new ArrayList<Statement>();
+
+	private int lookups;
+
+	@Test
+	public void testSortedStatementPattern() {
+		StatementPattern name = pattern("name");
+		StatementPattern age = pattern("age");
+
+		QueryRoot root = new QueryRoot(createQuery(name, age, 3));
+		new OrderLimitOptimizer().optimize(root, null, null);
+
+		Join join = (Join)((Order)((Slice)root.getArg()).getArg()).getArg();
+		assertEquals(JoinAlgorithm.NESTED_LOOP.name(), join.getAlgorithmName());
+		assertTrue(join.getLeftArg() instanceof Order);
+		assertEquals(name, ((Order)join.getLeftArg()).getArg());
+	}
+
+	@Test
+	public void testUnlimitedOrderUnchanged() {
+		StatementPattern name = pattern("name");
+		StatementPattern age = pattern("age");
+
+		QueryRoot root = new QueryRoot(new Order(new Join(name, age), new OrderElem(new Var("v"))));
+		new OrderLimitOptimizer().optimize(root, null, null);
+
+		Join join = (Join)((Order)root.getArg()).getArg();
+		assertNull(join.getAlgorithmName());
+		assertEquals(name, join.getLeftArg());
+	}
+
+	@Test
+	public void testEvaluationStopsAtLimit()
+		throws Exception
+	{
+		for (int i = 0; i < 100; i++) {
+			URI subj = vf.createURI("ex:s" + i);
+			// every value occurs twice to check that ties are resolved as before
+			statements.add(vf.createStatement(subj, uri("name"), vf.createLiteral("name" + (99 - i) / 2)));
+			statements.add(vf.createStatement(subj, uri("age"), vf.createLiteral(i)));
+		}
+
+		List<BindingSet> expected = evaluate(createQuery(pattern("name"), pattern("age"), 5));
+		assertEquals(100, lookups);
+
+		lookups = 0;
+		QueryRoot optimized = new QueryRoot(createQuery(pattern("name"), pattern("age"), 5));
+		new OrderLimitOptimizer().optimize(optimized, null, null);
+		assertEquals(expected, evaluate(optimized));
+		// five results, one that ties with the fifth and one to detect the end
+		// of the tie
+		assertEquals(7, lookups);
+	}
+
+	private TupleExpr createQuery(StatementPattern first, StatementPattern second, long limit) {
+		Order order = new Order(new Join(first, second), new OrderElem(new Var("v")));
+		return new Slice(order, 0, limit);
+	}
+
+	private List<BindingSet> evaluate(TupleExpr expr)
+		throws QueryEvaluationException
+	{
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(new TripleSource() {
+
+			public CloseableIteration<? extends Statement, QueryEvaluationException> getStatements(
+					Resource subj, URI pred, Value obj, Resource... contexts)
+			{
+				if (subj != null) {
+					lookups++;
+				}
+				List<Statement> result = new ArrayList<Statement>();
+				for (Statement st : statements) {
+					if ((subj == null || subj.equals(st.getSubject()))
+							&& (pred == null || pred.equals(st.getPredicate()))
+							&& (obj == null || obj.equals(st.getObject())))
+					{
+						result.add(st);
+					}
+				}
+				return new CloseableIteratorIteration<Statement, QueryEvaluationException>(result.iterator());
+			}
+
+			public ValueFactory getValueFactory() {
+				return vf;
+			}
+		}, null);
+
+		List<BindingSet> results = new ArrayList<BindingSet>();
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(expr,
+				EmptyBindingSet.getInstance());
+		try {
+			while (iter.hasNext()) {
+				results.add(iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Creates a pattern that binds the subjects to <tt>s</tt>, and the objects
+	 * of name statements to <tt>v</tt>.
+	 */
+	private StatementPattern pattern(String pred) {
+		String objName = pred.equals("name") ? "v" : pred;
+		return new StatementPattern(new Var("s"), new Var("-const-" + pred, uri(pred)), new Var(objName));
+	}
+
+	private URI uri(String localName) {
+		return vf.createURI("ex:" + localName);
+	}
+}
@@ -21,11 +21,14 @@ import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 import org.openrdf.OpenRDFException;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.BindingSet;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.UnsupportedQueryLanguageException;
 import org.openrdf.query.algebra.QueryModelNode;
 import org.openrdf.query.algebra.QueryRoot;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.parser.ParsedQuery;
 import org.openrdf.query.parser.QueryParserUtil;
 
@@ -95,13 +98,59 @@ public class QueryJoinOptimizerTest {
 		testOptimizer(expectedQuery, query);
 	}
 
+	@Test
+	public void testBindingNamesIgnoredByDefault()
+		throws OpenRDFException
+	{
+		String query = "prefix ex: <ex:>"
+				+ "select ?s ?o ?x ?y where {"
+				+ " ?x ex:q ?y. "
+				+ " ?s ex:p ?o. "
+				+ "}";
+
+		testOptimizer(query, query, createBindings("s"), false);
+	}
+
+	@Test
+	public void testBindingNamesBound()
+		throws OpenRDFException
+	{
+		String query = "prefix ex: <ex:>"
+				+ "select ?s ?o ?x ?y where {"
+				+ " ?x ex:q ?y. "
+				+ " ?s ex:p ?o. "
+				+ "}";
+		// the pattern on the bound variable should be evaluated first
+		String expectedQuery = "prefix ex: <ex:>"
+				+ "select ?s ?o ?x ?y where {"
+				+ " ?s ex:p ?o. "
+				+ " ?x ex:q ?y. "
+				+ "}";
+
+		testOptimizer(expectedQuery, query, createBindings("s"), true);
+	}
+
+	private BindingSet createBindings(String name) {
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding(name, new URIImpl("ex:value"));
+		return bindings;
+	}
+
 	private void testOptimizer(String expectedQuery, String actualQuery)
 		throws MalformedQueryException, UnsupportedQueryLanguageException
+	{
+		testOptimizer(expectedQuery, actualQuery, null, false);
+	}
+
+	private void testOptimizer(String expectedQuery, String actualQuery, BindingSet bindings,
+			boolean bindingNamesBound)
+		throws MalformedQueryException, UnsupportedQueryLanguageException
 	{
 		ParsedQuery pq = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, actualQuery, null);
 		QueryJoinOptimizer opt = new QueryJoinOptimizer();
+		opt.setBindingNamesBound(bindingNamesBound);
 		QueryRoot optRoot = new QueryRoot(pq.getTupleExpr());
-		opt.optimize(optRoot, null, null);
+		opt.optimize(optRoot, null, bindings);
 
 		ParsedQuery expectedParsedQuery = QueryParserUtil.parseQuery(QueryLanguage.SPARQL, expectedQuery, null);
 		QueryRoot root = new QueryRoot(expectedParsedQuery.getTupleExpr());
@@ -0,0 +1,170 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import static org.junit.Assert.*;
+
+public class BatchingJoinIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private int rightEvaluations;
+
+	private final EvaluationStrategyImpl evaluator = new EvaluationStrategyImpl(null, null) {
+
+		@Override
+		public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(BindingSetAssignment bsa,
+				BindingSet bindings)
+			throws QueryEvaluationException
+		{
+			if (bindings.size() > 0) {
+				rightEvaluations++;
+			}
+			return super.evaluate(bsa, bindings);
+		}
+	};
+
+	@Test
+	public void testSameResultsAsJoinIterator()
+		throws QueryEvaluationException
+	{
+		Join join = new Join(createLeft(10), createRight());
+
+		List<BindingSet> expected = Iterations.asList(new JoinIterator(evaluator, join,
+				EmptyBindingSet.getInstance()));
+		List<BindingSet> actual = Iterations.asList(new BatchingJoinIteration(evaluator, join,
+				EmptyBindingSet.getInstance(), 4));
+
+		assertEquals(11, expected.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testDuplicateLookupsAvoided()
+		throws QueryEvaluationException
+	{
+		Join join = new Join(createLeft(10), createRight());
+
+		Iterations.asList(new BatchingJoinIteration(evaluator, join, EmptyBindingSet.getInstance(), 10));
+
+		// a single block with three distinct values for i
+		assertEquals(3, rightEvaluations);
+	}
+
+	@Test
+	public void testFallbackWhenBufferThresholdExceeded()
+		throws QueryEvaluationException
+	{
+		Join join = new Join(createLeft(10), createRight());
+
+		List<BindingSet> expected = Iterations.asList(new JoinIterator(evaluator, join,
+				EmptyBindingSet.getInstance()));
+		rightEvaluations = 0;
+		List<BindingSet> actual = Iterations.asList(new BatchingJoinIteration(evaluator, join,
+				EmptyBindingSet.getInstance(), 10, 2, null));
+
+		assertEquals(expected, actual);
+		// the first two lookups of the block, then one lookup per left result
+		assertEquals(12, rightEvaluations);
+	}
+
+	@Test
+	public void testFallbackWhenMemoryBudgetExhausted()
+		throws QueryEvaluationException
+	{
+		Join join = new Join(createLeft(10), createRight());
+		QueryMemoryBudget budget = new QueryMemoryBudget(100);
+
+		List<BindingSet> expected = Iterations.asList(new JoinIterator(evaluator, join,
+				EmptyBindingSet.getInstance()));
+		List<BindingSet> actual = Iterations.asList(new BatchingJoinIteration(evaluator, join,
+				EmptyBindingSet.getInstance(), 4, 0, budget));
+
+		assertEquals(expected, actual);
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testMemoryReleasedAfterEachBlock()
+		throws QueryEvaluationException
+	{
+		Join join = new Join(createLeft(10), createRight());
+		QueryMemoryBudget budget = new QueryMemoryBudget(0);
+
+		BatchingJoinIteration iter = new BatchingJoinIteration(evaluator, join, EmptyBindingSet.getInstance(),
+				4, 0, budget);
+		assertTrue(iter.hasNext());
+		assertTrue(budget.getUsedBytes() > 0);
+		iter.close();
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	/**
+	 * Creates left results with values 0-2 for variable <tt>i</tt>.
+	 */
+	private BindingSetAssignment createLeft(int size) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int a = 0; a < size; a++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("a", vf.createLiteral(a));
+			bs.addBinding("i", vf.createLiteral(a % 3));
+			bindingSets.add(bs);
+		}
+
+		BindingSetAssignment assignment = new BindingSetAssignment();
+		assignment.setBindingSets(bindingSets);
+		return assignment;
+	}
+
+	/**
+	 * Creates right results with two values for <tt>b</tt> for <tt>i</tt> 0,
+	 * one for <tt>i</tt> 1 and none for <tt>i</tt> 2.
+	 */
+	private BindingSetAssignment createRight() {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		int[][] pairs = { { 0, 0 }, { 0, 1 }, { 1, 2 } };
+		for (int[] pair : pairs) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("i", vf.createLiteral(pair[0]));
+			bs.addBinding("b", vf.createLiteral(pair[1]));
+			bindingSets.add(bs);
+		}
+
+		BindingSetAssignment assignment = new BindingSetAssignment();
+		assignment.setBindingSets(bindingSets);
+		return assignment;
+	}
+}
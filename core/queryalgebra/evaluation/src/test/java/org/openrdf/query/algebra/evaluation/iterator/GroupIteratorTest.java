@@ -0,0 +1,238 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.GroupConcat;
+import org.openrdf.query.algebra.GroupElem;
+import org.openrdf.query.algebra.Max;
+import org.openrdf.query.algebra.Min;
+import org.openrdf.query.algebra.Order;
+import org.openrdf.query.algebra.OrderElem;
+import org.openrdf.query.algebra.Sum;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import static org.junit.Assert.*;
+
+public class GroupIteratorTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final EvaluationStrategyImpl evaluator = new EvaluationStrategyImpl(null, null);
+
+	@Test
+	public void testInMemory()
+		throws QueryEvaluationException
+	{
+		Set<BindingSet> result = evaluate(createGroup(createInput(1000)), 0);
+
+		assertEquals(100, result.size());
+		assertTrue(result.contains(createSolution(7)));
+	}
+
+	@Test
+	public void testSpilled()
+		throws QueryEvaluationException
+	{
+		Set<BindingSet> expected = evaluate(createGroup(createInput(1000)), 0);
+
+		// most groups go to partition files, some of which are partitioned again
+		assertEquals(expected, evaluate(createGroup(createInput(1000)), 3));
+		assertEquals(expected, evaluate(createGroup(createInput(1000)), 1));
+	}
+
+	@Test
+	public void testStreaming()
+		throws QueryEvaluationException
+	{
+		Set<BindingSet> expected = evaluate(createGroup(createInput(1000)), 0);
+
+		Order ordered = new Order(createInput(1000), new OrderElem(new Var("x")));
+		assertEquals(expected, evaluate(createGroup(ordered), 0));
+	}
+
+	@Test
+	public void testStreamingSpilledByMemoryBudget()
+		throws QueryEvaluationException
+	{
+		// ten keys that are sorted as equal, but only three fit in memory
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int y = 0; y < 1000; y++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			String zeros = "000000000".substring(0, y % 10);
+			bs.addBinding("x", vf.createLiteral(zeros + y / 100, XMLSchema.INTEGER));
+			bs.addBinding("y", vf.createLiteral(y));
+			bindingSets.add(bs);
+		}
+		QueryMemoryBudget budget = new QueryMemoryBudget(3 * QueryMemoryBudget.estimateSize(bindingSets.get(0)));
+
+		Set<BindingSet> expected = evaluate(createGroup(createInput(bindingSets)), 0);
+		assertEquals(100, expected.size());
+
+		Order ordered = new Order(createInput(bindingSets), new OrderElem(new Var("x")));
+		GroupIterator iter = new GroupIterator(evaluator, createGroup(ordered), EmptyBindingSet.getInstance(),
+				0, null, budget);
+		assertEquals(expected, new HashSet<BindingSet>(Iterations.asList(iter)));
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testParallel()
+		throws QueryEvaluationException
+	{
+		Set<BindingSet> expected = evaluate(createGroup(createInput(10000)), 0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Group group = createGroup(createInput(10000));
+			GroupIterator iter = new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), 0,
+					executor);
+			assertEquals(expected, new HashSet<BindingSet>(Iterations.asList(iter)));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelGroupConcat()
+		throws QueryEvaluationException
+	{
+		// more batches than are pending at once, and groups that first appear in
+		// the last batch
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int y = 0; y < 20000; y++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("x", vf.createLiteral(y < 19456 ? y % 100 : y % 110));
+			bs.addBinding("y", vf.createLiteral(y));
+			bindingSets.add(bs);
+		}
+
+		GroupIterator iter = new GroupIterator(evaluator, createGroupConcat(bindingSets),
+				EmptyBindingSet.getInstance(), 0);
+		List<BindingSet> expected = Iterations.asList(iter);
+		assertEquals(110, expected.size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			iter = new GroupIterator(evaluator, createGroupConcat(bindingSets), EmptyBindingSet.getInstance(),
+					0, executor);
+			assertEquals(expected, Iterations.asList(iter));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testEmptyInput()
+		throws QueryEvaluationException
+	{
+		Set<BindingSet> expected = evaluate(createGroup(createInput(0)), 0);
+		assertEquals(1, expected.size());
+
+		assertEquals(expected, evaluate(createGroup(createInput(0)), 3));
+		Order ordered = new Order(createInput(0), new OrderElem(new Var("x")));
+		assertEquals(expected, evaluate(createGroup(ordered), 0));
+	}
+
+	private Set<BindingSet> evaluate(Group group, long threshold)
+		throws QueryEvaluationException
+	{
+		GroupIterator iter = new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), threshold);
+		return new HashSet<BindingSet>(Iterations.asList(iter));
+	}
+
+	/**
+	 * Groups on <tt>x</tt> and computes count, sum, min and max of <tt>y</tt>.
+	 */
+	private Group createGroup(TupleExpr arg) {
+		List<GroupElem> elements = Arrays.asList(new GroupElem("count", new Count(new Var("y"))),
+				new GroupElem("sum", new Sum(new Var("y"))), new GroupElem("min", new Min(new Var("y"))),
+				new GroupElem("max", new Max(new Var("y"))));
+		return new Group(arg, Arrays.asList("x"), elements);
+	}
+
+	/**
+	 * Groups on <tt>x</tt> and concatenates the values of <tt>y</tt>.
+	 */
+	private Group createGroupConcat(List<BindingSet> bindingSets) {
+		BindingSetAssignment assignment = new BindingSetAssignment();
+		assignment.setBindingSets(bindingSets);
+		List<GroupElem> elements = Arrays.asList(new GroupElem("concat", new GroupConcat(new Var("y"))));
+		return new Group(assignment, Arrays.asList("x"), elements);
+	}
+
+	/**
+	 * Creates solutions with values 0 to size-1 for <tt>y</tt> and
+	 * <tt>y</tt> modulo 100 for <tt>x</tt>.
+	 */
+	private BindingSetAssignment createInput(int size) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int y = 0; y < size; y++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("x", vf.createLiteral(y % 100));
+			bs.addBinding("y", vf.createLiteral(y));
+			bindingSets.add(bs);
+		}
+		return createInput(bindingSets);
+	}
+
+	private BindingSetAssignment createInput(List<BindingSet> bindingSets) {
+		BindingSetAssignment assignment = new BindingSetAssignment();
+		assignment.setBindingSets(bindingSets);
+		return assignment;
+	}
+
+	/**
+	 * The expected solution for group <tt>x</tt> of an input of size 1000.
+	 */
+	private BindingSet createSolution(int x) {
+		QueryBindingSet bs = new QueryBindingSet();
+		bs.addBinding("x", vf.createLiteral(x));
+		bs.addBinding("count", vf.createLiteral("10", XMLSchema.INTEGER));
+		bs.addBinding("sum", vf.createLiteral(Integer.toString(x * 10 + 4500),
+				XMLSchema.INTEGER));
+		bs.addBinding("min", vf.createLiteral(x));
+		bs.addBinding("max", vf.createLiteral(x + 900));
+		return bs;
+	}
+}
@@ -27,11 +27,15 @@ import java.util.Set;
 import junit.framework.TestCase;
 
 import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.Iterations;
 
 import org.openrdf.model.Value;
+import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
 
 
 /**
@@ -186,6 +190,62 @@ public class OrderIteratorTest extends TestCase {
 		assertFalse(order.hasNext());
 	}
 
+	public void testLimit() throws Exception {
+		order = new OrderIterator(iteration, cmp, 3, false);
+		assertEquals(Arrays.asList(b1, b2, b2), Iterations.asList(order));
+	}
+
+	public void testDistinctLimit() throws Exception {
+		order = new OrderIterator(iteration, cmp, 3, true);
+		assertEquals(Arrays.asList(b1, b2, b3), Iterations.asList(order));
+	}
+
+	public void testExternalSort() throws Exception {
+		List<BindingSet> input = createValueBindings(500);
+		List<BindingSet> sorted = new ArrayList<BindingSet>(input);
+		Collections.sort(sorted, new ValueBindingComparator());
+
+		order = new OrderIterator(new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+				input.iterator()), new ValueBindingComparator(), Long.MAX_VALUE, false, 7);
+		assertEquals(sorted, Iterations.asList(order));
+	}
+
+	public void testExternalSortDistinctLimit() throws Exception {
+		List<BindingSet> input = createValueBindings(500);
+		List<BindingSet> sorted = new ArrayList<BindingSet>(input);
+		Collections.sort(sorted, new ValueBindingComparator());
+		List<BindingSet> expected = new ArrayList<BindingSet>();
+		for (BindingSet b : sorted) {
+			if (expected.size() < 50 && !expected.contains(b)) {
+				expected.add(b);
+			}
+		}
+
+		order = new OrderIterator(new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+				input.iterator()), new ValueBindingComparator(), 50, true, 7);
+		assertEquals(expected, Iterations.asList(order));
+	}
+
+	private List<BindingSet> createValueBindings(int count) {
+		List<BindingSet> result = new ArrayList<BindingSet>();
+		for (int i = 0; i < count; i++) {
+			QueryBindingSet b = new QueryBindingSet();
+			// every value occurs twice
+			b.addBinding("x", ValueFactoryImpl.getInstance().createLiteral((i * 37) % (count / 2)));
+			result.add(b);
+		}
+		return result;
+	}
+
+	class ValueBindingComparator implements Comparator<BindingSet> {
+
+		private final ValueComparator cmp = new ValueComparator();
+
+		public int compare(BindingSet o1, BindingSet o2) {
+			return cmp.compare(o1.getValue("x"), o2.getValue("x"));
+		}
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		list = Arrays.asList(b3, b5, b2, b1, b4, b2);
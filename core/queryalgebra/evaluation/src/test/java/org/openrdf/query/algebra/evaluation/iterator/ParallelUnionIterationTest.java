@@ -0,0 +1,106 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import static org.junit.Assert.*;
+
+public class ParallelUnionIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final EvaluationStrategy evaluator = new EvaluationStrategyImpl(null, null);
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testAllResults()
+		throws QueryEvaluationException
+	{
+		List<BindingSetAssignment> args = Arrays.asList(createAssignment(0, 100), createAssignment(100, 200),
+				createAssignment(200, 300));
+
+		ParallelUnionIteration iter = new ParallelUnionIteration(evaluator, args,
+				EmptyBindingSet.getInstance(), executor, 10);
+
+		Set<String> results = new HashSet<String>();
+		try {
+			while (iter.hasNext()) {
+				assertTrue(results.add(iter.next().getValue("a").stringValue()));
+			}
+		}
+		finally {
+			iter.close();
+		}
+		assertEquals(300, results.size());
+	}
+
+	@Test
+	public void testCloseBeforeExhausted()
+		throws QueryEvaluationException
+	{
+		List<BindingSetAssignment> args = Arrays.asList(createAssignment(0, 1000), createAssignment(1000, 2000),
+				createAssignment(2000, 3000));
+
+		ParallelUnionIteration iter = new ParallelUnionIteration(evaluator, args,
+				EmptyBindingSet.getInstance(), executor, 10);
+
+		assertTrue(iter.hasNext());
+		iter.next();
+		// must not block on the tasks that wait for room in the queue
+		iter.close();
+		assertFalse(iter.hasNext());
+	}
+
+	private BindingSetAssignment createAssignment(int from, int to) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int i = from; i < to; i++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("a", vf.createLiteral(Integer.toString(i)));
+			bindingSets.add(bs);
+		}
+
+		BindingSetAssignment assignment = new BindingSetAssignment();
+		assignment.setBindingSets(bindingSets);
+		return assignment;
+	}
+}
@@ -0,0 +1,106 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.DistinctIteration;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+
+import static org.junit.Assert.*;
+
+public class SpillingDistinctIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void testInMemory()
+		throws QueryEvaluationException
+	{
+		assertEquals(expected(), evaluate(0, null));
+	}
+
+	@Test
+	public void testSpilled()
+		throws QueryEvaluationException
+	{
+		assertEquals(expected(), evaluate(7, null));
+	}
+
+	@Test
+	public void testSpilledByMemoryBudget()
+		throws QueryEvaluationException
+	{
+		QueryMemoryBudget budget = new QueryMemoryBudget(2000);
+		assertEquals(expected(), evaluate(0, budget));
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	private List<BindingSet> expected()
+		throws QueryEvaluationException
+	{
+		return toList(new DistinctIteration<BindingSet, QueryEvaluationException>(createInput()));
+	}
+
+	private List<BindingSet> evaluate(long spillThreshold, QueryMemoryBudget budget)
+		throws QueryEvaluationException
+	{
+		return toList(new SpillingDistinctIteration(createInput(), spillThreshold, budget));
+	}
+
+	/**
+	 * Creates 200 binding sets with 50 distinct values in an irregular order.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> createInput() {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int i = 0; i < 200; i++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("a", vf.createLiteral(Integer.toString((i * 37) % 50)));
+			if (i % 3 == 0) {
+				bs.addBinding("b", vf.createURI("urn:", Integer.toString(i % 2)));
+			}
+			bindingSets.add(bs);
+		}
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindingSets.iterator());
+	}
+
+	private List<BindingSet> toList(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+		throws QueryEvaluationException
+	{
+		List<BindingSet> results = new ArrayList<BindingSet>();
+		try {
+			while (iter.hasNext()) {
+				results.add(iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,291 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Difference;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.impl.JoinAlgorithm;
+import org.openrdf.query.algebra.evaluation.iterator.SpillingHashJoinIteration.Mode;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import static org.junit.Assert.*;
+
+public class SpillingHashJoinIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final EvaluationStrategy evaluator = new EvaluationStrategyImpl(null, null);
+
+	@Test
+	public void testInnerJoin()
+		throws QueryEvaluationException
+	{
+		assertEquals(10, evaluate(Mode.JOIN, 0).size());
+	}
+
+	@Test
+	public void testInnerJoinSpilled()
+		throws QueryEvaluationException
+	{
+		assertEquals(evaluate(Mode.JOIN, 0), evaluate(Mode.JOIN, 3));
+	}
+
+	@Test
+	public void testInnerJoinParallelBuild()
+		throws QueryEvaluationException
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			BindingSetAssignment left = createAssignment("a", 0, 20, "i");
+			BindingSetAssignment right = createAssignment("b", 0, 10, "i");
+
+			SpillingHashJoinIteration iter = new SpillingHashJoinIteration(evaluator, left, right, null,
+					EmptyBindingSet.getInstance(), Mode.JOIN, 3, executor);
+			assertEquals(evaluate(Mode.JOIN, 0), toStrings(iter));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testInnerJoinBuildTaskNotStarted()
+		throws QueryEvaluationException
+	{
+		// an executor whose threads are all busy never starts the build task
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		Executor executor = new Executor() {
+
+			public void execute(Runnable command) {
+				queued.add(command);
+			}
+		};
+
+		BindingSetAssignment left = createAssignment("a", 0, 20, "i");
+		BindingSetAssignment right = createAssignment("b", 0, 10, "i");
+
+		SpillingHashJoinIteration iter = new SpillingHashJoinIteration(evaluator, left, right, null,
+				EmptyBindingSet.getInstance(), Mode.JOIN, 0, executor);
+		assertEquals(evaluate(Mode.JOIN, 0), toStrings(iter));
+		assertEquals(1, queued.size());
+	}
+
+	@Test
+	public void testLeftJoin()
+		throws QueryEvaluationException
+	{
+		Set<String> results = evaluate(Mode.LEFT_JOIN, 0);
+		assertEquals(20, results.size());
+		assertTrue(results.contains("a=15"));
+		assertTrue(results.contains("a=5 b=5"));
+	}
+
+	@Test
+	public void testLeftJoinSpilled()
+		throws QueryEvaluationException
+	{
+		assertEquals(evaluate(Mode.LEFT_JOIN, 0), evaluate(Mode.LEFT_JOIN, 3));
+	}
+
+	@Test
+	public void testMinus()
+		throws QueryEvaluationException
+	{
+		Set<String> results = evaluate(Mode.MINUS, 0);
+		assertEquals(10, results.size());
+		assertTrue(results.contains("a=15"));
+		assertFalse(results.contains("a=5"));
+	}
+
+	@Test
+	public void testMinusSpilled()
+		throws QueryEvaluationException
+	{
+		assertEquals(evaluate(Mode.MINUS, 0), evaluate(Mode.MINUS, 3));
+	}
+
+	@Test
+	public void testMinusWithoutSharedNames()
+		throws QueryEvaluationException
+	{
+		BindingSetAssignment left = createAssignment("a", 0, 5, null);
+		BindingSetAssignment right = createAssignment("b", 0, 5, null);
+
+		SpillingHashJoinIteration iter = new SpillingHashJoinIteration(evaluator, left, right, null,
+				EmptyBindingSet.getInstance(), Mode.MINUS, 0);
+		assertEquals(5, toStrings(iter).size());
+	}
+
+	@Test
+	public void testArgumentBindingNamesUnchanged()
+		throws QueryEvaluationException
+	{
+		BindingSetAssignment left = createAssignment("a", 0, 20, "i");
+		BindingSetAssignment right = createAssignment("b", 0, 10, "i");
+		Join join = new Join(left, right);
+		join.setAlgorithmName(JoinAlgorithm.HASH.name());
+
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(null, null);
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(join,
+				EmptyBindingSet.getInstance());
+		try {
+			assertTrue(iter instanceof SpillingHashJoinIteration);
+			assertEquals(10, Iterations.asList(iter).size());
+		}
+		finally {
+			iter.close();
+		}
+
+		assertEquals(new HashSet<String>(Arrays.asList("a", "i")), left.getBindingNames());
+		assertEquals(new HashSet<String>(Arrays.asList("b", "i")), right.getBindingNames());
+	}
+
+	@Test
+	public void testHashAnnotationIgnoredForBoundJoin()
+		throws QueryEvaluationException
+	{
+		Join join = new Join(createAssignment("a", 0, 20, "i"), createAssignment("b", 0, 10, "i"));
+		join.setAlgorithmName(JoinAlgorithm.HASH.name());
+
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding("i", vf.createURI("urn:", "5"));
+
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(null, null);
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(join, bindings);
+		try {
+			assertFalse(iter instanceof SpillingHashJoinIteration);
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	@Test
+	public void testMinusIsHashedOnlyWhenPreferred()
+		throws QueryEvaluationException
+	{
+		final BindingSetAssignment left = createAssignment("a", 0, 20, "i");
+		BindingSetAssignment right = createAssignment("b", 0, 10, "i");
+		Difference difference = new Difference(left, right);
+
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(null, null);
+		assertFalse(evaluate(strategy, difference) instanceof SpillingHashJoinIteration);
+
+		strategy.setEvaluationStatistics(new EvaluationStatistics() {
+
+			@Override
+			public synchronized double getCardinality(TupleExpr expr) {
+				return expr == left ? 1000 : 10;
+			}
+		});
+		assertTrue(evaluate(strategy, difference) instanceof SpillingHashJoinIteration);
+
+		strategy.setEvaluationStatistics(new EvaluationStatistics() {
+
+			@Override
+			public synchronized double getCardinality(TupleExpr expr) {
+				return expr == left ? 1 : 1000;
+			}
+		});
+		assertFalse(evaluate(strategy, difference) instanceof SpillingHashJoinIteration);
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluate(
+			EvaluationStrategyImpl strategy, Difference difference)
+		throws QueryEvaluationException
+	{
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(difference,
+				EmptyBindingSet.getInstance());
+		iter.close();
+		return iter;
+	}
+
+	/**
+	 * Joins 20 left results with 10 right results that share the values of
+	 * variable <tt>i</tt> with the first 10 left results.
+	 */
+	private Set<String> evaluate(Mode mode, long spillThreshold)
+		throws QueryEvaluationException
+	{
+		BindingSetAssignment left = createAssignment("a", 0, 20, "i");
+		BindingSetAssignment right = createAssignment("b", 0, 10, "i");
+
+		SpillingHashJoinIteration iter = new SpillingHashJoinIteration(evaluator, left, right, null,
+				EmptyBindingSet.getInstance(), mode, spillThreshold);
+		return toStrings(iter);
+	}
+
+	private BindingSetAssignment createAssignment(String name, int from, int to, String joinName) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int i = from; i < to; i++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding(name, vf.createLiteral(Integer.toString(i)));
+			if (joinName != null) {
+				bs.addBinding(joinName, vf.createURI("urn:", Integer.toString(i)));
+			}
+			bindingSets.add(bs);
+		}
+
+		BindingSetAssignment assignment = new BindingSetAssignment();
+		assignment.setBindingSets(bindingSets);
+		return assignment;
+	}
+
+	private Set<String> toStrings(SpillingHashJoinIteration iter)
+		throws QueryEvaluationException
+	{
+		Set<String> results = new HashSet<String>();
+		try {
+			while (iter.hasNext()) {
+				BindingSet bs = iter.next();
+				String s = "a=" + bs.getValue("a").stringValue();
+				if (bs.hasBinding("b")) {
+					s += " b=" + bs.getValue("b").stringValue();
+				}
+				results.add(s);
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,125 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
+
+import static org.junit.Assert.*;
+
+public class SpillingSPARQLMinusIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void testInMemory()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> results = evaluate(0, null);
+		assertEquals(expected(), results);
+		assertEquals(12, results.size());
+	}
+
+	@Test
+	public void testSpilled()
+		throws QueryEvaluationException
+	{
+		assertEquals(expected(), evaluate(3, null));
+	}
+
+	@Test
+	public void testSpilledByMemoryBudget()
+		throws QueryEvaluationException
+	{
+		QueryMemoryBudget budget = new QueryMemoryBudget(300);
+		assertEquals(expected(), evaluate(0, budget));
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	private List<BindingSet> expected()
+		throws QueryEvaluationException
+	{
+		return toList(new SPARQLMinusIteration<QueryEvaluationException>(createLeft(), createRight()));
+	}
+
+	private List<BindingSet> evaluate(long spillThreshold, QueryMemoryBudget budget)
+		throws QueryEvaluationException
+	{
+		return toList(new SpillingSPARQLMinusIteration(createLeft(), createRight(), spillThreshold, budget));
+	}
+
+	/**
+	 * Creates 20 binding sets that bind <tt>a</tt>, and <tt>i</tt> for all but
+	 * the last five.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> createLeft() {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int i = 0; i < 20; i++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("a", vf.createLiteral(Integer.toString(i)));
+			if (i < 15) {
+				bs.addBinding("i", vf.createURI("urn:", Integer.toString(i)));
+			}
+			bindingSets.add(bs);
+		}
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindingSets.iterator());
+	}
+
+	/**
+	 * Creates binding sets that share the values of <tt>i</tt> with the even
+	 * left results, and one that shares no variables with the left results.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> createRight() {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int i = 0; i < 20; i += 2) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("i", vf.createURI("urn:", Integer.toString(i)));
+			bindingSets.add(bs);
+		}
+		QueryBindingSet disjoint = new QueryBindingSet();
+		disjoint.addBinding("b", vf.createLiteral("b"));
+		bindingSets.add(disjoint);
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindingSets.iterator());
+	}
+
+	private List<BindingSet> toList(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+		throws QueryEvaluationException
+	{
+		List<BindingSet> results = new ArrayList<BindingSet>();
+		try {
+			while (iter.hasNext()) {
+				results.add(iter.next());
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return results;
+	}
+}
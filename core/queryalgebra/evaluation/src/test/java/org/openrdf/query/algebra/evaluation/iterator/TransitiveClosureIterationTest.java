@@ -0,0 +1,228 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.FilterIteration;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.StatementPattern.Scope;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+
+import static org.junit.Assert.*;
+
+public class TransitiveClosureIterationTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final URI broader = vf.createURI("urn:broader");
+
+	private final List<Statement> statements = new ArrayList<Statement>();
+
+	private final EvaluationStrategyImpl evaluator = new EvaluationStrategyImpl(new TripleSource() {
+
+		@Override
+		public CloseableIteration<? extends Statement, QueryEvaluationException> getStatements(
+				final Resource subj, final URI pred, final Value obj, Resource... contexts)
+		{
+			return new FilterIteration<Statement, QueryEvaluationException>(
+					new CloseableIteratorIteration<Statement, QueryEvaluationException>(statements.iterator()))
+			{
+
+				@Override
+				protected boolean accept(Statement st) {
+					return (subj == null || subj.equals(st.getSubject()))
+							&& (pred == null || pred.equals(st.getPredicate()))
+							&& (obj == null || obj.equals(st.getObject()));
+				}
+			};
+		}
+
+		@Override
+		public ValueFactory getValueFactory() {
+			return vf;
+		}
+	}, null);
+
+	/**
+	 * Creates a binary tree of 40 concepts, where concept <tt>i</tt> is
+	 * narrower than concept <tt>i / 2</tt>, with an extra edge from 0 to 3 that
+	 * closes a cycle.
+	 */
+	private void createTaxonomy() {
+		for (int i = 1; i < 40; i++) {
+			statements.add(vf.createStatement(concept(i), broader, concept(i / 2)));
+		}
+		statements.add(vf.createStatement(concept(0), broader, concept(3)));
+		statements.add(vf.createStatement(concept(39), vf.createURI("urn:other"), concept(1)));
+	}
+
+	@Test
+	public void testFixedStart()
+		throws QueryEvaluationException
+	{
+		createTaxonomy();
+		assertSameResults(path(concept(37), null, false), 0);
+		assertSameResults(path(concept(37), null, false), 1);
+		assertSameResults(path(concept(1), null, false), 1);
+	}
+
+	@Test
+	public void testFixedEnd()
+		throws QueryEvaluationException
+	{
+		createTaxonomy();
+		assertSameResults(path(null, concept(4), false), 0);
+		assertSameResults(path(null, concept(4), false), 1);
+		assertSameResults(path(null, concept(3), true), 1);
+	}
+
+	@Test
+	public void testFixedEndpoints()
+		throws QueryEvaluationException
+	{
+		createTaxonomy();
+		assertSameResults(path(concept(37), concept(1), false), 1);
+		assertSameResults(path(concept(1), concept(37), false), 1);
+		assertSameResults(path(concept(37), concept(37), false), 0);
+		assertSameResults(path(concept(37), concept(37), false), 1);
+		assertSameResults(path(concept(0), concept(0), false), 1);
+		assertSameResults(path(concept(1), concept(37), true), 1);
+	}
+
+	@Test
+	public void testAllPairs()
+		throws QueryEvaluationException
+	{
+		createTaxonomy();
+		assertSameResults(path(null, null, false), 0);
+		assertSameResults(path(null, null, false), 1);
+		assertSameResults(path(null, null, true), 1);
+	}
+
+	@Test
+	public void testSpilledFrontiers()
+		throws QueryEvaluationException
+	{
+		createTaxonomy();
+		ArbitraryLengthPath path = path(null, null, false);
+		path.setMinLength(1);
+
+		Set<List<Value>> expected = asSet(path, new TransitiveClosureIteration(evaluator, path,
+				new QueryBindingSet(), 0));
+		Set<List<Value>> actual = asSet(path, new TransitiveClosureIteration(evaluator, path,
+				new QueryBindingSet(), 2));
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testUnsupportedPaths() {
+		ArbitraryLengthPath path = path(null, null, false);
+		assertTrue(TransitiveClosureIteration.isSupported(path, new QueryBindingSet()));
+
+		path.getPathExpression().replaceWith(
+				new StatementPattern(new Var("s"), new Var("p"), new Var("o")));
+		assertFalse(TransitiveClosureIteration.isSupported(path, new QueryBindingSet()));
+
+		path = new ArbitraryLengthPath(new Var("s"), new StatementPattern(new Var("s"), new Var("p"),
+				new Var("o")), new Var("o"), 1);
+		assertFalse(TransitiveClosureIteration.isSupported(path, new QueryBindingSet()));
+
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding("p", broader);
+		assertTrue(TransitiveClosureIteration.isSupported(path, bindings));
+	}
+
+	private void assertSameResults(ArbitraryLengthPath path, long minLength)
+		throws QueryEvaluationException
+	{
+		path.setMinLength(minLength);
+		assertTrue(TransitiveClosureIteration.isSupported(path, new QueryBindingSet()));
+
+		Set<List<Value>> expected = asSet(path, new PathIteration(evaluator, path.getScope(), path.getSubjectVar(),
+				path.getPathExpression(), path.getObjectVar(), path.getContextVar(), minLength,
+				new QueryBindingSet()));
+		List<BindingSet> results = Iterations.asList(new TransitiveClosureIteration(evaluator, path,
+				new QueryBindingSet(), 0));
+		Set<List<Value>> actual = asSet(path,
+				new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(results.iterator()));
+
+		assertEquals("duplicate results", results.size(), actual.size());
+
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * Collects the distinct (start, end) pairs of a path's results, ignoring
+	 * any intermediate bindings.
+	 */
+	private Set<List<Value>> asSet(ArbitraryLengthPath path,
+			CloseableIteration<BindingSet, QueryEvaluationException> iter)
+		throws QueryEvaluationException
+	{
+		Set<List<Value>> set = new HashSet<List<Value>>();
+		while (iter.hasNext()) {
+			BindingSet bs = iter.next();
+			set.add(Arrays.asList(bs.getValue(path.getSubjectVar().getName()),
+					bs.getValue(path.getObjectVar().getName())));
+		}
+		iter.close();
+		return set;
+	}
+
+	private ArbitraryLengthPath path(Value start, Value end, boolean inverse) {
+		Var startVar = start == null ? new Var("s") : new Var("-const-start", start);
+		Var endVar = end == null ? new Var("o") : new Var("-const-end", end);
+		Var pred = new Var("-const-broader", broader);
+
+		StatementPattern sp;
+		if (inverse) {
+			sp = new StatementPattern(Scope.DEFAULT_CONTEXTS, endVar.clone(), pred, startVar.clone());
+		}
+		else {
+			sp = new StatementPattern(Scope.DEFAULT_CONTEXTS, startVar.clone(), pred, endVar.clone());
+		}
+		return new ArbitraryLengthPath(Scope.DEFAULT_CONTEXTS, startVar, sp, endVar, 1);
+	}
+
+	private URI concept(int i) {
+		return vf.createURI("urn:c" + i);
+	}
+}
@@ -36,6 +36,12 @@ public abstract class BinaryTupleOperator extends QueryModelNodeBase implements
 	 */
 	protected TupleExpr rightArg;
 
+	/**
+	 * The name of the algorithm that should be (or has been) used to evaluate
+	 * this operator, if any.
+	 */
+	private String algorithmName;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -104,6 +110,38 @@ public abstract class BinaryTupleOperator extends QueryModelNodeBase implements
 		this.rightArg = rightArg;
 	}
 
+	/**
+	 * Gets the name of the algorithm that is to be used to evaluate this
+	 * operator. Query optimizers can use this to pass a hint to the evaluation
+	 * strategy, e.g. to request a hash join instead of a nested loop join.
+	 * 
+	 * @return The name of the algorithm, or <tt>null</tt> if the evaluation
+	 *         strategy is free to choose.
+	 */
+	public String getAlgorithmName() {
+		return algorithmName;
+	}
+
+	/**
+	 * Sets the name of the algorithm that is to be used to evaluate this
+	 * operator.
+	 * 
+	 * @param algorithmName
+	 *        The name of the algorithm, or <tt>null</tt> to let the evaluation
+	 *        strategy choose.
+	 */
+	public void setAlgorithmName(String algorithmName) {
+		this.algorithmName = algorithmName;
+	}
+
+	@Override
+	public String getSignature() {
+		if (algorithmName != null) {
+			return super.getSignature() + " (" + algorithmName + ")";
+		}
+		return super.getSignature();
+	}
+
 	@Override
 	public <X extends Exception> void visitChildren(QueryModelVisitor<X> visitor)
 		throws X
@@ -76,7 +76,7 @@ public class QueryModelTreePrinter extends QueryModelVisitorBase<RuntimeExceptio
 			buf.append(indentString);
 		}
 
-		buf.append(node.getSignature());
+		buf.append(getSignature(node));
 		buf.append(LINE_SEPARATOR);
 
 		indentLevel++;
@@ -85,4 +85,14 @@ public class QueryModelTreePrinter extends QueryModelVisitorBase<RuntimeExceptio
 
 		indentLevel--;
 	}
+
+	/**
+	 * Gets the text that is printed for the supplied node. Subclasses can
+	 * override this method to annotate the nodes of the tree.
+	 * 
+	 * @return The node's {@link QueryModelNode#getSignature() signature}.
+	 */
+	protected String getSignature(QueryModelNode node) {
+		return node.getSignature();
+	}
 }
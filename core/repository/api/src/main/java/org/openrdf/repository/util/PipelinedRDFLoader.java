@@ -0,0 +1,660 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.repository.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.openrdf.OpenRDFUtil;
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.NamespaceImpl;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.ParserConfig;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.UnsupportedRDFormatException;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Loads RDF data into a repository in a pipeline: the data is parsed on one or
+ * more background threads, which hand batches of statements through a bounded
+ * queue to the calling thread, which adds them to the repository with an
+ * {@link RDFInserter}. Parsing and value creation thus overlap with the
+ * updates of the repository, and the queue limits the number of statements
+ * that are held in memory when the repository is slower than the parsers.
+ * Each document is parsed by a single thread, several documents are parsed
+ * in parallel if more than one parser thread is configured.
+ * <p>
+ * If the connection is not active, the loader starts a transaction and
+ * commits it when all data has been added, or after every
+ * {@link #setCommitSize(long) commit size} statements. If the connection is
+ * active, the statements are added to the caller's transaction, which is left
+ * open.
+ * 
+ * @since 2.8.7
+ */
+public class PipelinedRDFLoader {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final Logger logger = LoggerFactory.getLogger(PipelinedRDFLoader.class);
+
+	private final ParserConfig config;
+
+	private final ValueFactory vf;
+
+	private int parserThreads = 1;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	private long commitSize = 0;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param config
+	 *        The configuration of the parsers.
+	 * @param vf
+	 *        The ValueFactory that the parsers use to create values, normally
+	 *        the value factory of the connection that the data is loaded into.
+	 */
+	public PipelinedRDFLoader(ParserConfig config, ValueFactory vf) {
+		this.config = config;
+		this.vf = vf;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Sets the maximum number of threads that parse documents. Defaults to 1.
+	 */
+	public void setParserThreads(int parserThreads) {
+		if (parserThreads < 1) {
+			throw new IllegalArgumentException("Number of parser threads must be positive");
+		}
+		this.parserThreads = parserThreads;
+	}
+
+	public int getParserThreads() {
+		return parserThreads;
+	}
+
+	/**
+	 * Sets the number of statements that a parser thread hands to the inserter
+	 * at once. Defaults to {@link #DEFAULT_BATCH_SIZE}.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of statement batches that can wait for the inserter.
+	 * Parser threads block when the queue is full. Defaults to
+	 * {@link #DEFAULT_QUEUE_CAPACITY}.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be positive");
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets the number of statements after which the loader commits its
+	 * transaction and starts a new one. The commit happens after the first
+	 * batch that reaches this number, so transactions can be up to one batch
+	 * larger. A value of <tt>0</tt>, the default, adds all data in a single
+	 * transaction. This setting has no effect if the connection already has
+	 * an active transaction when the load starts.
+	 * <p>
+	 * Note that a failure only rolls back the current transaction, the
+	 * statements of earlier transactions remain in the repository.
+	 */
+	public void setCommitSize(long commitSize) {
+		if (commitSize < 0) {
+			throw new IllegalArgumentException("Commit size must not be negative");
+		}
+		this.commitSize = commitSize;
+	}
+
+	public long getCommitSize() {
+		return commitSize;
+	}
+
+	/**
+	 * Loads the RDF data from the specified file into the repository.
+	 * 
+	 * @param con
+	 *        The connection to add the data to.
+	 * @param file
+	 *        A file containing RDF data.
+	 * @param baseURI
+	 *        The base URI to resolve any relative URIs that are in the data
+	 *        against. This defaults to the value of {@link java.io.File#toURI()
+	 *        file.toURI()} if the value is set to <tt>null</tt>.
+	 * @param dataFormat
+	 *        The serialization format of the data, or <tt>null</tt> to
+	 *        determine it from the file name.
+	 * @param contexts
+	 *        The contexts to add the data to, see
+	 *        {@link RepositoryConnection#add(File, String, RDFFormat, Resource...)}.
+	 * @return The statistics of the load.
+	 * @throws IOException
+	 *         If an I/O error occurred while reading from the file.
+	 * @throws UnsupportedRDFormatException
+	 *         If no parser is available for the specified RDF format.
+	 * @throws RDFParseException
+	 *         If an error was found while parsing the RDF data.
+	 * @throws RepositoryException
+	 *         If the data could not be added to the repository.
+	 */
+	public RDFLoaderStatistics load(RepositoryConnection con, final File file, final String baseURI,
+			final RDFFormat dataFormat, Resource... contexts)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		return load(con, Collections.singletonList(file), baseURI, dataFormat, contexts);
+	}
+
+	/**
+	 * Loads the RDF data from the specified files into the repository. The
+	 * files are parsed in parallel by up to {@link #getParserThreads()}
+	 * threads.
+	 * 
+	 * @param con
+	 *        The connection to add the data to.
+	 * @param files
+	 *        Files containing RDF data.
+	 * @param baseURI
+	 *        The base URI to resolve any relative URIs that are in the data
+	 *        against. This defaults to the value of {@link java.io.File#toURI()
+	 *        file.toURI()} of each file if the value is set to <tt>null</tt>.
+	 * @param dataFormat
+	 *        The serialization format of the data, or <tt>null</tt> to
+	 *        determine it from the name of each file.
+	 * @param contexts
+	 *        The contexts to add the data to, see
+	 *        {@link RepositoryConnection#add(File, String, RDFFormat, Resource...)}.
+	 * @return The statistics of the load.
+	 * @throws IOException
+	 *         If an I/O error occurred while reading from a file.
+	 * @throws UnsupportedRDFormatException
+	 *         If no parser is available for the RDF format of a file.
+	 * @throws RDFParseException
+	 *         If an error was found while parsing the RDF data.
+	 * @throws RepositoryException
+	 *         If the data could not be added to the repository.
+	 */
+	public RDFLoaderStatistics load(RepositoryConnection con, Collection<File> files, final String baseURI,
+			final RDFFormat dataFormat, Resource... contexts)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		List<Source> sources = new ArrayList<Source>(files.size());
+		for (final File file : files) {
+			sources.add(new Source() {
+
+				public void parse(RDFLoader loader, BatchingHandler handler)
+					throws IOException, RDFParseException, RDFHandlerException
+				{
+					loader.load(file, baseURI, dataFormat, handler);
+				}
+			});
+		}
+		return load(con, sources, contexts);
+	}
+
+	/**
+	 * Loads the RDF data that can be found at the specified URL into the
+	 * repository.
+	 * 
+	 * @param con
+	 *        The connection to add the data to.
+	 * @param url
+	 *        The URL of the RDF data.
+	 * @param baseURI
+	 *        The base URI to resolve any relative URIs that are in the data
+	 *        against. This defaults to the value of
+	 *        {@link java.net.URL#toExternalForm() url.toExternalForm()} if the
+	 *        value is set to <tt>null</tt>.
+	 * @param dataFormat
+	 *        The serialization format of the data, or <tt>null</tt> to
+	 *        determine it from the response, as described for
+	 *        {@link RDFLoader#load(URL, String, RDFFormat, org.openrdf.rio.RDFHandler)}.
+	 * @param contexts
+	 *        The contexts to add the data to, see
+	 *        {@link RepositoryConnection#add(URL, String, RDFFormat, Resource...)}.
+	 * @return The statistics of the load.
+	 * @throws IOException
+	 *         If an I/O error occurred while reading from the URL.
+	 * @throws UnsupportedRDFormatException
+	 *         If no parser is available for the specified RDF format, or the RDF
+	 *         format could not be automatically determined.
+	 * @throws RDFParseException
+	 *         If an error was found while parsing the RDF data.
+	 * @throws RepositoryException
+	 *         If the data could not be added to the repository.
+	 */
+	public RDFLoaderStatistics load(RepositoryConnection con, final URL url, final String baseURI,
+			final RDFFormat dataFormat, Resource... contexts)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		return load(con, Collections.<Source> singletonList(new Source() {
+
+			public void parse(RDFLoader loader, BatchingHandler handler)
+				throws IOException, RDFParseException, RDFHandlerException
+			{
+				loader.load(url, baseURI, dataFormat, handler);
+			}
+		}), contexts);
+	}
+
+	/**
+	 * Loads the RDF data from an InputStream into the repository. The stream
+	 * is read on a parser thread, but it is not closed.
+	 * 
+	 * @param con
+	 *        The connection to add the data to.
+	 * @param in
+	 *        An InputStream from which RDF data can be read.
+	 * @param baseURI
+	 *        The base URI to resolve any relative URIs that are in the data
+	 *        against.
+	 * @param dataFormat
+	 *        The serialization format of the data.
+	 * @param contexts
+	 *        The contexts to add the data to, see
+	 *        {@link RepositoryConnection#add(InputStream, String, RDFFormat, Resource...)}.
+	 * @return The statistics of the load.
+	 * @throws IOException
+	 *         If an I/O error occurred while reading from the input stream.
+	 * @throws UnsupportedRDFormatException
+	 *         If no parser is available for the specified RDF format.
+	 * @throws RDFParseException
+	 *         If an error was found while parsing the RDF data.
+	 * @throws RepositoryException
+	 *         If the data could not be added to the repository.
+	 */
+	public RDFLoaderStatistics load(RepositoryConnection con, final InputStream in, final String baseURI,
+			final RDFFormat dataFormat, Resource... contexts)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		return load(con, Collections.<Source> singletonList(new Source() {
+
+			public void parse(RDFLoader loader, BatchingHandler handler)
+				throws IOException, RDFParseException, RDFHandlerException
+			{
+				loader.load(in, baseURI, dataFormat, handler);
+			}
+		}), contexts);
+	}
+
+	/**
+	 * Loads the RDF data from a Reader into the repository. The reader is read
+	 * on a parser thread, but it is not closed. <b>Note: using a Reader to
+	 * upload byte-based data means that you have to be careful not to destroy
+	 * the data's character encoding by enforcing a default character encoding
+	 * upon the bytes. If possible, adding such data using an InputStream is to
+	 * be preferred.</b>
+	 * 
+	 * @param con
+	 *        The connection to add the data to.
+	 * @param reader
+	 *        A Reader from which RDF data can be read.
+	 * @param baseURI
+	 *        The base URI to resolve any relative URIs that are in the data
+	 *        against.
+	 * @param dataFormat
+	 *        The serialization format of the data.
+	 * @param contexts
+	 *        The contexts to add the data to, see
+	 *        {@link RepositoryConnection#add(Reader, String, RDFFormat, Resource...)}.
+	 * @return The statistics of the load.
+	 * @throws IOException
+	 *         If an I/O error occurred while reading from the reader.
+	 * @throws UnsupportedRDFormatException
+	 *         If no parser is available for the specified RDF format.
+	 * @throws RDFParseException
+	 *         If an error was found while parsing the RDF data.
+	 * @throws RepositoryException
+	 *         If the data could not be added to the repository.
+	 */
+	public RDFLoaderStatistics load(RepositoryConnection con, final Reader reader, final String baseURI,
+			final RDFFormat dataFormat, Resource... contexts)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		return load(con, Collections.<Source> singletonList(new Source() {
+
+			public void parse(RDFLoader loader, BatchingHandler handler)
+				throws IOException, RDFParseException, RDFHandlerException
+			{
+				loader.load(reader, baseURI, dataFormat, handler);
+			}
+		}), contexts);
+	}
+
+	private RDFLoaderStatistics load(RepositoryConnection con, List<Source> sources, Resource... contexts)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		OpenRDFUtil.verifyContextNotNull(contexts);
+
+		RDFInserter rdfInserter = new RDFInserter(con);
+		rdfInserter.enforceContext(contexts);
+
+		RDFLoaderStatistics statistics = new RDFLoaderStatistics();
+		BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(queueCapacity);
+
+		boolean localTransaction = !con.isActive();
+		if (localTransaction) {
+			con.begin();
+		}
+
+		int threads = Math.max(1, Math.min(parserThreads, sources.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "RDF loader parser");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		boolean success = false;
+		try {
+			for (Source source : sources) {
+				executor.execute(new ParseTask(source, queue, statistics));
+			}
+			executor.shutdown();
+
+			long uncommitted = 0;
+			int remaining = sources.size();
+			while (remaining > 0) {
+				Batch batch = takeBatch(queue, statistics);
+
+				for (Namespace namespace : batch.namespaces) {
+					rdfInserter.handleNamespace(namespace.getPrefix(), namespace.getName());
+				}
+				for (Statement st : batch.statements) {
+					rdfInserter.handleStatement(st);
+				}
+				statistics.batchInserted(batch.statements.size(), queue.size());
+
+				uncommitted += batch.statements.size();
+				if (localTransaction && commitSize > 0 && uncommitted >= commitSize) {
+					con.commit();
+					statistics.committed();
+					con.begin();
+					uncommitted = 0;
+				}
+
+				if (batch.last) {
+					remaining--;
+					if (batch.failure != null) {
+						throwFailure(batch.failure);
+					}
+				}
+			}
+
+			// adds the namespaces
+			rdfInserter.endRDF();
+
+			if (localTransaction) {
+				con.commit();
+				statistics.committed();
+			}
+			success = true;
+		}
+		catch (RDFHandlerException e) {
+			// RDFInserter only throws wrapped RepositoryExceptions
+			if (e.getCause() instanceof RepositoryException) {
+				throw (RepositoryException)e.getCause();
+			}
+			throw new RepositoryException(e);
+		}
+		finally {
+			statistics.finished();
+			if (!success) {
+				executor.shutdownNow();
+				if (localTransaction) {
+					rollback(con);
+				}
+			}
+		}
+
+		logger.debug("Loaded {}", statistics);
+		return statistics;
+	}
+
+	private Batch takeBatch(BlockingQueue<Batch> queue, RDFLoaderStatistics statistics)
+		throws RepositoryException
+	{
+		Batch batch = queue.poll();
+		if (batch == null) {
+			long start = System.nanoTime();
+			try {
+				batch = queue.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RepositoryException("Interrupted while waiting for parser threads", e);
+			}
+			statistics.inserterIdle(System.nanoTime() - start);
+		}
+		return batch;
+	}
+
+	private void throwFailure(Throwable failure)
+		throws IOException, RDFParseException, RepositoryException
+	{
+		if (failure instanceof IOException) {
+			throw (IOException)failure;
+		}
+		else if (failure instanceof RDFParseException) {
+			throw (RDFParseException)failure;
+		}
+		else if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		else if (failure instanceof Error) {
+			throw (Error)failure;
+		}
+		throw new RepositoryException(failure);
+	}
+
+	private void rollback(RepositoryConnection con) {
+		try {
+			if (con.isActive()) {
+				con.rollback();
+			}
+		}
+		catch (RepositoryException e) {
+			logger.warn("Failed to roll back after failed load", e);
+		}
+	}
+
+	/*---------------*
+	 * Inner classes *
+	 *---------------*/
+
+	/**
+	 * A document that is to be parsed.
+	 */
+	private static interface Source {
+
+		public void parse(RDFLoader loader, BatchingHandler handler)
+			throws IOException, RDFParseException, RDFHandlerException;
+	}
+
+	/**
+	 * Statements and namespaces that a parser thread hands to the inserter.
+	 */
+	private static class Batch {
+
+		final List<Statement> statements;
+
+		final List<Namespace> namespaces = new ArrayList<Namespace>(0);
+
+		boolean last;
+
+		Throwable failure;
+
+		public Batch(int capacity) {
+			statements = new ArrayList<Statement>(capacity);
+		}
+	}
+
+	private class ParseTask implements Runnable {
+
+		private final Source source;
+
+		private final BlockingQueue<Batch> queue;
+
+		private final RDFLoaderStatistics statistics;
+
+		public ParseTask(Source source, BlockingQueue<Batch> queue, RDFLoaderStatistics statistics) {
+			this.source = source;
+			this.queue = queue;
+			this.statistics = statistics;
+		}
+
+		public void run() {
+			BatchingHandler handler = new BatchingHandler(queue, statistics);
+			Throwable failure = null;
+			try {
+				source.parse(new RDFLoader(config, vf), handler);
+			}
+			catch (Throwable t) {
+				failure = t;
+			}
+
+			try {
+				handler.finish(failure);
+			}
+			catch (RDFHandlerException e) {
+				// interrupted, the inserter has stopped
+			}
+		}
+	}
+
+	/**
+	 * Collects the statements of a parser into batches and puts full batches on
+	 * the queue.
+	 */
+	private class BatchingHandler extends RDFHandlerBase {
+
+		private final BlockingQueue<Batch> queue;
+
+		private final RDFLoaderStatistics statistics;
+
+		private Batch batch = new Batch(batchSize);
+
+		public BatchingHandler(BlockingQueue<Batch> queue, RDFLoaderStatistics statistics) {
+			this.queue = queue;
+			this.statistics = statistics;
+		}
+
+		@Override
+		public void handleNamespace(String prefix, String uri) {
+			batch.namespaces.add(new NamespaceImpl(prefix, uri));
+		}
+
+		@Override
+		public void handleStatement(Statement st)
+			throws RDFHandlerException
+		{
+			batch.statements.add(st);
+			if (batch.statements.size() >= batchSize) {
+				put(batch);
+				batch = new Batch(batchSize);
+			}
+		}
+
+		/**
+		 * Puts the last batch of the document on the queue.
+		 */
+		public void finish(Throwable failure)
+			throws RDFHandlerException
+		{
+			batch.last = true;
+			batch.failure = failure;
+			put(batch);
+			batch = null;
+		}
+
+		private void put(Batch batch)
+			throws RDFHandlerException
+		{
+			statistics.statementsParsed(batch.statements.size());
+			if (!queue.offer(batch)) {
+				long start = System.nanoTime();
+				try {
+					queue.put(batch);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RDFHandlerException("Interrupted while waiting for the inserter", e);
+				}
+				statistics.parserBlocked(System.nanoTime() - start);
+			}
+		}
+	}
+}
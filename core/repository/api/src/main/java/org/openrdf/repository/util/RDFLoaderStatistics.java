@@ -0,0 +1,175 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.repository.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and back-pressure figures of a load by a
+ * {@link PipelinedRDFLoader}. The time that the parser threads were blocked
+ * because the queue of statement batches was full indicates that inserting
+ * the statements is the bottleneck, the time that the inserter waited for a
+ * batch indicates that parsing is.
+ * 
+ * @since 2.8.7
+ */
+public class RDFLoaderStatistics {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final long startTime = System.nanoTime();
+
+	private long endTime;
+
+	private final AtomicLong parsedStatements = new AtomicLong();
+
+	private final AtomicLong parserBlockedTime = new AtomicLong();
+
+	private final AtomicLong parserBlockedCount = new AtomicLong();
+
+	private long insertedStatements;
+
+	private long batchCount;
+
+	private long commitCount;
+
+	private long inserterIdleTime;
+
+	private int maxQueueSize;
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	void statementsParsed(int count) {
+		parsedStatements.addAndGet(count);
+	}
+
+	void parserBlocked(long nanos) {
+		parserBlockedTime.addAndGet(nanos);
+		parserBlockedCount.incrementAndGet();
+	}
+
+	void batchInserted(int statementCount, int queueSize) {
+		insertedStatements += statementCount;
+		batchCount++;
+		maxQueueSize = Math.max(maxQueueSize, queueSize);
+	}
+
+	void inserterIdle(long nanos) {
+		inserterIdleTime += nanos;
+	}
+
+	void committed() {
+		commitCount++;
+	}
+
+	void finished() {
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Gets the number of statements that the parsers have reported.
+	 */
+	public long getParsedStatementCount() {
+		return parsedStatements.get();
+	}
+
+	/**
+	 * Gets the number of statements that have been added to the repository.
+	 */
+	public long getStatementCount() {
+		return insertedStatements;
+	}
+
+	/**
+	 * Gets the number of statement batches that have been added to the
+	 * repository.
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Gets the number of transactions that the loader has committed. This is
+	 * <tt>0</tt> if the statements were added to a transaction of the caller.
+	 */
+	public long getCommitCount() {
+		return commitCount;
+	}
+
+	/**
+	 * Gets the time that the load took, or has taken so far, in milliseconds.
+	 */
+	public long getElapsedTime() {
+		long end = endTime != 0 ? endTime : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - startTime);
+	}
+
+	/**
+	 * Gets the number of statements that have been added per second.
+	 */
+	public double getStatementsPerSecond() {
+		long elapsed = getElapsedTime();
+		if (elapsed == 0) {
+			return 0.0;
+		}
+		return insertedStatements * 1000.0 / elapsed;
+	}
+
+	/**
+	 * Gets the total time, in milliseconds, that parser threads waited for
+	 * space in the queue of statement batches.
+	 */
+	public long getParserBlockedTime() {
+		return TimeUnit.NANOSECONDS.toMillis(parserBlockedTime.get());
+	}
+
+	/**
+	 * Gets the number of times that a parser thread found the queue of
+	 * statement batches full.
+	 */
+	public long getParserBlockedCount() {
+		return parserBlockedCount.get();
+	}
+
+	/**
+	 * Gets the total time, in milliseconds, that the inserter waited for a
+	 * batch of statements.
+	 */
+	public long getInserterIdleTime() {
+		return TimeUnit.NANOSECONDS.toMillis(inserterIdleTime);
+	}
+
+	/**
+	 * Gets the largest number of statement batches that were waiting in the
+	 * queue when the inserter took a batch.
+	 */
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d statements in %d ms (%.0f statements/s), %d commits, "
+				+ "parsers blocked for %d ms, inserter idle for %d ms", getStatementCount(), getElapsedTime(),
+				getStatementsPerSecond(), getCommitCount(), getParserBlockedTime(), getInserterIdleTime());
+	}
+}
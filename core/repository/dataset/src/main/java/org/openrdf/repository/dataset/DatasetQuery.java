@@ -20,6 +20,7 @@ import org.openrdf.model.Value;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.Query;
+import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.repository.sail.SailQuery;
 
 /**
@@ -88,6 +89,13 @@ abstract class DatasetQuery implements Query {
 		return getMaxExecutionTime();
 	}
 
+	public String explain()
+		throws QueryEvaluationException
+	{
+		con.loadDataset(sailQuery.getActiveDataset());
+		return sailQuery.explain();
+	}
+
 	@Override
 	public String toString() {
 		return sailQuery.toString();
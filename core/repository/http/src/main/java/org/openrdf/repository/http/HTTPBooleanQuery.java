@@ -65,4 +65,12 @@ public class HTTPBooleanQuery extends AbstractHTTPQuery implements BooleanQuery
 			throw new HTTPQueryEvaluationException(e.getMessage(), e);
 		}
 	}
+
+	@Override
+	public String explain()
+		throws QueryEvaluationException
+	{
+		return conn.explainQuery(queryLanguage, queryString, baseURI, dataset, getIncludeInferred(),
+				getMaxExecutionTime(), getBindingsArray());
+	}
 }
@@ -112,4 +112,12 @@ public class HTTPGraphQuery extends AbstractHTTPQuery implements GraphQuery {
 			throw new HTTPQueryEvaluationException(e.getMessage(), e);
 		}
 	}
+
+	@Override
+	public String explain()
+		throws QueryEvaluationException
+	{
+		return conn.explainQuery(queryLanguage, queryString, baseURI, dataset, getIncludeInferred(),
+				getMaxExecutionTime(), getBindingsArray());
+	}
 }
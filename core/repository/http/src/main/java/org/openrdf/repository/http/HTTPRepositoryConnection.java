@@ -61,8 +61,10 @@ import org.openrdf.model.Value;
 import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.model.impl.NamespaceImpl;
 import org.openrdf.model.vocabulary.SESAME;
+import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.BooleanQuery;
+import org.openrdf.query.Dataset;
 import org.openrdf.query.GraphQuery;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.Query;
@@ -241,6 +243,32 @@ class HTTPRepositoryConnection extends RepositoryConnectionBase implements HttpC
 		return new HTTPBooleanQuery(this, ql, queryString, baseURI);
 	}
 
+	/**
+	 * Evaluates a query on the server and returns a description of how it was
+	 * evaluated.
+	 * 
+	 * @see Query#explain()
+	 */
+	String explainQuery(QueryLanguage ql, String queryString, String baseURI, Dataset dataset,
+			boolean includeInferred, int maxExecutionTime, Binding... bindings)
+		throws QueryEvaluationException
+	{
+		try {
+			flushTransactionState(Action.QUERY);
+			return client.explainQuery(ql, queryString, baseURI, dataset, includeInferred, maxExecutionTime,
+					bindings);
+		}
+		catch (IOException e) {
+			throw new HTTPQueryEvaluationException(e.getMessage(), e);
+		}
+		catch (RepositoryException e) {
+			throw new HTTPQueryEvaluationException(e.getMessage(), e);
+		}
+		catch (MalformedQueryException e) {
+			throw new HTTPQueryEvaluationException(e.getMessage(), e);
+		}
+	}
+
 	public RepositoryResult<Resource> getContextIDs()
 		throws RepositoryException
 	{
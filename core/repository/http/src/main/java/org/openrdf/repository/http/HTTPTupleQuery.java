@@ -87,4 +87,12 @@ public class HTTPTupleQuery extends AbstractHTTPQuery implements TupleQuery {
 			throw new HTTPQueryEvaluationException(e.getMessage(), e);
 		}
 	}
+
+	@Override
+	public String explain()
+		throws QueryEvaluationException
+	{
+		return conn.explainQuery(queryLanguage, queryString, baseURI, dataset, getIncludeInferred(),
+				getMaxExecutionTime(), getBindingsArray());
+	}
 }
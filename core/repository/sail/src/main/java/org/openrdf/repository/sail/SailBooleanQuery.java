@@ -24,7 +24,6 @@ import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.parser.ParsedBooleanQuery;
-import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 
 /**
@@ -53,10 +52,8 @@ public class SailBooleanQuery extends SailQuery implements BooleanQuery {
 		}
 
 		try {
-			SailConnection sailCon = getConnection().getSailConnection();
-
 			CloseableIteration<? extends BindingSet, QueryEvaluationException> bindingsIter;
-			bindingsIter = sailCon.evaluate(tupleExpr, dataset, getBindings(), getIncludeInferred());
+			bindingsIter = evaluateTupleExpr(tupleExpr, dataset);
 
 			bindingsIter = enforceMaxQueryTime(bindingsIter);
 
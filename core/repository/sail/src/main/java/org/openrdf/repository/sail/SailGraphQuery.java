@@ -35,7 +35,6 @@ import org.openrdf.query.impl.GraphQueryResultImpl;
 import org.openrdf.query.parser.ParsedGraphQuery;
 import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
-import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 
 /**
@@ -60,8 +59,7 @@ public class SailGraphQuery extends SailQuery implements GraphQuery {
 		try {
 			CloseableIteration<? extends BindingSet, QueryEvaluationException> bindingsIter;
 			
-			SailConnection sailCon = getConnection().getSailConnection();
-			bindingsIter = sailCon.evaluate(tupleExpr, getActiveDataset(), getBindings(), getIncludeInferred());
+			bindingsIter = evaluateTupleExpr(tupleExpr, getActiveDataset());
 
 			// Filters out all partial and invalid matches
 			bindingsIter = new FilterIteration<BindingSet, QueryEvaluationException>(bindingsIter) {
@@ -16,6 +16,7 @@
  */
 package org.openrdf.repository.sail;
 
+import info.aduna.iteration.CancellationToken;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.Iteration;
 import info.aduna.iteration.TimeLimitIteration;
@@ -24,9 +25,12 @@ import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.impl.AbstractQuery;
 import org.openrdf.query.impl.FallbackDataset;
 import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
 
 /**
  * @author Arjohn Kampman
@@ -50,6 +54,33 @@ public abstract class SailQuery extends AbstractQuery {
 		return con;
 	}
 
+	/**
+	 * Evaluates the supplied tuple expression on the Sail connection. If a
+	 * maximum execution time has been set, the evaluation is started with a
+	 * {@link CancellationToken} whose deadline is the end of that time, so
+	 * that the Sail stops evaluating the query, including scans that are in
+	 * progress, when the time has passed.
+	 */
+	protected CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluateTupleExpr(
+			TupleExpr tupleExpr, Dataset dataset)
+		throws SailException
+	{
+		SailConnection sailCon = getConnection().getSailConnection();
+		if (getMaxExecutionTime() <= 0) {
+			return sailCon.evaluate(tupleExpr, dataset, getBindings(), getIncludeInferred());
+		}
+
+		CancellationToken token = new CancellationToken(CancellationToken.current(),
+				1000L * getMaxExecutionTime());
+		CancellationToken previousToken = token.activate();
+		try {
+			return sailCon.evaluate(tupleExpr, dataset, getBindings(), getIncludeInferred());
+		}
+		finally {
+			CancellationToken.restore(previousToken);
+		}
+	}
+
 	protected CloseableIteration<? extends BindingSet, QueryEvaluationException> enforceMaxQueryTime(
 			CloseableIteration<? extends BindingSet, QueryEvaluationException> bindingsIter)
 	{
@@ -77,6 +108,23 @@ public abstract class SailQuery extends AbstractQuery {
 		return parsedQuery.getDataset();
 	}
 
+	@Override
+	public String explain()
+		throws QueryEvaluationException
+	{
+		try {
+			SailConnection sailCon = getConnection().getSailConnection();
+			return sailCon.explain(parsedQuery.getTupleExpr(), getActiveDataset(), getBindings(),
+					getIncludeInferred(), getMaxExecutionTime());
+		}
+		catch (SailException e) {
+			if (e.getCause() instanceof QueryEvaluationException) {
+				throw (QueryEvaluationException)e.getCause();
+			}
+			throw new QueryEvaluationException(e.getMessage(), e);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return parsedQuery.toString();
@@ -17,6 +17,10 @@
 package org.openrdf.repository.sail;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.http.client.HttpClient;
 
@@ -24,8 +28,12 @@ import org.openrdf.http.client.HttpClientDependent;
 import org.openrdf.http.client.SesameClient;
 import org.openrdf.http.client.SesameClientDependent;
 import org.openrdf.model.ValueFactory;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverClient;
+import org.openrdf.query.parser.ParsedQuery;
+import org.openrdf.query.parser.QueryParserUtil;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryLockedException;
@@ -36,6 +44,7 @@ import org.openrdf.sail.Sail;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.SailLockedException;
 import org.openrdf.sail.StackableSail;
+import org.openrdf.sail.helpers.SailBase;
 
 /**
  * An implementation of the {@link Repository} interface that operates on a
@@ -75,6 +84,19 @@ public class SailRepository extends RepositoryBase implements FederatedServiceRe
 
 	private final Sail sail;
 
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	/**
+	 * Parsed queries, by query language, query string and base URI. Created on
+	 * first use if the underlying Sail caches query plans, so that repeated
+	 * query strings share a parsed query and thereby a cached plan.
+	 */
+	private Map<List<Object>, ParsedQuery> parsedQueries;
+
+	private boolean parsedQueriesChecked;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -177,6 +199,10 @@ public class SailRepository extends RepositoryBase implements FederatedServiceRe
 	protected void shutDownInternal()
 		throws RepositoryException
 	{
+		synchronized (this) {
+			parsedQueries = null;
+			parsedQueriesChecked = false;
+		}
 		try {
 			sail.shutDown();
 		}
@@ -225,6 +251,52 @@ public class SailRepository extends RepositoryBase implements FederatedServiceRe
 		return sail.toString();
 	}
 
+	/**
+	 * Parses a query, reusing the result of an earlier call with the same
+	 * arguments if the underlying Sail has a query plan cache.
+	 */
+	ParsedQuery parseQuery(QueryLanguage ql, String queryString, String baseURI)
+		throws MalformedQueryException
+	{
+		Map<List<Object>, ParsedQuery> cache = getParsedQueryCache();
+		if (cache == null) {
+			return QueryParserUtil.parseQuery(ql, queryString, baseURI);
+		}
+
+		List<Object> key = Arrays.<Object> asList(ql, queryString, baseURI);
+		ParsedQuery parsedQuery;
+		synchronized (cache) {
+			parsedQuery = cache.get(key);
+		}
+		if (parsedQuery == null) {
+			parsedQuery = QueryParserUtil.parseQuery(ql, queryString, baseURI);
+			synchronized (cache) {
+				cache.put(key, parsedQuery);
+			}
+		}
+		return parsedQuery;
+	}
+
+	private synchronized Map<List<Object>, ParsedQuery> getParsedQueryCache() {
+		if (!parsedQueriesChecked) {
+			parsedQueriesChecked = true;
+			SailBase base = findSailOf(sail, SailBase.class);
+			if (base != null && base.getQueryPlanCacheSize() > 0) {
+				final int maxSize = base.getQueryPlanCacheSize();
+				parsedQueries = new LinkedHashMap<List<Object>, ParsedQuery>(16, 0.75f, true) {
+
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<List<Object>, ParsedQuery> eldest) {
+						return size() > maxSize;
+					}
+				};
+			}
+		}
+		return parsedQueries;
+	}
+
 	private <T> T findSailOf(Sail sail, Class<T> type) {
 		if (type.isInstance(sail)) {
 			return type.cast(sail);
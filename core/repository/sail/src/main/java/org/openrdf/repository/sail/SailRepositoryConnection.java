@@ -225,11 +225,15 @@ public class SailRepositoryConnection extends RepositoryConnectionBase implement
 		}
 	}
 
+	private SailRepository getSailRepository() {
+		return (SailRepository)getRepository();
+	}
+
 	@Override
 	public SailQuery prepareQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedQuery parsedQuery = QueryParserUtil.parseQuery(ql, queryString, baseURI);
+		ParsedQuery parsedQuery = getSailRepository().parseQuery(ql, queryString, baseURI);
 
 		if (parsedQuery instanceof ParsedTupleQuery) {
 			return new SailTupleQuery((ParsedTupleQuery)parsedQuery, this);
@@ -249,24 +253,33 @@ public class SailRepositoryConnection extends RepositoryConnectionBase implement
 	public SailTupleQuery prepareTupleQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedTupleQuery parsedQuery = QueryParserUtil.parseTupleQuery(ql, queryString, baseURI);
-		return new SailTupleQuery(parsedQuery, this);
+		ParsedQuery parsedQuery = getSailRepository().parseQuery(ql, queryString, baseURI);
+		if (parsedQuery instanceof ParsedTupleQuery) {
+			return new SailTupleQuery((ParsedTupleQuery)parsedQuery, this);
+		}
+		throw new IllegalArgumentException("query is not a tuple query: " + queryString);
 	}
 
 	@Override
 	public SailGraphQuery prepareGraphQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedGraphQuery parsedQuery = QueryParserUtil.parseGraphQuery(ql, queryString, baseURI);
-		return new SailGraphQuery(parsedQuery, this);
+		ParsedQuery parsedQuery = getSailRepository().parseQuery(ql, queryString, baseURI);
+		if (parsedQuery instanceof ParsedGraphQuery) {
+			return new SailGraphQuery((ParsedGraphQuery)parsedQuery, this);
+		}
+		throw new IllegalArgumentException("query is not a graph query: " + queryString);
 	}
 
 	@Override
 	public SailBooleanQuery prepareBooleanQuery(QueryLanguage ql, String queryString, String baseURI)
 		throws MalformedQueryException
 	{
-		ParsedBooleanQuery parsedQuery = QueryParserUtil.parseBooleanQuery(ql, queryString, baseURI);
-		return new SailBooleanQuery(parsedQuery, this);
+		ParsedQuery parsedQuery = getSailRepository().parseQuery(ql, queryString, baseURI);
+		if (parsedQuery instanceof ParsedBooleanQuery) {
+			return new SailBooleanQuery((ParsedBooleanQuery)parsedQuery, this);
+		}
+		throw new IllegalArgumentException("query is not a boolean query: " + queryString);
 	}
 
 	@Override
@@ -30,7 +30,6 @@ import org.openrdf.query.TupleQueryResultHandlerException;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.impl.TupleQueryResultImpl;
 import org.openrdf.query.parser.ParsedTupleQuery;
-import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 
 /**
@@ -56,8 +55,7 @@ public class SailTupleQuery extends SailQuery implements TupleQuery {
 		try {
 			CloseableIteration<? extends BindingSet, QueryEvaluationException> bindingsIter;
 
-			SailConnection sailCon = getConnection().getSailConnection();
-			bindingsIter = sailCon.evaluate(tupleExpr, getActiveDataset(), getBindings(), getIncludeInferred());
+			bindingsIter = evaluateTupleExpr(tupleExpr, getActiveDataset());
 
 			bindingsIter = enforceMaxQueryTime(bindingsIter);
 
@@ -0,0 +1,215 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * The blank nodes of a document, by the identifiers that the document uses for
+ * them. The first occurrence of an identifier creates a new blank node with
+ * the {@link ValueFactory}, so that the blank node gets an identifier, and
+ * possibly an implementation, of the value factory's choosing. Later
+ * occurrences of the identifier are resolved to the same {@link BNode} object
+ * through an open-addressing table.
+ * <p>
+ * To keep the memory use of documents with very many blank nodes bounded, the
+ * table stops growing at a maximum size. Identifiers that are not in the table
+ * by then are mapped to blank nodes by prefixing them with a prefix that is
+ * unique to this scope, which is consistent for every occurrence of such an
+ * identifier but creates a new object each time. Identifiers that are longer
+ * than 32 characters are replaced by their MD5 hash in that case.
+ * <p>
+ * The methods of this class are synchronized, so that a scope can be shared by
+ * parsers that parse parts of the same document on different threads.
+ */
+public class BNodeScope {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default maximum number of blank nodes that are kept in the table.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1 << 18;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final ValueFactory valueFactory;
+
+	private final boolean preserveIDs;
+
+	private final int maxSize;
+
+	private String[] ids = new String[INITIAL_CAPACITY];
+
+	private BNode[] bnodes = new BNode[INITIAL_CAPACITY];
+
+	private int size;
+
+	/**
+	 * The prefix for identifiers that do not fit in the table, created when it
+	 * is first needed.
+	 */
+	private String prefix;
+
+	private MessageDigest md5;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new scope with a table of at most {@link #DEFAULT_MAX_SIZE}
+	 * blank nodes.
+	 * 
+	 * @param preserveIDs
+	 *        whether blank nodes are created with the identifier that the
+	 *        document uses for them.
+	 */
+	public BNodeScope(ValueFactory valueFactory, boolean preserveIDs) {
+		this(valueFactory, preserveIDs, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates a new scope with a table of at most <tt>maxSize</tt> blank nodes.
+	 * 
+	 * @param preserveIDs
+	 *        whether blank nodes are created with the identifier that the
+	 *        document uses for them.
+	 */
+	public BNodeScope(ValueFactory valueFactory, boolean preserveIDs, int maxSize) {
+		this.valueFactory = valueFactory;
+		this.preserveIDs = preserveIDs;
+		this.maxSize = maxSize;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the blank node for the specified identifier, creating it if the
+	 * identifier has not been seen in this scope before.
+	 */
+	public synchronized BNode getBNode(String nodeID) {
+		int mask = ids.length - 1;
+		int i = indexFor(nodeID, mask);
+		String id;
+		while ((id = ids[i]) != null) {
+			if (id.equals(nodeID)) {
+				return bnodes[i];
+			}
+			i = (i + 1) & mask;
+		}
+
+		if (size >= maxSize) {
+			return createUnscopedBNode(nodeID);
+		}
+
+		BNode result;
+		if (preserveIDs) {
+			result = valueFactory.createBNode(nodeID);
+		}
+		else {
+			result = valueFactory.createBNode();
+		}
+
+		ids[i] = nodeID;
+		bnodes[i] = result;
+		if (++size * 2 > ids.length) {
+			grow();
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the number of blank nodes in the table.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private static int indexFor(String nodeID, int mask) {
+		// identifiers often only differ in their last characters, spread the
+		// hash code before masking it
+		int hash = nodeID.hashCode() * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private void grow() {
+		String[] oldIDs = ids;
+		BNode[] oldBNodes = bnodes;
+		ids = new String[2 * oldIDs.length];
+		bnodes = new BNode[2 * oldIDs.length];
+
+		int mask = ids.length - 1;
+		for (int j = 0; j < oldIDs.length; j++) {
+			if (oldIDs[j] != null) {
+				int i = indexFor(oldIDs[j], mask);
+				while (ids[i] != null) {
+					i = (i + 1) & mask;
+				}
+				ids[i] = oldIDs[j];
+				bnodes[i] = oldBNodes[j];
+			}
+		}
+	}
+
+	private BNode createUnscopedBNode(String nodeID) {
+		if (preserveIDs) {
+			return valueFactory.createBNode(nodeID);
+		}
+
+		if (prefix == null) {
+			prefix = "genid-" + UUID.randomUUID().toString().replaceAll("-", "") + "-";
+		}
+
+		String toAppend = nodeID;
+		if (nodeID.length() > 32) {
+			// we only hash the node ID if it is longer than the hash string
+			// itself would be, to get a fixed-length generated id rather than
+			// an ever-growing one (see SES-2171)
+			try {
+				if (md5 == null) {
+					md5 = MessageDigest.getInstance("MD5");
+				}
+				toAppend = (new HexBinaryAdapter()).marshal(md5.digest(nodeID.getBytes("UTF-8")));
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+			catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		return valueFactory.createBNode(prefix + toAppend);
+	}
+}
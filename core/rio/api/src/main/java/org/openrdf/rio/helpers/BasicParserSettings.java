@@ -250,6 +250,20 @@ public class BasicParserSettings {
 	public static final RioSetting<Set<Namespace>> NAMESPACES = new RioSettingImpl<Set<Namespace>>(
 			"org.openrdf.rio.namespaces", "Collection of default namespaces to use for parsing", defaultPrefix);
 
+	/**
+	 * Boolean setting for parser to determine whether a document that is read
+	 * from a {@link java.io.FileInputStream} is read through memory-mapped
+	 * buffers instead of being copied into a buffer, by parsers that decode
+	 * UTF-8 bytes themselves. Mapped files can not be deleted on some platforms
+	 * until the buffers have been garbage collected.
+	 * <p>
+	 * Defaults to false.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Boolean> MEMORY_MAP_FILES = new RioSettingImpl<Boolean>(
+			"org.openrdf.rio.memorymapfiles", "Memory-map files", Boolean.FALSE);
+
 	static {
 		List<DatatypeHandler> defaultDatatypeHandlers = new ArrayList<DatatypeHandler>(4);
 		try {
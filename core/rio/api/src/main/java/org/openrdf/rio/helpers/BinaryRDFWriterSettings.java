@@ -0,0 +1,70 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import org.openrdf.rio.RioSetting;
+
+/**
+ * WriterSettings for the binary RDF writer features.
+ * 
+ * @since 2.8.7
+ */
+public class BinaryRDFWriterSettings {
+
+	/**
+	 * The version of the binary RDF format to write. Version 1 writes one
+	 * record per statement, with value declarations for values that occur
+	 * repeatedly. Version 2 writes blocks of statements, each with its own
+	 * value dictionary, and statements as variable-length dictionary indexes.
+	 * Version 2 documents can not be read by parsers of Sesame releases before
+	 * 2.8.7.
+	 * <p>
+	 * Defaults to 1.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Integer> FORMAT_VERSION = new RioSettingImpl<Integer>(
+			"org.openrdf.rio.binary.formatversion", "Binary RDF format version", 1);
+
+	/**
+	 * The maximum number of statements in a block of a version 2 document.
+	 * <p>
+	 * Defaults to 4096.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Integer> BLOCK_SIZE = new RioSettingImpl<Integer>(
+			"org.openrdf.rio.binary.blocksize", "Binary RDF block size", 4096);
+
+	/**
+	 * Boolean setting for writer to determine if the blocks of a version 2
+	 * document are compressed with deflate.
+	 * <p>
+	 * Defaults to false.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Boolean> COMPRESS_BLOCKS = new RioSettingImpl<Boolean>(
+			"org.openrdf.rio.binary.compressblocks", "Compress binary RDF blocks", Boolean.FALSE);
+
+	/**
+	 * Private constructor
+	 */
+	private BinaryRDFWriterSettings() {
+	}
+
+}
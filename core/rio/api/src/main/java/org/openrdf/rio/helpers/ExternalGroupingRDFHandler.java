@@ -0,0 +1,631 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * An {@link RDFHandlerWrapper} that passes all statements of a document to
+ * the underlying handlers sorted by context, then subject, then predicate,
+ * with rdf:type before other predicates, so that writers can abbreviate them.
+ * Unlike {@link BufferedGroupingRDFHandler}, which only groups the statements
+ * within each buffer, this handler groups all statements of the document,
+ * using bounded memory: each time the buffer is full, its statements are
+ * sorted and written to a temporary file, and these files are merged when the
+ * document ends. Duplicate statements are passed on only once. Namespaces and
+ * comments are passed on immediately, so they precede the statements.
+ * 
+ * @since 2.8.7
+ */
+public class ExternalGroupingRDFHandler extends RDFHandlerWrapper {
+
+	/**
+	 * Default buffer size. Buffer size is expressed in number of RDF
+	 * statements. The default is set to 100000.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 100000;
+
+	/**
+	 * The maximum number of temporary files that are read at once while
+	 * merging.
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 64;
+
+	/**
+	 * Orders statements by context, subject, predicate and object. The default
+	 * context comes first, rdf:type comes before other predicates, and values
+	 * are ordered by kind, then by their string value.
+	 */
+	public static final Comparator<Statement> GROUPING_ORDER = new Comparator<Statement>() {
+
+		public int compare(Statement st1, Statement st2) {
+			int result = compareValues(st1.getContext(), st2.getContext());
+			if (result == 0) {
+				result = compareValues(st1.getSubject(), st2.getSubject());
+			}
+			if (result == 0) {
+				result = comparePredicates(st1.getPredicate(), st2.getPredicate());
+			}
+			if (result == 0) {
+				result = compareValues(st1.getObject(), st2.getObject());
+			}
+			return result;
+		}
+	};
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int NULL = 0;
+
+	private static final int URI_VALUE = 1;
+
+	private static final int BNODE_VALUE = 2;
+
+	private static final int LANG_LITERAL_VALUE = 3;
+
+	private static final int DATATYPE_LITERAL_VALUE = 4;
+
+	private static final int PLAIN_LITERAL_VALUE = 5;
+
+	private final int bufferSize;
+
+	private final File tempDir;
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private List<Statement> buffer = new ArrayList<Statement>();
+
+	private final List<Run> runs = new ArrayList<Run>();
+
+	/**
+	 * Creates a new ExternalGroupingRDFHandler that wraps the supplied
+	 * handlers, using the default buffer size.
+	 * 
+	 * @param handlers
+	 *        one or more wrapped RDFHandlers
+	 */
+	public ExternalGroupingRDFHandler(RDFHandler... handlers) {
+		this(DEFAULT_BUFFER_SIZE, handlers);
+	}
+
+	/**
+	 * Creates a new ExternalGroupingRDFHandler that wraps the supplied
+	 * handlers, using the supplied buffer size.
+	 * 
+	 * @param bufferSize
+	 *        size of the buffer expressed in number of RDF statements
+	 * @param handlers
+	 *        one or more wrapped RDFHandlers
+	 */
+	public ExternalGroupingRDFHandler(int bufferSize, RDFHandler... handlers) {
+		this(bufferSize, null, handlers);
+	}
+
+	/**
+	 * Creates a new ExternalGroupingRDFHandler that wraps the supplied
+	 * handlers, using the supplied buffer size and directory for temporary
+	 * files.
+	 * 
+	 * @param bufferSize
+	 *        size of the buffer expressed in number of RDF statements
+	 * @param tempDir
+	 *        the directory for temporary files, or <tt>null</tt> for the
+	 *        default temporary-file directory
+	 * @param handlers
+	 *        one or more wrapped RDFHandlers
+	 */
+	public ExternalGroupingRDFHandler(int bufferSize, File tempDir, RDFHandler... handlers) {
+		super(handlers);
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+		this.bufferSize = bufferSize;
+		this.tempDir = tempDir;
+	}
+
+	@Override
+	public void startRDF()
+		throws RDFHandlerException
+	{
+		clear();
+		super.startRDF();
+	}
+
+	@Override
+	public void handleStatement(Statement st)
+		throws RDFHandlerException
+	{
+		buffer.add(st);
+
+		if (buffer.size() >= bufferSize) {
+			Collections.sort(buffer, GROUPING_ORDER);
+			runs.add(writeRun(buffer));
+			buffer = new ArrayList<Statement>();
+		}
+	}
+
+	@Override
+	public void endRDF()
+		throws RDFHandlerException
+	{
+		try {
+			Collections.sort(buffer, GROUPING_ORDER);
+
+			if (runs.isEmpty()) {
+				Statement previous = null;
+				for (Statement st : buffer) {
+					if (previous == null || GROUPING_ORDER.compare(previous, st) != 0) {
+						super.handleStatement(st);
+					}
+					previous = st;
+				}
+			}
+			else {
+				// keep at most DEFAULT_MERGE_FACTOR files open while merging
+				while (runs.size() >= DEFAULT_MERGE_FACTOR) {
+					List<Run> merged = new ArrayList<Run>(runs.subList(0, DEFAULT_MERGE_FACTOR));
+					runs.subList(0, DEFAULT_MERGE_FACTOR).clear();
+					runs.add(mergeRuns(merged));
+				}
+
+				List<StatementSource> sources = new ArrayList<StatementSource>(runs.size() + 1);
+				for (Run run : runs) {
+					sources.add(run.open());
+				}
+				sources.add(new BufferSource(buffer));
+
+				merge(sources, new RDFHandlerBase() {
+
+					@Override
+					public void handleStatement(Statement st)
+						throws RDFHandlerException
+					{
+						ExternalGroupingRDFHandler.super.handleStatement(st);
+					}
+				});
+			}
+		}
+		catch (IOException e) {
+			throw new RDFHandlerException(e);
+		}
+		finally {
+			clear();
+		}
+
+		super.endRDF();
+	}
+
+	/**
+	 * Discards the buffered statements and deletes the temporary files.
+	 */
+	private void clear() {
+		buffer = new ArrayList<Statement>();
+		for (Run run : runs) {
+			run.delete();
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Writes the supplied sorted statements to a new temporary file, without
+	 * duplicates.
+	 */
+	private Run writeRun(List<Statement> statements)
+		throws RDFHandlerException
+	{
+		final Run run = new Run();
+		try {
+			Statement previous = null;
+			for (Statement st : statements) {
+				if (previous == null || GROUPING_ORDER.compare(previous, st) != 0) {
+					run.add(st);
+				}
+				previous = st;
+			}
+			run.finish();
+			return run;
+		}
+		catch (IOException e) {
+			run.delete();
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	/**
+	 * Merges the supplied runs into a single new run and deletes them.
+	 */
+	private Run mergeRuns(List<Run> merged)
+		throws RDFHandlerException
+	{
+		final Run run = new Run();
+		try {
+			List<StatementSource> sources = new ArrayList<StatementSource>(merged.size());
+			for (Run mergedRun : merged) {
+				sources.add(mergedRun.open());
+			}
+
+			merge(sources, new RDFHandlerBase() {
+
+				@Override
+				public void handleStatement(Statement st)
+					throws RDFHandlerException
+				{
+					try {
+						run.add(st);
+					}
+					catch (IOException e) {
+						throw new RDFHandlerException(e);
+					}
+				}
+			});
+			run.finish();
+			return run;
+		}
+		catch (IOException e) {
+			run.delete();
+			throw new RDFHandlerException(e);
+		}
+		catch (RDFHandlerException e) {
+			run.delete();
+			throw e;
+		}
+		finally {
+			for (Run mergedRun : merged) {
+				mergedRun.delete();
+			}
+		}
+	}
+
+	/**
+	 * Reports the statements of the supplied sorted sources to the handler in
+	 * order, without duplicates, and closes the sources.
+	 */
+	private void merge(List<StatementSource> sources, RDFHandler handler)
+		throws IOException, RDFHandlerException
+	{
+		PriorityQueue<StatementSource> queue = new PriorityQueue<StatementSource>(Math.max(1, sources.size()),
+				new Comparator<StatementSource>() {
+
+					public int compare(StatementSource s1, StatementSource s2) {
+						return GROUPING_ORDER.compare(s1.current, s2.current);
+					}
+				});
+
+		try {
+			for (StatementSource source : sources) {
+				if (source.advance()) {
+					queue.add(source);
+				}
+			}
+
+			Statement previous = null;
+			while (!queue.isEmpty()) {
+				StatementSource source = queue.poll();
+				Statement st = source.current;
+				if (previous == null || GROUPING_ORDER.compare(previous, st) != 0) {
+					handler.handleStatement(st);
+				}
+				previous = st;
+
+				if (source.advance()) {
+					queue.add(source);
+				}
+			}
+		}
+		finally {
+			for (StatementSource source : sources) {
+				source.close();
+			}
+		}
+	}
+
+	private static int compareValues(Value v1, Value v2) {
+		if (v1 == v2) {
+			return 0;
+		}
+		if (v1 == null) {
+			return -1;
+		}
+		if (v2 == null) {
+			return 1;
+		}
+
+		int result = getKind(v1) - getKind(v2);
+		if (result == 0) {
+			result = v1.stringValue().compareTo(v2.stringValue());
+		}
+		if (result == 0 && v1 instanceof Literal) {
+			Literal lit1 = (Literal)v1;
+			Literal lit2 = (Literal)v2;
+			result = compareValues(lit1.getDatatype(), lit2.getDatatype());
+			if (result == 0) {
+				result = compareStrings(lit1.getLanguage(), lit2.getLanguage());
+			}
+		}
+		return result;
+	}
+
+	private static int comparePredicates(URI pred1, URI pred2) {
+		boolean isType1 = RDF.TYPE.equals(pred1);
+		boolean isType2 = RDF.TYPE.equals(pred2);
+		if (isType1 || isType2) {
+			return isType1 == isType2 ? 0 : isType1 ? -1 : 1;
+		}
+		return compareValues(pred1, pred2);
+	}
+
+	private static int compareStrings(String s1, String s2) {
+		if (s1 == null) {
+			return s2 == null ? 0 : -1;
+		}
+		return s2 == null ? 1 : s1.compareTo(s2);
+	}
+
+	private static int getKind(Value value) {
+		if (value instanceof URI) {
+			return 0;
+		}
+		if (value instanceof BNode) {
+			return 1;
+		}
+		return 2;
+	}
+
+	/*---------------*
+	 * Inner classes *
+	 *---------------*/
+
+	/**
+	 * A sorted sequence of statements that is read once.
+	 */
+	private static abstract class StatementSource {
+
+		Statement current;
+
+		/**
+		 * Moves to the next statement.
+		 * 
+		 * @return <tt>false</tt> if there are no more statements.
+		 */
+		abstract boolean advance()
+			throws IOException;
+
+		abstract void close();
+	}
+
+	private static class BufferSource extends StatementSource {
+
+		private final List<Statement> statements;
+
+		private int index;
+
+		BufferSource(List<Statement> statements) {
+			this.statements = statements;
+		}
+
+		@Override
+		boolean advance() {
+			if (index < statements.size()) {
+				current = statements.get(index++);
+				return true;
+			}
+			current = null;
+			return false;
+		}
+
+		@Override
+		void close() {
+		}
+	}
+
+	/**
+	 * A temporary file with sorted statements.
+	 */
+	private class Run {
+
+		private final File file;
+
+		private DataOutputStream out;
+
+		Run()
+			throws RDFHandlerException
+		{
+			try {
+				file = File.createTempFile("rio-grouping", null, tempDir);
+			}
+			catch (IOException e) {
+				throw new RDFHandlerException(e);
+			}
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			}
+			catch (IOException e) {
+				file.delete();
+				throw new RDFHandlerException(e);
+			}
+		}
+
+		void add(Statement st)
+			throws IOException
+		{
+			out.writeBoolean(true);
+			writeValue(st.getSubject());
+			writeValue(st.getPredicate());
+			writeValue(st.getObject());
+			writeValue(st.getContext());
+		}
+
+		void finish()
+			throws IOException
+		{
+			out.writeBoolean(false);
+			out.close();
+			out = null;
+		}
+
+		StatementSource open()
+			throws IOException
+		{
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			return new StatementSource() {
+
+				@Override
+				boolean advance()
+					throws IOException
+				{
+					if (!in.readBoolean()) {
+						current = null;
+						return false;
+					}
+					Resource subj = (Resource)readValue(in);
+					URI pred = (URI)readValue(in);
+					Value obj = readValue(in);
+					Resource context = (Resource)readValue(in);
+					if (context == null) {
+						current = vf.createStatement(subj, pred, obj);
+					}
+					else {
+						current = vf.createStatement(subj, pred, obj, context);
+					}
+					return true;
+				}
+
+				@Override
+				void close() {
+					try {
+						in.close();
+					}
+					catch (IOException e) {
+						// ignore, the file is deleted anyway
+					}
+				}
+			};
+		}
+
+		void delete() {
+			try {
+				if (out != null) {
+					out.close();
+				}
+			}
+			catch (IOException e) {
+				// ignore, the file is deleted anyway
+			}
+			finally {
+				out = null;
+				file.delete();
+			}
+		}
+
+		private void writeValue(Value value)
+			throws IOException
+		{
+			if (value == null) {
+				out.writeByte(NULL);
+			}
+			else if (value instanceof URI) {
+				out.writeByte(URI_VALUE);
+				writeString(value.stringValue());
+			}
+			else if (value instanceof BNode) {
+				out.writeByte(BNODE_VALUE);
+				writeString(((BNode)value).getID());
+			}
+			else {
+				Literal literal = (Literal)value;
+				if (literal.getLanguage() != null) {
+					out.writeByte(LANG_LITERAL_VALUE);
+					writeString(literal.getLabel());
+					writeString(literal.getLanguage());
+				}
+				else if (literal.getDatatype() != null) {
+					out.writeByte(DATATYPE_LITERAL_VALUE);
+					writeString(literal.getLabel());
+					writeString(literal.getDatatype().stringValue());
+				}
+				else {
+					out.writeByte(PLAIN_LITERAL_VALUE);
+					writeString(literal.getLabel());
+				}
+			}
+		}
+
+		private void writeString(String s)
+			throws IOException
+		{
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private Value readValue(DataInputStream in)
+			throws IOException
+		{
+			int type = in.readByte();
+			switch (type) {
+				case NULL:
+					return null;
+				case URI_VALUE:
+					return vf.createURI(readString(in));
+				case BNODE_VALUE:
+					return vf.createBNode(readString(in));
+				case LANG_LITERAL_VALUE:
+					return vf.createLiteral(readString(in), readString(in));
+				case DATATYPE_LITERAL_VALUE:
+					return vf.createLiteral(readString(in), vf.createURI(readString(in)));
+				case PLAIN_LITERAL_VALUE:
+					return vf.createLiteral(readString(in));
+				default:
+					throw new IOException("Invalid value type in temporary file: " + type);
+			}
+		}
+
+		private String readString(DataInputStream in)
+			throws IOException
+		{
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, UTF8);
+		}
+	}
+}
@@ -104,6 +104,29 @@ public class JSONLDSettings {
 	public static final RioSetting<JSONLDMode> JSONLD_MODE = new RioSettingImpl<JSONLDMode>(
 			"org.openrdf.rio.jsonld.mode", "JSONLD Mode", JSONLDMode.EXPAND);
 
+	/**
+	 * If set to true, the writer writes statements while they are handled,
+	 * instead of collecting all of them before the document is written. Only
+	 * the statements of the current subject are kept in memory. Consecutive
+	 * statements about the same subject are written as one node object, so
+	 * the output is most compact if the statements are ordered by context and
+	 * subject. Lists are not converted to <tt>@list</tt> objects. This is
+	 * only supported for {@link JSONLDMode#EXPAND}; {@link JSONLDMode#FLATTEN}
+	 * and {@link JSONLDMode#COMPACT} documents are always collected first.
+	 * <p>
+	 * If set to true, the parser reports the statements of each node object of
+	 * a top-level array or <tt>@graph</tt> array as soon as it has been read,
+	 * instead of processing the whole document first. The context of the
+	 * document must precede its <tt>@graph</tt>, and remote contexts and
+	 * reverse properties are reported as fatal errors.
+	 * <p>
+	 * Defaults to false.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Boolean> STREAMING = new RioSettingImpl<Boolean>(
+			"org.openrdf.rio.jsonld.streaming", "Stream JSONLD output", Boolean.FALSE);
+
 	/**
 	 * Private default constructor.
 	 */
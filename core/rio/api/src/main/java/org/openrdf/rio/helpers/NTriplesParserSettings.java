@@ -37,6 +37,49 @@ public class NTriplesParserSettings {
 	public static final RioSetting<Boolean> FAIL_ON_NTRIPLES_INVALID_LINES = new RioSettingImpl<Boolean>(
 			"org.openrdf.rio.failonntriplesinvalidlines", "Fail on N-Triples invalid lines", Boolean.TRUE);
 
+	/**
+	 * Integer setting for the number of threads that parse N-Triples and
+	 * N-Quads documents. If larger than 1, the document is split into chunks
+	 * of whole lines that are parsed in parallel, which requires the parser's
+	 * {@link org.openrdf.model.ValueFactory} to be thread-safe.
+	 * <p>
+	 * Defaults to 1, which parses the document on the calling thread.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Integer> PARALLEL_PARSER_THREADS = new RioSettingImpl<Integer>(
+			"org.openrdf.rio.ntriplesparallelparserthreads", "Number of N-Triples parser threads", 1);
+
+	/**
+	 * Integer setting for the minimum number of characters of a chunk that is
+	 * parsed by one of the {@link #PARALLEL_PARSER_THREADS parser threads}.
+	 * Chunks end at a line break, and grow beyond this size if a line does not
+	 * fit.
+	 * <p>
+	 * Defaults to 1048576 characters.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Integer> PARALLEL_PARSER_CHUNK_SIZE = new RioSettingImpl<Integer>(
+			"org.openrdf.rio.ntriplesparallelparserchunksize", "Size of N-Triples parser chunks", 1048576);
+
+	/**
+	 * Boolean setting for parser to determine whether statements that are
+	 * parsed by {@link #PARALLEL_PARSER_THREADS parser threads} are reported in
+	 * the order of the document. If false, the statements of a chunk are
+	 * reported as soon as the chunk has been parsed, so that a chunk that
+	 * takes long to parse does not hold back the chunks after it. The statements
+	 * of a chunk are always reported together and in order, and the handler
+	 * is always called by the thread that called the parser.
+	 * <p>
+	 * Defaults to true.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Boolean> PARALLEL_PARSER_PRESERVE_ORDER = new RioSettingImpl<Boolean>(
+			"org.openrdf.rio.ntriplesparallelparserpreserveorder", "Preserve N-Triples statement order",
+			Boolean.TRUE);
+
 	/**
 	 * Private constructor
 	 */
@@ -16,18 +16,12 @@
  */
 package org.openrdf.rio.helpers;
 
-import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
-
-import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 
 import info.aduna.net.ParsedURI;
 
@@ -56,8 +50,6 @@ import org.openrdf.rio.RioSetting;
  */
 public abstract class RDFParserBase implements RDFParser {
 
-	private final MessageDigest md5;
-
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -89,11 +81,10 @@ public abstract class RDFParserBase implements RDFParser {
 	private ParsedURI baseURI;
 
 	/**
-	 * Enables a consistent global mapping of blank node identifiers without
-	 * using a map, but concatenating this as a prefix for the blank node
-	 * identifiers supplied by the parser.
+	 * The blank nodes of the document that is being parsed, created when the
+	 * first blank node identifier is parsed.
 	 */
-	private String nextBNodePrefix;
+	private BNodeScope bNodeScope;
 
 	/**
 	 * Mapping from namespace prefixes to namespace names.
@@ -125,15 +116,7 @@ public abstract class RDFParserBase implements RDFParser {
 	 *        A ValueFactory.
 	 */
 	public RDFParserBase(ValueFactory valueFactory) {
-		try {
-			md5 = MessageDigest.getInstance("MD5");
-		}
-		catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
-
 		namespaceTable = new HashMap<String, String>(16);
-		nextBNodePrefix = createUniqueBNodePrefix();
 		setValueFactory(valueFactory);
 		setParserConfig(new ParserConfig());
 	}
@@ -314,6 +297,27 @@ public abstract class RDFParserBase implements RDFParser {
 		this.baseURI = baseURI;
 	}
 
+	/**
+	 * Gets the blank nodes of the document that is being parsed, creating the
+	 * scope if necessary.
+	 */
+	protected BNodeScope getBNodeScope() {
+		if (bNodeScope == null) {
+			bNodeScope = new BNodeScope(valueFactory, preserveBNodeIDs());
+		}
+		return bNodeScope;
+	}
+
+	/**
+	 * Sets the scope that blank node identifiers are resolved in, until the
+	 * parser is {@link #clear() cleared}. Parsers that parse parts of the same
+	 * document share a scope, so that equal blank node identifiers in
+	 * different parts refer to the same blank node.
+	 */
+	protected void setBNodeScope(BNodeScope bNodeScope) {
+		this.bNodeScope = bNodeScope;
+	}
+
 	/**
 	 * Associates the specified prefix to the specified namespace.
 	 */
@@ -349,7 +353,7 @@ public abstract class RDFParserBase implements RDFParser {
 	 */
 	protected void clear() {
 		baseURI = null;
-		nextBNodePrefix = createUniqueBNodePrefix();
+		bNodeScope = null;
 		namespaceTable.clear();
 
 		initializeNamespaceTableFromConfiguration();
@@ -437,38 +441,9 @@ public abstract class RDFParserBase implements RDFParser {
 	protected BNode createBNode(String nodeID)
 		throws RDFParseException
 	{
-		// If we are preserving blank node ids then we do not prefix them to make
-		// them globally unique
-		if (preserveBNodeIDs()) {
-			return valueFactory.createBNode(nodeID);
-		}
-		else {
-			// Prefix the node ID with a unique UUID prefix to reduce
-			// cross-document clashes
-			// This is consistent as long as nextBNodePrefix is not modified
-			// between parser runs
-
-			String toAppend = nodeID;
-			if (nodeID.length() > 32) {
-				// we only hash the node ID if it is longer than the hash string
-				// itself would be.
-				byte[] chars = null;
-				try {
-					chars = nodeID.getBytes("UTF-8");
-				}
-				catch (UnsupportedEncodingException e) {
-					throw new RuntimeException(e);
-				}
-
-				// we use an MD5 hash rather than the node ID itself to get a
-				// fixed-length generated id, rather than
-				// an ever-growing one (see SES-2171)
-				toAppend = (new HexBinaryAdapter()).marshal(md5.digest(chars));
-			}
-
-			return valueFactory.createBNode(nextBNodePrefix + toAppend);
-
-		}
+		// Blank node identifiers are scoped to the document, equal identifiers
+		// resolve to the same blank node without creating a new one
+		return getBNodeScope().getBNode(nodeID);
 	}
 
 	/**
@@ -718,8 +693,4 @@ public abstract class RDFParserBase implements RDFParser {
 		RDFParserHelper.reportFatalError(e, lineNo, columnNo, getParseErrorListener());
 	}
 
-	private final String createUniqueBNodePrefix() {
-		return "genid-" + UUID.randomUUID().toString().replaceAll("-", "") + "-";
-	}
-
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import org.openrdf.rio.RioSetting;
+
+/**
+ * WriterSettings for the Turtle and TriG writer features.
+ * 
+ * @since 2.8.7
+ */
+public class TurtleWriterSettings {
+
+	/**
+	 * Boolean setting for writer to determine if all statements of a document
+	 * are grouped by context, subject and predicate before they are written, so
+	 * that they can be abbreviated regardless of the order in which they are
+	 * handled. The statements are sorted with an
+	 * {@link ExternalGroupingRDFHandler}, which uses temporary files for
+	 * documents that exceed the {@link #GROUPING_BUFFER_SIZE}, and are written
+	 * when the document ends. Duplicate statements are written once, and
+	 * comments are written before the statements.
+	 * <p>
+	 * Defaults to false.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Boolean> GROUP_STATEMENTS = new RioSettingImpl<Boolean>(
+			"org.openrdf.rio.turtle.groupstatements", "Group statements", Boolean.FALSE);
+
+	/**
+	 * The number of statements that are sorted in memory before they are
+	 * written to a temporary file when {@link #GROUP_STATEMENTS} is enabled.
+	 * <p>
+	 * Defaults to {@link ExternalGroupingRDFHandler#DEFAULT_BUFFER_SIZE}.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Integer> GROUPING_BUFFER_SIZE = new RioSettingImpl<Integer>(
+			"org.openrdf.rio.turtle.groupingbuffersize", "Grouping buffer size",
+			ExternalGroupingRDFHandler.DEFAULT_BUFFER_SIZE);
+
+	/**
+	 * Private constructor
+	 */
+	private TurtleWriterSettings() {
+	}
+
+}
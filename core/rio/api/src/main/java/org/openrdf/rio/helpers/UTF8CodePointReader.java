@@ -0,0 +1,420 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+/**
+ * A reader that decodes UTF-8 encoded text directly from a byte buffer, for
+ * parsers that read their input one code point at a time. Compared to an
+ * {@link java.io.InputStreamReader}, wrapped in a
+ * {@link java.io.PushbackReader}, this reader does not synchronize on every
+ * character, decodes ASCII without a charset decoder, can push back any
+ * number of code points and can append runs of characters to a
+ * {@link StringBuilder} at once with
+ * {@link #appendUntil(StringBuilder, int, int, int)}. Files can be read through
+ * a memory-mapped buffer instead of being copied into one.
+ * <p>
+ * A leading byte order mark is skipped. Malformed byte sequences are replaced
+ * by U+FFFD, as an InputStreamReader does. This reader is not thread-safe.
+ */
+public class UTF8CodePointReader extends Reader {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The size of the buffer that bytes from an input stream are read into.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The maximum number of bytes of a file that are mapped at once.
+	 */
+	private static final int MAX_MAPPED_REGION = 256 * 1024 * 1024;
+
+	private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final InputStream in;
+
+	private final FileChannel channel;
+
+	/**
+	 * The position in the file of the first byte of a mapped buffer.
+	 */
+	private long channelPosition;
+
+	private ByteBuffer buffer;
+
+	private int pos;
+
+	private int limit;
+
+	private boolean endOfInput;
+
+	private boolean started;
+
+	/**
+	 * Code points that have been pushed back, the last one is read first.
+	 */
+	private int[] pushback = new int[8];
+
+	private int pushbackCount;
+
+	/**
+	 * The second half of a surrogate pair that has not been returned by
+	 * {@link #read(char[], int, int)} yet, or <tt>0</tt>.
+	 */
+	private char pendingLowSurrogate;
+
+	private char[] chars = new char[256];
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new reader that reads bytes from the supplied input stream.
+	 */
+	public UTF8CodePointReader(InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a new reader that reads bytes from the supplied input stream into
+	 * a buffer of the specified size.
+	 */
+	public UTF8CodePointReader(InputStream in, int bufferSize) {
+		this.in = in;
+		this.channel = null;
+		this.buffer = ByteBuffer.allocate(Math.max(4, bufferSize));
+	}
+
+	/**
+	 * Creates a new reader that reads the supplied file channel, from its
+	 * current position up to its end, through memory-mapped buffers. The
+	 * position of the channel is set to its end when the end has been reached.
+	 */
+	public UTF8CodePointReader(FileChannel channel)
+		throws IOException
+	{
+		this.in = null;
+		this.channel = channel;
+		this.channelPosition = channel.position();
+		this.buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Creates a reader for the supplied input stream.
+	 * 
+	 * @param memoryMap
+	 *        whether to read the file through memory-mapped buffers if the
+	 *        stream is a {@link FileInputStream}.
+	 */
+	public static UTF8CodePointReader open(InputStream in, boolean memoryMap)
+		throws IOException
+	{
+		if (memoryMap && in instanceof FileInputStream) {
+			return new UTF8CodePointReader(((FileInputStream)in).getChannel());
+		}
+		return new UTF8CodePointReader(in);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Reads the next Unicode code point.
+	 * 
+	 * @return the next Unicode code point, or -1 if the end of the input has
+	 *         been reached.
+	 */
+	public int readCodePoint()
+		throws IOException
+	{
+		if (pushbackCount > 0) {
+			return pushback[--pushbackCount];
+		}
+		if (pendingLowSurrogate != 0) {
+			char c = pendingLowSurrogate;
+			pendingLowSurrogate = 0;
+			return c;
+		}
+		if (pos < limit) {
+			byte b = buffer.get(pos);
+			if (b >= 0) {
+				pos++;
+				return b;
+			}
+		}
+		return decodeCodePoint();
+	}
+
+	/**
+	 * Pushes back a code point, which is returned by the next call to
+	 * {@link #readCodePoint()}. Pushing back <tt>-1</tt> has no effect.
+	 */
+	public void unread(int codePoint) {
+		if (codePoint != -1) {
+			if (pushbackCount == pushback.length) {
+				pushback = Arrays.copyOf(pushback, 2 * pushback.length);
+			}
+			pushback[pushbackCount++] = codePoint;
+		}
+	}
+
+	/**
+	 * Reads code points and appends them to the supplied builder, up to the
+	 * first code point that is one of the supplied delimiters. Runs of ASCII
+	 * characters are copied from the byte buffer at once.
+	 * 
+	 * @param delimiter1
+	 *        an ASCII character that ends the run.
+	 * @param delimiter2
+	 *        an ASCII character that ends the run.
+	 * @param delimiter3
+	 *        an ASCII character that ends the run.
+	 * @return the delimiter, which is not appended, or -1 if the end of the
+	 *         input has been reached.
+	 */
+	public int appendUntil(StringBuilder sb, int delimiter1, int delimiter2, int delimiter3)
+		throws IOException
+	{
+		while (true) {
+			if (pushbackCount == 0 && pendingLowSurrogate == 0) {
+				int start = pos;
+				int end = start;
+				while (end < limit) {
+					byte b = buffer.get(end);
+					if (b < 0 || b == delimiter1 || b == delimiter2 || b == delimiter3) {
+						break;
+					}
+					end++;
+				}
+				if (end > start) {
+					appendASCII(sb, start, end);
+					pos = end;
+				}
+			}
+
+			int c = readCodePoint();
+			if (c == -1 || c == delimiter1 || c == delimiter2 || c == delimiter3) {
+				return c;
+			}
+			sb.appendCodePoint(c);
+		}
+	}
+
+	private void appendASCII(StringBuilder sb, int start, int end) {
+		int length = end - start;
+		if (chars.length < length) {
+			chars = new char[Math.max(length, 2 * chars.length)];
+		}
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char)buffer.get(start + i);
+		}
+		sb.append(chars, 0, length);
+	}
+
+	/**
+	 * Decodes the code point at the current position, which is not a single
+	 * ASCII byte in the buffer.
+	 */
+	private int decodeCodePoint()
+		throws IOException
+	{
+		if (!ensureAvailable(1)) {
+			return -1;
+		}
+
+		int b0 = buffer.get(pos) & 0xFF;
+		if (b0 < 0x80) {
+			pos++;
+			return b0;
+		}
+
+		int length;
+		int codePoint;
+		if (b0 >= 0xC2 && b0 <= 0xDF) {
+			length = 2;
+			codePoint = b0 & 0x1F;
+		}
+		else if (b0 >= 0xE0 && b0 <= 0xEF) {
+			length = 3;
+			codePoint = b0 & 0x0F;
+		}
+		else if (b0 >= 0xF0 && b0 <= 0xF4) {
+			length = 4;
+			codePoint = b0 & 0x07;
+		}
+		else {
+			pos++;
+			return REPLACEMENT_CHARACTER;
+		}
+
+		ensureAvailable(length);
+		pos++;
+		for (int i = 1; i < length; i++) {
+			if (pos == limit) {
+				// truncated at the end of the input
+				return REPLACEMENT_CHARACTER;
+			}
+			int b = buffer.get(pos);
+			if ((b & 0xC0) != 0x80) {
+				// not a continuation byte, decode it as the start of the next
+				// code point
+				return REPLACEMENT_CHARACTER;
+			}
+			codePoint = (codePoint << 6) | (b & 0x3F);
+			pos++;
+		}
+
+		if (length == 3 && (codePoint < 0x800 || codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+			return REPLACEMENT_CHARACTER;
+		}
+		if (length == 4 && (codePoint < 0x10000 || codePoint > 0x10FFFF)) {
+			return REPLACEMENT_CHARACTER;
+		}
+		return codePoint;
+	}
+
+	/**
+	 * Makes sure that the buffer contains the specified number of bytes after
+	 * the current position, unless the end of the input is reached first.
+	 * 
+	 * @return <tt>true</tt> if the buffer contains at least one byte after the
+	 *         current position.
+	 */
+	private boolean ensureAvailable(int count)
+		throws IOException
+	{
+		if (!started) {
+			started = true;
+			while (limit - pos < 3 && !endOfInput) {
+				fill();
+			}
+			skipByteOrderMark();
+		}
+		while (limit - pos < count && !endOfInput) {
+			fill();
+		}
+		return pos < limit;
+	}
+
+	private void fill()
+		throws IOException
+	{
+		if (channel != null) {
+			long start = channelPosition + pos;
+			long size = channel.size();
+			if (start >= size || limit - pos == size - start) {
+				endOfInput = true;
+				channel.position(size);
+				return;
+			}
+			buffer = channel.map(MapMode.READ_ONLY, start, Math.min(MAX_MAPPED_REGION, size - start));
+			channelPosition = start;
+			pos = 0;
+			limit = buffer.limit();
+		}
+		else {
+			byte[] bytes = buffer.array();
+			int remaining = limit - pos;
+			System.arraycopy(bytes, pos, bytes, 0, remaining);
+			pos = 0;
+			limit = remaining;
+
+			int read = in.read(bytes, limit, bytes.length - limit);
+			if (read == -1) {
+				endOfInput = true;
+			}
+			else {
+				limit += read;
+			}
+		}
+	}
+
+	private void skipByteOrderMark() {
+		if (limit - pos >= 3 && (buffer.get(pos) & 0xFF) == 0xEF && (buffer.get(pos + 1) & 0xFF) == 0xBB
+				&& (buffer.get(pos + 2) & 0xFF) == 0xBF)
+		{
+			pos += 3;
+		}
+	}
+
+	@Override
+	public int read()
+		throws IOException
+	{
+		int codePoint = readCodePoint();
+		if (Character.isSupplementaryCodePoint(codePoint)) {
+			// Character.highSurrogate and lowSurrogate require Java 7
+			int offset = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+			pendingLowSurrogate = (char)(Character.MIN_LOW_SURROGATE + (offset & 0x3FF));
+			return (char)(Character.MIN_HIGH_SURROGATE + (offset >>> 10));
+		}
+		return codePoint;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len)
+		throws IOException
+	{
+		if (len == 0) {
+			return 0;
+		}
+
+		int count = 0;
+		while (count < len) {
+			int c = read();
+			if (c == -1) {
+				break;
+			}
+			cbuf[off + count++] = (char)c;
+			if (pos == limit && pushbackCount == 0 && pendingLowSurrogate == 0 && count > 0) {
+				// do not block for more input if some has been read
+				break;
+			}
+		}
+		return count == 0 ? -1 : count;
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		if (channel != null) {
+			channel.close();
+		}
+		else {
+			in.close();
+		}
+	}
+}
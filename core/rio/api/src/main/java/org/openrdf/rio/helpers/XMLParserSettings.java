@@ -154,6 +154,23 @@ public final class XMLParserSettings {
 	public static final RioSetting<Boolean> PARSE_STANDALONE_DOCUMENTS = new RioSettingImpl<Boolean>(
 			"org.openrdf.rio.parsestandalonedocuments", "Parse standalone documents", true);
 
+	/**
+	 * Parser setting to determine whether the RDF/XML parser reads documents
+	 * with a StAX {@link javax.xml.stream.XMLStreamReader} instead of a SAX
+	 * {@link XMLReader}. The stream reader is created by
+	 * {@link javax.xml.stream.XMLInputFactory#newInstance()}, so a faster StAX
+	 * implementation, such as Aalto or Woodstox, is used if it is on the
+	 * classpath. {@link #CUSTOM_XML_READER} takes precedence over this setting,
+	 * and {@link #SECURE_PROCESSING} disables external entities of the stream
+	 * reader.
+	 * <p>
+	 * Defaults to false.
+	 * 
+	 * @since 2.8.7
+	 */
+	public static final RioSetting<Boolean> USE_XML_STREAM_READER = new RioSettingImpl<Boolean>(
+			"org.openrdf.rio.usexmlstreamreader", "Use XML stream reader", false);
+
 	/**
 	 * Private constructor
 	 */
@@ -0,0 +1,79 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+public class BNodeScopeTest {
+
+	@Test
+	public void testSameIdentifierSameBNode() {
+		BNodeScope scope = new BNodeScope(ValueFactoryImpl.getInstance(), false);
+		BNode a = scope.getBNode("a");
+		BNode b = scope.getBNode("b");
+
+		assertFalse(a.equals(b));
+		assertSame(a, scope.getBNode(new String("a")));
+		assertSame(b, scope.getBNode("b"));
+		assertEquals(2, scope.size());
+	}
+
+	@Test
+	public void testManyIdentifiers() {
+		BNodeScope scope = new BNodeScope(ValueFactoryImpl.getInstance(), false);
+		BNode[] bnodes = new BNode[10000];
+		for (int i = 0; i < bnodes.length; i++) {
+			bnodes[i] = scope.getBNode("b" + i);
+		}
+		for (int i = 0; i < bnodes.length; i++) {
+			assertSame(bnodes[i], scope.getBNode("b" + i));
+		}
+		assertEquals(bnodes.length, scope.size());
+	}
+
+	@Test
+	public void testPreserveIDs() {
+		BNodeScope scope = new BNodeScope(ValueFactoryImpl.getInstance(), true);
+		assertEquals("a", scope.getBNode("a").getID());
+	}
+
+	@Test
+	public void testIdentifiersBeyondMaxSize() {
+		BNodeScope scope = new BNodeScope(ValueFactoryImpl.getInstance(), false, 2);
+		BNode a = scope.getBNode("a");
+		scope.getBNode("b");
+		BNode c = scope.getBNode("c");
+		String longID = "0123456789012345678901234567890123456789";
+		BNode d = scope.getBNode(longID);
+
+		assertEquals(2, scope.size());
+		assertSame(a, scope.getBNode("a"));
+		assertEquals(c, scope.getBNode("c"));
+		assertTrue(c.getID().endsWith("-c"));
+		assertEquals(d, scope.getBNode(longID));
+		assertEquals(c.getID().length() - 1 + 32, d.getID().length());
+		assertFalse(c.equals(new BNodeScope(ValueFactoryImpl.getInstance(), false, 2).getBNode("c")));
+	}
+}
@@ -0,0 +1,128 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Unit tests for {@link ExternalGroupingRDFHandler}.
+ */
+public class ExternalGroupingRDFHandlerTest {
+
+	@Rule
+	public TemporaryFolder tempDir = new TemporaryFolder();
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void testGroupingInMemory()
+		throws Exception
+	{
+		testGrouping(10000);
+	}
+
+	@Test
+	public void testGroupingWithTemporaryFiles()
+		throws Exception
+	{
+		testGrouping(7);
+	}
+
+	@Test
+	public void testManyTemporaryFiles()
+		throws Exception
+	{
+		// more runs than are merged at once
+		testGrouping(2);
+	}
+
+	private void testGrouping(int bufferSize)
+		throws Exception
+	{
+		List<Statement> statements = createStatements();
+		List<Statement> shuffled = new ArrayList<Statement>(statements);
+		Collections.shuffle(shuffled, new Random(42));
+		// duplicates are reported once
+		shuffled.addAll(statements.subList(0, 10));
+
+		List<Statement> result = new ArrayList<Statement>();
+		ExternalGroupingRDFHandler handler = new ExternalGroupingRDFHandler(bufferSize, tempDir.getRoot(),
+				new StatementCollector(result));
+		handler.startRDF();
+		for (Statement st : shuffled) {
+			handler.handleStatement(st);
+		}
+		handler.endRDF();
+
+		assertEquals(statements.size(), result.size());
+		assertEquals(statements, result);
+		for (int i = 1; i < result.size(); i++) {
+			assertTrue(ExternalGroupingRDFHandler.GROUPING_ORDER.compare(result.get(i - 1), result.get(i)) < 0);
+		}
+
+		// rdf:type is written first for each subject
+		Statement first = result.get(0);
+		assertEquals(null, first.getContext());
+		assertEquals(RDF.TYPE, first.getPredicate());
+
+		assertEquals(0, tempDir.getRoot().listFiles().length);
+	}
+
+	/**
+	 * Creates statements in grouping order.
+	 */
+	private List<Statement> createStatements() {
+		List<Statement> statements = new ArrayList<Statement>();
+		URI p1 = vf.createURI("http://example.org/p1");
+		URI p2 = vf.createURI("http://example.org/p2");
+		Resource[] contexts = { null, vf.createURI("http://example.org/c1"), vf.createBNode("c2") };
+		for (Resource context : contexts) {
+			for (int s = 0; s < 10; s++) {
+				Resource subj = vf.createURI("http://example.org/s" + s);
+				statements.add(vf.createStatement(subj, RDF.TYPE, vf.createURI("http://example.org/Type"), context));
+				statements.add(vf.createStatement(subj, p1, vf.createURI("http://example.org/o"), context));
+				statements.add(vf.createStatement(subj, p1, vf.createBNode("b" + s), context));
+				statements.add(vf.createStatement(subj, p1, vf.createLiteral("label"), context));
+				statements.add(vf.createStatement(subj, p1, vf.createLiteral("label", "en"), context));
+				statements.add(vf.createStatement(subj, p1, vf.createLiteral("label", XMLSchema.TOKEN), context));
+				statements.add(vf.createStatement(subj, p2, vf.createLiteral(s), context));
+			}
+			Resource bnode = vf.createBNode("s");
+			statements.add(vf.createStatement(bnode, p2, vf.createLiteral("été\n"), context));
+		}
+		Collections.sort(statements, ExternalGroupingRDFHandler.GROUPING_ORDER);
+		return statements;
+	}
+}
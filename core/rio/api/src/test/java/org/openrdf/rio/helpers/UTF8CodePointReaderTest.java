@@ -0,0 +1,146 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+public class UTF8CodePointReaderTest {
+
+	private static final String TEXT = "ab\u00e9c \u20ac\"d\uD83D\uDE00e>f";
+
+	@Test
+	public void testReadCodePoints()
+		throws Exception
+	{
+		// a small buffer makes multi-byte sequences cross buffer boundaries
+		UTF8CodePointReader reader = new UTF8CodePointReader(new ByteArrayInputStream(
+				TEXT.getBytes("UTF-8")), 5);
+		assertEquals(TEXT, readCodePoints(reader));
+	}
+
+	@Test
+	public void testSkipByteOrderMark()
+		throws Exception
+	{
+		byte[] bytes = ("\ufeff" + TEXT).getBytes("UTF-8");
+		assertEquals(TEXT, readCodePoints(new UTF8CodePointReader(new ByteArrayInputStream(bytes))));
+	}
+
+	@Test
+	public void testMalformedInput()
+		throws Exception
+	{
+		byte[] bytes = new byte[] { 'a', (byte)0xC3, 'b', (byte)0xFF, 'c', (byte)0xE2, (byte)0x82 };
+		assertEquals("a\ufffdb\ufffdc\ufffd",
+				readCodePoints(new UTF8CodePointReader(new ByteArrayInputStream(bytes))));
+	}
+
+	@Test
+	public void testUnread()
+		throws Exception
+	{
+		UTF8CodePointReader reader = new UTF8CodePointReader(new ByteArrayInputStream(
+				TEXT.getBytes("UTF-8")));
+		assertEquals('a', reader.readCodePoint());
+		assertEquals('b', reader.readCodePoint());
+		reader.unread('b');
+		reader.unread('a');
+		reader.unread(-1);
+		assertEquals(TEXT, readCodePoints(reader));
+	}
+
+	@Test
+	public void testAppendUntil()
+		throws Exception
+	{
+		UTF8CodePointReader reader = new UTF8CodePointReader(new ByteArrayInputStream(
+				TEXT.getBytes("UTF-8")), 4);
+		StringBuilder sb = new StringBuilder();
+		assertEquals('"', reader.appendUntil(sb, '"', '>', '>'));
+		assertEquals("ab\u00e9c \u20ac", sb.toString());
+
+		sb.setLength(0);
+		assertEquals('>', reader.appendUntil(sb, '"', '>', '>'));
+		assertEquals("d\uD83D\uDE00e", sb.toString());
+
+		sb.setLength(0);
+		assertEquals(-1, reader.appendUntil(sb, '"', '>', '>'));
+		assertEquals("f", sb.toString());
+	}
+
+	@Test
+	public void testReadChars()
+		throws Exception
+	{
+		UTF8CodePointReader reader = new UTF8CodePointReader(new ByteArrayInputStream(
+				TEXT.getBytes("UTF-8")), 3);
+		StringBuilder sb = new StringBuilder();
+		char[] chars = new char[4];
+		int read;
+		while ((read = reader.read(chars, 0, chars.length)) != -1) {
+			sb.append(chars, 0, read);
+		}
+		assertEquals(TEXT, sb.toString());
+	}
+
+	@Test
+	public void testMemoryMappedFile()
+		throws Exception
+	{
+		File file = File.createTempFile("utf8codepointreader", ".txt");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(TEXT.getBytes("UTF-8"));
+			}
+			finally {
+				out.close();
+			}
+
+			UTF8CodePointReader reader = UTF8CodePointReader.open(new FileInputStream(file), true);
+			try {
+				assertEquals(TEXT, readCodePoints(reader));
+			}
+			finally {
+				reader.close();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	private String readCodePoints(UTF8CodePointReader reader)
+		throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = reader.readCodePoint()) != -1) {
+			sb.appendCodePoint(c);
+		}
+		return sb.toString();
+	}
+}
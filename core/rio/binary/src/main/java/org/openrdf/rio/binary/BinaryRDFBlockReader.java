@@ -0,0 +1,174 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.binary;
+
+import static org.openrdf.rio.binary.BinaryRDFConstants.BLOCK;
+import static org.openrdf.rio.binary.BinaryRDFConstants.END_OF_DATA;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.ParserConfig;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.BinaryRDFWriterSettings;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Reads a binary RDF document as a sequence of blocks of statements, for
+ * example to add each block to a repository in one operation. Each block of a
+ * version 2 document is returned as one list of statements. The statements of
+ * a version 1 document, which has no blocks, are returned in lists of at most
+ * {@link BinaryRDFWriterSettings#BLOCK_SIZE} statements.
+ * <p>
+ * Blank node identifiers are scoped to the document, so that blank nodes that
+ * occur in several blocks are the same in each of them.
+ */
+public class BinaryRDFBlockReader implements Closeable {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final InputStream in;
+
+	private final BinaryRDFParser parser;
+
+	private final int maxStatements;
+
+	private final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+
+	private List<Statement> statements;
+
+	private boolean started = false;
+
+	private boolean ended = false;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new block reader that creates values with the default value
+	 * factory.
+	 */
+	public BinaryRDFBlockReader(InputStream in) {
+		this(in, ValueFactoryImpl.getInstance());
+	}
+
+	/**
+	 * Creates a new block reader that creates values with the specified value
+	 * factory.
+	 */
+	public BinaryRDFBlockReader(InputStream in, ValueFactory valueFactory) {
+		this(in, valueFactory, new ParserConfig());
+	}
+
+	/**
+	 * Creates a new block reader that creates values with the specified value
+	 * factory and parses them according to the specified parser config.
+	 */
+	public BinaryRDFBlockReader(InputStream in, ValueFactory valueFactory, ParserConfig config) {
+		this.in = in;
+		this.maxStatements = BinaryRDFWriterSettings.BLOCK_SIZE.getDefaultValue();
+
+		parser = new BinaryRDFParser(valueFactory);
+		parser.setParserConfig(config);
+		parser.setRDFHandler(new RDFHandlerBase() {
+
+			@Override
+			public void handleNamespace(String prefix, String uri) {
+				namespaces.put(prefix, uri);
+			}
+
+			@Override
+			public void handleStatement(Statement st) {
+				statements.add(st);
+			}
+		});
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Reads the next block of statements.
+	 * 
+	 * @return the statements of the block, or <tt>null</tt> if the end of the
+	 *         document has been reached.
+	 */
+	public List<Statement> readBlock()
+		throws IOException, RDFParseException
+	{
+		if (!started) {
+			parser.readHeader(in);
+			started = true;
+		}
+
+		statements = new ArrayList<Statement>();
+		try {
+			while (!ended) {
+				int recordType = parser.readRecord();
+				if (recordType == END_OF_DATA) {
+					ended = true;
+				}
+				else if (!statements.isEmpty()
+						&& (recordType == BLOCK || statements.size() >= maxStatements))
+				{
+					break;
+				}
+			}
+		}
+		catch (RDFHandlerException e) {
+			// the handler of this reader does not throw exceptions
+			throw new RDFParseException(e);
+		}
+
+		if (statements.isEmpty()) {
+			return null;
+		}
+		return statements;
+	}
+
+	/**
+	 * Gets the namespaces that have been read so far.
+	 * 
+	 * @return an unmodifiable map of namespace names, by prefix.
+	 */
+	public Map<String, String> getNamespaces() {
+		return Collections.unmodifiableMap(namespaces);
+	}
+
+	/**
+	 * Closes the input stream of the document.
+	 */
+	public void close()
+		throws IOException
+	{
+		in.close();
+	}
+}
@@ -25,9 +25,15 @@ class BinaryRDFConstants {
 	static final byte[] MAGIC_NUMBER = new byte[] { 'B', 'R', 'D', 'F' };
 
 	/**
-	 * The version number of the current format.
+	 * The version number of the format with one record per statement.
 	 */
-	static final int FORMAT_VERSION = 1;
+	static final int FORMAT_VERSION_1 = 1;
+
+	/**
+	 * The version number of the format with blocks of statements, each with
+	 * its own value dictionary.
+	 */
+	static final int FORMAT_VERSION_2 = 2;
 
 	/* RECORD TYPES */
 
@@ -39,6 +45,8 @@ class BinaryRDFConstants {
 
 	static final int VALUE_DECL = 3;
 
+	static final int BLOCK = 4;
+
 	// public static final int ERROR = 126;
 
 	static final int END_OF_DATA = 127;
@@ -58,4 +66,8 @@ class BinaryRDFConstants {
 	static final int DATATYPE_LITERAL_VALUE = 5;
 
 	static final int VALUE_REF = 6;
+
+	/* BLOCK FLAGS */
+
+	static final int DEFLATE_BLOCK = 1;
 }
@@ -16,11 +16,14 @@
  */
 package org.openrdf.rio.binary;
 
+import static org.openrdf.rio.binary.BinaryRDFConstants.BLOCK;
 import static org.openrdf.rio.binary.BinaryRDFConstants.BNODE_VALUE;
 import static org.openrdf.rio.binary.BinaryRDFConstants.COMMENT;
 import static org.openrdf.rio.binary.BinaryRDFConstants.DATATYPE_LITERAL_VALUE;
+import static org.openrdf.rio.binary.BinaryRDFConstants.DEFLATE_BLOCK;
 import static org.openrdf.rio.binary.BinaryRDFConstants.END_OF_DATA;
-import static org.openrdf.rio.binary.BinaryRDFConstants.FORMAT_VERSION;
+import static org.openrdf.rio.binary.BinaryRDFConstants.FORMAT_VERSION_1;
+import static org.openrdf.rio.binary.BinaryRDFConstants.FORMAT_VERSION_2;
 import static org.openrdf.rio.binary.BinaryRDFConstants.LANG_LITERAL_VALUE;
 import static org.openrdf.rio.binary.BinaryRDFConstants.MAGIC_NUMBER;
 import static org.openrdf.rio.binary.BinaryRDFConstants.NAMESPACE_DECL;
@@ -32,11 +35,15 @@ import static org.openrdf.rio.binary.BinaryRDFConstants.VALUE_DECL;
 import static org.openrdf.rio.binary.BinaryRDFConstants.VALUE_REF;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import info.aduna.io.IOUtil;
 
@@ -46,22 +53,57 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.helpers.RDFParserBase;
 
 /**
+ * Parses binary RDF documents of format version 1 and 2.
+ * 
  * @author Arjohn Kampman
  */
 public class BinaryRDFParser extends RDFParserBase {
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	private Value[] declaredValues = new Value[16];
 
 	private DataInputStream in;
 
 	private byte[] buf = null;
 
+	private int formatVersion;
+
+	/**
+	 * The values of the dictionary of the current block.
+	 */
+	private Value[] blockValues = new Value[16];
+
+	private byte[] blockBuf = null;
+
+	private byte[] inflatedBuf = null;
+
+	private Inflater inflater;
+
+	/**
+	 * The decoded bytes of the current block.
+	 */
+	private byte[] blockData;
+
+	private int blockPos;
+
+	private int blockEnd;
+
+	public BinaryRDFParser() {
+		super();
+	}
+
+	public BinaryRDFParser(ValueFactory valueFactory) {
+		super(valueFactory);
+	}
+
 	public RDFFormat getRDFFormat() {
 		return RDFFormat.BINARY;
 	}
@@ -74,6 +116,32 @@ public class BinaryRDFParser extends RDFParserBase {
 
 	public void parse(InputStream in, String baseURI)
 		throws IOException, RDFParseException, RDFHandlerException
+	{
+		readHeader(in);
+
+		if (rdfHandler != null) {
+			rdfHandler.startRDF();
+		}
+
+		try {
+			while (readRecord() != END_OF_DATA) {
+				// keep reading records
+			}
+		}
+		finally {
+			clear();
+		}
+
+		if (rdfHandler != null) {
+			rdfHandler.endRDF();
+		}
+	}
+
+	/**
+	 * Reads the magic number and format version of a document.
+	 */
+	void readHeader(InputStream in)
+		throws IOException, RDFParseException
 	{
 		if (in == null) {
 			throw new IllegalArgumentException("Input stream must not be null");
@@ -82,53 +150,55 @@ public class BinaryRDFParser extends RDFParserBase {
 		this.in = new DataInputStream(new BufferedInputStream(in));
 
 		// Check magic number
-		byte[] magicNumber = IOUtil.readBytes(in, MAGIC_NUMBER.length);
+		byte[] magicNumber = IOUtil.readBytes(this.in, MAGIC_NUMBER.length);
 		if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
 			reportFatalError("File does not contain a binary RDF document");
 		}
 
-		// Check format version (parser is backward-compatible with version 1 and
-		// version 2)
-		int formatVersion = this.in.readInt();
-		if (formatVersion != FORMAT_VERSION) {
+		// Check format version (parser is backward-compatible with version 1)
+		formatVersion = this.in.readInt();
+		if (formatVersion != FORMAT_VERSION_1 && formatVersion != FORMAT_VERSION_2) {
 			reportFatalError("Incompatible format version: " + formatVersion);
 		}
+	}
 
-		if (rdfHandler != null) {
-			rdfHandler.startRDF();
-		}
-
-		try {
-			loop: while (true) {
-				int recordType = this.in.readByte();
-
-				switch (recordType) {
-					case END_OF_DATA:
-						break loop;
-					case STATEMENT:
-						readStatement();
-						break;
-					case VALUE_DECL:
-						readValueDecl();
-						break;
-					case NAMESPACE_DECL:
-						readNamespaceDecl();
-						break;
-					case COMMENT:
-						readComment();
-						break;
-					default:
-						reportFatalError("Invalid record type: " + recordType);
+	/**
+	 * Reads the next record of a document and reports its contents to the RDF
+	 * handler.
+	 * 
+	 * @return the type of the record.
+	 */
+	int readRecord()
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		int recordType = in.readByte();
+
+		switch (recordType) {
+			case END_OF_DATA:
+				break;
+			case STATEMENT:
+				readStatement();
+				break;
+			case VALUE_DECL:
+				readValueDecl();
+				break;
+			case NAMESPACE_DECL:
+				readNamespaceDecl();
+				break;
+			case COMMENT:
+				readComment();
+				break;
+			case BLOCK:
+				if (formatVersion < FORMAT_VERSION_2) {
+					reportFatalError("Invalid record type: " + recordType);
 				}
-			}
-		}
-		finally {
-			clear();
+				readBlock();
+				break;
+			default:
+				reportFatalError("Invalid record type: " + recordType);
 		}
 
-		if (rdfHandler != null) {
-			rdfHandler.endRDF();
-		}
+		return recordType;
 	}
 
 	private void readNamespaceDecl()
@@ -169,39 +239,180 @@ public class BinaryRDFParser extends RDFParserBase {
 	private void readStatement()
 		throws RDFParseException, IOException, RDFHandlerException
 	{
-		Value v = readValue();
-		Resource subj = null;
-		if (v instanceof Resource) {
-			subj = (Resource)v;
+		Value subj = readValue();
+		Value pred = readValue();
+		Value obj = readValue();
+		Value context = readValue();
+		reportStatement(subj, pred, obj, context);
+	}
+
+	/**
+	 * Reads a block record: the values of the dictionary of the block, followed
+	 * by its statements as indexes into these values. The block is decoded
+	 * from a byte array rather than through the input stream.
+	 */
+	private void readBlock()
+		throws RDFParseException, IOException, RDFHandlerException
+	{
+		int flags = in.readByte();
+		int length = readVarInt(in);
+		boolean deflated = (flags & DEFLATE_BLOCK) != 0;
+		int inflatedLength = deflated ? readVarInt(in) : length;
+		byte[] data = readBlockBytes(length);
+
+		if (deflated) {
+			if (inflatedBuf == null || inflatedBuf.length < inflatedLength) {
+				inflatedBuf = new byte[Math.max(inflatedLength, 2 * (inflatedBuf == null ? 0 : inflatedBuf.length))];
+			}
+			if (inflater == null) {
+				inflater = new Inflater();
+			}
+			inflater.setInput(data, 0, length);
+			try {
+				if (inflater.inflate(inflatedBuf, 0, inflatedLength) != inflatedLength) {
+					reportFatalError("Truncated compressed block");
+				}
+			}
+			catch (DataFormatException e) {
+				reportFatalError(e);
+			}
+			finally {
+				inflater.reset();
+			}
+			data = inflatedBuf;
+			length = inflatedLength;
+		}
+
+		blockData = data;
+		blockPos = 0;
+		blockEnd = length;
+
+		int valueCount = readBlockVarInt();
+		if (valueCount > blockValues.length) {
+			blockValues = new Value[Math.max(valueCount, 2 * blockValues.length)];
 		}
-		else {
-			reportFatalError("Invalid subject type: " + v);
+		for (int i = 0; i < valueCount; i++) {
+			blockValues[i] = readBlockValue(i);
 		}
 
-		v = readValue();
-		URI pred = null;
-		if (v instanceof URI) {
-			pred = (URI)v;
+		int statementCount = readBlockVarInt();
+		for (int i = 0; i < statementCount; i++) {
+			Value subj = getBlockValue(readBlockVarInt(), valueCount);
+			Value pred = getBlockValue(readBlockVarInt(), valueCount);
+			Value obj = getBlockValue(readBlockVarInt(), valueCount);
+			int contextId = readBlockVarInt();
+			Value context = contextId == 0 ? null : getBlockValue(contextId - 1, valueCount);
+			reportStatement(subj, pred, obj, context);
 		}
-		else {
-			reportFatalError("Invalid predicate type: " + v);
+
+		Arrays.fill(blockValues, 0, valueCount, null);
+		blockData = null;
+	}
+
+	private byte[] readBlockBytes(int length)
+		throws IOException
+	{
+		if (blockBuf == null || blockBuf.length < length) {
+			blockBuf = new byte[Math.max(length, 2 * (blockBuf == null ? 0 : blockBuf.length))];
+		}
+		in.readFully(blockBuf, 0, length);
+		return blockBuf;
+	}
+
+	/**
+	 * Reads a value of the dictionary of a block. A literal can refer to a
+	 * datatype that precedes it in the dictionary.
+	 */
+	private Value readBlockValue(int index)
+		throws RDFParseException
+	{
+		byte valueType = readBlockByte();
+		switch (valueType) {
+			case URI_VALUE:
+				return createURI(readBlockString());
+			case BNODE_VALUE:
+				return createBNode(readBlockString());
+			case LANG_LITERAL_VALUE:
+				String label = readBlockString();
+				String language = readBlockString();
+				return createLiteral(label, language, null, -1, -1);
+			case DATATYPE_LITERAL_VALUE:
+				Value datatype = getBlockValue(readBlockVarInt(), index);
+				if (!(datatype instanceof URI)) {
+					reportFatalError("Invalid datatype: " + datatype);
+				}
+				return createLiteral(readBlockString(), null, (URI)datatype, -1, -1);
+			default:
+				reportFatalError("Unknown value type: " + valueType);
+				return null;
+		}
+	}
+
+	private Value getBlockValue(int id, int valueCount)
+		throws RDFParseException
+	{
+		if (id < 0 || id >= valueCount) {
+			reportFatalError("Invalid value reference: " + id);
+		}
+		return blockValues[id];
+	}
+
+	private byte readBlockByte()
+		throws RDFParseException
+	{
+		if (blockPos >= blockEnd) {
+			reportFatalError("Unexpected end of block");
+		}
+		return blockData[blockPos++];
+	}
+
+	private int readBlockVarInt()
+		throws RDFParseException
+	{
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readBlockByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0 && shift < 35);
+		return value;
+	}
+
+	private String readBlockString()
+		throws RDFParseException
+	{
+		int length = readBlockVarInt();
+		if (length < 0 || length > blockEnd - blockPos) {
+			reportFatalError("Unexpected end of block");
+		}
+		String result = new String(blockData, blockPos, length, UTF8);
+		blockPos += length;
+		return result;
+	}
+
+	private void reportStatement(Value subj, Value pred, Value obj, Value context)
+		throws RDFParseException, RDFHandlerException
+	{
+		if (!(subj instanceof Resource)) {
+			reportFatalError("Invalid subject type: " + subj);
+		}
+
+		if (!(pred instanceof URI)) {
+			reportFatalError("Invalid predicate type: " + pred);
 		}
 
-		Value obj = readValue();
 		if (obj == null) {
 			reportFatalError("Invalid object type: null");
 		}
 
-		v = readValue();
-		Resource context = null;
-		if (v == null || v instanceof Resource) {
-			context = (Resource)v;
-		}
-		else {
-			reportFatalError("Invalid context type: " + v);
+		if (context != null && !(context instanceof Resource)) {
+			reportFatalError("Invalid context type: " + context);
 		}
 
-		Statement st = createStatement(subj, pred, obj, context);
+		Statement st = createStatement((Resource)subj, (URI)pred, obj, (Resource)context);
 		if (rdfHandler != null) {
 			rdfHandler.handleStatement(st);
 		}
@@ -277,9 +488,39 @@ public class BinaryRDFParser extends RDFParserBase {
 		return createLiteral(label, null, dtUri, -1, -1);
 	}
 
+	private static int readVarInt(DataInput in)
+		throws IOException
+	{
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0 && shift < 35);
+		return value;
+	}
+
+	private String readUTF8String(DataInput in)
+		throws IOException
+	{
+		int length = readVarInt(in);
+		if (buf == null || buf.length < length) {
+			buf = new byte[length << 1];
+		}
+		in.readFully(buf, 0, length);
+		return new String(buf, 0, length, UTF8);
+	}
+
 	private String readString()
 		throws IOException
 	{
+		if (formatVersion == FORMAT_VERSION_2) {
+			return readUTF8String(in);
+		}
+
 		int stringLength = in.readInt();
 		int stringBytes = stringLength << 1;
 		if (buf == null || buf.length < stringBytes) {
@@ -16,11 +16,14 @@
  */
 package org.openrdf.rio.binary;
 
+import static org.openrdf.rio.binary.BinaryRDFConstants.BLOCK;
 import static org.openrdf.rio.binary.BinaryRDFConstants.BNODE_VALUE;
 import static org.openrdf.rio.binary.BinaryRDFConstants.COMMENT;
 import static org.openrdf.rio.binary.BinaryRDFConstants.DATATYPE_LITERAL_VALUE;
+import static org.openrdf.rio.binary.BinaryRDFConstants.DEFLATE_BLOCK;
 import static org.openrdf.rio.binary.BinaryRDFConstants.END_OF_DATA;
-import static org.openrdf.rio.binary.BinaryRDFConstants.FORMAT_VERSION;
+import static org.openrdf.rio.binary.BinaryRDFConstants.FORMAT_VERSION_1;
+import static org.openrdf.rio.binary.BinaryRDFConstants.FORMAT_VERSION_2;
 import static org.openrdf.rio.binary.BinaryRDFConstants.LANG_LITERAL_VALUE;
 import static org.openrdf.rio.binary.BinaryRDFConstants.MAGIC_NUMBER;
 import static org.openrdf.rio.binary.BinaryRDFConstants.NAMESPACE_DECL;
@@ -31,15 +34,25 @@ import static org.openrdf.rio.binary.BinaryRDFConstants.URI_VALUE;
 import static org.openrdf.rio.binary.BinaryRDFConstants.VALUE_REF;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
@@ -50,13 +63,22 @@ import org.openrdf.model.util.Literals;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.RioSetting;
+import org.openrdf.rio.helpers.BinaryRDFWriterSettings;
 import org.openrdf.rio.helpers.RDFWriterBase;
 
 /**
+ * Writes binary RDF documents. The format version, and for version 2 the
+ * block size and compression, are determined by the
+ * {@link BinaryRDFWriterSettings} in the writer config when the document is
+ * started.
+ * 
  * @author Arjohn Kampman
  */
 public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	private final BlockingQueue<Statement> statementQueue;
 
 	private final Map<Value, AtomicInteger> valueFreq;
@@ -71,6 +93,33 @@ public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 	
 	private byte[] buf;
 
+	private int formatVersion;
+
+	/* Version 2 blocks */
+
+	private int blockSize;
+
+	private boolean compressBlocks;
+
+	private final List<Statement> block = new ArrayList<Statement>();
+
+	/**
+	 * The indexes of the values in the dictionary of the current block.
+	 */
+	private final Map<Value, Integer> blockValueIds = new HashMap<Value, Integer>();
+
+	private final ByteArrayOutputStream dictionaryBuffer = new ByteArrayOutputStream();
+
+	private final DataOutputStream dictionaryOut = new DataOutputStream(dictionaryBuffer);
+
+	private final ByteArrayOutputStream statementBuffer = new ByteArrayOutputStream();
+
+	private final DataOutputStream statementOut = new DataOutputStream(statementBuffer);
+
+	private final ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream();
+
+	private Deflater deflater;
+
 	public BinaryRDFWriter(OutputStream out) {
 		this(out, 100);
 	}
@@ -90,10 +139,17 @@ public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 		throws RDFHandlerException
 	{
 		if (!writingStarted) {
+			formatVersion = getWriterConfig().get(BinaryRDFWriterSettings.FORMAT_VERSION);
+			if (formatVersion != FORMAT_VERSION_1 && formatVersion != FORMAT_VERSION_2) {
+				throw new RDFHandlerException("Unsupported binary RDF format version: " + formatVersion);
+			}
+			blockSize = Math.max(1, getWriterConfig().get(BinaryRDFWriterSettings.BLOCK_SIZE));
+			compressBlocks = getWriterConfig().get(BinaryRDFWriterSettings.COMPRESS_BLOCKS);
+
 			writingStarted = true;
 			try {
 				out.write(MAGIC_NUMBER);
-				out.writeInt(FORMAT_VERSION);
+				out.writeInt(formatVersion);
 			}
 			catch (IOException e) {
 				throw new RDFHandlerException(e);
@@ -109,6 +165,9 @@ public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 			while (!statementQueue.isEmpty()) {
 				writeStatement();
 			}
+			if (!block.isEmpty()) {
+				writeBlock();
+			}
 			out.writeByte(END_OF_DATA);
 			out.flush();
 			writingStarted = false;
@@ -148,6 +207,20 @@ public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 	public void handleStatement(Statement st)
 		throws RDFHandlerException
 	{
+		startRDF();
+		if (formatVersion == FORMAT_VERSION_2) {
+			block.add(st);
+			if (block.size() >= blockSize) {
+				try {
+					writeBlock();
+				}
+				catch (IOException e) {
+					throw new RDFHandlerException(e);
+				}
+			}
+			return;
+		}
+
 		statementQueue.add(st);
 		incValueFreq(st.getSubject());
 		incValueFreq(st.getPredicate());
@@ -160,7 +233,6 @@ public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 		}
 
 		// Process the first statement from the queue
-		startRDF();
 		try {
 			writeStatement();
 		}
@@ -324,9 +396,146 @@ public class BinaryRDFWriter extends RDFWriterBase implements RDFWriter {
 		}
 	}
 
+	@Override
+	public Collection<RioSetting<?>> getSupportedSettings() {
+		Set<RioSetting<?>> result = new HashSet<RioSetting<?>>(super.getSupportedSettings());
+
+		result.add(BinaryRDFWriterSettings.FORMAT_VERSION);
+		result.add(BinaryRDFWriterSettings.BLOCK_SIZE);
+		result.add(BinaryRDFWriterSettings.COMPRESS_BLOCKS);
+
+		return result;
+	}
+
+	/**
+	 * Writes the statements of the current block as a block record: the values
+	 * of the block, followed by the statements as indexes into these values.
+	 */
+	private void writeBlock()
+		throws RDFHandlerException, IOException
+	{
+		for (Statement st : block) {
+			int subjId = getBlockValueId(st.getSubject());
+			int predId = getBlockValueId(st.getPredicate());
+			int objId = getBlockValueId(st.getObject());
+			int contextId = st.getContext() == null ? 0 : getBlockValueId(st.getContext()) + 1;
+
+			writeVarInt(statementOut, subjId);
+			writeVarInt(statementOut, predId);
+			writeVarInt(statementOut, objId);
+			writeVarInt(statementOut, contextId);
+		}
+
+		DataOutputStream payload;
+		DeflaterOutputStream deflaterOut = null;
+		if (compressBlocks) {
+			if (deflater == null) {
+				deflater = new Deflater();
+			}
+			deflaterOut = new DeflaterOutputStream(blockBuffer, deflater);
+			payload = new DataOutputStream(deflaterOut);
+		}
+		else {
+			payload = new DataOutputStream(blockBuffer);
+		}
+
+		writeVarInt(payload, blockValueIds.size());
+		dictionaryBuffer.writeTo(payload);
+		writeVarInt(payload, block.size());
+		statementBuffer.writeTo(payload);
+		int inflatedLength = payload.size();
+
+		if (deflaterOut != null) {
+			deflaterOut.finish();
+			deflater.reset();
+		}
+		payload.flush();
+
+		out.writeByte(BLOCK);
+		out.writeByte(compressBlocks ? DEFLATE_BLOCK : 0);
+		writeVarInt(out, blockBuffer.size());
+		if (compressBlocks) {
+			writeVarInt(out, inflatedLength);
+		}
+		blockBuffer.writeTo(out);
+
+		block.clear();
+		blockValueIds.clear();
+		dictionaryBuffer.reset();
+		statementBuffer.reset();
+		blockBuffer.reset();
+	}
+
+	/**
+	 * Gets the index of a value in the dictionary of the current block, adding
+	 * it to the dictionary if it is not in it yet. The datatype of a literal is
+	 * added to the dictionary before the literal.
+	 */
+	private int getBlockValueId(Value v)
+		throws RDFHandlerException, IOException
+	{
+		Integer id = blockValueIds.get(v);
+		if (id != null) {
+			return id.intValue();
+		}
+
+		if (v instanceof URI) {
+			dictionaryOut.writeByte(URI_VALUE);
+			writeUTF8String(dictionaryOut, v.toString());
+		}
+		else if (v instanceof BNode) {
+			dictionaryOut.writeByte(BNODE_VALUE);
+			writeUTF8String(dictionaryOut, ((BNode)v).getID());
+		}
+		else if (v instanceof Literal) {
+			Literal literal = (Literal)v;
+			if (Literals.isLanguageLiteral(literal)) {
+				dictionaryOut.writeByte(LANG_LITERAL_VALUE);
+				writeUTF8String(dictionaryOut, literal.getLabel());
+				writeUTF8String(dictionaryOut, literal.getLanguage());
+			}
+			else {
+				int datatypeId = getBlockValueId(literal.getDatatype());
+				dictionaryOut.writeByte(DATATYPE_LITERAL_VALUE);
+				writeVarInt(dictionaryOut, datatypeId);
+				writeUTF8String(dictionaryOut, literal.getLabel());
+			}
+		}
+		else {
+			throw new RDFHandlerException("Unknown Value object type: " + v.getClass());
+		}
+
+		int newId = blockValueIds.size();
+		blockValueIds.put(v, newId);
+		return newId;
+	}
+
+	private static void writeVarInt(DataOutput out, int value)
+		throws IOException
+	{
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private void writeUTF8String(DataOutput out, String s)
+		throws IOException
+	{
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
 	private void writeString(String s)
 		throws IOException
 	{
+		if (formatVersion == FORMAT_VERSION_2) {
+			writeUTF8String(out, s);
+			return;
+		}
+
 		int strLen = s.length();
 		out.writeInt(strLen);
 		int stringBytes = strLen << 1;
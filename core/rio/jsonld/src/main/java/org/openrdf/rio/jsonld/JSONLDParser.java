@@ -26,6 +26,7 @@ import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.helpers.JSONLDSettings;
 import org.openrdf.rio.helpers.RDFParserBase;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -68,6 +69,11 @@ public class JSONLDParser extends RDFParserBase implements RDFParser {
 	public void parse(final InputStream in, final String baseURI)
 		throws IOException, RDFParseException, RDFHandlerException
 	{
+		if (getParserConfig().get(JSONLDSettings.STREAMING)) {
+			createStreamingParser().parse(in, baseURI);
+			return;
+		}
+
 		final JSONLDInternalTripleCallback callback = new JSONLDInternalTripleCallback(getRDFHandler(),
 				valueFactory, getParserConfig(), getParseErrorListener());
 
@@ -95,6 +101,11 @@ public class JSONLDParser extends RDFParserBase implements RDFParser {
 	public void parse(final Reader reader, final String baseURI)
 		throws IOException, RDFParseException, RDFHandlerException
 	{
+		if (getParserConfig().get(JSONLDSettings.STREAMING)) {
+			createStreamingParser().parse(reader, baseURI);
+			return;
+		}
+
 		final JSONLDInternalTripleCallback callback = new JSONLDInternalTripleCallback(getRDFHandler(),
 				valueFactory, getParserConfig(), getParseErrorListener());
 
@@ -118,4 +129,17 @@ public class JSONLDParser extends RDFParserBase implements RDFParser {
 		}
 	}
 
+	/**
+	 * Creates a {@link JSONLDStreamingParser} with the configuration of this
+	 * parser.
+	 */
+	private JSONLDStreamingParser createStreamingParser() {
+		final JSONLDStreamingParser parser = new JSONLDStreamingParser(valueFactory);
+		parser.setParserConfig(getParserConfig());
+		parser.setRDFHandler(getRDFHandler());
+		parser.setParseErrorListener(getParseErrorListener());
+		parser.setParseLocationListener(getParseLocationListener());
+		return parser;
+	}
+
 }
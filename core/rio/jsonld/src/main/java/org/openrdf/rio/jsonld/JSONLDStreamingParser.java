@@ -0,0 +1,940 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.jsonld;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import info.aduna.net.ParsedURI;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.JSONLDSettings;
+import org.openrdf.rio.helpers.RDFParserBase;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A package private internal implementation class that converts a JSON-LD
+ * document to RDF while it is read, for {@link JSONLDSettings#STREAMING}. The
+ * elements of a top-level array or <tt>@graph</tt> array are read one at a
+ * time, and the statements of each node object are reported as soon as it
+ * has been read, so that only the node object that is being converted is kept
+ * in memory.
+ * <p>
+ * The document must not depend on features that require the whole document
+ * to be known: the <tt>@context</tt> of the top-level object must precede its
+ * <tt>@graph</tt>, and remote contexts and reverse properties are not
+ * supported. Blank node identifiers are scoped to the document as usual.
+ */
+class JSONLDStreamingParser extends RDFParserBase {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final String ID = "@id";
+
+	private static final String TYPE = "@type";
+
+	private static final String VOCAB = "@vocab";
+
+	private static final String LANGUAGE = "@language";
+
+	private static final String CONTAINER = "@container";
+
+	private static final String LIST = "@list";
+
+	private static final String SET = "@set";
+
+	private static final String VALUE = "@value";
+
+	private static final String GRAPH = "@graph";
+
+	private static final String CONTEXT = "@context";
+
+	private static final String REVERSE = "@reverse";
+
+	private static final String BASE = "@base";
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final JsonFactory jsonFactory;
+
+	private JsonParser jsonParser;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public JSONLDStreamingParser(ValueFactory valueFactory) {
+		super(valueFactory);
+		jsonFactory = new JsonFactory();
+		jsonFactory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public RDFFormat getRDFFormat() {
+		return RDFFormat.JSONLD;
+	}
+
+	@Override
+	public void parse(InputStream in, String baseURI)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		parse(jsonFactory.createParser(in), baseURI);
+	}
+
+	@Override
+	public void parse(Reader reader, String baseURI)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		parse(jsonFactory.createParser(reader), baseURI);
+	}
+
+	private void parse(JsonParser parser, String baseURI)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		jsonParser = parser;
+
+		if (rdfHandler != null) {
+			rdfHandler.startRDF();
+		}
+
+		try {
+			ParsedURI base = null;
+			if (baseURI != null) {
+				setBaseURI(baseURI);
+				base = new ParsedURI(baseURI);
+				base.normalize();
+			}
+			Context context = new Context(base);
+
+			JsonToken token = jsonParser.nextToken();
+			if (token == JsonToken.START_ARRAY) {
+				parseNodeArray(context, null);
+			}
+			else if (token == JsonToken.START_OBJECT) {
+				parseTopLevelObject(context);
+			}
+			else if (token != null) {
+				reportFatalError("Expected a JSON-LD object or array, found " + token);
+			}
+
+			if (jsonParser.nextToken() != null) {
+				reportFatalError("Unexpected content after the end of the JSON-LD document");
+			}
+		}
+		catch (JsonParseException e) {
+			throw new RDFParseException("Could not parse JSONLD", e);
+		}
+		finally {
+			clear();
+			jsonParser = null;
+		}
+
+		if (rdfHandler != null) {
+			rdfHandler.endRDF();
+		}
+	}
+
+	/**
+	 * Parses the fields of the top-level object. An <tt>@graph</tt> array is
+	 * converted while it is read, the other fields are kept until the end of
+	 * the object.
+	 */
+	private void parseTopLevelObject(Context context)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		Map<String, Object> node = new LinkedHashMap<String, Object>();
+		boolean graphParsed = false;
+		Resource graphName = null;
+
+		JsonToken token;
+		while ((token = jsonParser.nextToken()) != JsonToken.END_OBJECT) {
+			String key = jsonParser.getCurrentName();
+			token = jsonParser.nextToken();
+
+			if (CONTEXT.equals(key)) {
+				if (graphParsed) {
+					reportFatalError("The @context of a JSON-LD document must precede its @graph to be parsed as a stream");
+				}
+				context = processContext(context, readValue(token), new HashSet<String>());
+				reportNamespaces(context);
+			}
+			else if (token == JsonToken.START_ARRAY && GRAPH.equals(context.expandKeyword(key))) {
+				if (!node.isEmpty()) {
+					// the top-level object is a node object, its @graph is a
+					// named graph
+					graphName = getSubject(node, context);
+				}
+				parseNodeArray(context, graphName);
+				graphParsed = true;
+			}
+			else {
+				if (graphParsed && (graphName == null || ID.equals(context.expandKeyword(key)))) {
+					reportFatalError("The properties of a top-level JSON-LD object must precede its @graph to be parsed as a stream");
+				}
+				node.put(key, readValue(token));
+			}
+		}
+
+		if (!node.isEmpty()) {
+			processNode(node, context, null, graphName);
+		}
+	}
+
+	/**
+	 * Converts the elements of an array one at a time, up to the end of the
+	 * array.
+	 */
+	private void parseNodeArray(Context context, Resource graph)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		JsonToken token;
+		while ((token = jsonParser.nextToken()) != JsonToken.END_ARRAY) {
+			if (token == null) {
+				reportFatalError("Unexpected end of the JSON-LD document");
+			}
+			processElement(readValue(token), context, graph);
+			reportLocation();
+		}
+	}
+
+	/**
+	 * Reads the JSON value that starts with the current token into maps, lists
+	 * and scalar values.
+	 */
+	private Object readValue(JsonToken token)
+		throws IOException, RDFParseException
+	{
+		switch (token) {
+			case START_OBJECT:
+				Map<String, Object> map = new LinkedHashMap<String, Object>();
+				while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+					String key = jsonParser.getCurrentName();
+					map.put(key, readValue(jsonParser.nextToken()));
+				}
+				return map;
+			case START_ARRAY:
+				List<Object> list = new ArrayList<Object>();
+				JsonToken next;
+				while ((next = jsonParser.nextToken()) != JsonToken.END_ARRAY) {
+					list.add(readValue(next));
+				}
+				return list;
+			case VALUE_STRING:
+				return jsonParser.getText();
+			case VALUE_NUMBER_INT:
+				return jsonParser.getBigIntegerValue();
+			case VALUE_NUMBER_FLOAT:
+				return jsonParser.getDecimalValue();
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return null;
+			default:
+				reportFatalError("Unexpected JSON token " + token);
+				return null;
+		}
+	}
+
+	private void processElement(Object element, Context context, Resource graph)
+		throws RDFParseException, RDFHandlerException
+	{
+		if (element instanceof List) {
+			for (Object item : (List<?>)element) {
+				processElement(item, context, graph);
+			}
+		}
+		else if (element instanceof Map) {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> node = (Map<String, Object>)element;
+			if (!isValueObject(node, context)) {
+				processNode(node, context, graph, null);
+			}
+		}
+		// free-floating values do not produce statements
+	}
+
+	private boolean isValueObject(Map<String, Object> node, Context context) {
+		for (String key : node.keySet()) {
+			String keyword = context.expandKeyword(key);
+			if (VALUE.equals(keyword) || LIST.equals(keyword) || SET.equals(keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reports the statements of a node object and of the node objects that are
+	 * embedded in it.
+	 * 
+	 * @param subject
+	 *        the subject of the node, or <tt>null</tt> to determine it from
+	 *        its <tt>@id</tt>.
+	 * @return the subject of the node.
+	 */
+	private Resource processNode(Map<String, Object> node, Context context, Resource graph, Resource subject)
+		throws RDFParseException, RDFHandlerException
+	{
+		if (node.containsKey(CONTEXT)) {
+			context = processContext(context, node.get(CONTEXT), new HashSet<String>());
+		}
+		if (subject == null) {
+			subject = getSubject(node, context);
+		}
+
+		for (Map.Entry<String, Object> entry : node.entrySet()) {
+			String key = entry.getKey();
+			Object value = entry.getValue();
+			if (CONTEXT.equals(key)) {
+				continue;
+			}
+
+			String keyword = context.expandKeyword(key);
+			if (TYPE.equals(keyword)) {
+				for (Object type : asList(value)) {
+					if (type instanceof String) {
+						reportStatement(subject, RDF.TYPE, createResource(context.expandIRI((String)type, true, true)),
+								graph);
+					}
+				}
+			}
+			else if (GRAPH.equals(keyword)) {
+				processElement(value, context, subject);
+			}
+			else if (REVERSE.equals(keyword)) {
+				reportFatalError("Reverse properties are not supported when JSON-LD is parsed as a stream");
+			}
+			else if (keyword == null) {
+				processProperty(subject, key, value, context, graph);
+			}
+			// other keywords, such as @id and @index, do not produce statements
+		}
+
+		return subject;
+	}
+
+	private void processProperty(Resource subject, String key, Object value, Context context, Resource graph)
+		throws RDFParseException, RDFHandlerException
+	{
+		TermDefinition term = context.terms.get(key);
+		if (term != null && term.reverse) {
+			reportFatalError("Reverse properties are not supported when JSON-LD is parsed as a stream");
+		}
+
+		String property = context.expandIRI(key, false, true);
+		if (property == null || property.startsWith("_:") || property.indexOf(':') < 0) {
+			// properties that do not expand to an IRI are ignored
+			return;
+		}
+		URI predicate = createURI(property);
+
+		if (term != null && LANGUAGE.equals(term.container) && value instanceof Map) {
+			for (Map.Entry<?, ?> languageEntry : ((Map<?, ?>)value).entrySet()) {
+				String language = ((String)languageEntry.getKey()).toLowerCase(Locale.ENGLISH);
+				for (Object label : asList(languageEntry.getValue())) {
+					if (label instanceof String) {
+						reportStatement(subject, predicate, createLiteral((String)label, language, (String)null),
+								graph);
+					}
+				}
+			}
+		}
+		else if (term != null && LIST.equals(term.container) && !isListObject(value, context)) {
+			reportStatement(subject, predicate, createList(asList(value), term, context, graph), graph);
+		}
+		else {
+			List<Object> values = new ArrayList<Object>();
+			flatten(value, context, values);
+			for (Object item : values) {
+				Value object = convertValue(item, term, context, graph);
+				if (object != null) {
+					reportStatement(subject, predicate, object, graph);
+				}
+			}
+		}
+	}
+
+	private boolean isListObject(Object value, Context context) {
+		if (value instanceof Map) {
+			for (Object key : ((Map<?, ?>)value).keySet()) {
+				if (LIST.equals(context.expandKeyword((String)key))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the values of nested arrays and <tt>@set</tt> objects to the
+	 * supplied list.
+	 */
+	private void flatten(Object value, Context context, List<Object> result) {
+		if (value instanceof List) {
+			for (Object item : (List<?>)value) {
+				flatten(item, context, result);
+			}
+			return;
+		}
+		if (value instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+				if (SET.equals(context.expandKeyword((String)entry.getKey()))) {
+					flatten(entry.getValue(), context, result);
+					return;
+				}
+			}
+		}
+		if (value != null) {
+			result.add(value);
+		}
+	}
+
+	/**
+	 * Converts a property value to an RDF value.
+	 * 
+	 * @return the value, or <tt>null</tt> if the value does not produce a
+	 *         statement.
+	 */
+	private Value convertValue(Object value, TermDefinition term, Context context, Resource graph)
+		throws RDFParseException, RDFHandlerException
+	{
+		String coercion = term == null ? null : term.type;
+
+		if (value instanceof Map) {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = (Map<String, Object>)value;
+			Object label = null;
+			boolean isValue = false;
+			String type = null;
+			String language = null;
+			for (Map.Entry<String, Object> entry : map.entrySet()) {
+				String keyword = context.expandKeyword(entry.getKey());
+				if (VALUE.equals(keyword)) {
+					isValue = true;
+					label = entry.getValue();
+				}
+				else if (TYPE.equals(keyword) && entry.getValue() instanceof String) {
+					type = context.expandIRI((String)entry.getValue(), true, true);
+				}
+				else if (LANGUAGE.equals(keyword) && entry.getValue() instanceof String) {
+					language = ((String)entry.getValue()).toLowerCase(Locale.ENGLISH);
+				}
+				else if (LIST.equals(keyword)) {
+					return createList(asList(entry.getValue()), term, context, graph);
+				}
+			}
+
+			if (!isValue) {
+				return processNode(map, context, graph, null);
+			}
+			if (label instanceof String) {
+				if (language != null) {
+					return createLiteral((String)label, language, (String)null);
+				}
+				return createLiteral((String)label, null, type == null ? XMLSchema.STRING.stringValue() : type);
+			}
+			return createNativeLiteral(label, type);
+		}
+
+		if (value instanceof String) {
+			String string = (String)value;
+			if (ID.equals(coercion)) {
+				return createResource(context.expandIRI(string, true, false));
+			}
+			if (VOCAB.equals(coercion)) {
+				return createResource(context.expandIRI(string, true, true));
+			}
+			if (coercion != null) {
+				return createLiteral(string, null, coercion);
+			}
+			String language = term != null && term.hasLanguage ? term.language : context.language;
+			if (language != null) {
+				return createLiteral(string, language, (String)null);
+			}
+			return createLiteral(string, null, XMLSchema.STRING.stringValue());
+		}
+
+		if (ID.equals(coercion) || VOCAB.equals(coercion)) {
+			coercion = null;
+		}
+		return createNativeLiteral(value, coercion);
+	}
+
+	/**
+	 * Creates a literal for a JSON boolean or number, as described in the
+	 * JSON-LD RDF conversion algorithm.
+	 */
+	private Value createNativeLiteral(Object value, String datatype)
+		throws RDFParseException
+	{
+		if (value instanceof Boolean) {
+			return createLiteral(value.toString(), null,
+					datatype == null ? XMLSchema.BOOLEAN.stringValue() : datatype);
+		}
+		if (value instanceof Number) {
+			BigDecimal number = value instanceof BigDecimal ? (BigDecimal)value : new BigDecimal(
+					value.toString());
+			boolean integral = number.signum() == 0 || number.scale() <= 0
+					|| number.stripTrailingZeros().scale() <= 0;
+			if (integral && !XMLSchema.DOUBLE.stringValue().equals(datatype)
+					&& number.abs().compareTo(BigDecimal.TEN.pow(21)) < 0)
+			{
+				return createLiteral(number.toBigInteger().toString(), null,
+						datatype == null ? XMLSchema.INTEGER.stringValue() : datatype);
+			}
+			DecimalFormat format = new DecimalFormat("0.0###############E0",
+					new DecimalFormatSymbols(Locale.US));
+			return createLiteral(format.format(number.doubleValue()), null,
+					datatype == null ? XMLSchema.DOUBLE.stringValue() : datatype);
+		}
+		return null;
+	}
+
+	/**
+	 * Reports the statements of an RDF list.
+	 * 
+	 * @return the head of the list.
+	 */
+	private Resource createList(List<?> items, TermDefinition term, Context context, Resource graph)
+		throws RDFParseException, RDFHandlerException
+	{
+		List<Value> values = new ArrayList<Value>(items.size());
+		for (Object item : items) {
+			Value value = convertValue(item, term, context, graph);
+			if (value != null) {
+				values.add(value);
+			}
+		}
+		if (values.isEmpty()) {
+			return RDF.NIL;
+		}
+
+		Resource head = createBNode();
+		Resource current = head;
+		for (int i = 0; i < values.size(); i++) {
+			reportStatement(current, RDF.FIRST, values.get(i), graph);
+			Resource rest = i + 1 < values.size() ? createBNode() : RDF.NIL;
+			reportStatement(current, RDF.REST, rest, graph);
+			current = rest;
+		}
+		return head;
+	}
+
+	private Resource getSubject(Map<String, Object> node, Context context)
+		throws RDFParseException
+	{
+		for (Map.Entry<String, Object> entry : node.entrySet()) {
+			if (ID.equals(context.expandKeyword(entry.getKey())) && entry.getValue() instanceof String) {
+				Resource subject = createResource(context.expandIRI((String)entry.getValue(), true, false));
+				if (subject != null) {
+					return subject;
+				}
+			}
+		}
+		return createBNode();
+	}
+
+	private Resource createResource(String iri)
+		throws RDFParseException
+	{
+		if (iri == null) {
+			return null;
+		}
+		if (iri.startsWith("_:")) {
+			return createBNode(iri.substring(2));
+		}
+		return createURI(iri);
+	}
+
+	private Value createLiteral(String label, String language, String datatype)
+		throws RDFParseException
+	{
+		return createLiteral(label, language, datatype == null ? null : createURI(datatype));
+	}
+
+	private void reportStatement(Resource subject, URI predicate, Value object, Resource graph)
+		throws RDFParseException, RDFHandlerException
+	{
+		if (subject == null || object == null) {
+			return;
+		}
+		if (rdfHandler != null) {
+			rdfHandler.handleStatement(createStatement(subject, predicate, object, graph));
+		}
+	}
+
+	/**
+	 * Reports the terms of the top-level context that map to an IRI as
+	 * namespaces, and the vocabulary mapping as the default namespace.
+	 */
+	private void reportNamespaces(Context context)
+		throws RDFHandlerException
+	{
+		if (rdfHandler == null) {
+			return;
+		}
+		if (context.vocab != null) {
+			rdfHandler.handleNamespace("", context.vocab);
+		}
+		for (Map.Entry<String, TermDefinition> entry : context.terms.entrySet()) {
+			TermDefinition term = entry.getValue();
+			if (term != null && term.simple && term.iri != null && !term.iri.startsWith("@")) {
+				rdfHandler.handleNamespace(entry.getKey(), term.iri);
+			}
+		}
+	}
+
+	private List<?> asList(Object value) {
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		if (value instanceof List) {
+			return (List<?>)value;
+		}
+		return Collections.singletonList(value);
+	}
+
+	/*--------------------*
+	 * Context processing *
+	 *--------------------*/
+
+	/**
+	 * Processes a local context, as described in the JSON-LD context processing
+	 * algorithm, without support for remote contexts.
+	 * 
+	 * @return the new active context.
+	 */
+	private Context processContext(Context activeContext, Object localContext, Set<String> defining)
+		throws RDFParseException
+	{
+		if (localContext instanceof List) {
+			Context result = activeContext;
+			for (Object item : (List<?>)localContext) {
+				result = processContext(result, item, defining);
+			}
+			return result;
+		}
+		if (localContext == null) {
+			return new Context(activeContext.initialBase);
+		}
+		if (!(localContext instanceof Map)) {
+			reportFatalError("Remote contexts are not supported when JSON-LD is parsed as a stream: "
+					+ localContext);
+		}
+
+		Context result = new Context(activeContext);
+		Map<?, ?> map = (Map<?, ?>)localContext;
+
+		if (map.containsKey(BASE)) {
+			Object base = map.get(BASE);
+			if (base == null) {
+				result.base = null;
+			}
+			else if (base instanceof String) {
+				ParsedURI baseURI = new ParsedURI((String)base);
+				result.base = result.base == null || !baseURI.isRelative() ? baseURI
+						: result.base.resolve(baseURI);
+			}
+		}
+		if (map.containsKey(VOCAB)) {
+			Object vocab = map.get(VOCAB);
+			result.vocab = vocab instanceof String ? result.expandIRI((String)vocab, true, true) : null;
+		}
+		if (map.containsKey(LANGUAGE)) {
+			Object language = map.get(LANGUAGE);
+			result.language = language instanceof String ? ((String)language).toLowerCase(Locale.ENGLISH)
+					: null;
+		}
+
+		Map<String, Boolean> defined = new HashMap<String, Boolean>();
+		for (Object key : map.keySet()) {
+			String term = (String)key;
+			if (!BASE.equals(term) && !VOCAB.equals(term) && !LANGUAGE.equals(term)) {
+				createTermDefinition(result, map, term, defined);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the definition of a term of a local context, after the terms
+	 * that its IRI depends on.
+	 */
+	private void createTermDefinition(Context context, Map<?, ?> localContext, String term,
+			Map<String, Boolean> defined)
+		throws RDFParseException
+	{
+		Boolean state = defined.get(term);
+		if (state != null) {
+			if (!state) {
+				reportFatalError("Cyclic IRI mapping for JSON-LD term '" + term + "'");
+			}
+			return;
+		}
+		defined.put(term, Boolean.FALSE);
+
+		Object value = localContext.get(term);
+		if (value == null) {
+			// explicitly undefined term
+			context.terms.put(term, null);
+			defined.put(term, Boolean.TRUE);
+			return;
+		}
+
+		TermDefinition definition = new TermDefinition();
+		Object id;
+		if (value instanceof String) {
+			definition.simple = true;
+			id = value;
+		}
+		else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>)value;
+			if (map.containsKey(REVERSE)) {
+				definition.reverse = true;
+				id = map.get(REVERSE);
+			}
+			else {
+				id = map.get(ID);
+			}
+			Object type = map.get(TYPE);
+			if (type instanceof String) {
+				definePrefix(context, localContext, (String)type, defined);
+				definition.type = context.expandIRI((String)type, false, true);
+			}
+			if (map.containsKey(LANGUAGE)) {
+				Object language = map.get(LANGUAGE);
+				definition.hasLanguage = true;
+				definition.language = language instanceof String ? ((String)language).toLowerCase(Locale.ENGLISH)
+						: null;
+			}
+			if (map.get(CONTAINER) instanceof String) {
+				definition.container = (String)map.get(CONTAINER);
+			}
+		}
+		else {
+			reportFatalError("Invalid definition of JSON-LD term '" + term + "'");
+			return;
+		}
+
+		if (id instanceof String) {
+			definePrefix(context, localContext, (String)id, defined);
+			definition.iri = context.expandIRI((String)id, false, true);
+		}
+		else {
+			// the term is its own IRI, a compact IRI or an IRI relative to the
+			// vocabulary mapping
+			definePrefix(context, localContext, term, defined);
+			context.terms.remove(term);
+			definition.iri = context.expandIRI(term, false, true);
+		}
+
+		context.terms.put(term, definition);
+		defined.put(term, Boolean.TRUE);
+	}
+
+	/**
+	 * Defines the term that the supplied value depends on first, if it is
+	 * defined in the same local context.
+	 */
+	private void definePrefix(Context context, Map<?, ?> localContext, String value,
+			Map<String, Boolean> defined)
+		throws RDFParseException
+	{
+		int colon = value.indexOf(':');
+		String dependency = colon > 0 ? value.substring(0, colon) : value;
+		if (localContext.containsKey(dependency) && !dependency.startsWith("@")) {
+			createTermDefinition(context, localContext, dependency, defined);
+		}
+	}
+
+	@Override
+	protected void reportFatalError(String msg)
+		throws RDFParseException
+	{
+		JsonLocation location = jsonParser == null ? null : jsonParser.getCurrentLocation();
+		if (location != null) {
+			reportFatalError(msg, location.getLineNr(), location.getColumnNr());
+		}
+		else {
+			super.reportFatalError(msg);
+		}
+	}
+
+	private void reportLocation() {
+		JsonLocation location = jsonParser.getCurrentLocation();
+		reportLocation(location.getLineNr(), location.getColumnNr());
+	}
+
+	/*---------------*
+	 * Inner classes *
+	 *---------------*/
+
+	private static class TermDefinition {
+
+		/**
+		 * The expanded IRI of the term, a keyword, or <tt>null</tt>.
+		 */
+		String iri;
+
+		/**
+		 * The expanded type coercion of the term, <tt>@id</tt>, <tt>@vocab</tt>
+		 * or a datatype IRI.
+		 */
+		String type;
+
+		boolean hasLanguage;
+
+		String language;
+
+		String container;
+
+		boolean reverse;
+
+		/**
+		 * Whether the term was defined by a plain IRI.
+		 */
+		boolean simple;
+	}
+
+	private static class Context {
+
+		final ParsedURI initialBase;
+
+		ParsedURI base;
+
+		String vocab;
+
+		String language;
+
+		/**
+		 * The term definitions, a <tt>null</tt> value is an explicitly undefined
+		 * term.
+		 */
+		final Map<String, TermDefinition> terms;
+
+		Context(ParsedURI base) {
+			this.initialBase = base;
+			this.base = base;
+			this.terms = new LinkedHashMap<String, TermDefinition>();
+		}
+
+		Context(Context other) {
+			this.initialBase = other.initialBase;
+			this.base = other.base;
+			this.vocab = other.vocab;
+			this.language = other.language;
+			this.terms = new LinkedHashMap<String, TermDefinition>(other.terms);
+		}
+
+		/**
+		 * Gets the keyword that a key is, or is an alias for.
+		 * 
+		 * @return the keyword, or <tt>null</tt> if the key is not a keyword.
+		 */
+		String expandKeyword(String key) {
+			if (key.startsWith("@")) {
+				return key;
+			}
+			TermDefinition term = terms.get(key);
+			if (term != null && term.iri != null && term.iri.startsWith("@")) {
+				return term.iri;
+			}
+			return null;
+		}
+
+		/**
+		 * Expands a value to an IRI, as described in the JSON-LD IRI expansion
+		 * algorithm.
+		 * 
+		 * @param documentRelative
+		 *        whether relative IRIs are resolved against the base IRI.
+		 * @param vocabRelative
+		 *        whether terms and relative IRIs are expanded with the term
+		 *        definitions and the vocabulary mapping.
+		 * @return the expanded IRI, a blank node identifier starting with
+		 *         <tt>_:</tt>, or <tt>null</tt> if the value has been
+		 *         explicitly undefined.
+		 */
+		String expandIRI(String value, boolean documentRelative, boolean vocabRelative) {
+			if (value.startsWith("@")) {
+				return value;
+			}
+			if (vocabRelative && terms.containsKey(value)) {
+				TermDefinition term = terms.get(value);
+				return term == null ? null : term.iri;
+			}
+
+			int colon = value.indexOf(':');
+			if (colon >= 0) {
+				String prefix = value.substring(0, colon);
+				String suffix = value.substring(colon + 1);
+				if (prefix.equals("_") || suffix.startsWith("//")) {
+					return value;
+				}
+				TermDefinition term = terms.get(prefix);
+				if (term != null && term.iri != null) {
+					return term.iri + suffix;
+				}
+				return value;
+			}
+
+			if (vocabRelative && vocab != null) {
+				return vocab + value;
+			}
+			if (documentRelative && base != null) {
+				return base.resolve(value).toString();
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.jsonld;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.WriterConfig;
+import org.openrdf.rio.helpers.BasicWriterSettings;
+import org.openrdf.rio.helpers.JSONLDSettings;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A package private internal implementation class that writes statements as
+ * an expanded JSON-LD document while they are handled. Consecutive statements
+ * with the same subject and context are written as one node object, and
+ * consecutive statements with the same context as one named graph, so only
+ * the statements of the current subject are kept in memory. Subjects and
+ * contexts that occur more than once are written as separate node objects and
+ * graphs, which JSON-LD processors merge.
+ */
+class JSONLDStreamingSerialiser {
+
+	private static final Pattern INTEGER = Pattern.compile("^[+-]?[0-9]+$");
+
+	private static final String TYPE_KEY = "@type";
+
+	private final JsonGenerator generator;
+
+	private final boolean useRdfType;
+
+	private final boolean useNativeTypes;
+
+	private Resource currentContext;
+
+	private boolean inNamedGraph;
+
+	private Resource currentSubject;
+
+	/**
+	 * The values of the current subject, by <tt>@type</tt> or predicate, in
+	 * the order in which the keys were first used.
+	 */
+	private final Map<String, List<Value>> currentValues = new LinkedHashMap<String, List<Value>>();
+
+	public JSONLDStreamingSerialiser(Writer writer, WriterConfig config)
+		throws IOException
+	{
+		JsonFactory factory = new JsonFactory();
+		factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		generator = factory.createGenerator(writer);
+		if (config.get(BasicWriterSettings.PRETTY_PRINT)) {
+			generator.useDefaultPrettyPrinter();
+		}
+		useRdfType = config.get(JSONLDSettings.USE_RDF_TYPE);
+		useNativeTypes = config.get(JSONLDSettings.USE_NATIVE_TYPES);
+	}
+
+	public void startDocument()
+		throws IOException
+	{
+		generator.writeStartArray();
+	}
+
+	public void handleStatement(Statement st)
+		throws IOException
+	{
+		Resource context = st.getContext();
+		Resource subject = st.getSubject();
+
+		if (currentSubject != null && !(subject.equals(currentSubject) && equals(context, currentContext))) {
+			writeNode();
+		}
+		if (!equals(context, currentContext)) {
+			if (inNamedGraph) {
+				endNamedGraph();
+			}
+			if (context != null) {
+				startNamedGraph(context);
+			}
+			currentContext = context;
+		}
+		currentSubject = subject;
+
+		String key;
+		Value object = st.getObject();
+		if (!useRdfType && RDF.TYPE.equals(st.getPredicate()) && object instanceof Resource) {
+			key = TYPE_KEY;
+		}
+		else {
+			key = st.getPredicate().stringValue();
+		}
+
+		List<Value> values = currentValues.get(key);
+		if (values == null) {
+			values = new ArrayList<Value>(2);
+			currentValues.put(key, values);
+		}
+		values.add(object);
+	}
+
+	public void endDocument()
+		throws IOException
+	{
+		if (currentSubject != null) {
+			writeNode();
+		}
+		if (inNamedGraph) {
+			endNamedGraph();
+		}
+		currentContext = null;
+		generator.writeEndArray();
+		generator.flush();
+	}
+
+	private void startNamedGraph(Resource context)
+		throws IOException
+	{
+		generator.writeStartObject();
+		generator.writeStringField("@id", getID(context));
+		generator.writeArrayFieldStart("@graph");
+		inNamedGraph = true;
+	}
+
+	private void endNamedGraph()
+		throws IOException
+	{
+		generator.writeEndArray();
+		generator.writeEndObject();
+		inNamedGraph = false;
+	}
+
+	private void writeNode()
+		throws IOException
+	{
+		generator.writeStartObject();
+		generator.writeStringField("@id", getID(currentSubject));
+
+		for (Map.Entry<String, List<Value>> entry : currentValues.entrySet()) {
+			generator.writeArrayFieldStart(entry.getKey());
+			if (entry.getKey() == TYPE_KEY) {
+				for (Value type : entry.getValue()) {
+					generator.writeString(getID((Resource)type));
+				}
+			}
+			else {
+				for (Value value : entry.getValue()) {
+					writeValue(value);
+				}
+			}
+			generator.writeEndArray();
+		}
+
+		generator.writeEndObject();
+		currentValues.clear();
+		currentSubject = null;
+	}
+
+	private void writeValue(Value value)
+		throws IOException
+	{
+		if (value instanceof Resource) {
+			generator.writeStartObject();
+			generator.writeStringField("@id", getID((Resource)value));
+			generator.writeEndObject();
+			return;
+		}
+
+		Literal literal = (Literal)value;
+		String label = literal.getLabel();
+		URI datatype = literal.getDatatype();
+
+		if (useNativeTypes && writeNativeValue(label, datatype)) {
+			return;
+		}
+
+		generator.writeStartObject();
+		generator.writeStringField("@value", label);
+		if (literal.getLanguage() != null) {
+			generator.writeStringField("@language", literal.getLanguage());
+		}
+		else if (datatype != null && !XMLSchema.STRING.equals(datatype)) {
+			generator.writeStringField("@type", datatype.stringValue());
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Writes a boolean or number literal as a native JSON value.
+	 * 
+	 * @return <tt>true</tt> if the value was written.
+	 */
+	private boolean writeNativeValue(String label, URI datatype)
+		throws IOException
+	{
+		if (XMLSchema.BOOLEAN.equals(datatype)) {
+			if ("true".equals(label) || "false".equals(label)) {
+				generator.writeBoolean(Boolean.parseBoolean(label));
+				return true;
+			}
+		}
+		else if (XMLSchema.INTEGER.equals(datatype)) {
+			if (INTEGER.matcher(label).matches()) {
+				generator.writeNumber(new BigInteger(label));
+				return true;
+			}
+		}
+		else if (XMLSchema.DOUBLE.equals(datatype)) {
+			try {
+				double d = Double.parseDouble(label);
+				if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+					generator.writeNumber(d);
+					return true;
+				}
+			}
+			catch (NumberFormatException e) {
+				// not a valid double, write it as a typed value
+			}
+		}
+		return false;
+	}
+
+	private static String getID(Resource resource) {
+		if (resource instanceof BNode) {
+			return "_:" + resource.stringValue();
+		}
+		return resource.stringValue();
+	}
+
+	private static boolean equals(Resource a, Resource b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -60,6 +60,12 @@ public class JSONLDWriter extends RDFWriterBase implements RDFWriter {
 
 	private final Writer writer;
 
+	/**
+	 * The serialiser that writes the statements while they are handled, if
+	 * {@link JSONLDSettings#STREAMING} is enabled for the current mode.
+	 */
+	private JSONLDStreamingSerialiser streamingSerialiser;
+
 	/**
 	 * Create a SesameJSONLDWriter using a {@link java.io.OutputStream}
 	 * 
@@ -93,12 +99,37 @@ public class JSONLDWriter extends RDFWriterBase implements RDFWriter {
 	{
 		statementCollector.clear();
 		model.clear();
+		streamingSerialiser = null;
+
+		final JSONLDMode mode = getWriterConfig().get(JSONLDSettings.JSONLD_MODE);
+		if (getWriterConfig().get(JSONLDSettings.STREAMING) && mode == JSONLDMode.EXPAND) {
+			try {
+				streamingSerialiser = new JSONLDStreamingSerialiser(writer, getWriterConfig());
+				streamingSerialiser.startDocument();
+			}
+			catch (final IOException e) {
+				throw new RDFHandlerException("Could not render JSONLD", e);
+			}
+		}
 	}
 
 	@Override
 	public void endRDF()
 		throws RDFHandlerException
 	{
+		if (streamingSerialiser != null) {
+			try {
+				streamingSerialiser.endDocument();
+			}
+			catch (final IOException e) {
+				throw new RDFHandlerException("Could not render JSONLD", e);
+			}
+			finally {
+				streamingSerialiser = null;
+			}
+			return;
+		}
+
 		final JSONLDInternalRDFParser serialiser = new JSONLDInternalRDFParser();
 		try {
 			Object output = JsonLdProcessor.fromRDF(model, serialiser);
@@ -154,7 +185,17 @@ public class JSONLDWriter extends RDFWriterBase implements RDFWriter {
 	public void handleStatement(Statement st)
 		throws RDFHandlerException
 	{
-		statementCollector.handleStatement(st);
+		if (streamingSerialiser != null) {
+			try {
+				streamingSerialiser.handleStatement(st);
+			}
+			catch (final IOException e) {
+				throw new RDFHandlerException("Could not render JSONLD", e);
+			}
+		}
+		else {
+			statementCollector.handleStatement(st);
+		}
 	}
 
 	@Override
@@ -22,13 +22,6 @@ import org.openrdf.rio.helpers.NTriplesParserSettings;
 import org.openrdf.rio.ntriples.NTriplesParser;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
-
-import org.apache.commons.io.input.BOMInputStream;
 
 /**
  * RDF parser implementation for the {@link RDFFormat#NQUADS N-Quads} RDF
@@ -49,71 +42,17 @@ public class NQuadsParser extends NTriplesParser {
 	}
 
 	@Override
-	public synchronized void parse(final InputStream inputStream, final String baseURI)
+	protected int parseStatement(int c)
 		throws IOException, RDFParseException, RDFHandlerException
 	{
-		if (inputStream == null) {
-			throw new IllegalArgumentException("Input stream can not be 'null'");
-		}
-		// Note: baseURI will be checked in parse(Reader, String)
-
-		try {
-			parse(new InputStreamReader(new BOMInputStream(inputStream, false), Charset.forName("UTF-8")),
-					baseURI);
-		}
-		catch (UnsupportedEncodingException e) {
-			// Every platform should support the UTF-8 encoding...
-			throw new RuntimeException(e);
-		}
+		return parseQuad(c);
 	}
 
 	@Override
-	public synchronized void parse(final Reader reader, final String baseURI)
-		throws IOException, RDFParseException, RDFHandlerException
-	{
-		if (reader == null) {
-			throw new IllegalArgumentException("Reader can not be 'null'");
-		}
-		if (baseURI == null) {
-			throw new IllegalArgumentException("base URI can not be 'null'");
-		}
-
-		if (rdfHandler != null) {
-			rdfHandler.startRDF();
-		}
-
-		this.reader = reader;
-		lineNo = 1;
-
-		reportLocation(lineNo, 1);
-
-		try {
-			int c = readCodePoint();
-			c = skipWhitespace(c);
-
-			while (c != -1) {
-				if (c == '#') {
-					// Comment, ignore
-					c = skipLine(c);
-				}
-				else if (c == '\r' || c == '\n') {
-					// Empty line, ignore
-					c = skipLine(c);
-				}
-				else {
-					c = parseQuad(c);
-				}
-
-				c = skipWhitespace(c);
-			}
-		}
-		finally {
-			clear();
-		}
-
-		if (rdfHandler != null) {
-			rdfHandler.endRDF();
-		}
+	protected NTriplesParser createChunkParser() {
+		NQuadsParser parser = new NQuadsParser();
+		parser.setValueFactory(valueFactory);
+		return parser;
 	}
 
 	private int parseQuad(int c)
@@ -18,15 +18,10 @@ package org.openrdf.rio.ntriples;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashSet;
 
-import org.apache.commons.io.input.BOMInputStream;
-
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
@@ -38,14 +33,18 @@ import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RioSetting;
+import org.openrdf.rio.helpers.BNodeScope;
+import org.openrdf.rio.helpers.BasicParserSettings;
 import org.openrdf.rio.helpers.NTriplesParserSettings;
 import org.openrdf.rio.helpers.RDFParserBase;
+import org.openrdf.rio.helpers.UTF8CodePointReader;
 
 /**
  * RDF parser for N-Triples files. A specification of NTriples can be found in
  * <a href="http://www.w3.org/TR/rdf-testcases/#ntriples">this section</a> of
  * the RDF Test Cases document. This parser is not thread-safe, therefore its
- * public methods are synchronized.
+ * public methods are synchronized. Large documents can be parsed by several
+ * threads, see {@link NTriplesParserSettings#PARALLEL_PARSER_THREADS}.
  * 
  * @author Arjohn Kampman
  */
@@ -57,6 +56,11 @@ public class NTriplesParser extends RDFParserBase {
 
 	protected Reader reader;
 
+	/**
+	 * The reader, if it decodes UTF-8 bytes itself.
+	 */
+	private UTF8CodePointReader codePointReader;
+
 	protected int lineNo;
 
 	protected Resource subject;
@@ -127,13 +131,8 @@ public class NTriplesParser extends RDFParserBase {
 		}
 		// Note: baseURI will be checked in parse(Reader, String)
 
-		try {
-			parse(new InputStreamReader(new BOMInputStream(in, false), Charset.forName("UTF-8")), baseURI);
-		}
-		catch (UnsupportedEncodingException e) {
-			// Every platform should support the UTF-8 encoding...
-			throw new RuntimeException(e);
-		}
+		parse(UTF8CodePointReader.open(in, getParserConfig().get(BasicParserSettings.MEMORY_MAP_FILES)),
+				baseURI);
 	}
 
 	/**
@@ -170,29 +169,15 @@ public class NTriplesParser extends RDFParserBase {
 			rdfHandler.startRDF();
 		}
 
-		this.reader = reader;
-		lineNo = 1;
-
-		reportLocation(lineNo, 1);
-
 		try {
-			int c = readCodePoint();
-			c = skipWhitespace(c);
-
-			while (c != -1) {
-				if (c == '#') {
-					// Comment, ignore
-					c = skipLine(c);
-				}
-				else if (c == '\r' || c == '\n') {
-					// Empty line, ignore
-					c = skipLine(c);
-				}
-				else {
-					c = parseTriple(c);
-				}
-
-				c = skipWhitespace(c);
+			int threads = getParserConfig().get(NTriplesParserSettings.PARALLEL_PARSER_THREADS);
+			if (threads > 1) {
+				// the scope is created here rather than lazily on the parser
+				// threads, so that all chunks share the same scope
+				new ParallelNTriplesParser(this, threads, getBNodeScope()).parse(reader);
+			}
+			else {
+				parseLines(reader, 1);
 			}
 		}
 		finally {
@@ -204,6 +189,80 @@ public class NTriplesParser extends RDFParserBase {
 		}
 	}
 
+	/**
+	 * Parses the lines that are read from the supplied reader, reporting the
+	 * statements to the RDF handler.
+	 * 
+	 * @param reader
+	 *        The Reader from which to read the lines.
+	 * @param firstLineNo
+	 *        The line number of the first line in the document.
+	 */
+	protected void parseLines(Reader reader, int firstLineNo)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		this.reader = reader;
+		if (reader instanceof UTF8CodePointReader) {
+			codePointReader = (UTF8CodePointReader)reader;
+		}
+		else {
+			codePointReader = null;
+		}
+		lineNo = firstLineNo;
+
+		reportLocation(lineNo, 1);
+
+		int c = readCodePoint();
+		c = skipWhitespace(c);
+
+		while (c != -1) {
+			if (c == '#') {
+				// Comment, ignore
+				c = skipLine(c);
+			}
+			else if (c == '\r' || c == '\n') {
+				// Empty line, ignore
+				c = skipLine(c);
+			}
+			else {
+				c = parseStatement(c);
+			}
+
+			c = skipWhitespace(c);
+		}
+	}
+
+	/**
+	 * Parses the statement on the current line, starting with the supplied
+	 * character, and returns the first character of the next line.
+	 */
+	protected int parseStatement(int c)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		return parseTriple(c);
+	}
+
+	/**
+	 * Creates a parser for a chunk of a document that is parsed in parallel,
+	 * see {@link NTriplesParserSettings#PARALLEL_PARSER_THREADS}. Subclasses for
+	 * other line-based formats override this method to return a parser of their
+	 * own type.
+	 */
+	protected NTriplesParser createChunkParser() {
+		return new NTriplesParser(valueFactory);
+	}
+
+	/**
+	 * Creates a parser for a chunk of the document that is being parsed, with
+	 * the configuration of this parser and the supplied blank node scope.
+	 */
+	NTriplesParser newChunkParser(BNodeScope bNodeScope) {
+		NTriplesParser parser = createChunkParser();
+		parser.setParserConfig(getParserConfig());
+		parser.setBNodeScope(bNodeScope);
+		return parser;
+	}
+
 	/**
 	 * Reads characters from reader until it finds a character that is not a
 	 * space or tab, and returns this last character code point. In case the end
@@ -434,8 +493,9 @@ public class NTriplesParser extends RDFParserBase {
 			reportError("Supplied char should be a '<', is: " + new String(Character.toChars(c)),
 					NTriplesParserSettings.FAIL_ON_NTRIPLES_INVALID_LINES);
 		}
-		// Read up to the next '>' character
-		c = readCodePoint();
+		// Read up to the next '>' character, stopping at characters that need
+		// to be checked
+		c = appendUntil(uriRef, '>', ' ', '\\');
 		while (c != '>') {
 			if (c == -1) {
 				throwEOFException();
@@ -444,7 +504,7 @@ public class NTriplesParser extends RDFParserBase {
 				reportError("IRI included an unencoded space: " + new String(Character.toChars(c)),
 						NTriplesParserSettings.FAIL_ON_NTRIPLES_INVALID_LINES);
 			}
-			uriRef.append(Character.toChars(c));
+			uriRef.appendCodePoint(c);
 
 			if (c == '\\') {
 				// This escapes the next character, which might be a '>'
@@ -456,10 +516,10 @@ public class NTriplesParser extends RDFParserBase {
 					reportError("IRI includes string escapes: '\\" + c + "'",
 							NTriplesParserSettings.FAIL_ON_NTRIPLES_INVALID_LINES);
 				}
-				uriRef.append(Character.toChars(c));
+				uriRef.appendCodePoint(c);
 			}
 
-			c = readCodePoint();
+			c = appendUntil(uriRef, '>', ' ', '\\');
 		}
 
 		// c == '>', read next char
@@ -493,12 +553,12 @@ public class NTriplesParser extends RDFParserBase {
 			reportError("Expected a letter or number, found: " + new String(Character.toChars(c)),
 					NTriplesParserSettings.FAIL_ON_NTRIPLES_INVALID_LINES);
 		}
-		name.append(Character.toChars(c));
+		name.appendCodePoint(c);
 
 		// Read all following letter and numbers, they are part of the name
 		c = readCodePoint();
 		while (c != -1 && NTriplesUtil.isLetterOrNumber(c)) {
-			name.append(Character.toChars(c));
+			name.appendCodePoint(c);
 			c = readCodePoint();
 		}
 
@@ -514,12 +574,12 @@ public class NTriplesParser extends RDFParserBase {
 		}
 
 		// Read up to the next '"' character
-		c = readCodePoint();
+		c = appendUntil(value, '"', '\\', '"');
 		while (c != '"') {
 			if (c == -1) {
 				throwEOFException();
 			}
-			value.append(Character.toChars(c));
+			value.appendCodePoint(c);
 
 			if (c == '\\') {
 				// This escapes the next character, which might be a double quote
@@ -527,10 +587,10 @@ public class NTriplesParser extends RDFParserBase {
 				if (c == -1) {
 					throwEOFException();
 				}
-				value.append(Character.toChars(c));
+				value.appendCodePoint(c);
 			}
 
-			c = readCodePoint();
+			c = appendUntil(value, '"', '\\', '"');
 		}
 
 		// c == '"', read next char
@@ -546,7 +606,7 @@ public class NTriplesParser extends RDFParserBase {
 			}
 
 			while (c != -1 && c != '.' && c != '^' && c != ' ' && c != '\t') {
-				lang.append(Character.toChars(c));
+				lang.appendCodePoint(c);
 				c = readCodePoint();
 			}
 		}
@@ -604,6 +664,9 @@ public class NTriplesParser extends RDFParserBase {
 	protected int readCodePoint()
 		throws IOException
 	{
+		if (codePointReader != null) {
+			return codePointReader.readCodePoint();
+		}
 		int next = reader.read();
 		if (Character.isHighSurrogate((char)next)) {
 			next = Character.toCodePoint((char)next, (char)reader.read());
@@ -611,6 +674,28 @@ public class NTriplesParser extends RDFParserBase {
 		return next;
 	}
 	
+	/**
+	 * Reads code points and appends them to the supplied buffer, up to the
+	 * first code point that is one of the supplied ASCII delimiters.
+	 * 
+	 * @return the delimiter, which is not appended, or -1 if the end of the
+	 *         stream has been reached.
+	 */
+	private int appendUntil(StringBuilder sb, int delimiter1, int delimiter2, int delimiter3)
+		throws IOException
+	{
+		if (codePointReader != null) {
+			return codePointReader.appendUntil(sb, delimiter1, delimiter2, delimiter3);
+		}
+
+		int c = readCodePoint();
+		while (c != -1 && c != delimiter1 && c != delimiter2 && c != delimiter3) {
+			sb.appendCodePoint(c);
+			c = readCodePoint();
+		}
+		return c;
+	}
+
 	protected Literal createLiteral(String label, String lang, String datatype)
 		throws RDFParseException
 	{
@@ -750,6 +835,7 @@ public class NTriplesParser extends RDFParserBase {
 		languageTagBuffer.trimToSize();
 		datatypeUriBuffer.setLength(0);
 		datatypeUriBuffer.trimToSize();
+		codePointReader = null;
 	}
 
 	/*
@@ -760,6 +846,10 @@ public class NTriplesParser extends RDFParserBase {
 		Collection<RioSetting<?>> result = new HashSet<RioSetting<?>>(super.getSupportedSettings());
 
 		result.add(NTriplesParserSettings.FAIL_ON_NTRIPLES_INVALID_LINES);
+		result.add(NTriplesParserSettings.PARALLEL_PARSER_THREADS);
+		result.add(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE);
+		result.add(NTriplesParserSettings.PARALLEL_PARSER_PRESERVE_ORDER);
+		result.add(BasicParserSettings.MEMORY_MAP_FILES);
 
 		return result;
 	}
@@ -0,0 +1,396 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.ntriples;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.ParseErrorListener;
+import org.openrdf.rio.ParseLocationListener;
+import org.openrdf.rio.ParserConfig;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.BNodeScope;
+import org.openrdf.rio.helpers.NTriplesParserSettings;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Parses an N-Triples or N-Quads document on several threads. The document is
+ * read by the calling thread and split into chunks of whole lines, which are
+ * parsed by parsers that the owning parser creates for them. These parsers
+ * share the blank node scope of the owning parser, so that a blank node
+ * identifier refers to the same blank node in every chunk. The statements and
+ * parse errors of each chunk are reported to the handler and error listener
+ * of the owning parser on the calling thread, in the same order as a single
+ * parser would report them, unless
+ * {@link NTriplesParserSettings#PARALLEL_PARSER_PRESERVE_ORDER} is disabled.
+ */
+class ParallelNTriplesParser {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final NTriplesParser owner;
+
+	private final int threads;
+
+	private final boolean preserveOrder;
+
+	/**
+	 * The blank node scope of the owning parser, which is shared by the
+	 * parsers of all chunks.
+	 */
+	private final BNodeScope bNodeScope;
+
+	/**
+	 * The characters that have been read but not yet assigned to a chunk.
+	 */
+	private char[] buffer;
+
+	private int length;
+
+	private boolean endOfInput;
+
+	/**
+	 * The chunks that are being parsed, in document order.
+	 */
+	private final Deque<Future<ParsedChunk>> pending = new ArrayDeque<Future<ParsedChunk>>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	ParallelNTriplesParser(NTriplesParser owner, int threads, BNodeScope bNodeScope) {
+		ParserConfig config = owner.getParserConfig();
+		this.owner = owner;
+		this.threads = threads;
+		this.preserveOrder = config.get(NTriplesParserSettings.PARALLEL_PARSER_PRESERVE_ORDER);
+		this.bNodeScope = bNodeScope;
+		this.buffer = new char[Math.max(1, config.get(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE))];
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	void parse(Reader reader)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "N-Triples parser");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		CompletionService<ParsedChunk> completionService = null;
+		if (!preserveOrder) {
+			completionService = new ExecutorCompletionService<ParsedChunk>(executor);
+		}
+
+		try {
+			int lineNo = 1;
+			char[] chunk;
+			while ((chunk = nextChunk(reader)) != null) {
+				Callable<ParsedChunk> task = new ChunkTask(chunk, lineNo);
+				if (completionService != null) {
+					pending.add(completionService.submit(task));
+				}
+				else {
+					pending.add(executor.submit(task));
+				}
+				lineNo += countLines(chunk);
+
+				// limit the number of chunks that are held in memory
+				if (pending.size() >= 2 * threads) {
+					report(nextParsedChunk(completionService));
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				report(nextParsedChunk(completionService));
+			}
+		}
+		finally {
+			for (Future<ParsedChunk> future : pending) {
+				future.cancel(true);
+			}
+			pending.clear();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the next chunk of whole lines.
+	 * 
+	 * @return the characters of the chunk, or <tt>null</tt> if the end of the
+	 *         document has been reached.
+	 */
+	private char[] nextChunk(Reader reader)
+		throws IOException
+	{
+		int end = 0;
+		while (end == 0) {
+			while (!endOfInput && length < buffer.length) {
+				int read = reader.read(buffer, length, buffer.length - length);
+				if (read == -1) {
+					endOfInput = true;
+				}
+				else {
+					length += read;
+				}
+			}
+
+			if (endOfInput) {
+				if (length == 0) {
+					return null;
+				}
+				end = length;
+			}
+			else {
+				end = findChunkEnd();
+				if (end == 0) {
+					// the buffer does not contain a complete line
+					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				}
+			}
+		}
+
+		char[] chunk = Arrays.copyOf(buffer, end);
+		System.arraycopy(buffer, end, buffer, 0, length - end);
+		length -= end;
+		return chunk;
+	}
+
+	/**
+	 * Finds the position after the last line break in the buffer, not counting
+	 * a carriage return at the end of the buffer, which may be followed by a
+	 * line feed.
+	 * 
+	 * @return the end of the last complete line, or <tt>0</tt> if the buffer
+	 *         does not contain a complete line.
+	 */
+	private int findChunkEnd() {
+		for (int i = length - 1; i >= 0; i--) {
+			if (buffer[i] == '\n' || buffer[i] == '\r' && i + 1 < length) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	private static int countLines(char[] chunk) {
+		int lines = 0;
+		for (int i = 0; i < chunk.length; i++) {
+			if (chunk[i] == '\n' || chunk[i] == '\r' && (i + 1 == chunk.length || chunk[i + 1] != '\n')) {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	private ParsedChunk nextParsedChunk(CompletionService<ParsedChunk> completionService)
+		throws IOException
+	{
+		Future<ParsedChunk> future;
+		try {
+			if (completionService != null) {
+				future = completionService.take();
+				pending.remove(future);
+			}
+			else {
+				future = pending.removeFirst();
+			}
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for parser threads");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Reports the statements and errors of a chunk to the owning parser's
+	 * listeners and handler.
+	 */
+	private void report(ParsedChunk chunk)
+		throws RDFParseException, RDFHandlerException
+	{
+		ParseLocationListener locationListener = owner.getParseLocationListener();
+		if (locationListener != null) {
+			locationListener.parseLocationUpdate(chunk.firstLineNo, 1);
+		}
+
+		ParseErrorListener errorListener = owner.getParseErrorListener();
+		if (errorListener != null) {
+			for (ParseError error : chunk.errors) {
+				error.reportTo(errorListener);
+			}
+		}
+
+		RDFHandler handler = owner.getRDFHandler();
+		if (handler != null) {
+			for (Statement st : chunk.statements) {
+				handler.handleStatement(st);
+			}
+		}
+
+		if (chunk.failure != null) {
+			throw chunk.failure;
+		}
+	}
+
+	/*---------------*
+	 * Inner classes *
+	 *---------------*/
+
+	private class ChunkTask implements Callable<ParsedChunk> {
+
+		private final char[] chunk;
+
+		private final int firstLineNo;
+
+		public ChunkTask(char[] chunk, int firstLineNo) {
+			this.chunk = chunk;
+			this.firstLineNo = firstLineNo;
+		}
+
+		public ParsedChunk call()
+			throws IOException, RDFHandlerException
+		{
+			final ParsedChunk result = new ParsedChunk(firstLineNo);
+
+			NTriplesParser parser = owner.newChunkParser(bNodeScope);
+			parser.setParseErrorListener(result);
+			parser.setRDFHandler(new RDFHandlerBase() {
+
+				@Override
+				public void handleStatement(Statement st) {
+					result.statements.add(st);
+				}
+			});
+
+			try {
+				parser.parseLines(new CharArrayReader(chunk), firstLineNo);
+			}
+			catch (RDFParseException e) {
+				// report the statements before the error first
+				result.failure = e;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The statements and parse errors of a chunk. Collects the errors while the
+	 * chunk is parsed.
+	 */
+	private static class ParsedChunk implements ParseErrorListener {
+
+		final int firstLineNo;
+
+		final List<Statement> statements = new ArrayList<Statement>();
+
+		final List<ParseError> errors = new ArrayList<ParseError>();
+
+		RDFParseException failure;
+
+		public ParsedChunk(int firstLineNo) {
+			this.firstLineNo = firstLineNo;
+		}
+
+		public void warning(String msg, int lineNo, int colNo) {
+			errors.add(new ParseError(ParseError.WARNING, msg, lineNo, colNo));
+		}
+
+		public void error(String msg, int lineNo, int colNo) {
+			errors.add(new ParseError(ParseError.ERROR, msg, lineNo, colNo));
+		}
+
+		public void fatalError(String msg, int lineNo, int colNo) {
+			errors.add(new ParseError(ParseError.FATAL_ERROR, msg, lineNo, colNo));
+		}
+	}
+
+	private static class ParseError {
+
+		static final int WARNING = 0;
+
+		static final int ERROR = 1;
+
+		static final int FATAL_ERROR = 2;
+
+		private final int severity;
+
+		private final String msg;
+
+		private final int lineNo;
+
+		private final int colNo;
+
+		public ParseError(int severity, String msg, int lineNo, int colNo) {
+			this.severity = severity;
+			this.msg = msg;
+			this.lineNo = lineNo;
+			this.colNo = colNo;
+		}
+
+		public void reportTo(ParseErrorListener listener) {
+			if (severity == WARNING) {
+				listener.warning(msg, lineNo, colNo);
+			}
+			else if (severity == ERROR) {
+				listener.error(msg, lineNo, colNo);
+			}
+			else {
+				listener.fatalError(msg, lineNo, colNo);
+			}
+		}
+	}
+}
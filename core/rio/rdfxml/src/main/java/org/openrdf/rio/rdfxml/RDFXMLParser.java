@@ -28,6 +28,11 @@ import java.util.Set;
 import java.util.Stack;
 
 import javax.xml.XMLConstants;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLReporter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.sax.SAXResult;
 
 import org.apache.commons.io.input.BOMInputStream;
@@ -112,6 +117,12 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 	 */
 	private SAXFilter saxFilter;
 
+	/**
+	 * The filter that is reading the current document if it is parsed with an
+	 * XML stream reader, see {@link XMLParserSettings#USE_XML_STREAM_READER}.
+	 */
+	private StAXFilter staxFilter;
+
 	/**
 	 * The base URI of the document. This variable is set when
 	 * <tt>parse(inputStream, baseURI)</tt> is called and will not be changed
@@ -227,6 +238,11 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 			throw new IllegalArgumentException("Base URI cannot be 'null'");
 		}
 
+		if (useXMLStreamReader()) {
+			parseWithStreamReader(new BOMInputStream(in, false), null, baseURI);
+			return;
+		}
+
 		InputSource inputSource = new InputSource(new BOMInputStream(in, false));
 		inputSource.setSystemId(baseURI);
 
@@ -263,6 +279,11 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 			throw new IllegalArgumentException("Base URI cannot be 'null'");
 		}
 
+		if (useXMLStreamReader()) {
+			parseWithStreamReader(null, reader, baseURI);
+			return;
+		}
+
 		InputSource inputSource = new InputSource(reader);
 		inputSource.setSystemId(baseURI);
 
@@ -391,6 +412,120 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 		}
 	}
 
+	private boolean useXMLStreamReader() {
+		return getParserConfig().get(XMLParserSettings.USE_XML_STREAM_READER)
+				&& !getParserConfig().isSet(XMLParserSettings.CUSTOM_XML_READER);
+	}
+
+	/**
+	 * Parses a document with an {@link XMLStreamReader} from the
+	 * {@link XMLInputFactory} of the platform instead of with a SAX parser.
+	 * Exactly one of <tt>in</tt> and <tt>reader</tt> must be non-null.
+	 */
+	private void parseWithStreamReader(InputStream in, Reader reader, String baseURI)
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		XMLStreamReader streamReader = null;
+		try {
+			documentURI = baseURI;
+			staxFilter = new StAXFilter(this);
+
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+
+			if (getParserConfig().get(XMLParserSettings.SECURE_PROCESSING)) {
+				// Do not resolve external entities, analogous to the secure
+				// processing feature of SAX parsers
+				setStreamReaderProperty(factory, XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+				setStreamReaderProperty(factory, XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			}
+			else if (getParserConfig().isSet(XMLParserSettings.LOAD_EXTERNAL_DTD)
+					&& !getParserConfig().get(XMLParserSettings.LOAD_EXTERNAL_DTD))
+			{
+				setStreamReaderProperty(factory, XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			}
+
+			factory.setXMLReporter(new XMLReporter() {
+
+				public void report(String message, String errorType, Object relatedInformation,
+						Location location)
+					throws XMLStreamException
+				{
+					// non-fatal errors, fatal errors are thrown by the stream reader
+					try {
+						if (location != null) {
+							reportError(message, location.getLineNumber(), location.getColumnNumber(),
+									XMLParserSettings.FAIL_ON_SAX_NON_FATAL_ERRORS);
+						}
+						else {
+							reportError(message, XMLParserSettings.FAIL_ON_SAX_NON_FATAL_ERRORS);
+						}
+					}
+					catch (RDFParseException e) {
+						throw new XMLStreamException(e);
+					}
+				}
+			});
+
+			if (in != null) {
+				streamReader = factory.createXMLStreamReader(baseURI, in);
+			}
+			else {
+				streamReader = factory.createXMLStreamReader(baseURI, reader);
+			}
+
+			staxFilter.parse(streamReader, baseURI,
+					getParserConfig().get(XMLParserSettings.PARSE_STANDALONE_DOCUMENTS));
+		}
+		catch (XMLStreamException e) {
+			Throwable wrappedExc = e.getNestedException();
+			if (wrappedExc == null) {
+				wrappedExc = e.getCause();
+			}
+
+			if (wrappedExc instanceof RDFParseException) {
+				throw (RDFParseException)wrappedExc;
+			}
+			else if (wrappedExc instanceof RDFHandlerException) {
+				throw (RDFHandlerException)wrappedExc;
+			}
+			else if (wrappedExc instanceof IOException) {
+				throw (IOException)wrappedExc;
+			}
+			else if (e.getLocation() != null) {
+				reportFatalError(e, e.getLocation().getLineNumber(), e.getLocation().getColumnNumber());
+			}
+			else {
+				reportFatalError(e);
+			}
+		}
+		finally {
+			// Clean up
+			if (streamReader != null) {
+				try {
+					streamReader.close();
+				}
+				catch (XMLStreamException e) {
+					// ignore, the document has been read
+				}
+			}
+			staxFilter = null;
+			xmlLang = null;
+			elementStack.clear();
+			usedIDs.clear();
+			clear();
+		}
+	}
+
+	private void setStreamReaderProperty(XMLInputFactory factory, String name, Object value) {
+		try {
+			factory.setProperty(name, value);
+		}
+		catch (IllegalArgumentException e) {
+			reportWarning(String.format("%s is not a supported StAX property.", name));
+		}
+	}
+
 	/**
 	 * Returns a collection of settings that will always be set as XML parser
 	 * properties using {@link XMLReader#setProperty(String, Object)}
@@ -470,6 +605,7 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 		results.add(XMLParserSettings.FAIL_ON_NON_STANDARD_ATTRIBUTES);
 		results.add(XMLParserSettings.FAIL_ON_SAX_NON_FATAL_ERRORS);
 		results.add(XMLParserSettings.PARSE_STANDALONE_DOCUMENTS);
+		results.add(XMLParserSettings.USE_XML_STREAM_READER);
 
 		return results;
 	}
@@ -847,7 +983,12 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 					// The next string is an rdf:XMLLiteral
 					predicate.setDatatype(RDF.XMLLITERAL);
 
-					saxFilter.setParseLiteralMode();
+					if (staxFilter != null) {
+						staxFilter.setParseLiteralMode();
+					}
+					else {
+						saxFilter.setParseLiteralMode();
+					}
 				}
 			}
 		}
@@ -1232,7 +1373,7 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 	protected Literal createLiteral(String label, String lang, URI datatype)
 		throws RDFParseException
 	{
-		Locator locator = saxFilter.getLocator();
+		Locator locator = getLocator();
 		if (locator != null) {
 			return createLiteral(label, lang, datatype, locator.getLineNumber(), locator.getColumnNumber());
 		}
@@ -1247,7 +1388,7 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 	 */
 	@Override
 	protected void reportWarning(String msg) {
-		Locator locator = saxFilter.getLocator();
+		Locator locator = getLocator();
 		if (locator != null) {
 			reportWarning(msg, locator.getLineNumber(), locator.getColumnNumber());
 		}
@@ -1264,7 +1405,7 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 	protected void reportError(String msg, RioSetting<Boolean> setting)
 		throws RDFParseException
 	{
-		Locator locator = saxFilter.getLocator();
+		Locator locator = getLocator();
 		if (locator != null) {
 			reportError(msg, locator.getLineNumber(), locator.getColumnNumber(), setting);
 		}
@@ -1281,7 +1422,7 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 	protected void reportFatalError(String msg)
 		throws RDFParseException
 	{
-		Locator locator = saxFilter.getLocator();
+		Locator locator = getLocator();
 		if (locator != null) {
 			reportFatalError(msg, locator.getLineNumber(), locator.getColumnNumber());
 		}
@@ -1298,7 +1439,7 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 	protected void reportFatalError(Exception e)
 		throws RDFParseException
 	{
-		Locator locator = saxFilter.getLocator();
+		Locator locator = getLocator();
 		if (locator != null) {
 			reportFatalError(e, locator.getLineNumber(), locator.getColumnNumber());
 		}
@@ -1307,6 +1448,13 @@ public class RDFXMLParser extends RDFParserBase implements ErrorHandler {
 		}
 	}
 
+	private Locator getLocator() {
+		if (staxFilter != null) {
+			return staxFilter.getLocator();
+		}
+		return saxFilter.getLocator();
+	}
+
 	/*-----------------------------------------------*
 	 * Inner classes NodeElement and PropertyElement *
 	 *-----------------------------------------------*/
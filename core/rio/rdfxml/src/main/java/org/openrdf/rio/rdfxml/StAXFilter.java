@@ -0,0 +1,729 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio.rdfxml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Locator;
+
+import info.aduna.net.ParsedURI;
+import info.aduna.xml.XMLUtil;
+
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.ParseLocationListener;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.XMLParserSettings;
+
+/**
+ * The StAX counterpart of {@link SAXFilter}: reads the events of an
+ * {@link XMLStreamReader} and reports them to the RDF parser in the same way,
+ * combining a start tag that is directly followed by an end tag into a single
+ * call to emptyElement(). Namespace declarations are kept with the elements
+ * that declare them, and only the elements that enclose the current element
+ * are kept in memory.
+ */
+class StAXFilter {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	/**
+	 * The RDF parser to supply the filtered events to.
+	 */
+	private final RDFXMLParser rdfParser;
+
+	/**
+	 * The stream reader that is currently being read.
+	 */
+	private XMLStreamReader reader;
+
+	/**
+	 * A Locator for the position of the stream reader.
+	 */
+	private final Locator locator = new StreamLocator();
+
+	/**
+	 * Stack of ElementInfo objects.
+	 */
+	private final List<ElementInfo> elInfoStack = new ArrayList<ElementInfo>();
+
+	/**
+	 * StringBuilder used to collect text during parsing.
+	 */
+	private final StringBuilder charBuf = new StringBuilder(512);
+
+	/**
+	 * Flag indicating whether charBuf contains any characters other than
+	 * whitespace.
+	 */
+	private boolean charBufHasText = false;
+
+	/**
+	 * The document's URI.
+	 */
+	private ParsedURI documentURI;
+
+	/**
+	 * Flag indicating whether the parser parses stand-alone RDF documents. In
+	 * stand-alone documents, the rdf:RDF element is optional if it contains just
+	 * one element.
+	 */
+	private boolean parseStandAloneDocuments = true;
+
+	/**
+	 * Variable used to defer reporting of start tags, to be able to combine a
+	 * start tag and an immediately following end tag to a single call to
+	 * emptyElement().
+	 */
+	private ElementInfo deferredElement = null;
+
+	/**
+	 * Flag indicating whether we're currently parsing RDF elements.
+	 */
+	private boolean inRDFContext;
+
+	/**
+	 * The number of elements on the stack that are in the RDF context.
+	 */
+	private int rdfContextStackHeight;
+
+	/**
+	 * Flag indicating whether we're currently parsing an XML literal.
+	 */
+	private boolean parseLiteralMode = false;
+
+	/**
+	 * The number of elements on the stack that are part of an XML literal.
+	 */
+	private int xmlLiteralStackHeight;
+
+	/**
+	 * The prefixes that are defined in the XML literal itself (this in contrast
+	 * to the namespaces from the XML literal's context).
+	 */
+	private final List<String> xmlLiteralPrefixes = new ArrayList<String>();
+
+	/**
+	 * The prefixes that were used in an XML literal, but that were not defined
+	 * in it (but rather in the XML literal's context).
+	 */
+	private final List<String> unknownPrefixesInXMLLiteral = new ArrayList<String>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public StAXFilter(RDFXMLParser rdfParser) {
+		this.rdfParser = rdfParser;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets a Locator for the current position of the stream reader, or
+	 * <tt>null</tt> if no document is being parsed.
+	 */
+	public Locator getLocator() {
+		return reader == null ? null : locator;
+	}
+
+	public void clear() {
+		reader = null;
+		elInfoStack.clear();
+		charBuf.setLength(0);
+		charBufHasText = false;
+		documentURI = null;
+		deferredElement = null;
+
+		inRDFContext = false;
+		rdfContextStackHeight = 0;
+
+		parseLiteralMode = false;
+		xmlLiteralStackHeight = 0;
+
+		xmlLiteralPrefixes.clear();
+		unknownPrefixesInXMLLiteral.clear();
+	}
+
+	/**
+	 * Reads all events of the supplied stream reader and reports them to the
+	 * RDF parser.
+	 */
+	public void parse(XMLStreamReader reader, String documentURI, boolean parseStandAloneDocuments)
+		throws XMLStreamException, RDFParseException, RDFHandlerException
+	{
+		this.reader = reader;
+		this.documentURI = createBaseURI(documentURI);
+		this.parseStandAloneDocuments = parseStandAloneDocuments;
+
+		try {
+			ParseLocationListener pll = rdfParser.getParseLocationListener();
+			if (pll != null) {
+				pll.parseLocationUpdate(locator.getLineNumber(), locator.getColumnNumber());
+			}
+
+			rdfParser.startDocument();
+
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						startElement();
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						endElement();
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+						characters();
+						break;
+					case XMLStreamConstants.SPACE:
+						ignorableWhitespace();
+						break;
+					default:
+						// ignore comments, processing instructions and DTD events
+				}
+			}
+
+			rdfParser.endDocument();
+		}
+		finally {
+			clear();
+		}
+	}
+
+	private void startElement()
+		throws RDFParseException, RDFHandlerException
+	{
+		if (deferredElement != null) {
+			// The next call could set parseLiteralMode to true!
+			reportDeferredStartElement();
+		}
+
+		String prefix = nonNull(reader.getPrefix());
+		String localName = reader.getLocalName();
+		String qName = createQName(prefix, localName);
+
+		int namespaceCount = reader.getNamespaceCount();
+		RDFHandler rdfHandler = rdfParser.getRDFHandler();
+		for (int i = 0; i < namespaceCount; i++) {
+			String nsPrefix = nonNull(reader.getNamespacePrefix(i));
+
+			if (parseLiteralMode) {
+				// This namespace is introduced inside an XML literal
+				xmlLiteralPrefixes.add(nsPrefix);
+			}
+
+			if (rdfHandler != null) {
+				rdfHandler.handleNamespace(nsPrefix, nonNull(reader.getNamespaceURI(i)));
+			}
+		}
+
+		if (parseLiteralMode) {
+			appendStartTag(prefix, qName);
+			xmlLiteralStackHeight++;
+			return;
+		}
+
+		String namespaceURI = nonNull(reader.getNamespaceURI());
+		boolean isRDF = localName.equals("RDF") && namespaceURI.equals(RDF.NAMESPACE);
+
+		ElementInfo elInfo = new ElementInfo(peekStack(), qName, namespaceURI, localName);
+		elInfo.setNamespaceMappings(reader);
+
+		if (!inRDFContext && parseStandAloneDocuments && !isRDF) {
+			// Stand-alone document that does not start with an rdf:RDF root
+			// element. Assume this root element is omitted.
+			inRDFContext = true;
+		}
+
+		if (!inRDFContext) {
+			// Check for presence of xml:base and xlm:lang attributes.
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				if (XMLConstants.XML_NS_URI.equals(reader.getAttributeNamespace(i))) {
+					String attLocalName = reader.getAttributeLocalName(i);
+					if ("base".equals(attLocalName)) {
+						elInfo.setBaseURI(reader.getAttributeValue(i));
+					}
+					else if ("lang".equals(attLocalName)) {
+						elInfo.xmlLang = reader.getAttributeValue(i);
+					}
+				}
+			}
+
+			elInfoStack.add(elInfo);
+
+			// Check if we are entering RDF context now.
+			if (isRDF) {
+				inRDFContext = true;
+				rdfContextStackHeight = 0;
+			}
+		}
+		else {
+			// We're parsing RDF elements.
+			checkAndCopyAttributes(elInfo);
+
+			// Don't report the new element to the RDF parser just yet.
+			deferredElement = elInfo;
+		}
+
+		clearCharBuf();
+	}
+
+	private void reportDeferredStartElement()
+		throws RDFParseException, RDFHandlerException
+	{
+		elInfoStack.add(deferredElement);
+		rdfContextStackHeight++;
+
+		rdfParser.setBaseURI(deferredElement.baseURI);
+		rdfParser.setXMLLang(deferredElement.xmlLang);
+
+		rdfParser.startElement(deferredElement.namespaceURI, deferredElement.localName, deferredElement.qName,
+				deferredElement.atts);
+
+		deferredElement = null;
+	}
+
+	private void endElement()
+		throws RDFParseException, RDFHandlerException
+	{
+		// Note: unlike SAXFilter, there is no need to check that end tags match
+		// their start tags, stream readers report mismatched tags as fatal
+		// errors.
+
+		if (!inRDFContext) {
+			popStack();
+			clearCharBuf();
+			return;
+		}
+
+		if (deferredElement == null && rdfContextStackHeight == 0) {
+			// This end tag removes the element that signaled the start
+			// of the RDF context (i.e. <rdf:RDF>) from the stack.
+			inRDFContext = false;
+
+			popStack();
+			clearCharBuf();
+			return;
+		}
+
+		// We're still in RDF context.
+
+		if (parseLiteralMode && xmlLiteralStackHeight > 0) {
+			appendEndTag(createQName(nonNull(reader.getPrefix()), reader.getLocalName()));
+			xmlLiteralStackHeight--;
+
+			// The namespaces that are declared by this element go out of scope
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				xmlLiteralPrefixes.remove(nonNull(reader.getNamespacePrefix(i)));
+			}
+			return;
+		}
+
+		// Check for any deferred start elements
+		if (deferredElement != null) {
+			// Start element still deferred, this is an empty element
+			rdfParser.setBaseURI(deferredElement.baseURI);
+			rdfParser.setXMLLang(deferredElement.xmlLang);
+
+			rdfParser.emptyElement(deferredElement.namespaceURI, deferredElement.localName,
+					deferredElement.qName, deferredElement.atts);
+
+			deferredElement = null;
+		}
+		else {
+			if (parseLiteralMode) {
+				// Insert any used namespace prefixes from the XML literal's
+				// context that are not defined in the XML literal itself.
+				insertUsedContextPrefixes();
+
+				rdfParser.text(charBuf.toString());
+
+				parseLiteralMode = false;
+			}
+			else if (charBufHasText) {
+				rdfParser.text(charBuf.toString().trim());
+			}
+
+			clearCharBuf();
+
+			// Handle the end tag
+			ElementInfo elInfo = popStack();
+			rdfContextStackHeight--;
+
+			rdfParser.endElement(elInfo.namespaceURI, elInfo.localName, elInfo.qName);
+		}
+	}
+
+	private void characters()
+		throws RDFParseException, RDFHandlerException
+	{
+		if (!inRDFContext) {
+			return;
+		}
+
+		// verify if we need to switch to XMLLiteral processing mode immediately.
+		if (deferredElement != null && !parseLiteralMode) {
+			Att parseType = deferredElement.atts.getAtt(RDF.NAMESPACE, "parseType");
+			if (parseType != null && parseType.getValue().equals("Literal")) {
+				setParseLiteralMode();
+			}
+		}
+
+		char[] text = reader.getTextCharacters();
+		int start = reader.getTextStart();
+		int length = reader.getTextLength();
+
+		if (parseLiteralMode) {
+			if (deferredElement != null) {
+				reportDeferredStartElement();
+			}
+
+			// Characters like '<', '>', and '&' must be escaped to
+			// prevent breaking the XML text.
+			charBuf.append(XMLUtil.escapeCharacterData(new String(text, start, length)));
+		}
+		else {
+			charBuf.append(text, start, length);
+
+			if (!charBufHasText) {
+				for (int i = start; i < start + length; i++) {
+					if (text[i] > ' ') {
+						charBufHasText = true;
+						break;
+					}
+				}
+			}
+
+			// if the element is not empty we need to process it as such.
+			// Otherwise, we keep the start element deferred for now.
+			if (deferredElement != null && charBufHasText) {
+				reportDeferredStartElement();
+			}
+		}
+	}
+
+	private void ignorableWhitespace() {
+		if (parseLiteralMode) {
+			charBuf.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+		}
+	}
+
+	private void checkAndCopyAttributes(ElementInfo elInfo)
+		throws RDFParseException
+	{
+		int attCount = reader.getAttributeCount();
+		Atts atts = new Atts(attCount);
+
+		for (int i = 0; i < attCount; i++) {
+			String prefix = nonNull(reader.getAttributePrefix(i));
+			String localName = reader.getAttributeLocalName(i);
+			String qName = createQName(prefix, localName);
+			String value = reader.getAttributeValue(i);
+
+			// attributes starting with "xml" should be ignored, except for the
+			// ones that are handled by this parser (xml:lang and xml:base).
+			if (qName.startsWith("xml")) {
+				if (qName.equals("xml:lang")) {
+					elInfo.xmlLang = value;
+				}
+				else if (qName.equals("xml:base")) {
+					elInfo.setBaseURI(value);
+				}
+			}
+			else {
+				String namespace = nonNull(reader.getAttributeNamespace(i));
+
+				// A limited set of unqualified attributes must be supported by
+				// parsers, as is specified in section 6.1.4 of the spec
+				if ("".equals(namespace)) {
+					if (localName.equals("ID") || localName.equals("about") || localName.equals("resource")
+							|| localName.equals("parseType") || localName.equals("type"))
+					{
+						rdfParser.reportWarning("use of unqualified attribute " + localName
+								+ " has been deprecated");
+						namespace = RDF.NAMESPACE;
+					}
+				}
+
+				if ("".equals(namespace)) {
+					rdfParser.reportError("unqualified attribute '" + qName + "' not allowed",
+							XMLParserSettings.FAIL_ON_INVALID_QNAME);
+				}
+
+				atts.addAtt(new Att(namespace, localName, qName, value));
+			}
+		}
+
+		elInfo.atts = atts;
+	}
+
+	public void setParseLiteralMode() {
+		parseLiteralMode = true;
+		xmlLiteralStackHeight = 0;
+
+		// All currently known namespace prefixes are
+		// new for this XML literal.
+		xmlLiteralPrefixes.clear();
+		unknownPrefixesInXMLLiteral.clear();
+	}
+
+	private void clearCharBuf() {
+		charBuf.setLength(0);
+		charBufHasText = false;
+	}
+
+	private static String createQName(String prefix, String localName) {
+		if (prefix.length() == 0) {
+			return localName;
+		}
+		return prefix + ":" + localName;
+	}
+
+	private static String nonNull(String s) {
+		return s == null ? "" : s;
+	}
+
+	private ParsedURI createBaseURI(String uriString) {
+		ParsedURI uri = new ParsedURI(uriString);
+		uri.normalize();
+		return uri;
+	}
+
+	/*---------------------------------*
+	 * Methods related to XML literals *
+	 *---------------------------------*/
+
+	/**
+	 * Appends the current start tag to charBuf, with the namespace
+	 * declarations of the element. This method is used during the parsing of
+	 * an XML Literal.
+	 */
+	private void appendStartTag(String prefix, String qName) {
+		// Write start of start tag
+		charBuf.append('<').append(qName);
+
+		// Write any new namespace prefix definitions
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			appendNamespaceDecl(charBuf, nonNull(reader.getNamespacePrefix(i)),
+					nonNull(reader.getNamespaceURI(i)));
+		}
+
+		// Write attributes
+		int attCount = reader.getAttributeCount();
+		for (int i = 0; i < attCount; i++) {
+			String attQName = createQName(nonNull(reader.getAttributePrefix(i)), reader.getAttributeLocalName(i));
+			appendAttribute(charBuf, attQName, reader.getAttributeValue(i));
+		}
+
+		// Write end of start tag
+		charBuf.append('>');
+
+		// Check for any used prefixes that are not
+		// defined in the XML literal itself
+		if (!xmlLiteralPrefixes.contains(prefix) && !unknownPrefixesInXMLLiteral.contains(prefix)) {
+			unknownPrefixesInXMLLiteral.add(prefix);
+		}
+	}
+
+	/**
+	 * Appends an end tag to charBuf. This method is used during the parsing of
+	 * an XML Literal.
+	 */
+	private void appendEndTag(String qName) {
+		charBuf.append("</").append(qName).append('>');
+	}
+
+	/**
+	 * Inserts prefix mappings from an XML Literal's context for all prefixes
+	 * that are used in the XML Literal and that are not defined in the XML
+	 * Literal itself.
+	 */
+	private void insertUsedContextPrefixes() {
+		int unknownPrefixesCount = unknownPrefixesInXMLLiteral.size();
+
+		if (unknownPrefixesCount > 0) {
+			// Create a String with all needed context prefixes
+			StringBuilder contextPrefixes = new StringBuilder(1024);
+			ElementInfo topElement = peekStack();
+
+			for (int i = 0; i < unknownPrefixesCount; i++) {
+				String prefix = unknownPrefixesInXMLLiteral.get(i);
+				String namespace = topElement.getNamespace(prefix);
+				if (namespace != null) {
+					appendNamespaceDecl(contextPrefixes, prefix, namespace);
+				}
+			}
+
+			// Insert this String before the first '>' character
+			int endOfFirstStartTag = charBuf.indexOf(">");
+			charBuf.insert(endOfFirstStartTag, contextPrefixes.toString());
+		}
+
+		unknownPrefixesInXMLLiteral.clear();
+	}
+
+	private void appendNamespaceDecl(StringBuilder sb, String prefix, String namespace) {
+		String attName = "xmlns";
+
+		if (!"".equals(prefix)) {
+			attName += ":" + prefix;
+		}
+
+		appendAttribute(sb, attName, namespace);
+	}
+
+	private void appendAttribute(StringBuilder sb, String name, String value) {
+		sb.append(' ');
+		sb.append(name);
+		sb.append("=\"");
+		sb.append(XMLUtil.escapeDoubleQuotedAttValue(value));
+		sb.append('"');
+	}
+
+	/*------------------------------------------*
+	 * Methods related to the ElementInfo stack *
+	 *------------------------------------------*/
+
+	private ElementInfo peekStack() {
+		if (elInfoStack.isEmpty()) {
+			return null;
+		}
+		return elInfoStack.get(elInfoStack.size() - 1);
+	}
+
+	private ElementInfo popStack() {
+		return elInfoStack.remove(elInfoStack.size() - 1);
+	}
+
+	/*----------------------------*
+	 * Internal class ElementInfo *
+	 *----------------------------*/
+
+	private class ElementInfo {
+
+		public final String qName;
+
+		public final String namespaceURI;
+
+		public final String localName;
+
+		public Atts atts;
+
+		public final ElementInfo parent;
+
+		/**
+		 * The prefixes and namespaces that are declared by this element, in
+		 * alternating order, or <tt>null</tt> if it does not declare any.
+		 */
+		private String[] namespaceMappings;
+
+		public ParsedURI baseURI;
+
+		public String xmlLang;
+
+		public ElementInfo(ElementInfo parent, String qName, String namespaceURI, String localName) {
+			this.parent = parent;
+			this.qName = qName;
+			this.namespaceURI = namespaceURI;
+			this.localName = localName;
+
+			if (parent != null) {
+				// Inherit baseURI and xmlLang from parent
+				this.baseURI = parent.baseURI;
+				this.xmlLang = parent.xmlLang;
+			}
+			else {
+				this.baseURI = documentURI;
+				this.xmlLang = "";
+			}
+		}
+
+		public void setBaseURI(String uriString) {
+			// Resolve the specified base URI against the inherited base URI
+			baseURI = baseURI.resolve(createBaseURI(uriString));
+		}
+
+		public void setNamespaceMappings(XMLStreamReader reader) {
+			int namespaceCount = reader.getNamespaceCount();
+			if (namespaceCount > 0) {
+				namespaceMappings = new String[2 * namespaceCount];
+				for (int i = 0; i < namespaceCount; i++) {
+					namespaceMappings[2 * i] = nonNull(reader.getNamespacePrefix(i));
+					namespaceMappings[2 * i + 1] = nonNull(reader.getNamespaceURI(i));
+				}
+			}
+		}
+
+		public String getNamespace(String prefix) {
+			for (ElementInfo elInfo = this; elInfo != null; elInfo = elInfo.parent) {
+				String[] mappings = elInfo.namespaceMappings;
+				if (mappings != null) {
+					for (int i = 0; i < mappings.length; i += 2) {
+						if (mappings[i].equals(prefix)) {
+							return mappings[i + 1];
+						}
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/*------------------------------*
+	 * Internal class StreamLocator *
+	 *------------------------------*/
+
+	/**
+	 * A Locator for the position of the stream reader, so that the RDF parser
+	 * can report locations in the same way as for SAX parsers.
+	 */
+	private class StreamLocator implements Locator {
+
+		public String getPublicId() {
+			Location location = reader.getLocation();
+			return location == null ? null : location.getPublicId();
+		}
+
+		public String getSystemId() {
+			Location location = reader.getLocation();
+			return location == null ? null : location.getSystemId();
+		}
+
+		public int getLineNumber() {
+			Location location = reader.getLocation();
+			return location == null ? -1 : location.getLineNumber();
+		}
+
+		public int getColumnNumber() {
+			Location location = reader.getLocation();
+			return location == null ? -1 : location.getColumnNumber();
+		}
+	}
+}
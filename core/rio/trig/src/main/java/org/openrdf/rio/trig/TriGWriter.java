@@ -103,13 +103,9 @@ public class TriGWriter extends TurtleWriter {
 	}
 
 	@Override
-	public void handleStatement(Statement st)
+	protected void writeStatement(Statement st)
 		throws RDFHandlerException
 	{
-		if (!writingStarted) {
-			throw new RuntimeException("Document writing has not yet been started");
-		}
-
 		try {
 			Resource context = st.getContext();
 
@@ -137,7 +133,7 @@ public class TriGWriter extends TurtleWriter {
 			throw new RDFHandlerException(e);
 		}
 
-		super.handleStatement(st);
+		super.writeStatement(st);
 	}
 
 	@Override
@@ -18,17 +18,13 @@ package org.openrdf.rio.turtle;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PushbackReader;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.apache.commons.io.input.BOMInputStream;
-
 import info.aduna.text.ASCIIUtil;
 
 import org.openrdf.model.BNode;
@@ -48,6 +44,7 @@ import org.openrdf.rio.RioSetting;
 import org.openrdf.rio.helpers.BasicParserSettings;
 import org.openrdf.rio.helpers.RDFParserBase;
 import org.openrdf.rio.helpers.TurtleParserSettings;
+import org.openrdf.rio.helpers.UTF8CodePointReader;
 
 /**
  * RDF parser for <a href="http://www.dajobe.org/2004/01/turtle/">Turtle</a>
@@ -79,6 +76,12 @@ public class TurtleParser extends RDFParserBase {
 
 	private PushbackReader reader;
 
+	/**
+	 * The reader, if it decodes UTF-8 bytes itself, in which case it is used
+	 * instead of {@link #reader}.
+	 */
+	private UTF8CodePointReader codePointReader;
+
 	protected Resource subject;
 
 	protected URI predicate;
@@ -122,6 +125,7 @@ public class TurtleParser extends RDFParserBase {
 	public Collection<RioSetting<?>> getSupportedSettings() {
 		Set<RioSetting<?>> result = new HashSet<RioSetting<?>>(super.getSupportedSettings());
 		result.add(TurtleParserSettings.CASE_INSENSITIVE_DIRECTIVES);
+		result.add(BasicParserSettings.MEMORY_MAP_FILES);
 		return result;
 	}
 
@@ -154,13 +158,8 @@ public class TurtleParser extends RDFParserBase {
 		}
 		// Note: baseURI will be checked in parse(Reader, String)
 
-		try {
-			parse(new InputStreamReader(new BOMInputStream(in, false), "UTF-8"), baseURI);
-		}
-		catch (UnsupportedEncodingException e) {
-			// Every platform should support the UTF-8 encoding...
-			throw new RuntimeException(e);
-		}
+		parse(UTF8CodePointReader.open(in, getParserConfig().get(BasicParserSettings.MEMORY_MAP_FILES)),
+				baseURI);
 	}
 
 	/**
@@ -199,8 +198,15 @@ public class TurtleParser extends RDFParserBase {
 		// Start counting lines at 1:
 		lineNumber = 1;
 
-		// Allow at most 8 characters to be pushed back:
-		this.reader = new PushbackReader(reader, 8);
+		if (reader instanceof UTF8CodePointReader) {
+			this.codePointReader = (UTF8CodePointReader)reader;
+			this.reader = null;
+		}
+		else {
+			this.codePointReader = null;
+			// Allow at most 8 characters to be pushed back:
+			this.reader = new PushbackReader(reader, 8);
+		}
 
 		// Store normalized base URI
 		setBaseURI(baseURI);
@@ -339,7 +345,7 @@ public class TurtleParser extends RDFParserBase {
 				throwEOFException();
 			}
 
-			prefixID.append(Character.toChars(c));
+			prefixID.appendCodePoint(c);
 		}
 
 		skipWSC();
@@ -692,7 +698,7 @@ public class TurtleParser extends RDFParserBase {
 						BasicParserSettings.VERIFY_LANGUAGE_TAGS);
 			}
 
-			lang.append(Character.toChars(c));
+			lang.appendCodePoint(c);
 
 			c = readCodePoint();
 			while (!TurtleUtil.isWhitespace(c)) {
@@ -706,7 +712,7 @@ public class TurtleParser extends RDFParserBase {
 					reportError("Illegal language tag char: '" + new String(Character.toChars(c)) + "'",
 							BasicParserSettings.VERIFY_LANGUAGE_TAGS);
 				}
-				lang.append(Character.toChars(c));
+				lang.appendCodePoint(c);
 				c = readCodePoint();
 			}
 
@@ -788,7 +794,7 @@ public class TurtleParser extends RDFParserBase {
 		StringBuilder sb = new StringBuilder(32);
 
 		while (true) {
-			int c = readCodePoint();
+			int c = appendUntil(sb, closingCharacter, '\\', closingCharacter);
 
 			if (c == closingCharacter) {
 				break;
@@ -797,7 +803,7 @@ public class TurtleParser extends RDFParserBase {
 				throwEOFException();
 			}
 
-			sb.append(Character.toChars(c));
+			sb.appendCodePoint(c);
 
 			if (c == '\\') {
 				// This escapes the next character, which might be a '"'
@@ -805,7 +811,7 @@ public class TurtleParser extends RDFParserBase {
 				if (c == -1) {
 					throwEOFException();
 				}
-				sb.append(Character.toChars(c));
+				sb.appendCodePoint(c);
 			}
 		}
 
@@ -825,7 +831,12 @@ public class TurtleParser extends RDFParserBase {
 		int c;
 
 		while (doubleQuoteCount < 3) {
-			c = readCodePoint();
+			if (doubleQuoteCount == 0) {
+				c = appendUntil(sb, closingCharacter, '\\', closingCharacter);
+			}
+			else {
+				c = readCodePoint();
+			}
 
 			if (c == -1) {
 				throwEOFException();
@@ -837,7 +848,7 @@ public class TurtleParser extends RDFParserBase {
 				doubleQuoteCount = 0;
 			}
 
-			sb.append(Character.toChars(c));
+			sb.appendCodePoint(c);
 
 			if (c == '\\') {
 				// This escapes the next character, which might be a '"'
@@ -845,7 +856,7 @@ public class TurtleParser extends RDFParserBase {
 				if (c == -1) {
 					throwEOFException();
 				}
-				sb.append(Character.toChars(c));
+				sb.appendCodePoint(c);
 			}
 		}
 
@@ -862,12 +873,12 @@ public class TurtleParser extends RDFParserBase {
 
 		// read optional sign character
 		if (c == '+' || c == '-') {
-			value.append(Character.toChars(c));
+			value.appendCodePoint(c);
 			c = readCodePoint();
 		}
 
 		while (ASCIIUtil.isNumber(c)) {
-			value.append(Character.toChars(c));
+			value.appendCodePoint(c);
 			c = readCodePoint();
 		}
 
@@ -881,12 +892,12 @@ public class TurtleParser extends RDFParserBase {
 					// period to end the statement
 				}
 				else {
-					value.append(Character.toChars(c));
+					value.appendCodePoint(c);
 
 					c = readCodePoint();
 
 					while (ASCIIUtil.isNumber(c)) {
-						value.append(Character.toChars(c));
+						value.appendCodePoint(c);
 						c = readCodePoint();
 					}
 
@@ -909,11 +920,11 @@ public class TurtleParser extends RDFParserBase {
 			// read optional exponent
 			if (c == 'e' || c == 'E') {
 				datatype = XMLSchema.DOUBLE;
-				value.append(Character.toChars(c));
+				value.appendCodePoint(c);
 
 				c = readCodePoint();
 				if (c == '+' || c == '-') {
-					value.append(Character.toChars(c));
+					value.appendCodePoint(c);
 					c = readCodePoint();
 				}
 
@@ -921,11 +932,11 @@ public class TurtleParser extends RDFParserBase {
 					reportError("Exponent value missing", BasicParserSettings.VERIFY_DATATYPE_VALUES);
 				}
 
-				value.append(Character.toChars(c));
+				value.appendCodePoint(c);
 
 				c = readCodePoint();
 				while (ASCIIUtil.isNumber(c)) {
-					value.append(Character.toChars(c));
+					value.appendCodePoint(c);
 					c = readCodePoint();
 				}
 			}
@@ -961,7 +972,7 @@ public class TurtleParser extends RDFParserBase {
 
 		// Read up to the next '>' character
 		while (true) {
-			c = readCodePoint();
+			c = appendUntil(uriBuf, '>', ' ', '\\');
 
 			if (c == '>') {
 				break;
@@ -974,7 +985,7 @@ public class TurtleParser extends RDFParserBase {
 				reportFatalError("IRI included an unencoded space: '" + c + "'");
 			}
 
-			uriBuf.append(Character.toChars(c));
+			uriBuf.appendCodePoint(c);
 
 			if (c == '\\') {
 				// This escapes the next character, which might be a '>'
@@ -985,7 +996,7 @@ public class TurtleParser extends RDFParserBase {
 				if (c != 'u' && c != 'U') {
 					reportFatalError("IRI includes string escapes: '\\" + c + "'");
 				}
-				uriBuf.append(Character.toChars(c));
+				uriBuf.appendCodePoint(c);
 			}
 		}
 
@@ -1034,12 +1045,12 @@ public class TurtleParser extends RDFParserBase {
 		else {
 			// c is the first letter of the prefix
 			StringBuilder prefix = new StringBuilder(8);
-			prefix.append(Character.toChars(c));
+			prefix.appendCodePoint(c);
 
 			int previousChar = c;
 			c = readCodePoint();
 			while (TurtleUtil.isPrefixChar(c)) {
-				prefix.append(Character.toChars(c));
+				prefix.appendCodePoint(c);
 				previousChar = c;
 				c = readCodePoint();
 			}
@@ -1073,7 +1084,7 @@ public class TurtleParser extends RDFParserBase {
 				localName.append(readLocalEscapedChar());
 			}
 			else {
-				localName.append(Character.toChars(c));
+				localName.appendCodePoint(c);
 			}
 
 			int previousChar = c;
@@ -1083,7 +1094,7 @@ public class TurtleParser extends RDFParserBase {
 					localName.append(readLocalEscapedChar());
 				}
 				else {
-					localName.append(Character.toChars(c));
+					localName.appendCodePoint(c);
 				}
 				previousChar = c;
 				c = readCodePoint();
@@ -1158,7 +1169,7 @@ public class TurtleParser extends RDFParserBase {
 		}
 
 		StringBuilder name = new StringBuilder(32);
-		name.append(Character.toChars(c));
+		name.appendCodePoint(c);
 
 		// Read all following letter and numbers, they are part of the name
 		c = readCodePoint();
@@ -1270,7 +1281,7 @@ public class TurtleParser extends RDFParserBase {
 		StringBuilder comment = new StringBuilder(64);
 		int c = readCodePoint();
 		while (c != -1 && c != 0xD && c != 0xA) {
-			comment.append(Character.toChars(c));
+			comment.appendCodePoint(c);
 			c = readCodePoint();
 		}
 
@@ -1299,6 +1310,9 @@ public class TurtleParser extends RDFParserBase {
 	protected int readCodePoint()
 		throws IOException
 	{
+		if (codePointReader != null) {
+			return codePointReader.readCodePoint();
+		}
 		int next = reader.read();
 		if (Character.isHighSurrogate((char)next)) {
 			next = Character.toCodePoint((char)next, (char)reader.read());
@@ -1318,7 +1332,10 @@ public class TurtleParser extends RDFParserBase {
 	protected void unread(int codePoint)
 		throws IOException
 	{
-		if (codePoint != -1) {
+		if (codePointReader != null) {
+			codePointReader.unread(codePoint);
+		}
+		else if (codePoint != -1) {
 			if (Character.isSupplementaryCodePoint(codePoint)) {
 				final char[] surrogatePair = Character.toChars(codePoint);
 				reader.unread(surrogatePair);
@@ -1342,6 +1359,12 @@ public class TurtleParser extends RDFParserBase {
 	protected void unread(String string)
 		throws IOException
 	{
+		if (codePointReader != null) {
+			for (int i = string.length(); i > 0; i -= Character.charCount(string.codePointBefore(i))) {
+				codePointReader.unread(string.codePointBefore(i));
+			}
+			return;
+		}
 		for (int i = string.codePointCount(0, string.length()); i >= 1; i--) {
 			final int codePoint = string.codePointBefore(i);
 			if (Character.isSupplementaryCodePoint(codePoint)) {
@@ -1354,6 +1377,28 @@ public class TurtleParser extends RDFParserBase {
 		}
 	}
 
+	/**
+	 * Reads code points and appends them to the supplied buffer, up to the
+	 * first code point that is one of the supplied ASCII delimiters.
+	 * 
+	 * @return the delimiter, which is not appended, or -1 if the end of the
+	 *         stream has been reached.
+	 */
+	private int appendUntil(StringBuilder sb, int delimiter1, int delimiter2, int delimiter3)
+		throws IOException
+	{
+		if (codePointReader != null) {
+			return codePointReader.appendUntil(sb, delimiter1, delimiter2, delimiter3);
+		}
+
+		int c = readCodePoint();
+		while (c != -1 && c != delimiter1 && c != delimiter2 && c != delimiter3) {
+			sb.appendCodePoint(c);
+			c = readCodePoint();
+		}
+		return c;
+	}
+
 	/**
 	 * Peeks at the next Unicode code point without advancing the reader, and
 	 * returns its value.
@@ -21,8 +21,11 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 import info.aduna.io.IndentingWriter;
@@ -40,9 +43,13 @@ import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.RioSetting;
 import org.openrdf.rio.helpers.BasicParserSettings;
 import org.openrdf.rio.helpers.BasicWriterSettings;
+import org.openrdf.rio.helpers.ExternalGroupingRDFHandler;
+import org.openrdf.rio.helpers.RDFHandlerBase;
 import org.openrdf.rio.helpers.RDFWriterBase;
+import org.openrdf.rio.helpers.TurtleWriterSettings;
 
 /**
  * An implementation of the RDFWriter interface that writes RDF documents in
@@ -68,6 +75,13 @@ public class TurtleWriter extends RDFWriterBase implements RDFWriter {
 
 	protected URI lastWrittenPredicate;
 
+	/**
+	 * Sorts the statements of the document if
+	 * {@link TurtleWriterSettings#GROUP_STATEMENTS} is enabled, <tt>null</tt>
+	 * otherwise.
+	 */
+	private ExternalGroupingRDFHandler groupingHandler;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -114,6 +128,20 @@ public class TurtleWriter extends RDFWriterBase implements RDFWriter {
 
 		writingStarted = true;
 
+		if (getWriterConfig().get(TurtleWriterSettings.GROUP_STATEMENTS)) {
+			groupingHandler = new ExternalGroupingRDFHandler(
+					getWriterConfig().get(TurtleWriterSettings.GROUPING_BUFFER_SIZE), new RDFHandlerBase() {
+
+						@Override
+						public void handleStatement(Statement st)
+							throws RDFHandlerException
+						{
+							writeStatement(st);
+						}
+					});
+			groupingHandler.startRDF();
+		}
+
 		try {
 			// Write namespace declarations
 			for (Map.Entry<String, String> entry : namespaceTable.entrySet()) {
@@ -140,6 +168,10 @@ public class TurtleWriter extends RDFWriterBase implements RDFWriter {
 		}
 
 		try {
+			if (groupingHandler != null) {
+				// write the sorted statements
+				groupingHandler.endRDF();
+			}
 			closePreviousStatement();
 			writer.flush();
 		}
@@ -148,6 +180,7 @@ public class TurtleWriter extends RDFWriterBase implements RDFWriter {
 		}
 		finally {
 			writingStarted = false;
+			groupingHandler = null;
 		}
 	}
 
@@ -199,6 +232,23 @@ public class TurtleWriter extends RDFWriterBase implements RDFWriter {
 			throw new RuntimeException("Document writing has not yet been started");
 		}
 
+		if (groupingHandler != null) {
+			groupingHandler.handleStatement(st);
+		}
+		else {
+			writeStatement(st);
+		}
+	}
+
+	/**
+	 * Writes a statement, abbreviating it if it has the same subject as the
+	 * previously written statement.
+	 * 
+	 * @since 2.8.7
+	 */
+	protected void writeStatement(Statement st)
+		throws RDFHandlerException
+	{
 		Resource subj = st.getSubject();
 		URI pred = st.getPredicate();
 		Value obj = st.getObject();
@@ -249,6 +299,19 @@ public class TurtleWriter extends RDFWriterBase implements RDFWriter {
 		}
 	}
 
+	@Override
+	public Collection<RioSetting<?>> getSupportedSettings() {
+		Set<RioSetting<?>> result = new HashSet<RioSetting<?>>(super.getSupportedSettings());
+
+		result.add(BasicWriterSettings.PRETTY_PRINT);
+		result.add(BasicWriterSettings.XSD_STRING_TO_PLAIN_LITERAL);
+		result.add(BasicParserSettings.PRESERVE_BNODE_IDS);
+		result.add(TurtleWriterSettings.GROUP_STATEMENTS);
+		result.add(TurtleWriterSettings.GROUPING_BUFFER_SIZE);
+
+		return result;
+	}
+
 	public void handleComment(String comment)
 		throws RDFHandlerException
 	{
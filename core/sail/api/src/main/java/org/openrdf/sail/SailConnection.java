@@ -87,6 +87,46 @@ public interface SailConnection {
 			Dataset dataset, BindingSet bindings, boolean includeInferred)
 		throws SailException;
 
+	/**
+	 * Evaluates the supplied TupleExpr like
+	 * {@link #evaluate(TupleExpr, Dataset, BindingSet, boolean)} does and
+	 * describes how it was evaluated. The results of the evaluation are
+	 * discarded.
+	 *
+	 * @param tupleExpr
+	 *        The tuple expression to evaluate.
+	 * @param dataset
+	 *        The dataset to use for evaluating the query, <tt>null</tt> to use
+	 *        the Sail's default dataset.
+	 * @param bindings
+	 *        A set of input parameters for the query evaluation.
+	 * @param includeInferred
+	 *        Indicates whether inferred triples are to be considered in the
+	 *        query result.
+	 * @param maxExecutionTime
+	 *        The maximum evaluation time, measured in seconds. A zero or
+	 *        negative value indicates an unlimited evaluation time.
+	 * @return The optimized query model that was evaluated, in which each
+	 *         operator is annotated with its estimated and actual result counts,
+	 *         the number of times it was evaluated, the time spent evaluating
+	 *         it and the algorithm that was used to evaluate it.
+	 * @throws SailException
+	 *         If the Sail object encountered an error or unexpected situation
+	 *         internally, or if the evaluation failed.
+	 * @throws UnsupportedOperationException
+	 *         If the Sail does not support explaining queries, which is the
+	 *         default.
+	 * @throws IllegalStateException
+	 *         If the connection has been closed.
+	 * @since 2.8.7
+	 */
+	public default String explain(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			boolean includeInferred, int maxExecutionTime)
+		throws SailException
+	{
+		throw new UnsupportedOperationException("Explaining queries is not supported");
+	}
+
 	/**
 	 * Returns the set of all unique context identifiers that are used to store
 	 * statements.
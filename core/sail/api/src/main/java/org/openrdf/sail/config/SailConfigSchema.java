@@ -43,10 +43,34 @@ public class SailConfigSchema {
 	/** <tt>http://www.openrdf.org/config/sail#iterationCacheSyncTreshold</tt> */
 	public final static URI ITERATION_CACHE_SYNC_THRESHOLD;
 
+	/** <tt>http://www.openrdf.org/config/sail#parallelEvaluationThreads</tt> */
+	public final static URI PARALLEL_EVALUATION_THREADS;
+
+	/** <tt>http://www.openrdf.org/config/sail#joinBatchSize</tt> */
+	public final static URI JOIN_BATCH_SIZE;
+
+	/** <tt>http://www.openrdf.org/config/sail#costBasedJoinOptimization</tt> */
+	public final static URI COST_BASED_JOIN_OPTIMIZATION;
+
+	/** <tt>http://www.openrdf.org/config/sail#queryPlanCacheSize</tt> */
+	public final static URI QUERY_PLAN_CACHE_SIZE;
+
+	/** <tt>http://www.openrdf.org/config/sail#queryMemoryLimit</tt> */
+	public final static URI QUERY_MEMORY_LIMIT;
+
+	/** <tt>http://www.openrdf.org/config/sail#totalQueryMemoryLimit</tt> */
+	public final static URI TOTAL_QUERY_MEMORY_LIMIT;
+
 	static {
 		ValueFactory factory = ValueFactoryImpl.getInstance();
 		SAILTYPE = factory.createURI(NAMESPACE, "sailType");
 		DELEGATE = factory.createURI(NAMESPACE, "delegate");
 		ITERATION_CACHE_SYNC_THRESHOLD = factory.createURI(NAMESPACE, "iterationCacheSyncTreshold");
+		PARALLEL_EVALUATION_THREADS = factory.createURI(NAMESPACE, "parallelEvaluationThreads");
+		JOIN_BATCH_SIZE = factory.createURI(NAMESPACE, "joinBatchSize");
+		COST_BASED_JOIN_OPTIMIZATION = factory.createURI(NAMESPACE, "costBasedJoinOptimization");
+		QUERY_PLAN_CACHE_SIZE = factory.createURI(NAMESPACE, "queryPlanCacheSize");
+		QUERY_MEMORY_LIMIT = factory.createURI(NAMESPACE, "queryMemoryLimit");
+		TOTAL_QUERY_MEMORY_LIMIT = factory.createURI(NAMESPACE, "totalQueryMemoryLimit");
 	}
 }
@@ -33,6 +33,18 @@ public class SailImplConfigBase implements SailImplConfig {
 	private String type;
 
 	private long iterationCacheSyncThreshold;
+
+	private int parallelEvaluationThreads;
+
+	private int joinBatchSize;
+
+	private boolean costBasedJoinOptimization;
+
+	private int queryPlanCacheSize;
+
+	private long queryMemoryLimit;
+
+	private long totalQueryMemoryLimit;
 	
 	/**
 	 * Create a new RepositoryConfigImpl.
@@ -75,6 +87,36 @@ public class SailImplConfigBase implements SailImplConfig {
 		{
 			graph.add(implNode, SailConfigSchema.ITERATION_CACHE_SYNC_THRESHOLD, graph.getValueFactory().createLiteral(iterationCacheSyncThreshold));
 		}
+
+		if (parallelEvaluationThreads > 0) {
+			graph.add(implNode, SailConfigSchema.PARALLEL_EVALUATION_THREADS,
+					graph.getValueFactory().createLiteral(parallelEvaluationThreads));
+		}
+
+		if (joinBatchSize > 0) {
+			graph.add(implNode, SailConfigSchema.JOIN_BATCH_SIZE,
+					graph.getValueFactory().createLiteral(joinBatchSize));
+		}
+
+		if (costBasedJoinOptimization) {
+			graph.add(implNode, SailConfigSchema.COST_BASED_JOIN_OPTIMIZATION,
+					graph.getValueFactory().createLiteral(costBasedJoinOptimization));
+		}
+
+		if (queryPlanCacheSize > 0) {
+			graph.add(implNode, SailConfigSchema.QUERY_PLAN_CACHE_SIZE,
+					graph.getValueFactory().createLiteral(queryPlanCacheSize));
+		}
+
+		if (queryMemoryLimit > 0) {
+			graph.add(implNode, SailConfigSchema.QUERY_MEMORY_LIMIT,
+					graph.getValueFactory().createLiteral(queryMemoryLimit));
+		}
+
+		if (totalQueryMemoryLimit > 0) {
+			graph.add(implNode, SailConfigSchema.TOTAL_QUERY_MEMORY_LIMIT,
+					graph.getValueFactory().createLiteral(totalQueryMemoryLimit));
+		}
 		
 		return implNode;
 	}
@@ -92,6 +134,80 @@ public class SailImplConfigBase implements SailImplConfig {
 			if (sizeLit != null) {
 				setIterationCacheSyncThreshold(sizeLit.longValue());
 			}
+
+			Literal threadsLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					SailConfigSchema.PARALLEL_EVALUATION_THREADS);
+			if (threadsLit != null) {
+				try {
+					setParallelEvaluationThreads(threadsLit.intValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Integer value required for "
+							+ SailConfigSchema.PARALLEL_EVALUATION_THREADS + " property, found " + threadsLit);
+				}
+			}
+
+			Literal batchSizeLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					SailConfigSchema.JOIN_BATCH_SIZE);
+			if (batchSizeLit != null) {
+				try {
+					setJoinBatchSize(batchSizeLit.intValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Integer value required for "
+							+ SailConfigSchema.JOIN_BATCH_SIZE + " property, found " + batchSizeLit);
+				}
+			}
+
+			Literal costBasedLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					SailConfigSchema.COST_BASED_JOIN_OPTIMIZATION);
+			if (costBasedLit != null) {
+				try {
+					setCostBasedJoinOptimization(costBasedLit.booleanValue());
+				}
+				catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for "
+							+ SailConfigSchema.COST_BASED_JOIN_OPTIMIZATION + " property, found "
+							+ costBasedLit);
+				}
+			}
+
+			Literal planCacheLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					SailConfigSchema.QUERY_PLAN_CACHE_SIZE);
+			if (planCacheLit != null) {
+				try {
+					setQueryPlanCacheSize(planCacheLit.intValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Integer value required for "
+							+ SailConfigSchema.QUERY_PLAN_CACHE_SIZE + " property, found " + planCacheLit);
+				}
+			}
+
+			Literal memoryLimitLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					SailConfigSchema.QUERY_MEMORY_LIMIT);
+			if (memoryLimitLit != null) {
+				try {
+					setQueryMemoryLimit(memoryLimitLit.longValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Long value required for "
+							+ SailConfigSchema.QUERY_MEMORY_LIMIT + " property, found " + memoryLimitLit);
+				}
+			}
+
+			Literal totalMemoryLimitLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					SailConfigSchema.TOTAL_QUERY_MEMORY_LIMIT);
+			if (totalMemoryLimitLit != null) {
+				try {
+					setTotalQueryMemoryLimit(totalMemoryLimitLit.longValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Long value required for "
+							+ SailConfigSchema.TOTAL_QUERY_MEMORY_LIMIT + " property, found "
+							+ totalMemoryLimitLit);
+				}
+			}
 		}
 		catch (GraphUtilException e) {
 			throw new SailConfigException(e.getMessage(), e);
@@ -112,4 +228,103 @@ public class SailImplConfigBase implements SailImplConfig {
 	public void setIterationCacheSyncThreshold(long iterationCacheSyncThreshold) {
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
 	}
+
+	/**
+	 * @return Returns the number of parallel evaluation threads.
+	 */
+	public int getParallelEvaluationThreads() {
+		return parallelEvaluationThreads;
+	}
+
+	/**
+	 * @param parallelEvaluationThreads
+	 *        The number of threads to evaluate independent parts of queries
+	 *        with, or <tt>0</tt> to disable parallel evaluation.
+	 */
+	public void setParallelEvaluationThreads(int parallelEvaluationThreads) {
+		this.parallelEvaluationThreads = parallelEvaluationThreads;
+	}
+
+	/**
+	 * @return Returns the join batch size.
+	 */
+	public int getJoinBatchSize() {
+		return joinBatchSize;
+	}
+
+	/**
+	 * @param joinBatchSize
+	 *        The number of left results that a nested loop join reads as a
+	 *        block, evaluating its right argument once for each distinct
+	 *        binding in the block, or <tt>0</tt> to evaluate it for one left
+	 *        result at a time.
+	 */
+	public void setJoinBatchSize(int joinBatchSize) {
+		this.joinBatchSize = joinBatchSize;
+	}
+
+	/**
+	 * @return Returns whether joins are ordered by estimated costs.
+	 */
+	public boolean isCostBasedJoinOptimization() {
+		return costBasedJoinOptimization;
+	}
+
+	/**
+	 * @param costBasedJoinOptimization
+	 *        <tt>true</tt> to order joins by enumerating their estimated
+	 *        costs and to use hash joins where these estimates favour them,
+	 *        <tt>false</tt> (the default) for the greedy join ordering.
+	 */
+	public void setCostBasedJoinOptimization(boolean costBasedJoinOptimization) {
+		this.costBasedJoinOptimization = costBasedJoinOptimization;
+	}
+
+	/**
+	 * @return Returns the query plan cache size.
+	 */
+	public int getQueryPlanCacheSize() {
+		return queryPlanCacheSize;
+	}
+
+	/**
+	 * @param queryPlanCacheSize
+	 *        The maximum number of optimized query plans to keep, or
+	 *        <tt>0</tt> to optimize every query that is evaluated.
+	 */
+	public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+		this.queryPlanCacheSize = queryPlanCacheSize;
+	}
+
+	/**
+	 * @return Returns the memory limit of a single query, in bytes.
+	 */
+	public long getQueryMemoryLimit() {
+		return queryMemoryLimit;
+	}
+
+	/**
+	 * @param queryMemoryLimit
+	 *        The maximum number of bytes a single query can use for
+	 *        materialized results, or <tt>0</tt> for no limit.
+	 */
+	public void setQueryMemoryLimit(long queryMemoryLimit) {
+		this.queryMemoryLimit = queryMemoryLimit;
+	}
+
+	/**
+	 * @return Returns the memory limit of all running queries, in bytes.
+	 */
+	public long getTotalQueryMemoryLimit() {
+		return totalQueryMemoryLimit;
+	}
+
+	/**
+	 * @param totalQueryMemoryLimit
+	 *        The maximum number of bytes all running queries can use together
+	 *        for materialized results, or <tt>0</tt> for no limit.
+	 */
+	public void setTotalQueryMemoryLimit(long totalQueryMemoryLimit) {
+		this.totalQueryMemoryLimit = totalQueryMemoryLimit;
+	}
 }
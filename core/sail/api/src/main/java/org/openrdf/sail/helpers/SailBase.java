@@ -23,6 +23,13 @@ import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
@@ -125,6 +132,23 @@ public abstract class SailBase implements Sail {
 
 	private long iterationCacheSyncThreshold = DEFAULT_ITERATION_SYNC_THRESHOLD;
 
+	private volatile boolean costBasedJoinOptimization = false;
+
+	private volatile int parallelEvaluationThreads = 0;
+
+	private volatile int joinBatchSize = 0;
+
+	private volatile int queryPlanCacheSize = 0;
+
+	private volatile long queryMemoryLimit = 0;
+
+	private volatile long totalQueryMemoryLimit = 0;
+
+	/**
+	 * Executes the tasks of parallel query evaluation, created on demand.
+	 */
+	private ExecutorService parallelEvaluationExecutor;
+
 	/**
 	 * Map used to track active connections and where these were acquired. The
 	 * Throwable value may be null in case debugging was disable at the time the
@@ -271,6 +295,12 @@ public abstract class SailBase implements Sail {
 			shutDownInternal();
 		}
 		finally {
+			synchronized (this) {
+				if (parallelEvaluationExecutor != null) {
+					parallelEvaluationExecutor.shutdownNow();
+					parallelEvaluationExecutor = null;
+				}
+			}
 			initialized = false;
 			initializationLock.writeLock().unlock();
 		}
@@ -431,4 +461,185 @@ public abstract class SailBase implements Sail {
 	public void setIterationCacheSyncThreshold(long iterationCacheSyncThreshold) {
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
 	}
+
+	/**
+	 * Indicates whether queries on this Sail are optimized using a cost-based
+	 * join enumerator rather than the default greedy join ordering, and
+	 * evaluate joins as hash joins when the estimated cardinalities favour
+	 * them.
+	 * 
+	 * @return Returns the costBasedJoinOptimization setting.
+	 */
+	public boolean isCostBasedJoinOptimization() {
+		return costBasedJoinOptimization;
+	}
+
+	/**
+	 * Enables or disables cost-based join optimization, including the choice
+	 * of hash joins, for queries on this Sail. Disabled by default.
+	 * 
+	 * @param costBasedJoinOptimization
+	 *        The costBasedJoinOptimization to set.
+	 */
+	public void setCostBasedJoinOptimization(boolean costBasedJoinOptimization) {
+		this.costBasedJoinOptimization = costBasedJoinOptimization;
+	}
+
+	/**
+	 * Retrieves the number of threads that are used to evaluate independent
+	 * parts of a query, such as the arguments of a union, concurrently.
+	 * 
+	 * @return Returns the parallelEvaluationThreads.
+	 */
+	public int getParallelEvaluationThreads() {
+		return parallelEvaluationThreads;
+	}
+
+	/**
+	 * Sets the number of threads that are shared by all queries on this Sail to
+	 * evaluate independent parts of a query concurrently. Set to <tt>0</tt>
+	 * (the default) to evaluate every query in the thread that consumes its
+	 * results.
+	 * 
+	 * @param parallelEvaluationThreads
+	 *        The parallelEvaluationThreads to set.
+	 */
+	public synchronized void setParallelEvaluationThreads(int parallelEvaluationThreads) {
+		if (parallelEvaluationThreads < 0) {
+			throw new IllegalArgumentException("number of threads must not be negative");
+		}
+		this.parallelEvaluationThreads = parallelEvaluationThreads;
+
+		if (parallelEvaluationExecutor != null) {
+			// running tasks are allowed to finish
+			parallelEvaluationExecutor.shutdown();
+			parallelEvaluationExecutor = null;
+		}
+	}
+
+	/**
+	 * Retrieves the number of left results that a nested loop join reads as a
+	 * block.
+	 * 
+	 * @return Returns the joinBatchSize.
+	 */
+	public int getJoinBatchSize() {
+		return joinBatchSize;
+	}
+
+	/**
+	 * Sets the number of left results that a nested loop join reads as a
+	 * block. The right argument is evaluated once for each distinct binding of
+	 * its variables in the block, which avoids duplicate lookups within the
+	 * block. Set to <tt>0</tt> (the default) to evaluate the right argument for
+	 * one left result at a time.
+	 * 
+	 * @param joinBatchSize
+	 *        The joinBatchSize to set.
+	 */
+	public void setJoinBatchSize(int joinBatchSize) {
+		this.joinBatchSize = joinBatchSize;
+	}
+
+	/**
+	 * Retrieves the maximum number of optimized query plans that are kept for
+	 * reuse by queries that are evaluated repeatedly.
+	 * 
+	 * @return Returns the queryPlanCacheSize.
+	 */
+	public int getQueryPlanCacheSize() {
+		return queryPlanCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of optimized query plans that are kept for reuse
+	 * by queries that are evaluated repeatedly, with the same binding names, on
+	 * this Sail. Set to <tt>0</tt> (the default) to optimize every query that
+	 * is evaluated. Takes effect when the Sail is initialized.
+	 * 
+	 * @param queryPlanCacheSize
+	 *        The queryPlanCacheSize to set.
+	 */
+	public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+		this.queryPlanCacheSize = queryPlanCacheSize;
+	}
+
+	/**
+	 * Retrieves the maximum number of bytes that a single query can use for
+	 * sorting, grouping, hash tables and other materialized results.
+	 * 
+	 * @return Returns the queryMemoryLimit.
+	 */
+	public long getQueryMemoryLimit() {
+		return queryMemoryLimit;
+	}
+
+	/**
+	 * Sets the maximum number of bytes, as estimated from the size of the
+	 * values involved, that a single query on this Sail can use for sorting,
+	 * grouping, hash tables and other materialized results. Operators that can
+	 * spill to disk do so when the limit is reached, the query is aborted when
+	 * other operators exceed it. Set to <tt>0</tt> (the default) for no limit.
+	 * 
+	 * @param queryMemoryLimit
+	 *        The queryMemoryLimit to set.
+	 */
+	public void setQueryMemoryLimit(long queryMemoryLimit) {
+		this.queryMemoryLimit = queryMemoryLimit;
+	}
+
+	/**
+	 * Retrieves the maximum number of bytes that all queries that are running
+	 * at the same time can use for materialized results.
+	 * 
+	 * @return Returns the totalQueryMemoryLimit.
+	 */
+	public long getTotalQueryMemoryLimit() {
+		return totalQueryMemoryLimit;
+	}
+
+	/**
+	 * Sets the maximum number of bytes that all queries on this Sail that are
+	 * running at the same time can use together for materialized results, in
+	 * addition to the {@link #setQueryMemoryLimit(long) limit of each query}.
+	 * Set to <tt>0</tt> (the default) for no limit. Takes effect when the Sail
+	 * is initialized.
+	 * 
+	 * @param totalQueryMemoryLimit
+	 *        The totalQueryMemoryLimit to set.
+	 */
+	public void setTotalQueryMemoryLimit(long totalQueryMemoryLimit) {
+		this.totalQueryMemoryLimit = totalQueryMemoryLimit;
+	}
+
+	/**
+	 * Gets the executor for parallel query evaluation.
+	 * 
+	 * @return an executor with {@link #getParallelEvaluationThreads()} threads,
+	 *         or <tt>null</tt> if parallel evaluation is disabled.
+	 */
+	public synchronized Executor getParallelEvaluationExecutor() {
+		if (parallelEvaluationThreads <= 0) {
+			return null;
+		}
+
+		if (parallelEvaluationExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelEvaluationThreads,
+					parallelEvaluationThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "parallel-evaluation-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			parallelEvaluationExecutor = executor;
+		}
+
+		return parallelEvaluationExecutor;
+	}
 }
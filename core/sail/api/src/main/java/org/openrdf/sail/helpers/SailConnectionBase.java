@@ -300,6 +300,22 @@ public abstract class SailConnectionBase implements SailConnection {
 		}
 	}
 
+	@Override
+	public final String explain(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			boolean includeInferred, int maxExecutionTime)
+		throws SailException
+	{
+		flushPendingUpdates();
+		connectionLock.readLock().lock();
+		try {
+			verifyIsOpen();
+			return explainInternal(tupleExpr, dataset, bindings, includeInferred, maxExecutionTime);
+		}
+		finally {
+			connectionLock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public final CloseableIteration<? extends Resource, SailException> getContextIDs()
 		throws SailException
@@ -824,6 +840,13 @@ public abstract class SailConnectionBase implements SailConnection {
 			TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, boolean includeInferred)
 		throws SailException;
 
+	protected String explainInternal(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			boolean includeInferred, int maxExecutionTime)
+		throws SailException
+	{
+		throw new UnsupportedOperationException("Query explanation is not supported by " + getClass().getName());
+	}
+
 	protected abstract CloseableIteration<? extends Resource, SailException> getContextIDsInternal()
 		throws SailException;
 
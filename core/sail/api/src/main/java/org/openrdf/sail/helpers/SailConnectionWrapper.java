@@ -108,6 +108,14 @@ public class SailConnectionWrapper implements SailConnection, FederatedServiceRe
 		return wrappedCon.evaluate(tupleExpr, dataset, bindings, includeInferred);
 	}
 
+	@Override
+	public String explain(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, boolean includeInferred,
+			int maxExecutionTime)
+		throws SailException
+	{
+		return wrappedCon.explain(tupleExpr, dataset, bindings, includeInferred, maxExecutionTime);
+	}
+
 	@Override
 	public CloseableIteration<? extends Resource, SailException> getContextIDs()
 		throws SailException
@@ -0,0 +1,208 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.base;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.query.algebra.helpers.StatementPatternCollector;
+
+/**
+ * A bounded, least-recently-used cache of optimized query plans. Plans are
+ * keyed by the identity of the query model that was passed to
+ * {@link SailSourceConnection#evaluate}, the default and named graphs of the
+ * dataset, the names (not the values) of the supplied bindings and the
+ * include-inferred flag. Parsed queries that are reused, as the repository's
+ * query cache does for repeated query strings, therefore share a plan.
+ * <p>
+ * Cached plans are optimized without the values of the bindings; callers
+ * assign those values to a {@link #get copy} of the plan. Every
+ * {@link #VALIDATION_INTERVAL} uses, the cardinality of each statement
+ * pattern in a plan is re-estimated, and the plan is dropped if any estimate
+ * has changed by more than a factor {@link #MAX_DRIFT} since the plan was
+ * optimized.
+ */
+public class QueryPlanCache {
+
+	public static final int VALIDATION_INTERVAL = 64;
+
+	public static final double MAX_DRIFT = 2.0;
+
+	private final Map<Key, Plan> plans;
+
+	public QueryPlanCache(final int maxSize) {
+		this.plans = new LinkedHashMap<Key, Plan>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Plan> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets a copy of the plan for the supplied query, or <tt>null</tt> if no
+	 * plan has been cached or the cached plan was based on statistics that
+	 * are no longer accurate.
+	 */
+	public TupleExpr get(TupleExpr query, Dataset dataset, BindingSet bindings, boolean includeInferred,
+			EvaluationStatistics statistics)
+	{
+		Key key = new Key(query, dataset, bindings, includeInferred);
+		Plan plan;
+		boolean validate;
+		synchronized (plans) {
+			plan = plans.get(key);
+			if (plan == null) {
+				return null;
+			}
+			validate = ++plan.uses % VALIDATION_INTERVAL == 0;
+		}
+
+		if (validate && plan.hasDrifted(statistics)) {
+			synchronized (plans) {
+				if (plans.get(key) == plan) {
+					plans.remove(key);
+				}
+			}
+			return null;
+		}
+
+		return plan.tupleExpr.clone();
+	}
+
+	/**
+	 * Caches a copy of a plan for the supplied query.
+	 */
+	public void put(TupleExpr query, Dataset dataset, BindingSet bindings, boolean includeInferred,
+			TupleExpr plan, EvaluationStatistics statistics)
+	{
+		Plan entry = new Plan(plan.clone(), statistics);
+		synchronized (plans) {
+			plans.put(new Key(query, dataset, bindings, includeInferred), entry);
+		}
+	}
+
+	public int size() {
+		synchronized (plans) {
+			return plans.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (plans) {
+			plans.clear();
+		}
+	}
+
+	private static class Plan {
+
+		final TupleExpr tupleExpr;
+
+		final List<StatementPattern> patterns;
+
+		final double[] cardinalities;
+
+		int uses;
+
+		Plan(TupleExpr tupleExpr, EvaluationStatistics statistics) {
+			this.tupleExpr = tupleExpr;
+			this.patterns = StatementPatternCollector.process(tupleExpr);
+			this.cardinalities = estimate(statistics);
+		}
+
+		boolean hasDrifted(EvaluationStatistics statistics) {
+			double[] current = estimate(statistics);
+			for (int i = 0; i < current.length; i++) {
+				double ratio = (current[i] + 1) / (cardinalities[i] + 1);
+				if (ratio > MAX_DRIFT || ratio < 1 / MAX_DRIFT) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private double[] estimate(EvaluationStatistics statistics) {
+			double[] result = new double[patterns.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = statistics.getCardinality(patterns.get(i));
+			}
+			return result;
+		}
+	}
+
+	private static class Key {
+
+		private final TupleExpr query;
+
+		private final List<Set<?>> graphs;
+
+		private final Set<String> bindingNames;
+
+		private final boolean includeInferred;
+
+		private final int hashCode;
+
+		Key(TupleExpr query, Dataset dataset, BindingSet bindings, boolean includeInferred) {
+			this.query = query;
+			if (dataset == null) {
+				this.graphs = null;
+			}
+			else {
+				this.graphs = Arrays.<Set<?>> asList(new HashSet<Object>(dataset.getDefaultGraphs()),
+						new HashSet<Object>(dataset.getNamedGraphs()));
+			}
+			this.bindingNames = new HashSet<String>(bindings.getBindingNames());
+			this.includeInferred = includeInferred;
+
+			int hash = System.identityHashCode(query);
+			hash = 31 * hash + (graphs == null ? 0 : graphs.hashCode());
+			hash = 31 * hash + bindingNames.hashCode();
+			this.hashCode = 31 * hash + (includeInferred ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key o = (Key)other;
+			return query == o.query && includeInferred == o.includeInferred
+					&& bindingNames.equals(o.bindingNames)
+					&& (graphs == null ? o.graphs == null : graphs.equals(o.graphs));
+		}
+	}
+}
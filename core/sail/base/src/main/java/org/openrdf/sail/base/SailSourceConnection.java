@@ -19,6 +19,8 @@ package org.openrdf.sail.base;
 import java.util.HashMap;
 import java.util.Map;
 
+import info.aduna.iteration.CancellableIteration;
+import info.aduna.iteration.CancellationToken;
 import info.aduna.iteration.CloseableIteration;
 
 import org.openrdf.IsolationLevel;
@@ -32,9 +34,11 @@ import org.openrdf.model.ValueFactory;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
 import org.openrdf.query.algebra.QueryRoot;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryOptimizer;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverClient;
@@ -42,14 +46,18 @@ import org.openrdf.query.algebra.evaluation.impl.BindingAssigner;
 import org.openrdf.query.algebra.evaluation.impl.CompareOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.ConjunctiveConstraintSplitter;
 import org.openrdf.query.algebra.evaluation.impl.ConstantOptimizer;
+import org.openrdf.query.algebra.evaluation.impl.CostBasedJoinOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.DisjunctiveConstraintOptimizer;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
 import org.openrdf.query.algebra.evaluation.impl.FilterOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.IterativeEvaluationOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.OrderLimitOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.QueryJoinOptimizer;
 import org.openrdf.query.algebra.evaluation.impl.QueryModelNormalizer;
+import org.openrdf.query.algebra.evaluation.impl.QueryProfile;
 import org.openrdf.query.algebra.evaluation.impl.SameTermFilterOptimizer;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.query.impl.EmptyBindingSet;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
@@ -104,6 +112,11 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 	 */
 	private final ValueFactory vf;
 
+	/**
+	 * The {@link SailBase} that created this connection.
+	 */
+	private final SailBase sail;
+
 	/**
 	 * The backing {@link SailStore} used to manage the state.
 	 */
@@ -150,6 +163,7 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 	 */
 	protected SailSourceConnection(SailBase sail, SailStore store, FederatedServiceResolver resolver) {
 		super(sail);
+		this.sail = sail;
 		this.vf = sail.getValueFactory();
 		this.store = store;
 		this.defaultIsolationLevel = sail.getDefaultIsolationLevel();
@@ -172,14 +186,121 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 		return new EvaluationStrategyImpl(tripleSource, dataset, getFederatedServiceResolver());
 	}
 
+	/**
+	 * Creates the optimizer that re-orders the joins in a query, based on the
+	 * supplied statistics.
+	 */
+	protected QueryOptimizer getJoinOptimizer(EvaluationStatistics statistics) {
+		if (sail.isCostBasedJoinOptimization()) {
+			return new CostBasedJoinOptimizer(statistics);
+		}
+		return new QueryJoinOptimizer(statistics);
+	}
+
+	/**
+	 * Gets the cache of optimized query plans of this connection's store.
+	 * 
+	 * @return a plan cache, or <tt>null</tt> (the default) to optimize every
+	 *         query that is evaluated.
+	 */
+	protected QueryPlanCache getQueryPlanCache() {
+		return null;
+	}
+
+	/**
+	 * Gets the memory budget that is shared by all queries on this connection's
+	 * store.
+	 * 
+	 * @return a memory budget, or <tt>null</tt> (the default) if the memory
+	 *         used by all queries together is not limited.
+	 */
+	protected QueryMemoryBudget getSharedQueryMemoryBudget() {
+		return null;
+	}
+
+	/**
+	 * Applies the optimizations that do not depend on the values of the
+	 * supplied bindings. Values are assigned, and constant expressions folded,
+	 * by the caller.
+	 * 
+	 * @param bindingNamesOnly
+	 *        whether the values of the bindings have not been assigned to the
+	 *        query model yet, as for plans that are cached for the names of the
+	 *        bindings. Joins are then ordered as if these variables were bound.
+	 */
+	protected void optimize(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			EvaluationStatistics statistics, boolean bindingNamesOnly)
+	{
+		new CompareOptimizer().optimize(tupleExpr, dataset, bindings);
+		new ConjunctiveConstraintSplitter().optimize(tupleExpr, dataset, bindings);
+		new DisjunctiveConstraintOptimizer().optimize(tupleExpr, dataset, bindings);
+		new SameTermFilterOptimizer().optimize(tupleExpr, dataset, bindings);
+		new QueryModelNormalizer().optimize(tupleExpr, dataset, bindings);
+		QueryOptimizer joinOptimizer = getJoinOptimizer(statistics);
+		if (joinOptimizer instanceof QueryJoinOptimizer) {
+			((QueryJoinOptimizer)joinOptimizer).setBindingNamesBound(bindingNamesOnly);
+		}
+		joinOptimizer.optimize(tupleExpr, dataset, bindings);
+		// new SubSelectJoinOptimizer().optimize(tupleExpr, dataset, bindings);
+		new IterativeEvaluationOptimizer().optimize(tupleExpr, dataset, bindings);
+		new FilterOptimizer().optimize(tupleExpr, dataset, bindings);
+		new OrderLimitOptimizer().optimize(tupleExpr, dataset, bindings);
+	}
+
 	@Override
 	protected CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluateInternal(
 			TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, boolean includeInferred)
 		throws SailException
+	{
+		return evaluate(tupleExpr, dataset, bindings, includeInferred, null, 0);
+	}
+
+	@Override
+	protected String explainInternal(TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			boolean includeInferred, int maxExecutionTime)
+		throws SailException
+	{
+		QueryProfile profile = new QueryProfile();
+		// the time limit is enforced by the cancellation token of the evaluation
+		CloseableIteration<BindingSet, QueryEvaluationException> iter;
+		iter = evaluate(tupleExpr, dataset, bindings, includeInferred, profile, 1000L * maxExecutionTime);
+		try {
+			try {
+				while (iter.hasNext()) {
+					iter.next();
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+		catch (QueryEvaluationException e) {
+			throw new SailException(e);
+		}
+		return profile.printPlan(store.getEvaluationStatistics());
+	}
+
+	/**
+	 * Optimizes and evaluates the supplied query.
+	 * 
+	 * @param profile
+	 *        the profile to record the plan and its runtime statistics in, or
+	 *        <tt>null</tt>.
+	 * @param timeLimit
+	 *        the number of milliseconds after which the evaluation is
+	 *        cancelled, or <tt>0</tt> for no time limit other than that of the
+	 *        calling thread's {@link CancellationToken}.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr tupleExpr,
+			Dataset dataset, BindingSet bindings, boolean includeInferred, QueryProfile profile,
+			long timeLimit)
+		throws SailException
 	{
 		flush();
 		logger.trace("Incoming query model:\n{}", tupleExpr);
 
+		TupleExpr query = tupleExpr;
+
 		// Clone the tuple expression to allow for more aggresive optimizations
 		tupleExpr = tupleExpr.clone();
 
@@ -191,31 +312,81 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 
 		SailSource branch = branch(includeInferred);
 		SailDataset rdfDataset = branch.dataset(getIsolationLevel());
+		final QueryMemoryBudget memoryBudget = createQueryMemoryBudget();
+		// stops the evaluation when the results are closed, also when this
+		// happens in another thread, or when a caller's token is cancelled
+		CancellationToken token = new CancellationToken(CancellationToken.current(), timeLimit);
+		CancellationToken previousToken = token.activate();
 		boolean releaseLock = true;
 
 		try {
 
 			TripleSource tripleSource = new SailDatasetTripleSource(vf, rdfDataset);
 			EvaluationStrategy strategy = getEvaluationStrategy(dataset, tripleSource);
+			EvaluationStatistics statistics = store.getEvaluationStatistics();
+			if (strategy instanceof EvaluationStrategyImpl) {
+				if (sail.isCostBasedJoinOptimization()) {
+					// used to choose between nested loop and hash joins
+					((EvaluationStrategyImpl)strategy).setEvaluationStatistics(statistics);
+				}
+				((EvaluationStrategyImpl)strategy).setParallelEvaluationExecutor(
+						sail.getParallelEvaluationExecutor());
+				((EvaluationStrategyImpl)strategy).setJoinBatchSize(sail.getJoinBatchSize());
+				((EvaluationStrategyImpl)strategy).setMemoryBudget(memoryBudget);
+			}
 
-			new BindingAssigner().optimize(tupleExpr, dataset, bindings);
-			new ConstantOptimizer(strategy).optimize(tupleExpr, dataset, bindings);
-			new CompareOptimizer().optimize(tupleExpr, dataset, bindings);
-			new ConjunctiveConstraintSplitter().optimize(tupleExpr, dataset, bindings);
-			new DisjunctiveConstraintOptimizer().optimize(tupleExpr, dataset, bindings);
-			new SameTermFilterOptimizer().optimize(tupleExpr, dataset, bindings);
-			new QueryModelNormalizer().optimize(tupleExpr, dataset, bindings);
-			new QueryJoinOptimizer(store.getEvaluationStatistics()).optimize(tupleExpr, dataset, bindings);
-			// new SubSelectJoinOptimizer().optimize(tupleExpr, dataset, bindings);
-			new IterativeEvaluationOptimizer().optimize(tupleExpr, dataset, bindings);
-			new FilterOptimizer().optimize(tupleExpr, dataset, bindings);
-			new OrderLimitOptimizer().optimize(tupleExpr, dataset, bindings);
+			QueryPlanCache cache = getQueryPlanCache();
+			if (cache == null) {
+				new BindingAssigner().optimize(tupleExpr, dataset, bindings);
+				new ConstantOptimizer(strategy).optimize(tupleExpr, dataset, bindings);
+				optimize(tupleExpr, dataset, bindings, statistics, false);
+			}
+			else {
+				// cached plans are optimized for the names of the bindings, their
+				// values are assigned to each copy of the plan
+				TupleExpr plan = cache.get(query, dataset, bindings, includeInferred, statistics);
+				if (plan == null) {
+					optimize(tupleExpr, dataset, bindings, statistics, true);
+					cache.put(query, dataset, bindings, includeInferred, tupleExpr, statistics);
+				}
+				else {
+					tupleExpr = plan;
+				}
+				new BindingAssigner().optimize(tupleExpr, dataset, bindings);
+				new ConstantOptimizer(strategy).optimize(tupleExpr, dataset, bindings);
+			}
 
 			logger.trace("Optimized query model:\n{}", tupleExpr);
 
+			if (profile != null) {
+				profile.setPlan(tupleExpr);
+				if (strategy instanceof EvaluationStrategyImpl) {
+					((EvaluationStrategyImpl)strategy).setQueryProfile(profile);
+				}
+			}
+
 			CloseableIteration<BindingSet, QueryEvaluationException> iter;
 			iter = strategy.evaluate(tupleExpr, EmptyBindingSet.getInstance());
-			iter = interlock(iter, rdfDataset, branch);
+			if (memoryBudget != null) {
+				iter = interlock(iter, rdfDataset, branch, new SailClosable() {
+
+					public void close() {
+						memoryBudget.close();
+					}
+				});
+			}
+			else {
+				iter = interlock(iter, rdfDataset, branch);
+			}
+			iter = new CancellableIteration<BindingSet, QueryEvaluationException>(iter, token) {
+
+				@Override
+				protected void throwCancelledException()
+					throws QueryEvaluationException
+				{
+					throw new QueryInterruptedException("Query evaluation was cancelled or took too long");
+				}
+			};
 			releaseLock = false;
 			return iter;
 		}
@@ -223,13 +394,31 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 			throw new SailException(e);
 		}
 		finally {
+			CancellationToken.restore(previousToken);
 			if (releaseLock) {
+				if (memoryBudget != null) {
+					memoryBudget.close();
+				}
 				rdfDataset.close();
 				branch.close();
 			}
 		}
 	}
 
+	/**
+	 * Creates the budget that limits the memory used by a single query.
+	 * 
+	 * @return a new memory budget, or <tt>null</tt> if the memory used by
+	 *         queries is not limited.
+	 */
+	private QueryMemoryBudget createQueryMemoryBudget() {
+		QueryMemoryBudget shared = getSharedQueryMemoryBudget();
+		if (sail.getQueryMemoryLimit() > 0 || shared != null) {
+			return new QueryMemoryBudget(sail.getQueryMemoryLimit(), shared);
+		}
+		return null;
+	}
+
 	@Override
 	protected void closeInternal()
 		throws SailException
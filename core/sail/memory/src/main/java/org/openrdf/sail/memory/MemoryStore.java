@@ -28,11 +28,13 @@ import org.openrdf.model.ValueFactory;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverClient;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.sail.NotifyingSailConnection;
 import org.openrdf.sail.SailChangedEvent;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.base.SailDataset;
 import org.openrdf.sail.base.SailSink;
+import org.openrdf.sail.base.QueryPlanCache;
 import org.openrdf.sail.base.SailStore;
 import org.openrdf.sail.helpers.DirectoryLockManager;
 import org.openrdf.sail.helpers.NotifyingSailBase;
@@ -68,6 +70,10 @@ public class MemoryStore extends NotifyingSailBase implements FederatedServiceRe
 	 */
 	private SailStore store;
 
+	private volatile QueryPlanCache queryPlanCache;
+
+	private volatile QueryMemoryBudget queryMemoryBudget;
+
 	private volatile boolean persist = false;
 
 	/**
@@ -241,6 +247,13 @@ public class MemoryStore extends NotifyingSailBase implements FederatedServiceRe
 
 		this.store = new MemorySailStore(debugEnabled());
 
+		if (getQueryPlanCacheSize() > 0) {
+			queryPlanCache = new QueryPlanCache(getQueryPlanCacheSize());
+		}
+		if (getTotalQueryMemoryLimit() > 0) {
+			queryMemoryBudget = new QueryMemoryBudget(getTotalQueryMemoryLimit());
+		}
+
 		if (persist) {
 			File dataDir = getDataDir();
 			DirectoryLockManager locker = new DirectoryLockManager(dataDir);
@@ -338,6 +351,8 @@ public class MemoryStore extends NotifyingSailBase implements FederatedServiceRe
 			sync();
 
 			store.close();
+			queryPlanCache = null;
+			queryMemoryBudget = null;
 			dataFile = null;
 			syncFile = null;
 		}
@@ -477,4 +492,12 @@ public class MemoryStore extends NotifyingSailBase implements FederatedServiceRe
 	SailStore getSailStore() {
 		return store;
 	}
+
+	QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+
+	QueryMemoryBudget getQueryMemoryBudget() {
+		return queryMemoryBudget;
+	}
 }
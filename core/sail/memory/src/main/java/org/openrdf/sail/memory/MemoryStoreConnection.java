@@ -25,8 +25,10 @@ import org.openrdf.query.Dataset;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.SailReadOnlyException;
+import org.openrdf.sail.base.QueryPlanCache;
 import org.openrdf.sail.base.SailSourceConnection;
 import org.openrdf.sail.helpers.DefaultSailChangedEvent;
 
@@ -60,6 +62,16 @@ public class MemoryStoreConnection extends SailSourceConnection {
 	 * Methods *
 	 *---------*/
 
+	@Override
+	protected QueryPlanCache getQueryPlanCache() {
+		return sail.getQueryPlanCache();
+	}
+
+	@Override
+	protected QueryMemoryBudget getSharedQueryMemoryBudget() {
+		return sail.getQueryMemoryBudget();
+	}
+
 	@Override
 	protected void startTransactionInternal()
 		throws SailException
@@ -66,6 +66,24 @@ public class MemoryStoreFactory implements SailFactory {
 			if (memConfig.getIterationCacheSyncThreshold() > 0) {
 				memoryStore.setIterationCacheSyncThreshold(memConfig.getIterationCacheSyncThreshold());
 			}
+			if (memConfig.getParallelEvaluationThreads() > 0) {
+				memoryStore.setParallelEvaluationThreads(memConfig.getParallelEvaluationThreads());
+			}
+			if (memConfig.getJoinBatchSize() > 0) {
+				memoryStore.setJoinBatchSize(memConfig.getJoinBatchSize());
+			}
+			if (memConfig.isCostBasedJoinOptimization()) {
+				memoryStore.setCostBasedJoinOptimization(true);
+			}
+			if (memConfig.getQueryPlanCacheSize() > 0) {
+				memoryStore.setQueryPlanCacheSize(memConfig.getQueryPlanCacheSize());
+			}
+			if (memConfig.getQueryMemoryLimit() > 0) {
+				memoryStore.setQueryMemoryLimit(memConfig.getQueryMemoryLimit());
+			}
+			if (memConfig.getTotalQueryMemoryLimit() > 0) {
+				memoryStore.setTotalQueryMemoryLimit(memConfig.getTotalQueryMemoryLimit());
+			}
 		}
 
 		return memoryStore;
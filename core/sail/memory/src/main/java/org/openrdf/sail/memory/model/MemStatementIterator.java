@@ -16,6 +16,7 @@
  */
 package org.openrdf.sail.memory.model;
 
+import info.aduna.iteration.CancellationToken;
 import info.aduna.iteration.LookAheadIteration;
 import info.aduna.lang.ObjectUtil;
 
@@ -27,6 +28,16 @@ import info.aduna.lang.ObjectUtil;
  */
 public class MemStatementIterator<X extends Exception> extends LookAheadIteration<MemStatement, X> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of statements, minus one, that are examined between checks
+	 * for cancellation of the current query.
+	 */
+	private static final int CANCELLATION_CHECK_MASK = 0x3FF;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -118,11 +129,20 @@ public class MemStatementIterator<X extends Exception> extends LookAheadIteratio
 	 * <tt>_nextStatementIdx</tt> points to the index of this statement in
 	 * <tt>_statementList</tt>. Otherwise, <tt>_nextStatement</tt> will set to
 	 * <tt>null</tt>.
+	 * <p>
+	 * The search ends early when the current {@link CancellationToken} of the
+	 * calling thread has been cancelled, leaving it to the owner of the token
+	 * to report the cancellation.
 	 */
 	protected MemStatement getNextElement() {
 		statementIdx++;
 
 		for (; statementIdx < statementList.size(); statementIdx++) {
+			if ((statementIdx & CANCELLATION_CHECK_MASK) == 0 && CancellationToken.isCurrentCancelled()) {
+				statementIdx = statementList.size();
+				break;
+			}
+
 			MemStatement st = statementList.get(statementIdx);
 
 			if (isInSnapshot(st) && (subject == null || subject == st.getSubject())
@@ -0,0 +1,142 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CancellationToken;
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryInterruptedException;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+
+public class QueryCancellationTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private static final int COUNT = 2000;
+
+	private MemoryStore store;
+
+	private URI value;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		store = new MemoryStore();
+		store.initialize();
+		ValueFactory vf = store.getValueFactory();
+		value = vf.createURI(EX_NS, "value");
+
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			for (int i = 0; i < COUNT; i++) {
+				con.addStatement(vf.createURI(EX_NS, "item" + i), value, vf.createLiteral(i));
+			}
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.shutDown();
+	}
+
+	@Test
+	public void testDeadlineStopsEvaluation()
+		throws Exception
+	{
+		// a cross product of several million results
+		TupleExpr query = new Join(createPattern("s1", "v1"), createPattern("s2", "v2"));
+
+		long startTime = System.currentTimeMillis();
+		CancellationToken token = new CancellationToken(null, 200);
+		SailConnection con = store.getConnection();
+		try {
+			CloseableIteration<? extends BindingSet, QueryEvaluationException> iter;
+			CancellationToken previousToken = token.activate();
+			try {
+				iter = con.evaluate(query, null, EmptyBindingSet.getInstance(), false);
+			}
+			finally {
+				CancellationToken.restore(previousToken);
+			}
+			try {
+				while (iter.hasNext()) {
+					iter.next();
+				}
+				fail("query should have been cancelled");
+			}
+			catch (QueryInterruptedException e) {
+				// expected
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			con.close();
+		}
+		assertTrue(System.currentTimeMillis() - startTime < 5000);
+		assertFalse(CancellationToken.isCurrentCancelled());
+	}
+
+	@Test
+	public void testCloseCancelsEvaluation()
+		throws Exception
+	{
+		TupleExpr query = new Join(createPattern("s1", "v1"), createPattern("s2", "v2"));
+
+		SailConnection con = store.getConnection();
+		try {
+			CloseableIteration<? extends BindingSet, QueryEvaluationException> iter = con.evaluate(query,
+					null, EmptyBindingSet.getInstance(), false);
+			assertTrue(iter.hasNext());
+			iter.close();
+			assertFalse(iter.hasNext());
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private StatementPattern createPattern(String subjectName, String valueName) {
+		return new StatementPattern(new Var(subjectName), new Var("-const-value", value), new Var(valueName));
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.ProjectionElemList;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+
+public class QueryExplanationTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private MemoryStore store;
+
+	private ValueFactory vf;
+
+	private URI knows;
+
+	private URI name;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		store = new MemoryStore();
+		store.initialize();
+		vf = store.getValueFactory();
+		knows = vf.createURI(EX_NS, "knows");
+		name = vf.createURI(EX_NS, "name");
+
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			for (int i = 0; i < 10; i++) {
+				con.addStatement(person(i), knows, person((i + 1) % 10));
+				con.addStatement(person(i), name, vf.createLiteral("person " + i));
+			}
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.shutDown();
+	}
+
+	@Test
+	public void testExplain()
+		throws Exception
+	{
+		String plan = explain(createQuery(), EmptyBindingSet.getInstance());
+
+		assertEquals(10, getActualResults(plan, "Projection"));
+		assertEquals(10, getActualResults(plan, "Join"));
+		assertTrue(plan, Pattern.compile("Join \\(algorithm=\\w+\\)").matcher(plan).find());
+		assertTrue(plan, plan.contains("resultsEstimated="));
+		assertTrue(plan, plan.contains("time="));
+	}
+
+	@Test
+	public void testExplainWithBindings()
+		throws Exception
+	{
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding("x", person(3));
+
+		String plan = explain(createQuery(), bindings);
+
+		assertEquals(1, getActualResults(plan, "Projection"));
+	}
+
+	private String explain(TupleExpr query, BindingSet bindings)
+		throws Exception
+	{
+		SailConnection con = store.getConnection();
+		try {
+			return con.explain(query, null, bindings, false, 0);
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private long getActualResults(String plan, String operator) {
+		Matcher matcher = Pattern.compile("(?m)^\\s*" + operator + "\\b.*resultsActual=(\\d+)").matcher(plan);
+		assertTrue(plan, matcher.find());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	/**
+	 * Creates the query <tt>SELECT ?n WHERE { ?x ex:knows ?y . ?y ex:name ?n }</tt>.
+	 */
+	private TupleExpr createQuery() {
+		Join join = new Join(new StatementPattern(new Var("x"), new Var("-const-knows", knows), new Var("y")),
+				new StatementPattern(new Var("y"), new Var("-const-name", name), new Var("n")));
+		return new Projection(join, new ProjectionElemList(new ProjectionElem("n")));
+	}
+
+	private URI person(int i) {
+		return vf.createURI(EX_NS, "person" + i);
+	}
+}
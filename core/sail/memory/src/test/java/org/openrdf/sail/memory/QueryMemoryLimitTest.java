@@ -0,0 +1,192 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.Distinct;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Order;
+import org.openrdf.query.algebra.OrderElem;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.ProjectionElemList;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+
+public class QueryMemoryLimitTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private static final int COUNT = 200;
+
+	private MemoryStore store;
+
+	private URI description;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		store = new MemoryStore();
+		store.setQueryMemoryLimit(20000);
+		store.setTotalQueryMemoryLimit(1000000);
+		store.initialize();
+		ValueFactory vf = store.getValueFactory();
+		description = vf.createURI(EX_NS, "description");
+
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 200) {
+			text.append("a rather long description ");
+		}
+
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			for (int i = 0; i < COUNT; i++) {
+				con.addStatement(vf.createURI(EX_NS, "item" + i), description,
+						vf.createLiteral(String.format("%03d ", i) + text));
+			}
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.shutDown();
+	}
+
+	@Test
+	public void testOrderSpillsWhenBudgetExhausted()
+		throws Exception
+	{
+		Order order = new Order(createPattern(), new OrderElem(new Var("d"), false));
+
+		List<BindingSet> results = evaluate(order);
+
+		assertEquals(COUNT, results.size());
+		for (int i = 0; i < COUNT; i++) {
+			String label = ((Literal)results.get(i).getValue("d")).getLabel();
+			assertTrue(label, label.startsWith(String.format("%03d ", COUNT - 1 - i)));
+		}
+		assertEquals(0, store.getQueryMemoryBudget().getUsedBytes());
+	}
+
+	@Test
+	public void testDistinctSpillsWhenBudgetExhausted()
+		throws Exception
+	{
+		Distinct distinct = new Distinct(new Projection(new Union(createPattern(), createPattern()),
+				new ProjectionElemList(new ProjectionElem("d"))));
+
+		List<BindingSet> results = evaluate(distinct);
+
+		assertEquals(COUNT, results.size());
+		assertEquals(COUNT, new HashSet<BindingSet>(results).size());
+		assertEquals(0, store.getQueryMemoryBudget().getUsedBytes());
+	}
+
+	@Test
+	public void testHashJoinAbortsWhenBudgetExceeded()
+		throws Exception
+	{
+		// joins with a subquery cache the results of both arguments
+		Join join = new Join(new Projection(createPattern(), new ProjectionElemList(new ProjectionElem("s"),
+				new ProjectionElem("d"))), new Projection(createPattern(), new ProjectionElemList(
+				new ProjectionElem("d"))));
+
+		try {
+			evaluate(join);
+			fail("query should have exceeded its memory budget");
+		}
+		catch (QueryEvaluationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("memory budget of 20000 bytes"));
+		}
+		assertEquals(0, store.getQueryMemoryBudget().getUsedBytes());
+	}
+
+	@Test
+	public void testPathAbortsWhenBudgetExceeded()
+		throws Exception
+	{
+		// a path without fixed endpoints reads all matching statements first
+		ArbitraryLengthPath path = new ArbitraryLengthPath(new Var("s"), createPattern(), new Var("d"), 1);
+
+		try {
+			evaluate(path);
+			fail("query should have exceeded its memory budget");
+		}
+		catch (QueryEvaluationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("memory budget of 20000 bytes"));
+		}
+		assertEquals(0, store.getQueryMemoryBudget().getUsedBytes());
+	}
+
+	private List<BindingSet> evaluate(TupleExpr query)
+		throws Exception
+	{
+		List<BindingSet> results = new ArrayList<BindingSet>();
+		SailConnection con = store.getConnection();
+		try {
+			CloseableIteration<? extends BindingSet, QueryEvaluationException> iter = con.evaluate(query,
+					null, EmptyBindingSet.getInstance(), false);
+			try {
+				while (iter.hasNext()) {
+					results.add(iter.next());
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			con.close();
+		}
+		return results;
+	}
+
+	private StatementPattern createPattern() {
+		return new StatementPattern(new Var("s"), new Var("-const-description", description), new Var("d"));
+	}
+}
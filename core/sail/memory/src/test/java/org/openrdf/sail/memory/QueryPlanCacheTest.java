@@ -0,0 +1,192 @@
+/*
+ * Licensed to Aduna under one or more contributor license agreements.
+ * See the NOTICE.txt file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD
+ * License (the "License"); you may not use this file except in compliance
+ * with the License. See the LICENSE.txt file distributed with this work
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.ProjectionElemList;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.base.QueryPlanCache;
+
+public class QueryPlanCacheTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private MemoryStore store;
+
+	private ValueFactory vf;
+
+	private URI knows;
+
+	private URI name;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		store = new MemoryStore();
+		store.setQueryPlanCacheSize(10);
+		store.initialize();
+		vf = store.getValueFactory();
+		knows = vf.createURI(EX_NS, "knows");
+		name = vf.createURI(EX_NS, "name");
+
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			for (int i = 0; i < 10; i++) {
+				con.addStatement(person(i), knows, person((i + 1) % 10));
+				con.addStatement(person(i), name, vf.createLiteral("person " + i));
+			}
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.shutDown();
+	}
+
+	@Test
+	public void testPlanReusedWithDifferentValues()
+		throws Exception
+	{
+		TupleExpr query = createQuery();
+
+		assertEquals(10, evaluate(query, EmptyBindingSet.getInstance()).size());
+		assertEquals(1, store.getQueryPlanCache().size());
+
+		for (int i = 0; i < 10; i++) {
+			QueryBindingSet bindings = new QueryBindingSet();
+			bindings.addBinding("x", person(i));
+			Set<Value> names = evaluate(query, bindings);
+			assertEquals(1, names.size());
+			assertEquals(vf.createLiteral("person " + (i + 1) % 10), names.iterator().next());
+		}
+		assertEquals(2, store.getQueryPlanCache().size());
+
+		// the same query, with the same binding names, hits the cache
+		assertEquals(10, evaluate(query, EmptyBindingSet.getInstance()).size());
+		assertEquals(2, store.getQueryPlanCache().size());
+	}
+
+	@Test
+	public void testPlanDroppedWhenStatisticsDrift() {
+		TupleExpr query = createQuery();
+		QueryPlanCache cache = new QueryPlanCache(1);
+		FixedStatistics statistics = new FixedStatistics();
+
+		cache.put(query, null, EmptyBindingSet.getInstance(), true, query, statistics);
+		for (int i = 1; i < QueryPlanCache.VALIDATION_INTERVAL; i++) {
+			assertNotNull(cache.get(query, null, EmptyBindingSet.getInstance(), true, statistics));
+		}
+
+		statistics.cardinality = 100;
+		assertNull(cache.get(query, null, EmptyBindingSet.getInstance(), true, statistics));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedPlanEvicted() {
+		QueryPlanCache cache = new QueryPlanCache(1);
+		FixedStatistics statistics = new FixedStatistics();
+		TupleExpr query1 = createQuery();
+		TupleExpr query2 = createQuery();
+
+		cache.put(query1, null, EmptyBindingSet.getInstance(), false, query1, statistics);
+		cache.put(query2, null, EmptyBindingSet.getInstance(), false, query2, statistics);
+
+		assertNull(cache.get(query1, null, EmptyBindingSet.getInstance(), false, statistics));
+		assertNotNull(cache.get(query2, null, EmptyBindingSet.getInstance(), false, statistics));
+	}
+
+	private Set<Value> evaluate(TupleExpr query, BindingSet bindings)
+		throws Exception
+	{
+		Set<Value> names = new HashSet<Value>();
+		SailConnection con = store.getConnection();
+		try {
+			CloseableIteration<? extends BindingSet, QueryEvaluationException> iter = con.evaluate(query,
+					null, bindings, false);
+			try {
+				while (iter.hasNext()) {
+					names.add(iter.next().getValue("n"));
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			con.close();
+		}
+		return names;
+	}
+
+	/**
+	 * Creates the query <tt>SELECT ?n WHERE { ?x ex:knows ?y . ?y ex:name ?n }</tt>.
+	 */
+	private TupleExpr createQuery() {
+		Join join = new Join(new StatementPattern(new Var("x"), new Var("-const-knows", knows), new Var("y")),
+				new StatementPattern(new Var("y"), new Var("-const-name", name), new Var("n")));
+		return new Projection(join, new ProjectionElemList(new ProjectionElem("n")));
+	}
+
+	private URI person(int i) {
+		return vf.createURI(EX_NS, "person" + i);
+	}
+
+	private static class FixedStatistics extends EvaluationStatistics {
+
+		double cardinality = 10;
+
+		@Override
+		public double getCardinality(TupleExpr expr) {
+			return cardinality;
+		}
+	}
+}
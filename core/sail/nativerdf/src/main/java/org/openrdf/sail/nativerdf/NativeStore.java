@@ -34,8 +34,10 @@ import org.openrdf.model.ValueFactory;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverClient;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.sail.NotifyingSailConnection;
 import org.openrdf.sail.SailException;
+import org.openrdf.sail.base.QueryPlanCache;
 import org.openrdf.sail.base.SailSource;
 import org.openrdf.sail.base.SailStore;
 import org.openrdf.sail.base.SnapshotSailStore;
@@ -80,6 +82,10 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 
 	private SailStore store;
 
+	private volatile QueryPlanCache queryPlanCache;
+
+	private volatile QueryMemoryBudget queryMemoryBudget;
+
 	/**
 	 * Data directory lock.
 	 */
@@ -300,6 +306,13 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 			throw new SailException(e);
 		}
 
+		if (getQueryPlanCacheSize() > 0) {
+			queryPlanCache = new QueryPlanCache(getQueryPlanCacheSize());
+		}
+		if (getTotalQueryMemoryLimit() > 0) {
+			queryMemoryBudget = new QueryMemoryBudget(getTotalQueryMemoryLimit());
+		}
+
 		logger.debug("NativeStore initialized");
 	}
 
@@ -311,6 +324,8 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 
 		try {
 			store.close();
+			queryPlanCache = null;
+			queryMemoryBudget = null;
 
 			logger.debug("NativeStore shut down");
 		}
@@ -398,6 +413,14 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 		return store;
 	}
 
+	QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+
+	QueryMemoryBudget getQueryMemoryBudget() {
+		return queryMemoryBudget;
+	}
+
 	private boolean upgradeStore(File dataDir, String version)
 		throws IOException, SailException
 	{
@@ -27,8 +27,10 @@ import org.openrdf.query.Dataset;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.util.QueryMemoryBudget;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.SailReadOnlyException;
+import org.openrdf.sail.base.QueryPlanCache;
 import org.openrdf.sail.base.SailSourceConnection;
 import org.openrdf.sail.helpers.DefaultSailChangedEvent;
 
@@ -70,6 +72,16 @@ public class NativeStoreConnection extends SailSourceConnection {
 	 * Methods *
 	 *---------*/
 
+	@Override
+	protected QueryPlanCache getQueryPlanCache() {
+		return nativeStore.getQueryPlanCache();
+	}
+
+	@Override
+	protected QueryMemoryBudget getSharedQueryMemoryBudget() {
+		return nativeStore.getQueryMemoryBudget();
+	}
+
 	@Override
 	protected void startTransactionInternal()
 		throws SailException
@@ -37,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import info.aduna.io.ByteArrayUtil;
 import info.aduna.io.NioFile;
+import info.aduna.iteration.CancellationToken;
 
 /**
  * Implementation of an on-disk B-Tree using the <tt>java.nio</tt> classes that
@@ -92,6 +93,12 @@ public class BTree {
 	 */
 	private static final int MIN_MRU_CACHE_SIZE = 4;
 
+	/**
+	 * The number of non-matching values, minus one, that a range scan skips
+	 * between checks for cancellation of the current query.
+	 */
+	private static final int CANCELLATION_CHECK_MASK = 0x3FF;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -2082,6 +2089,7 @@ public class BTree {
 				}
 
 				byte[] value = findNext(revisitValue.getAndSet(false));
+				int skipped = 0;
 				while (value != null) {
 					if (maxValue != null && comparator.compareBTreeValues(maxValue, value, 0, value.length) < 0) {
 						// Reached maximum value, stop iterating
@@ -2091,6 +2099,12 @@ public class BTree {
 					}
 					else if (searchKey != null && !ByteArrayUtil.matchesPattern(value, searchMask, searchKey)) {
 						// Value doesn't match search key/mask
+						if ((++skipped & CANCELLATION_CHECK_MASK) == 0 && CancellationToken.isCurrentCancelled()) {
+							// Query has been cancelled, its owner reports this
+							close();
+							value = null;
+							break;
+						}
 						value = findNext(false);
 						continue;
 					}
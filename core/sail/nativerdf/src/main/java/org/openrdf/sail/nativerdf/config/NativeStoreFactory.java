@@ -78,6 +78,24 @@ public class NativeStoreFactory implements SailFactory {
 			if (nativeConfig.getIterationCacheSyncThreshold() > 0) {
 				nativeStore.setIterationCacheSyncThreshold(nativeConfig.getIterationCacheSyncThreshold());
 			}
+			if (nativeConfig.getParallelEvaluationThreads() > 0) {
+				nativeStore.setParallelEvaluationThreads(nativeConfig.getParallelEvaluationThreads());
+			}
+			if (nativeConfig.getJoinBatchSize() > 0) {
+				nativeStore.setJoinBatchSize(nativeConfig.getJoinBatchSize());
+			}
+			if (nativeConfig.isCostBasedJoinOptimization()) {
+				nativeStore.setCostBasedJoinOptimization(true);
+			}
+			if (nativeConfig.getQueryPlanCacheSize() > 0) {
+				nativeStore.setQueryPlanCacheSize(nativeConfig.getQueryPlanCacheSize());
+			}
+			if (nativeConfig.getQueryMemoryLimit() > 0) {
+				nativeStore.setQueryMemoryLimit(nativeConfig.getQueryMemoryLimit());
+			}
+			if (nativeConfig.getTotalQueryMemoryLimit() > 0) {
+				nativeStore.setTotalQueryMemoryLimit(nativeConfig.getTotalQueryMemoryLimit());
+			}
 		}
 
 		return nativeStore;
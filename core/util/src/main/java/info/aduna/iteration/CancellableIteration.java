@@ -0,0 +1,107 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package info.aduna.iteration;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An iteration that makes a {@link CancellationToken} the current token of
+ * the calling thread while it reads the wrapped iteration, and that reports
+ * the cancellation of the token, also when the wrapped iteration has ended
+ * prematurely because of it. Closing this iteration cancels the token, which
+ * makes other threads that still work on the wrapped iteration stop.
+ */
+public abstract class CancellableIteration<E, X extends Exception> extends IterationWrapper<E, X> {
+
+	private final CancellationToken token;
+
+	public CancellableIteration(Iteration<? extends E, ? extends X> iter, CancellationToken token) {
+		super(iter);
+		this.token = token;
+	}
+
+	public CancellationToken getToken() {
+		return token;
+	}
+
+	@Override
+	public boolean hasNext()
+		throws X
+	{
+		CancellationToken previous = token.activate();
+		try {
+			checkCancelled();
+			boolean result = super.hasNext();
+			checkCancelled();
+			return result;
+		}
+		finally {
+			CancellationToken.restore(previous);
+		}
+	}
+
+	@Override
+	public E next()
+		throws X
+	{
+		CancellationToken previous = token.activate();
+		try {
+			checkCancelled();
+			return super.next();
+		}
+		catch (NoSuchElementException e) {
+			checkCancelled();
+			throw e;
+		}
+		finally {
+			CancellationToken.restore(previous);
+		}
+	}
+
+	@Override
+	public void remove()
+		throws X
+	{
+		checkCancelled();
+		super.remove();
+	}
+
+	@Override
+	protected void handleClose()
+		throws X
+	{
+		token.cancel();
+		CancellationToken previous = token.activate();
+		try {
+			super.handleClose();
+		}
+		finally {
+			CancellationToken.restore(previous);
+		}
+	}
+
+	private final void checkCancelled()
+		throws X
+	{
+		if (token.isCancelled() && !isClosed()) {
+			throwCancelledException();
+		}
+	}
+
+	protected abstract void throwCancelledException()
+		throws X;
+}
@@ -0,0 +1,131 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ * 
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package info.aduna.iteration;
+
+/**
+ * A token that signals that the work on a query, or another operation that
+ * reads iterations, should stop, because it has been cancelled or its
+ * deadline has passed. A token can be made the current token of a thread
+ * while that thread works on the operation, so that code deep down in the
+ * call stack, such as index scans, can stop early without the token being
+ * passed through every layer. Such code ends its iteration prematurely; the
+ * code that made the token current, for example a
+ * {@link CancellableIteration}, is responsible for reporting the
+ * cancellation.
+ * <p>
+ * A token can have a parent token, in which case it is cancelled as soon as
+ * its parent is. Tokens are safe to use from multiple threads.
+ */
+public class CancellationToken {
+
+	private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<CancellationToken>();
+
+	private final CancellationToken parent;
+
+	private final long deadline;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new token without a parent and without a deadline.
+	 */
+	public CancellationToken() {
+		this(null, 0);
+	}
+
+	/**
+	 * Creates a new token.
+	 * 
+	 * @param parent
+	 *        the token whose cancellation cancels this token as well, may be
+	 *        <tt>null</tt>.
+	 * @param timeLimit
+	 *        the number of milliseconds after which the token is cancelled, or
+	 *        <tt>0</tt> for no deadline.
+	 */
+	public CancellationToken(CancellationToken parent, long timeLimit) {
+		this.parent = parent;
+		this.deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : 0;
+	}
+
+	/**
+	 * Cancels this token.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks whether this token, or its parent, has been cancelled or has
+	 * passed its deadline.
+	 */
+	public boolean isCancelled() {
+		if (cancelled) {
+			return true;
+		}
+		if (deadline > 0 && System.currentTimeMillis() >= deadline || parent != null && parent.isCancelled())
+		{
+			cancelled = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Makes this token the current token of the calling thread.
+	 * 
+	 * @return the token that was current before, to be passed to
+	 *         {@link #restore(CancellationToken)} when the thread stops working
+	 *         on the operation of this token.
+	 */
+	public CancellationToken activate() {
+		CancellationToken previous = CURRENT.get();
+		CURRENT.set(this);
+		return previous;
+	}
+
+	/**
+	 * Restores the token that was current before a call to {@link #activate()}.
+	 */
+	public static void restore(CancellationToken previous) {
+		if (previous == null) {
+			CURRENT.remove();
+		}
+		else {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Gets the current token of the calling thread.
+	 * 
+	 * @return the current token, or <tt>null</tt> if the thread does not work
+	 *         on an operation that can be cancelled.
+	 */
+	public static CancellationToken current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Checks whether the current token of the calling thread has been
+	 * cancelled.
+	 */
+	public static boolean isCurrentCancelled() {
+		CancellationToken token = CURRENT.get();
+		return token != null && token.isCancelled();
+	}
+}
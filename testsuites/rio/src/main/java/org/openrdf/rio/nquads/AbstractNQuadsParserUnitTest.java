@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -728,11 +730,38 @@ public abstract class AbstractNQuadsParserUnitTest {
 		}
 	}
 
+	@Test
+	public void testParallelParsing()
+		throws Exception
+	{
+		StringBuilder nq = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			nq.append("<http://s").append(i).append("> <http://p> _:b").append(i % 5).append(" <http://g")
+					.append(i % 3).append("> .\n");
+		}
+
+		parser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_THREADS, 3);
+		parser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE, 128);
+		parser.parse(new ByteArrayInputStream(nq.toString().getBytes("UTF-8")), "http://test.base.uri");
+
+		rdfHandler.assertHandler(300);
+		Collection<Statement> statements = rdfHandler.getStatements();
+		int i = 0;
+		Set<Value> objects = new HashSet<Value>();
+		for (Statement st : statements) {
+			assertEquals("http://s" + i, st.getSubject().stringValue());
+			assertEquals("http://g" + (i % 3), st.getContext().stringValue());
+			objects.add(st.getObject());
+			i++;
+		}
+		assertEquals(5, objects.size());
+	}
+
 	@Test
 	public void testSupportedSettings()
 		throws Exception
 	{
-		assertEquals(12, parser.getSupportedSettings().size());
+		assertEquals(16, parser.getSupportedSettings().size());
 	}
 
 	protected abstract RDFParser createRDFParser();
@@ -21,11 +21,13 @@ import static org.junit.Assert.fail;
 
 import java.io.InputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
 
 import org.junit.Ignore;
 import org.junit.Test;
 
 import org.openrdf.model.Model;
+import org.openrdf.model.Value;
 import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
@@ -378,11 +380,113 @@ public abstract class AbstractNTriplesParserUnitTest {
 		assertEquals(1, model.size());
 	}
 
+	@Test
+	public void testParallelParsing()
+		throws Exception
+	{
+		StringBuilder nt = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			nt.append("_:node").append(i % 7).append(" <urn:test:predicate> \"").append(i).append("\" .\n");
+			if (i % 50 == 0) {
+				nt.append("# comment\r\n\r\n");
+			}
+		}
+
+		Model expected = new LinkedHashModel();
+		RDFParser ntriplesParser = createRDFParser();
+		ntriplesParser.setRDFHandler(new StatementCollector(expected));
+		ntriplesParser.parse(new StringReader(nt.toString()), "http://example/");
+
+		Model model = new LinkedHashModel();
+		ntriplesParser = createRDFParser();
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_THREADS, 4);
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE, 100);
+		ntriplesParser.setRDFHandler(new StatementCollector(model));
+		ntriplesParser.parse(new StringReader(nt.toString()), "http://example/");
+
+		assertEquals(500, model.size());
+		// blank nodes with the same identifier in different chunks are equal
+		assertEquals(7, model.subjects().size());
+		assertEquals(new ArrayList<Value>(expected.objects()), new ArrayList<Value>(model.objects()));
+	}
+
+	@Test
+	public void testParallelParsingSharesBlankNodesAcrossChunks()
+		throws Exception
+	{
+		StringBuilder nt = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			nt.append("_:shared <urn:test:predicate> \"").append(i).append("\" .\n");
+		}
+
+		// many threads and single-line chunks, so that the first chunks are
+		// parsed at the same time
+		for (int run = 0; run < 20; run++) {
+			Model model = new LinkedHashModel();
+			RDFParser ntriplesParser = createRDFParser();
+			ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_THREADS, 16);
+			ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE, 1);
+			ntriplesParser.setRDFHandler(new StatementCollector(model));
+			ntriplesParser.parse(new StringReader(nt.toString()), "http://example/");
+
+			assertEquals(200, model.size());
+			assertEquals(1, model.subjects().size());
+		}
+	}
+
+	@Test
+	public void testParallelParsingUnordered()
+		throws Exception
+	{
+		StringBuilder nt = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			nt.append("<urn:test:subject").append(i).append("> <urn:test:predicate> _:node .\n");
+		}
+
+		Model model = new LinkedHashModel();
+		RDFParser ntriplesParser = createRDFParser();
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_THREADS, 4);
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE, 100);
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_PRESERVE_ORDER, false);
+		ntriplesParser.setRDFHandler(new StatementCollector(model));
+		ntriplesParser.parse(new StringReader(nt.toString()), "http://example/");
+
+		assertEquals(500, model.size());
+		assertEquals(1, model.objects().size());
+	}
+
+	@Test
+	public void testParallelParsingReportsErrorLine()
+		throws Exception
+	{
+		StringBuilder nt = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			nt.append("<urn:test:subject").append(i).append("> <urn:test:predicate> <urn:test:object> .\n");
+		}
+		nt.append("invalid nt\n");
+		nt.append("<urn:test:subject> <urn:test:predicate> <urn:test:object> .\n");
+
+		Model model = new LinkedHashModel();
+		RDFParser ntriplesParser = createRDFParser();
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_THREADS, 4);
+		ntriplesParser.getParserConfig().set(NTriplesParserSettings.PARALLEL_PARSER_CHUNK_SIZE, 200);
+		ntriplesParser.setRDFHandler(new StatementCollector(model));
+
+		try {
+			ntriplesParser.parse(new StringReader(nt.toString()), NTRIPLES_TEST_URL);
+			fail("expected RDFParseException due to invalid data");
+		}
+		catch (RDFParseException expected) {
+			assertEquals(101, expected.getLineNumber());
+		}
+		assertEquals(100, model.size());
+	}
+
 	@Test
 	public void testSupportedSettings()
 		throws Exception
 	{
-		assertEquals(12, createRDFParser().getSupportedSettings().size());
+		assertEquals(16, createRDFParser().getSupportedSettings().size());
 	}
 
     @Test